@@ -51,12 +51,17 @@ class ChunkedInputStream extends FilterInputStream
      */
     ChunkedInputStream(InputStream is)
     {
-	super(is);
+	/** ++GRINDER MODIFICATION **/
+	// Buffer the input so the chunk lengths and the CR LF that follow each
+	// chunk aren't parsed with a call to the underlying stream per byte.
+	// Large reads of chunk data bypass the buffer.
+	super(new BufferedInputStream(is));
+	/** --GRINDER MODIFICATION **/
     }
 
 
     byte[] one = new byte[1];
-    public synchronized int read() throws IOException
+    public int read() throws IOException	// GRINDER MODIFICATION
     {
 	int b = read(one, 0, 1);
 	if (b == 1)
@@ -69,7 +74,7 @@ class ChunkedInputStream extends FilterInputStream
     private long chunk_len = -1;
     private boolean eof   = false;
 
-    public synchronized int read(byte[] buf, int off, int len)
+    public int read(byte[] buf, int off, int len)	// GRINDER MODIFICATION
 	    throws IOException
     {
 	if (eof)  return -1;
@@ -112,7 +117,7 @@ class ChunkedInputStream extends FilterInputStream
     }
 
 
-    public synchronized long skip(long num)  throws IOException
+    public long skip(long num)  throws IOException	// GRINDER MODIFICATION
     {
 	byte[] tmp = new byte[(int) num];
 	int got = read(tmp, 0, (int) num);
@@ -124,7 +129,7 @@ class ChunkedInputStream extends FilterInputStream
     }
 
 
-    public synchronized int available()  throws IOException
+    public int available()  throws IOException	// GRINDER MODIFICATION
     {
 	if (eof)  return 0;
 
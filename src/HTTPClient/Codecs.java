@@ -1560,8 +1560,14 @@ public class Codecs
     final static long getChunkLength(InputStream input)
 	    throws ParseException, IOException
     {
-	byte[] hex_len = new byte[16];	// if they send more than 8EB chunks...
-	int    off     = 0,
+	/** ++GRINDER MODIFICATION **/
+
+	// Parse the hex digits as they are read, rather than collecting them
+	// in a byte[] and converting them with Long.parseLong(new String(...)).
+	// This is called for every chunk.
+
+	long   len    = 0;
+	int    digits = 0,
 	       ch;
 
 
@@ -1570,11 +1576,23 @@ public class Codecs
 	while ((ch = input.read()) > 0  &&  (ch == ' '  ||  ch == '\t')) ;
 	if (ch < 0)
 	    throw new EOFException("Premature EOF while reading chunk length");
-	hex_len[off++] = (byte) ch;
-	while ((ch = input.read()) > 0  &&  ch != '\r'  &&  ch != '\n'  &&
-		ch != ' '  &&  ch != '\t'  &&  ch != ';'  &&
-		off < hex_len.length)
-	    hex_len[off++] = (byte) ch;
+
+	while (ch > 0  &&  ch != '\r'  &&  ch != '\n'  &&  ch != ' '  &&
+	       ch != '\t'  &&  ch != ';')
+	{
+	    int digit = Character.digit((char) ch, 16);
+	    if (digit < 0  ||  len > (Long.MAX_VALUE >> 4))
+		throw new ParseException("Didn't find valid chunk length: " +
+					 "invalid character or overflow after " +
+					 digits + " digits");
+	    len = (len << 4) | digit;
+	    digits++;
+	    ch = input.read();
+	}
+
+	if (digits == 0)
+	    throw new ParseException("Didn't find valid chunk length: " +
+				     "no digits");
 
 	while ((ch == ' '  ||  ch == '\t')  &&  (ch = input.read()) > 0) ;
 	if (ch == ';')		// chunk-ext (ignore it)
@@ -1584,16 +1602,11 @@ public class Codecs
 	    throw new EOFException("Premature EOF while reading chunk length");
 	if (ch != '\n'  &&  (ch != '\r'  ||  input.read() != '\n'))
 	    throw new ParseException("Didn't find valid chunk length: " +
-				     new String(hex_len, 0, off, "8859_1"));
+				     Long.toHexString(len));
 
-	// parse chunk length
+	return len;
 
-	try
-	    { return Long.parseLong(new String(hex_len, 0, off, "8859_1").trim(),
-				    16); }
-	catch (NumberFormatException nfe)
-	    { throw new ParseException("Didn't find valid chunk length: " +
-					new String(hex_len, 0, off, "8859_1") ); }
+	/** --GRINDER MODIFICATION **/
     }
 
 }
@@ -34,8 +34,6 @@ package HTTPClient;
 
 import java.io.IOException;
 import java.util.Vector;
-import java.util.zip.InflaterInputStream;
-import java.util.zip.GZIPInputStream;
 
 
 /**
@@ -171,7 +169,10 @@ class ContentEncodingModule implements HTTPClientModule
 	{
 	    Log.write(Log.MODS, "CEM:   pushing gzip-input-stream");
 
-	    resp.inp_stream = new GZIPInputStream(resp.inp_stream);
+	    /** ++GRINDER MODIFICATION **/
+	    // resp.inp_stream = new GZIPInputStream(resp.inp_stream);
+	    resp.inp_stream = InflatingInputStream.gzip(resp.inp_stream);
+	    /** --GRINDER MODIFICATION **/
 	    pce.removeElementAt(pce.size()-1);
 	    resp.deleteHeader("Content-length");
 	}
@@ -179,7 +180,10 @@ class ContentEncodingModule implements HTTPClientModule
 	{
 	    Log.write(Log.MODS, "CEM:   pushing inflater-input-stream");
 
-	    resp.inp_stream = new InflaterInputStream(resp.inp_stream);
+	    /** ++GRINDER MODIFICATION **/
+	    // resp.inp_stream = new InflaterInputStream(resp.inp_stream);
+	    resp.inp_stream = InflatingInputStream.deflate(resp.inp_stream);
+	    /** --GRINDER MODIFICATION **/
 	    pce.removeElementAt(pce.size()-1);
 	    resp.deleteHeader("Content-length");
 	}
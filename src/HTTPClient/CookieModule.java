@@ -42,6 +42,13 @@ import java.net.ProtocolException;
 import java.util.Vector;
 import java.util.Hashtable;
 import java.util.Enumeration;
+/** ++GRINDER MODIFICATION **/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+/** --GRINDER MODIFICATION **/
 
 import java.awt.Frame;
 import java.awt.Panel;
@@ -102,8 +109,13 @@ import java.awt.event.WindowAdapter;
  */
 public class CookieModule implements HTTPClientModule
 {
-    /** the list of known cookies */
-    private static Hashtable cookie_cntxt_list = new Hashtable();
+    /** ++GRINDER MODIFICATION **/
+    // Was a Hashtable of Hashtables, locked on every request. Each
+    // context (simulated user) now has its own CookieStore.
+    /** the known cookies, by context */
+    private static final ConcurrentMap<Object, CookieStore> cookie_stores =
+	new ConcurrentHashMap<Object, CookieStore>();
+    /** --GRINDER MODIFICATION **/
 
     /** the file to use for persistent cookie storage */
     private static File cookie_jar = null;
@@ -111,10 +123,15 @@ public class CookieModule implements HTTPClientModule
     /** an object, whose finalizer will save the cookies to the jar */
     private static Object cookieSaver = null;
 
-    /** the cookie policy handler */
-    private static CookiePolicyHandler cookie_handler =
+    /** ++GRINDER MODIFICATION **/
+    /** the default cookie policy handler */
+    private static final CookiePolicyHandler default_handler =
 					    new DefaultCookiePolicyHandler();
 
+    /** the cookie policy handler */
+    private static CookiePolicyHandler cookie_handler = default_handler;
+    /** --GRINDER MODIFICATION **/
+
 
 
     // read in cookies from disk at startup
@@ -156,8 +173,14 @@ public class CookieModule implements HTTPClientModule
 	    {
 		ObjectInputStream ois =
 		    new ObjectInputStream(new FileInputStream(cookie_jar));
-		cookie_cntxt_list.put(HTTPConnection.getDefaultContext(),
-				      (Hashtable) ois.readObject());
+		/** ++GRINDER MODIFICATION **/
+		Hashtable<?, ?> saved = (Hashtable<?, ?>) ois.readObject();
+		CookieStore store =
+		    getStore(HTTPConnection.getDefaultContext(), true);
+		Enumeration<?> e = saved.elements();
+		while (e.hasMoreElements())
+		    store.put((Cookie) e.nextElement());
+		/** --GRINDER MODIFICATION **/
 		ois.close();
 	    }
 	}
@@ -185,18 +208,17 @@ public class CookieModule implements HTTPClientModule
 //		if (!cookie.discard())
 //		    cookie_list.put(cookie, cookie);
 //	    }
-        Hashtable cookie_list = new Hashtable();
-        Enumeration e = Util.getList(cookie_cntxt_list,
-                        HTTPConnection.getDefaultContext())
-                   .elements();
+        Hashtable<Cookie, Cookie> cookie_list =
+          new Hashtable<Cookie, Cookie>();
+        Cookie[] cookies =
+          listAllCookies(HTTPConnection.getDefaultContext());
 
         // discard cookies which are not to be kept across sessions
 
-        while (e.hasMoreElements())
+        for (int idx=0; idx<cookies.length; idx++)
         {
-        Cookie cookie = (Cookie) e.nextElement();
-        if (!cookie.discard())
-            cookie_list.put(cookie, cookie);
+        if (!cookies[idx].discard())
+            cookie_list.put(cookies[idx], cookies[idx]);
         }
       /** --GRINDER MODICIFATION **/
 
@@ -308,76 +330,24 @@ public class CookieModule implements HTTPClientModule
 
 	// Now set any new cookie headers
 
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
-	if (cookie_list.size() == 0)
+	/** ++GRINDER MODIFICATION **/
+	// Matching cookies are found through the store's domain trie,
+	// and the resulting header is cached until the store changes.
+	CookieStore store = getStore(req.getConnection().getContext(), false);
+	if (store == null)
 	    return REQ_CONTINUE;	// no need to create a lot of objects
 
-	Vector  names   = new Vector();
-	Vector  lens    = new Vector();
-	int     version = 0;
-
-	synchronized (cookie_list)
-	{
-	    Enumeration list = cookie_list.elements();
-	    Vector remove_list = null;
-
-	    while (list.hasMoreElements())
-	    {
-		Cookie cookie = (Cookie) list.nextElement();
-
-		if (cookie.hasExpired())
-		{
-		    Log.write(Log.COOKI, "CookM: cookie has expired and is " +
-					 "being removed: " + cookie);
-		    if (remove_list == null)  remove_list = new Vector();
-		    remove_list.addElement(cookie);
-		    continue;
-		}
-
-		if (cookie.sendWith(req)  &&  (cookie_handler == null  ||
-		    cookie_handler.sendCookie(cookie, req)))
-		{
-		    int len = cookie.getPath().length();
-		    int idx;
-
-		    // insert in correct position
-		    for (idx=0; idx<lens.size(); idx++)
-			if (((Integer) lens.elementAt(idx)).intValue() < len)
-			    break;
-
-		    names.insertElementAt(cookie.toExternalForm(), idx);
-		    lens.insertElementAt(new Integer(len), idx);
-
-		    if (cookie instanceof Cookie2)
-			version = Math.max(version, ((Cookie2) cookie).getVersion());
-		}
-	    }
-
-	    // remove any marked cookies
-	    // Note: we can't do this during the enumeration!
-	    if (remove_list != null)
-	    {
-		for (int idx=0; idx<remove_list.size(); idx++)
-		    cookie_list.remove(remove_list.elementAt(idx));
-	    }
-	}
+	CookieStore.CookieHeader header =
+	    store.getHeader(req, cookie_handler);
 
-	if (!names.isEmpty())
+	if (header != null)
 	{
-	    StringBuffer value = new StringBuffer();
-
-	    if (version > 0)
-		value.append("$Version=\"" + version + "\"; ");
+	    String value = header.getValue();
+	    int version = header.getVersion();
+	/** --GRINDER MODIFICATION **/
 
-	    value.append((String) names.elementAt(0));
-	    for (int idx=1; idx<names.size(); idx++)
-	    {
-		value.append("; ");
-		value.append((String) names.elementAt(idx));
-	    }
 	    hdrs = Util.resizeArray(hdrs, hdrs.length+1);
-	    hdrs[hdrs.length-1] = new NVPair("Cookie", value.toString());
+	    hdrs[hdrs.length-1] = new NVPair("Cookie", value);
 
 	    // add Cookie2 header if necessary
 	    if (version != 1)	// we currently know about version 1 only
@@ -479,13 +449,14 @@ public class CookieModule implements HTTPClientModule
 		Log.write(Log.COOKI, "CookM: Cookie " + idx + ": " + cookies[idx]);
 	}
 
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
+	/** ++GRINDER MODIFICATION **/
+	CookieStore cookie_list =
+	    getStore(req.getConnection().getContext(), true);
 	synchronized (cookie_list)
 	{
 	    for (int idx=0; idx<cookies.length; idx++)
 	    {
-		Cookie cookie = (Cookie) cookie_list.get(cookies[idx]);
+		Cookie cookie = cookie_list.get(cookies[idx]);
 		if (cookie != null  &&  cookies[idx].hasExpired())
 		{
 		    Log.write(Log.COOKI, "CookM: cookie has expired and is " +
@@ -496,10 +467,11 @@ public class CookieModule implements HTTPClientModule
 		{
 		    if (cookie_handler == null  ||
 			cookie_handler.acceptCookie(cookies[idx], req, resp))
-			cookie_list.put(cookies[idx], cookies[idx]);
+			cookie_list.put(cookies[idx]);
 		}
 	    }
 	}
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -509,7 +481,7 @@ public class CookieModule implements HTTPClientModule
      */
     public static void discardAllCookies()
     {
-	cookie_cntxt_list.clear();
+	cookie_stores.clear();		// GRINDER MODIFICATION
     }
 
 
@@ -522,7 +494,7 @@ public class CookieModule implements HTTPClientModule
     public static void discardAllCookies(Object context)
     {
 	if (context != null)
-	    cookie_cntxt_list.remove(context);
+	    cookie_stores.remove(context);	// GRINDER MODIFICATION
     }
 
 
@@ -534,26 +506,14 @@ public class CookieModule implements HTTPClientModule
      */
     public static Cookie[] listAllCookies()
     {
-	synchronized (cookie_cntxt_list)
-	{
-	    Cookie[] cookies = new Cookie[0];
-	    int idx = 0;
+	/** ++GRINDER MODIFICATION **/
+	List<Cookie> all = new ArrayList<Cookie>();
 
-	    Enumeration cntxt_list = cookie_cntxt_list.elements();
-	    while (cntxt_list.hasMoreElements())
-	    {
-		Hashtable cntxt = (Hashtable) cntxt_list.nextElement();
-		synchronized (cntxt)
-		{
-		    cookies = Util.resizeArray(cookies, idx+cntxt.size());
-		    Enumeration cookie_list = cntxt.elements();
-		    while (cookie_list.hasMoreElements())
-			cookies[idx++] = (Cookie) cookie_list.nextElement();
-		}
-	    }
+	for (CookieStore store : cookie_stores.values())
+	    all.addAll(Arrays.asList(store.toArray()));
 
-	    return cookies;
-	}
+	return all.toArray(new Cookie[all.size()]);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -566,24 +526,14 @@ public class CookieModule implements HTTPClientModule
      */
     public static Cookie[] listAllCookies(Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
+	/** ++GRINDER MODIFICATION **/
+	CookieStore store = getStore(context, false);
 
-	synchronized (cookie_list)
-	{
-	    Cookie[] cookies = new Cookie[cookie_list.size()];
-	    int idx = 0;
+	if (store == null)
+	    return new Cookie[0];
 
-	    /** ++GRINDER MODIFICATION **/
-//	    Enumeration enum = cookie_list.elements();
-//	    while (enum.hasMoreElements())
-//		cookies[idx++] = (Cookie) enum.nextElement();
-        Enumeration e = cookie_list.elements();
-        while (e.hasMoreElements())
-        cookies[idx++] = (Cookie) e.nextElement();
-        /** --GRINDER MODIFICATION **/
-        
-	    return cookies;
-	}
+	return store.toArray();
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -597,9 +547,7 @@ public class CookieModule implements HTTPClientModule
      */
     public static void addCookie(Cookie cookie)
     {
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
-	cookie_list.put(cookie, cookie);
+	addCookie(cookie, HTTPConnection.getDefaultContext());	// GRINDER MODIFICATION
     }
 
 
@@ -615,8 +563,7 @@ public class CookieModule implements HTTPClientModule
      */
     public static void addCookie(Cookie cookie, Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
-	cookie_list.put(cookie, cookie);
+	getStore(context, true).put(cookie);	// GRINDER MODIFICATION
     }
 
 
@@ -630,9 +577,7 @@ public class CookieModule implements HTTPClientModule
      */
     public static void removeCookie(Cookie cookie)
     {
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
-	cookie_list.remove(cookie);
+	removeCookie(cookie, HTTPConnection.getDefaultContext());  // GRINDER MODIFICATION
     }
 
 
@@ -647,11 +592,39 @@ public class CookieModule implements HTTPClientModule
      */
     public static void removeCookie(Cookie cookie, Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
-	cookie_list.remove(cookie);
+	/** ++GRINDER MODIFICATION **/
+	CookieStore store = getStore(context, false);
+	if (store != null)
+	    store.remove(cookie);
+	/** --GRINDER MODIFICATION **/
     }
 
 
+    /** ++GRINDER MODIFICATION **/
+    /**
+     * Find the cookie store for a context.
+     *
+     * @param context the context Object
+     * @param create  whether to create the store if there is none
+     * @return the store, or null if there is none and create is false
+     */
+    private static CookieStore getStore(Object context, boolean create)
+    {
+	CookieStore store = cookie_stores.get(context);
+
+	if (store == null  &&  create)
+	{
+	    CookieStore new_store = new CookieStore();
+	    store = cookie_stores.putIfAbsent(context, new_store);
+	    if (store == null)
+		store = new_store;
+	}
+
+	return store;
+    }
+    /** --GRINDER MODIFICATION **/
+
+
     /**
      * Sets a new cookie policy handler. This handler will be called for each
      * cookie that a server wishes to set and for each cookie that this
@@ -701,6 +674,20 @@ public class CookieModule implements HTTPClientModule
 	cookie_handler = handler;
 	return old;
     }
+
+    /** ++GRINDER MODIFICATION **/
+    /**
+     * Whether a policy handler is the default one created by this module.
+     * The default handler sends every cookie.
+     *
+     * @param handler the policy handler
+     * @return true if <var>handler</var> is the default handler
+     */
+    static boolean isDefaultPolicyHandler(CookiePolicyHandler handler)
+    {
+	return handler == default_handler;
+    }
+    /** --GRINDER MODIFICATION **/
 }
 
 
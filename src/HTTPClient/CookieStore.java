@@ -0,0 +1,409 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The cookies for a single {@link CookieModule} context.
+ *
+ * <p>
+ * Cookies are held in a trie keyed by the labels of their domain, most
+ * significant label first, so only the cookies for the request host and its
+ * parent domains are considered when building a <code>Cookie</code> header.
+ * The headers are cached by protocol, host, port and path until the store is
+ * changed or one of its cookies expires.
+ * </p>
+ *
+ * <p>
+ * A store is normally used by a single thread (The Grinder gives each worker
+ * thread its own context), so the coarse locking is uncontended.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class CookieStore {
+
+  /** Bound on the number of cached headers before the cache is flushed. */
+  private static final int MAXIMUM_CACHED_HEADERS = 256;
+
+  private static final Comparator<Cookie> s_longestPathFirst =
+    new Comparator<Cookie>() {
+      public int compare(Cookie c1, Cookie c2) {
+        return c2.getPath().length() - c1.getPath().length();
+      }
+    };
+
+  private final Node m_root = new Node();
+
+  private final Map<String, CookieHeader> m_headerCache =
+    new HashMap<String, CookieHeader>();
+
+  private int m_size = 0;
+
+  /** Earliest expiry time of the cookies in the store. */
+  private long m_nextExpiry = Long.MAX_VALUE;
+
+  /**
+   * Add a cookie, replacing any equal cookie.
+   *
+   * @param cookie The cookie.
+   */
+  public synchronized void put(Cookie cookie) {
+    final List<Cookie> cookies = listFor(cookie, true);
+    final int index = cookies.indexOf(cookie);
+
+    if (index >= 0) {
+      cookies.set(index, cookie);
+    }
+    else {
+      cookies.add(cookie);
+      ++m_size;
+    }
+
+    final Date expires = cookie.expires();
+
+    if (expires != null) {
+      m_nextExpiry = Math.min(m_nextExpiry, expires.getTime());
+    }
+
+    m_headerCache.clear();
+  }
+
+  /**
+   * Look up a cookie.
+   *
+   * @param cookie A cookie with the same name, domain, and path.
+   * @return The stored cookie, or <code>null</code>.
+   */
+  public synchronized Cookie get(Cookie cookie) {
+    final List<Cookie> cookies = listFor(cookie, false);
+
+    if (cookies != null) {
+      final int index = cookies.indexOf(cookie);
+
+      if (index >= 0) {
+        return cookies.get(index);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Remove a cookie.
+   *
+   * @param cookie A cookie with the same name, domain, and path.
+   * @return <code>true</code> if the cookie was removed.
+   */
+  public synchronized boolean remove(Cookie cookie) {
+    final List<Cookie> cookies = listFor(cookie, false);
+
+    if (cookies != null && cookies.remove(cookie)) {
+      --m_size;
+      m_headerCache.clear();
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * The number of cookies held.
+   *
+   * @return The number of cookies.
+   */
+  public synchronized int size() {
+    return m_size;
+  }
+
+  /**
+   * Copy the cookies into an array.
+   *
+   * @return The cookies.
+   */
+  public synchronized Cookie[] toArray() {
+    final List<Cookie> result = new ArrayList<Cookie>(m_size);
+    m_root.collectAll(result);
+    return result.toArray(new Cookie[result.size()]);
+  }
+
+  /**
+   * Calculate the cookie header for a request.
+   *
+   * @param request The request.
+   * @param handler Policy handler that decides whether a cookie is sent, or
+   *          <code>null</code>.
+   * @return The header, or <code>null</code> if there are no cookies to send.
+   */
+  public synchronized CookieHeader getHeader(RoRequest request,
+                                             CookiePolicyHandler handler) {
+
+    if (System.currentTimeMillis() >= m_nextExpiry) {
+      removeExpired();
+    }
+
+    if (m_size == 0) {
+      return null;
+    }
+
+    final HTTPConnection connection = request.getConnection();
+
+    String host = connection.getHost();
+    if (host.indexOf('.') == -1)  host += ".local";
+
+    // We can only cache if the policy handler can't veto cookies. The
+    // default handler sends everything.
+    final boolean cacheable =
+      handler == null || CookieModule.isDefaultPolicyHandler(handler);
+
+    final String key;
+
+    if (cacheable) {
+      key = connection.getProtocol() + "://" + host + ":" +
+            connection.getPort() + Util.getPath(request.getRequestURI());
+
+      final CookieHeader cached = m_headerCache.get(key);
+
+      if (cached != null) {
+        return cached.m_value != null ? cached : null;
+      }
+    }
+    else {
+      key = null;
+    }
+
+    final List<Cookie> cookies = new ArrayList<Cookie>();
+
+    final String[] labels = labels(host);
+    Node node = m_root;
+
+    for (int i = labels.length - 1; i >= 0 && node != null; --i) {
+      // Domain cookies apply to hosts strictly within the domain.
+      node.addMatching(node.m_domainCookies, request, handler, cookies);
+      node = node.m_children != null ? node.m_children.get(labels[i]) : null;
+    }
+
+    if (node != null) {
+      node.addMatching(node.m_hostCookies, request, handler, cookies);
+    }
+
+    final CookieHeader result = CookieHeader.create(cookies);
+
+    if (cacheable) {
+      if (m_headerCache.size() >= MAXIMUM_CACHED_HEADERS) {
+        m_headerCache.clear();
+      }
+
+      m_headerCache.put(key, result);
+    }
+
+    return result.m_value != null ? result : null;
+  }
+
+  private void removeExpired() {
+    m_nextExpiry = Long.MAX_VALUE;
+    m_size -= m_root.removeExpired();
+    m_headerCache.clear();
+  }
+
+  private List<Cookie> listFor(Cookie cookie, boolean create) {
+    final String domain = cookie.getDomain();
+    final boolean isDomain = domain.length() > 0 && domain.charAt(0) == '.';
+    final String[] labels = labels(isDomain ? domain.substring(1) : domain);
+
+    Node node = m_root;
+
+    for (int i = labels.length - 1; i >= 0; --i) {
+      final Node child = node.m_children != null ?
+        node.m_children.get(labels[i]) : null;
+
+      if (child != null) {
+        node = child;
+      }
+      else if (create) {
+        if (node.m_children == null) {
+          node.m_children = new HashMap<String, Node>(4);
+        }
+
+        final Node newNode = new Node();
+        node.m_children.put(labels[i], newNode);
+        node = newNode;
+      }
+      else {
+        return null;
+      }
+    }
+
+    return isDomain ? node.m_domainCookies : node.m_hostCookies;
+  }
+
+  private static String[] labels(String name) {
+    return name.length() == 0 ? new String[0] : name.split("\\.");
+  }
+
+  /**
+   * Trie node.
+   */
+  private final class Node {
+    private final List<Cookie> m_hostCookies = new ArrayList<Cookie>(2);
+    private final List<Cookie> m_domainCookies = new ArrayList<Cookie>(2);
+    private Map<String, Node> m_children;
+
+    private void addMatching(List<Cookie> cookies,
+                             RoRequest request,
+                             CookiePolicyHandler handler,
+                             List<Cookie> result) {
+
+      // Final check with the cookie's own rules, which also consider the
+      // path, the port, and whether the cookie is secure.
+      for (Cookie cookie : cookies) {
+        if (cookie.sendWith(request) &&
+            (handler == null || handler.sendCookie(cookie, request))) {
+          result.add(cookie);
+        }
+      }
+    }
+
+    private void collectAll(List<Cookie> result) {
+      result.addAll(m_hostCookies);
+      result.addAll(m_domainCookies);
+
+      if (m_children != null) {
+        for (Node child : m_children.values()) {
+          child.collectAll(result);
+        }
+      }
+    }
+
+    private int removeExpired() {
+      int removed = removeExpired(m_hostCookies) +
+                    removeExpired(m_domainCookies);
+
+      if (m_children != null) {
+        for (Node child : m_children.values()) {
+          removed += child.removeExpired();
+        }
+      }
+
+      return removed;
+    }
+
+    private int removeExpired(List<Cookie> cookies) {
+      int removed = 0;
+
+      for (int i = cookies.size() - 1; i >= 0; --i) {
+        final Cookie cookie = cookies.get(i);
+
+        if (cookie.hasExpired()) {
+          Log.write(Log.COOKI, "CookM: cookie has expired and is " +
+                               "being removed: " + cookie);
+          cookies.remove(i);
+          ++removed;
+        }
+        else {
+          final Date expires = cookie.expires();
+
+          if (expires != null) {
+            m_nextExpiry = Math.min(m_nextExpiry, expires.getTime());
+          }
+        }
+      }
+
+      return removed;
+    }
+  }
+
+  /**
+   * The value of a <code>Cookie</code> header.
+   */
+  static final class CookieHeader {
+    private static final CookieHeader NO_COOKIES = new CookieHeader(null, 0);
+
+    private final String m_value;
+    private final int m_version;
+
+    private CookieHeader(String value, int version) {
+      m_value = value;
+      m_version = version;
+    }
+
+    private static CookieHeader create(List<Cookie> cookies) {
+      if (cookies.isEmpty()) {
+        return NO_COOKIES;
+      }
+
+      // Stable, so cookies with equal length paths keep their order.
+      Collections.sort(cookies, s_longestPathFirst);
+
+      int version = 0;
+
+      for (Cookie cookie : cookies) {
+        if (cookie instanceof Cookie2) {
+          version = Math.max(version, ((Cookie2) cookie).getVersion());
+        }
+      }
+
+      final StringBuffer value = new StringBuffer();
+
+      if (version > 0) {
+        value.append("$Version=\"").append(version).append("\"; ");
+      }
+
+      for (int i = 0; i < cookies.size(); ++i) {
+        if (i > 0) {
+          value.append("; ");
+        }
+
+        value.append(cookies.get(i).toExternalForm());
+      }
+
+      return new CookieHeader(value.toString(), version);
+    }
+
+    /**
+     * The header value.
+     *
+     * @return The value.
+     */
+    public String getValue() {
+      return m_value;
+    }
+
+    /**
+     * The highest cookie version.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+      return m_version;
+    }
+  }
+}
@@ -3809,8 +3809,11 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 	    if (idx != ct_idx  &&  idx != ua_idx  &&  idx != co_idx  &&
 		idx != pc_idx  &&  idx != ka_idx  &&  idx != ex_idx  &&
 		idx != te_idx  &&  idx != ho_idx)
-		dataout.writeBytes(hdrs[idx].getName().trim() + ": " +
-				   hdrs[idx].getValue().trim() + "\r\n");
+		/** ++GRINDER MODIFICATION **/
+		// dataout.writeBytes(hdrs[idx].getName().trim() + ": " +
+		//		   hdrs[idx].getValue().trim() + "\r\n");
+		hdr_buf.write(hdrs[idx].getHeaderBytes());
+		/** --GRINDER MODIFICATION **/
 	}
 
 
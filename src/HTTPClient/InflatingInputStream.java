@@ -0,0 +1,478 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Decodes <code>gzip</code> and <code>deflate</code> encoded content.
+ *
+ * <p>
+ * Replaces {@link java.util.zip.GZIPInputStream} and
+ * {@link java.util.zip.InflaterInputStream}, which allocate a new
+ * {@link Inflater} and buffer for each response and synchronize every read.
+ * Each thread keeps a spare {@link Inflater} and buffer which are borrowed
+ * when a response is decoded and returned when the end of the content is
+ * reached or the stream is closed.
+ * </p>
+ *
+ * <p>
+ * The <code>gzip</code> header and trailer are parsed here so the raw
+ * {@link Inflater} can be shared between formats. Concatenated
+ * <code>gzip</code> members are supported. <code>deflate</code> content is
+ * expected to have a zlib wrapper, but raw deflate data (which some servers
+ * send) is detected and accepted.
+ * </p>
+ *
+ * <p>
+ * Like the other HTTPClient streams, instances are not thread safe.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class InflatingInputStream extends FilterInputStream {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private static final int FDICT = 0x20;
+
+  private static final ThreadLocal<Resources> s_spare =
+    new ThreadLocal<Resources>();
+
+  private final boolean m_gzip;
+  private final byte[] m_one = new byte[1];
+
+  private Resources m_resources;
+  private Checksum m_checksum;
+  private boolean m_headerRead;
+
+  /** Input not yet passed to the inflater is m_buffer[m_position, m_limit). */
+  private int m_position;
+  private int m_limit;
+
+  /**
+   * Create a stream that decodes <code>gzip</code> content.
+   *
+   * @param in The encoded stream.
+   * @return The decoding stream.
+   */
+  public static InputStream gzip(InputStream in) {
+    return new InflatingInputStream(in, true);
+  }
+
+  /**
+   * Create a stream that decodes <code>deflate</code> content.
+   *
+   * @param in The encoded stream.
+   * @return The decoding stream.
+   */
+  public static InputStream deflate(InputStream in) {
+    return new InflatingInputStream(in, false);
+  }
+
+  private InflatingInputStream(InputStream in, boolean gzip) {
+    super(in);
+    m_gzip = gzip;
+    m_resources = acquire();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int read() throws IOException {
+    return read(m_one, 0, 1) == 1 ? m_one[0] & 0xff : -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (m_resources == null) {
+      return -1;
+    }
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!m_headerRead) {
+      readHeader();
+    }
+
+    final Inflater inflater = m_resources.m_inflater;
+
+    while (true) {
+      final int n;
+
+      try {
+        n = inflater.inflate(b, off, len);
+      }
+      catch (DataFormatException e) {
+        final String message = e.getMessage();
+        throw new ZipException(message != null ? message : "Invalid data");
+      }
+
+      if (n > 0) {
+        if (m_checksum != null) {
+          m_checksum.update(b, off, n);
+        }
+
+        return n;
+      }
+
+      if (inflater.finished()) {
+        if (!nextMember()) {
+          return -1;
+        }
+      }
+      else if (inflater.needsDictionary()) {
+        throw new ZipException("Preset dictionaries are not supported");
+      }
+      else if (inflater.needsInput()) {
+        if (!fill()) {
+          throw new EOFException("Unexpected end of compressed content");
+        }
+
+        inflater.setInput(m_resources.m_buffer,
+                          m_position,
+                          m_limit - m_position);
+        m_position = m_limit;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long skip(long n) throws IOException {
+    final byte[] scratch = new byte[(int) Math.min(n, 512)];
+    long remaining = n;
+
+    while (remaining > 0) {
+      final int skipped =
+        read(scratch, 0, (int) Math.min(remaining, scratch.length));
+
+      if (skipped == -1) {
+        break;
+      }
+
+      remaining -= skipped;
+    }
+
+    return n - remaining;
+  }
+
+  /**
+   * Returns 0 after the end of the content has been reached, otherwise
+   * returns 1. This is the same contract as
+   * {@link java.util.zip.InflaterInputStream#available()}.
+   *
+   * @return 0 or 1.
+   */
+  public int available() {
+    return m_resources != null ? 1 : 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void mark(int readlimit) {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void close() throws IOException {
+    release();
+    super.close();
+  }
+
+  private void readHeader() throws IOException {
+    if (m_gzip) {
+      if (readShort() != GZIP_MAGIC) {
+        throw new ZipException("Not in GZIP format");
+      }
+
+      if (readByte() != 8) {
+        throw new ZipException("Unsupported compression method");
+      }
+
+      final int flags = readByte();
+
+      skipBytes(6);  // MTIME, XFL, OS.
+
+      if ((flags & FEXTRA) != 0) {
+        skipBytes(readShort());
+      }
+
+      if ((flags & FNAME) != 0) {
+        while (readByte() != 0) { }
+      }
+
+      if ((flags & FCOMMENT) != 0) {
+        while (readByte() != 0) { }
+      }
+
+      if ((flags & FHCRC) != 0) {
+        skipBytes(2);
+      }
+
+      m_checksum = m_resources.crc32();
+    }
+    else {
+      if (!buffer(2)) {
+        throw new EOFException("Unexpected end of compressed content");
+      }
+
+      final byte[] buffer = m_resources.m_buffer;
+      final int cmf = buffer[m_position] & 0xff;
+      final int flg = buffer[m_position + 1] & 0xff;
+
+      if ((cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0) {
+        if ((flg & FDICT) != 0) {
+          throw new ZipException("Preset dictionaries are not supported");
+        }
+
+        m_position += 2;
+        m_checksum = m_resources.adler32();
+      }
+      else {
+        // Raw deflate data, without a header or a checksum.
+        m_checksum = null;
+      }
+    }
+
+    m_headerRead = true;
+  }
+
+  /**
+   * Called when the inflater has finished a member. Checks the trailer and
+   * prepares for the next gzip member if there is one.
+   *
+   * @return <code>true</code> if there is another member to decode.
+   */
+  private boolean nextMember() throws IOException {
+    final Inflater inflater = m_resources.m_inflater;
+
+    // Reclaim any input the inflater has not consumed.
+    m_position = m_limit - inflater.getRemaining();
+
+    if (m_gzip) {
+      final long crc = readInt();
+      final long size = readInt();
+
+      if (crc != m_checksum.getValue()) {
+        throw new ZipException("Corrupt GZIP trailer");
+      }
+
+      if (size != (inflater.getBytesWritten() & 0xffffffffL)) {
+        throw new ZipException("Corrupt GZIP trailer");
+      }
+
+      // Only look for another member if it won't block. Anything other than
+      // a gzip header is ignored, as java.util.zip.GZIPInputStream does.
+      if ((m_position < m_limit || in.available() > 0) && buffer(2)) {
+        final byte[] buffer = m_resources.m_buffer;
+
+        if ((buffer[m_position] & 0xff | (buffer[m_position + 1] & 0xff) << 8)
+            == GZIP_MAGIC) {
+          inflater.reset();
+          readHeader();
+          return true;
+        }
+      }
+    }
+    else if (m_checksum != null) {
+      // The zlib trailer is big endian.
+      final long adler =
+        ((long) readByte() << 24 | readByte() << 16 | readByte() << 8 |
+         readByte()) & 0xffffffffL;
+
+      if (adler != m_checksum.getValue()) {
+        throw new ZipException("Corrupt zlib trailer");
+      }
+    }
+
+    release();
+
+    return false;
+  }
+
+  /**
+   * Ensure there is at least one byte of unconsumed input in the buffer.
+   *
+   * @return <code>false</code> if the underlying stream is exhausted.
+   */
+  private boolean fill() throws IOException {
+    if (m_position < m_limit) {
+      return true;
+    }
+
+    final byte[] buffer = m_resources.m_buffer;
+    final int n = in.read(buffer, 0, buffer.length);
+
+    if (n <= 0) {
+      return false;
+    }
+
+    m_position = 0;
+    m_limit = n;
+
+    return true;
+  }
+
+  /**
+   * Ensure there are at least <code>n</code> bytes of unconsumed input in the
+   * buffer.
+   *
+   * @return <code>false</code> if the underlying stream is exhausted first.
+   */
+  private boolean buffer(int n) throws IOException {
+    final byte[] buffer = m_resources.m_buffer;
+
+    if (m_limit - m_position >= n) {
+      return true;
+    }
+
+    System.arraycopy(buffer, m_position, buffer, 0, m_limit - m_position);
+    m_limit -= m_position;
+    m_position = 0;
+
+    while (m_limit < n) {
+      final int got = in.read(buffer, m_limit, buffer.length - m_limit);
+
+      if (got <= 0) {
+        return false;
+      }
+
+      m_limit += got;
+    }
+
+    return true;
+  }
+
+  private int readByte() throws IOException {
+    if (!fill()) {
+      throw new EOFException("Unexpected end of compressed content");
+    }
+
+    return m_resources.m_buffer[m_position++] & 0xff;
+  }
+
+  /** Little endian. */
+  private int readShort() throws IOException {
+    return readByte() | readByte() << 8;
+  }
+
+  /** Little endian. */
+  private long readInt() throws IOException {
+    return ((long) readShort() | (long) readShort() << 16) & 0xffffffffL;
+  }
+
+  private void skipBytes(int n) throws IOException {
+    for (int i = 0; i < n; ++i) {
+      readByte();
+    }
+  }
+
+  private static Resources acquire() {
+    final Resources spare = s_spare.get();
+
+    if (spare != null) {
+      s_spare.set(null);
+      return spare;
+    }
+
+    return new Resources();
+  }
+
+  private void release() {
+    final Resources resources = m_resources;
+
+    if (resources != null) {
+      m_resources = null;
+      m_checksum = null;
+      resources.m_inflater.reset();
+
+      if (s_spare.get() == null) {
+        s_spare.set(resources);
+      }
+      else {
+        resources.m_inflater.end();
+      }
+    }
+  }
+
+  /**
+   * The per-thread state that is reused between responses.
+   */
+  private static final class Resources {
+    private final Inflater m_inflater = new Inflater(true);
+    private final byte[] m_buffer = new byte[BUFFER_SIZE];
+    private final CRC32 m_crc32 = new CRC32();
+    private final Adler32 m_adler32 = new Adler32();
+
+    private Checksum crc32() {
+      m_crc32.reset();
+      return m_crc32;
+    }
+
+    private Checksum adler32() {
+      m_adler32.reset();
+      return m_adler32;
+    }
+  }
+}
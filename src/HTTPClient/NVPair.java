@@ -98,6 +98,43 @@ public final class NVPair
     }
 
 
+    /** ++GRINDER MODIFICATION **/
+
+    /** the header line, encoded when first needed */
+    private volatile byte[] header_bytes;
+
+    /**
+     * Get this pair as a header line, in the form written by
+     * HTTPConnection: the trimmed name and value, separated by ": " and
+     * terminated by CR LF. Characters are truncated to bytes, as by
+     * <code>DataOutputStream.writeBytes()</code>.
+     *
+     * <p>The result is cached, since the pair is immutable. Headers that are
+     * reused for many requests are encoded once.
+     *
+     * @return the header line. Callers must not modify it.
+     */
+    final byte[] getHeaderBytes()
+    {
+	byte[] result = header_bytes;
+
+	if (result == null)
+	{
+	    String line = name.trim() + ": " + value.trim() + "\r\n";
+	    result = new byte[line.length()];
+
+	    for (int idx=0; idx<result.length; idx++)
+		result[idx] = (byte) line.charAt(idx);
+
+	    header_bytes = result;
+	}
+
+	return result;
+    }
+
+    /** --GRINDER MODIFICATION **/
+
+
     /**
      * Produces a string containing the name and value of this instance.
      *
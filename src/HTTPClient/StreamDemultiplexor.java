@@ -42,6 +42,11 @@ import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.net.SocketException;
 
+/** ++GRINDER MODIFICATION **/
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.thread.TimingWheel;
+/** --GRINDER MODIFICATION **/
+
 /**
  * This class handles the demultiplexing of input stream. This is needed
  * for things like keep-alive in HTTP/1.0, persist in HTTP/1.1 and in HTTP-NG.
@@ -66,11 +71,21 @@ class StreamDemultiplexor implements GlobalConstants
     /** signals after the closing of which stream to close the socket */
     private ResponseHandler        MarkedForClose;
 
+    /** ++GRINDER MODIFICATION **/
+    // The global SocketTimeout thread, with its single lock and linked
+    // list buckets, was a bottleneck with thousands of connections.
+    // Connection timers are now held in a TimingWheel, which is lock
+    // free for schedule(), reset() and cancel().
+
+    /** how long an unused socket is kept open, in milliseconds */
+    private static final long      IdleTimeout = 60000;
+
     /** timer used to close the socket if unused for a given time */
-    private SocketTimeout.TimeoutEntry Timer = null;
+    private TimingWheel.Timeout    Timer = null;
 
-    /** timer thread which implements the timers */
-    private static SocketTimeout   TimerThread = null;
+    /** timing wheel which implements the timers */
+    private static TimingWheel     TimerThread = null;
+    /** --GRINDER MODIFICATION **/
 
     /** cleanup object to stop timer thread when we're gc'd */
     private static Object          cleanup;
@@ -87,7 +102,10 @@ class StreamDemultiplexor implements GlobalConstants
 
     static
     {
-	TimerThread = new SocketTimeout(60);
+	/** ++GRINDER MODIFICATION **/
+	TimerThread = new TimingWheel(new StandardTimeAuthority(),
+				      "SocketTimeout", 1000, 64);
+	/** --GRINDER MODIFICATION **/
 	TimerThread.start();
 
 	/* This is here to clean up the timer thread should the
@@ -101,12 +119,14 @@ class StreamDemultiplexor implements GlobalConstants
 	 * classloader from being gc'd.
 	 */
 	cleanup = new Object() {
-	    private final SocketTimeout timer = StreamDemultiplexor.TimerThread;
+	    /** ++GRINDER MODIFICATION **/
+	    private final TimingWheel timer = StreamDemultiplexor.TimerThread;
 
 	    protected void finalize()
 	    {
-		timer.kill();
+		timer.shutdown();
 	    }
+	    /** --GRINDER MODIFICATION **/
 	};
     }
 
@@ -147,8 +167,13 @@ class StreamDemultiplexor implements GlobalConstants
 
 	// create a timer to close the socket after 60 seconds, but don't
 	// start it yet
-	Timer = TimerThread.setTimeout(this);
-	Timer.hyber();
+	/** ++GRINDER MODIFICATION **/
+	Timer = TimerThread.schedule(new Runnable()
+	    {
+		public void run() { markForClose(null); }
+	    }, IdleTimeout);
+	Timer.suspend();
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -201,7 +226,9 @@ class StreamDemultiplexor implements GlobalConstants
      */
     void restartTimer()
     {
-	if (Timer != null)  Timer.reset();
+	/** ++GRINDER MODIFICATION **/
+	if (Timer != null)  Timer.reset(IdleTimeout);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -256,7 +283,7 @@ class StreamDemultiplexor implements GlobalConstants
 		Log.write(Log.DEMUX, "Demux: Reading for stream " +
 				     resph.stream.hashCode());
 
-	    if (Timer != null)  Timer.hyber();
+	    if (Timer != null)  Timer.suspend();	// GRINDER MODIFICATION
 
 	    try
 	    {
@@ -484,7 +511,7 @@ class StreamDemultiplexor implements GlobalConstants
 
 	if (Timer != null)
 	{
-	    Timer.kill();
+	    Timer.cancel();	// GRINDER MODIFICATION
 	    Timer = null;
 	}
 
@@ -632,7 +659,7 @@ class StreamDemultiplexor implements GlobalConstants
 	if (MarkedForClose != null)
 	    return null;
 
-	if (Timer != null)  Timer.hyber();
+	if (Timer != null)  Timer.suspend();	// GRINDER MODIFICATION
 	return Sock;
     }
 
@@ -657,7 +684,7 @@ class StreamDemultiplexor implements GlobalConstants
 
 	    if (Timer != null)
 	    {
-		Timer.kill();
+		Timer.cancel();	// GRINDER MODIFICATION
 		Timer = null;
 	    }
 
@@ -750,7 +777,7 @@ class StreamDemultiplexor implements GlobalConstants
 
 		    if (Timer != null)
 		    {
-			Timer.kill();
+			Timer.cancel();	// GRINDER MODIFICATION
 			Timer = null;
 		    }
 		}
@@ -799,177 +826,3 @@ class StreamDemultiplexor implements GlobalConstants
 	return getClass().getName() + "[Protocol=" + prot + "]";
     }
 }
-
-
-/**
- * This thread is used to reap idle connections. It is NOT used to timeout
- * reads or writes on a socket. It keeps a list of timer entries and expires
- * them after a given time.
- */
-class SocketTimeout extends Thread
-{
-    private boolean alive = true;
-
-    /**
-     * This class represents a timer entry. It is used to close an
-     * inactive socket after n seconds. Once running, the timer may be
-     * suspended (hyber()), restarted (reset()), or aborted (kill()).
-     * When the timer expires it invokes markForClose() on the
-     * associated stream demultipexer.
-     */
-    class TimeoutEntry
-    {
-	boolean restart = false,
-		hyber   = false,
-		alive   = true;
-	StreamDemultiplexor demux;
-	TimeoutEntry next = null,
-		     prev = null;
-
-	TimeoutEntry(StreamDemultiplexor demux)
-	{
-	    this.demux = demux;
-	}
-
-	void reset()
-	{
-	    hyber = false;
-	    if (restart)  return;
-	    restart = true;
-
-	    synchronized (time_list)
-	    {
-		if (!alive)  return;
-
-		// remove from current position
-		next.prev = prev;
-		prev.next = next;
-
-		// and add to end of timeout list
-		next = time_list[current];
-		prev = time_list[current].prev;
-		prev.next = this;
-		next.prev = this; 
-	    }
-	}
-
-	void hyber()
-	{
-	    if (alive)  hyber = true;
-	}
-
-	void kill()
-	{
-	    alive   = false;
-	    restart = false;
-	    hyber   = false;
-
-	    synchronized (time_list)
-	    {
-		if (prev == null)  return;
-		next.prev = prev;
-		prev.next = next;
-		prev = null;
-	    }
-	}
-    }
-
-    TimeoutEntry[] time_list;	// jdk 1.1.x javac bug: these must not
-    int		   current;	//   be private!
-
-
-    SocketTimeout(int secs)
-    {
-	super("SocketTimeout");
-
-	try { setDaemon(true); }
-	catch (SecurityException se) { }	// Oh well...
-	setPriority(MAX_PRIORITY);
-
-	time_list = new TimeoutEntry[secs];
-	for (int idx=0; idx<secs; idx++)
-	{
-	    time_list[idx] = new TimeoutEntry(null);
-	    time_list[idx].next = time_list[idx].prev = time_list[idx];
-	}
-	current = 0;
-    }
-
-
-    public TimeoutEntry setTimeout(StreamDemultiplexor demux)
-    {
-	TimeoutEntry entry = new TimeoutEntry(demux);
-	synchronized (time_list)
-	{
-	    entry.next = time_list[current];
-	    entry.prev = time_list[current].prev;
-	    entry.prev.next = entry;
-	    entry.next.prev = entry; 
-	}
-
-	return entry;
-    }
-
-
-    /**
-     * This timer is implemented by sleeping for 1 second and then
-     * checking the timer list.
-     */
-    public void run()
-    {
-	TimeoutEntry marked = null;
-
-	while (alive)
-	{
-	    try { sleep(1000L); } catch (InterruptedException ie) { }
-
-	    synchronized (time_list)
-	    {
-		// reset all restart flags
-		for (TimeoutEntry entry = time_list[current].next;
-		     entry != time_list[current];
-		     entry = entry.next)
-		{
-		    entry.restart = false;
-		}
-
-		current++;
-		if (current >= time_list.length)
-		    current = 0;
-
-		// remove all expired timers 
-		for (TimeoutEntry entry = time_list[current].next;
-		     entry != time_list[current];
-		     entry = entry.next)
-		{
-		    if (entry.alive  &&  !entry.hyber)
-		    {
-			TimeoutEntry prev = entry.prev;
-			entry.kill();
-			/* put on death row. Note: we must not invoke
-			 * markForClose() here because it is synch'd
-			 * and can therefore lead to a deadlock if that
-			 * thread is trying to do a reset() or kill()
-			 */
-			entry.next = marked;
-			marked = entry;
-			entry = prev;
-		    }
-		}
-	    }
-
-	    while (marked != null)
-	    {
-		marked.demux.markForClose(null);
-		marked = marked.next;
-	    }
-	}
-    }
-
-    /**
-     * Stop the timer thread.
-     */
-    public void kill() {
-	alive = false;
-    }
-}
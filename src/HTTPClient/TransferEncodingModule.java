@@ -34,8 +34,6 @@ package HTTPClient;
 
 import java.io.IOException;
 import java.util.Vector;
-import java.util.zip.InflaterInputStream;
-import java.util.zip.GZIPInputStream;
 
 
 /**
@@ -165,13 +163,19 @@ class TransferEncodingModule implements HTTPClientModule
 	    {
 		Log.write(Log.MODS, "TEM:   pushing gzip-input-stream");
 
-		resp.inp_stream = new GZIPInputStream(resp.inp_stream);
+		/** ++GRINDER MODIFICATION **/
+		// resp.inp_stream = new GZIPInputStream(resp.inp_stream);
+		resp.inp_stream = InflatingInputStream.gzip(resp.inp_stream);
+		/** --GRINDER MODIFICATION **/
 	    }
 	    else if (encoding.equalsIgnoreCase("deflate"))
 	    {
 		Log.write(Log.MODS, "TEM:   pushing inflater-input-stream");
 
-		resp.inp_stream = new InflaterInputStream(resp.inp_stream);
+		/** ++GRINDER MODIFICATION **/
+		// resp.inp_stream = new InflaterInputStream(resp.inp_stream);
+		resp.inp_stream = InflatingInputStream.deflate(resp.inp_stream);
+		/** --GRINDER MODIFICATION **/
 	    }
 	    else if (encoding.equalsIgnoreCase("compress"))
 	    {
@@ -62,9 +62,9 @@ class UncompressInputStream extends FilterInputStream
 
 
     byte[] one = new byte[1];
-    public synchronized int read() throws IOException
+    public int read() throws IOException	// GRINDER MODIFICATION
     {
-	int b = in.read(one, 0, 1);
+	int b = read(one, 0, 1);	// GRINDER MODIFICATION: was in.read()
 	if (b == 1)
 	    return (one[0] & 0xff);
 	else
@@ -100,7 +100,7 @@ class UncompressInputStream extends FilterInputStream
     private static final int EXTRA = 64;
 
 
-    public synchronized int read(byte[] buf, int off, int len)
+    public int read(byte[] buf, int off, int len)	// GRINDER MODIFICATION
 	    throws IOException
     {
 	if (eof)  return -1;
@@ -329,7 +329,7 @@ class UncompressInputStream extends FilterInputStream
     }
 
 
-    public synchronized long skip(long num)  throws IOException
+    public long skip(long num)  throws IOException	// GRINDER MODIFICATION
     {
 	byte[] tmp = new byte[(int) num];
 	int got = read(tmp, 0, (int) num);
@@ -341,7 +341,7 @@ class UncompressInputStream extends FilterInputStream
     }
 
 
-    public synchronized int available()  throws IOException
+    public int available()  throws IOException	// GRINDER MODIFICATION
     {
 	if (eof)  return 0;
 
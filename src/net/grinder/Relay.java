@@ -0,0 +1,131 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Timer;
+
+import net.grinder.common.GrinderException;
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.Logger;
+import net.grinder.communication.CommunicationDefaults;
+import net.grinder.engine.relay.ConsoleRelay;
+import net.grinder.util.AbstractMainClass;
+import net.grinder.util.SimpleLogger;
+
+
+/**
+ * Entry point of The Grinder console relay process.
+ *
+ * <p>
+ * The relay listens on <code>grinder.relay.host</code> and
+ * <code>grinder.relay.port</code> (by default, the console port on all
+ * interfaces) for agents and workers, and forwards to the console at
+ * <code>grinder.consoleHost</code> and <code>grinder.consolePort</code>.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ * @see ConsoleRelay
+ */
+public final class Relay extends AbstractMainClass {
+
+  private static final String USAGE =
+    "\n  java " + Relay.class + " [alternatePropertiesFilename]" +
+    "\n\n";
+
+  /**
+   * The Grinder console relay process entry point.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main(String[] args) {
+
+    final Logger logger =
+      new SimpleLogger("relay",
+                       new PrintWriter(System.out),
+                       new PrintWriter(System.err));
+
+    try {
+      final Relay relay = new Relay(args, logger);
+      relay.run();
+    }
+    catch (LoggedInitialisationException e) {
+      System.exit(1);
+    }
+    catch (Throwable e) {
+      final PrintWriter errorWriter = logger.getErrorLogWriter();
+      e.printStackTrace(errorWriter);
+      errorWriter.flush();
+      System.exit(2);
+    }
+
+    System.exit(0);
+  }
+
+  private final GrinderProperties m_properties;
+
+  private Relay(String[] args, Logger logger) throws GrinderException {
+    super(logger, USAGE);
+
+    if (args.length > 1 || args.length == 1 && args[0].startsWith("-")) {
+      throw barfUsage();
+    }
+
+    m_properties =
+      new GrinderProperties(
+        args.length == 1 ?
+          new File(args[0]) : GrinderProperties.DEFAULT_PROPERTIES);
+  }
+
+  private void run() throws GrinderException, InterruptedException {
+    final ConsoleRelay relay =
+      new ConsoleRelay(
+        m_properties.getProperty(GrinderProperties.CONSOLE_HOST,
+                                 CommunicationDefaults.CONSOLE_HOST),
+        m_properties.getInt(GrinderProperties.CONSOLE_PORT,
+                            CommunicationDefaults.CONSOLE_PORT),
+        m_properties.getProperty("grinder.relay.host",
+                                 CommunicationDefaults.CONSOLE_HOST),
+        m_properties.getInt("grinder.relay.port",
+                            CommunicationDefaults.CONSOLE_PORT),
+        new Timer(true),
+        m_properties.getInt("grinder.reportToConsole.interval", 500),
+        getLogger());
+
+    getLogger().output("relaying port " + relay.getPort() + " to console");
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+        public void run() {
+          relay.shutdown();
+        }
+      });
+
+    // Run until killed.
+    synchronized (this) {
+      while (true) {
+        wait();
+      }
+    }
+  }
+}
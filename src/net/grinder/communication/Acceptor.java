@@ -344,8 +344,8 @@ public final class Acceptor {
       final Connector.ConnectDetails connectDetails =
         Connector.read(localSocket.getInputStream());
 
-      final SocketWrapper socketWrapper = new SocketWrapper(localSocket);
-      socketWrapper.setAddress(connectDetails.getAddress());
+      final SocketWrapper socketWrapper =
+        new SocketWrapper(localSocket, connectDetails.getAddress());
 
       // Possible minor race if the socket is closed between here...
       final ResourcePool.Closeable closeable =
@@ -36,6 +36,7 @@ public final class ConnectionIdentity {
   private final InetAddress m_inetAddress;
   private final int m_port;
   private final long m_connectionTime;
+  private final Address m_address;
 
   /**
    * Constructor.
@@ -46,9 +47,38 @@ public final class ConnectionIdentity {
    * Epoch.
    */
   ConnectionIdentity(InetAddress inetAddress, int port, long connectionTime) {
+    this(inetAddress, port, connectionTime, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param inetAddress TCP address of connection.
+   * @param port TCP port of connection.
+   * @param connectionTime Connection time - milliseconds since the
+   * Epoch.
+   * @param address The address the client connected with, or
+   * <code>null</code>.
+   */
+  ConnectionIdentity(InetAddress inetAddress,
+                     int port,
+                     long connectionTime,
+                     Address address) {
     m_inetAddress = inetAddress;
     m_port = port;
     m_connectionTime = connectionTime;
+    m_address = address;
+  }
+
+  /**
+   * The address the client connected with. This is not part of the
+   * connection's identity.
+   *
+   * @return The address, or <code>null</code> if the client did not
+   * provide one.
+   */
+  public Address getAddress() {
+    return m_address;
   }
 
   /**
@@ -0,0 +1,79 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * {@link ObjectInputStream} used to read a message from a connection.
+ *
+ * <p>
+ * Messages that implement {@link java.io.Externalizable} can use {@link
+ * #getConnectionState} to keep state for the lifetime of the connection they
+ * are read from. This allows a message to affect how later messages from the
+ * same sender are read.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class MessageInputStream extends ObjectInputStream {
+
+  private final ConcurrentMap<Object, Object> m_connectionState;
+
+  /**
+   * Constructor.
+   *
+   * @param in The stream to read from.
+   * @param connectionState The state of the connection.
+   * @throws IOException If the stream header could not be read.
+   */
+  public MessageInputStream(InputStream in,
+                            ConcurrentMap<Object, Object> connectionState)
+    throws IOException {
+    super(in);
+    m_connectionState = connectionState;
+  }
+
+  /**
+   * Return the state of the connection that an object is being read from.
+   *
+   * @param in The stream passed to <code>readExternal</code>.
+   * @return The connection state, or <code>null</code> if <code>in</code>
+   * is not reading from a connection.
+   */
+  public static ConcurrentMap<Object, Object>
+    getConnectionState(ObjectInput in) {
+
+    if (in instanceof MessageInputStream) {
+      return ((MessageInputStream) in).m_connectionState;
+    }
+
+    return null;
+  }
+}
@@ -253,7 +253,8 @@ public final class ServerReceiver implements Receiver {
                 idle = false;
 
                 final ObjectInputStream objectStream =
-                  new ObjectInputStream(inputStream);
+                  new MessageInputStream(
+                    inputStream, socketWrapper.getConnectionState());
 
                 final Message message = (Message)objectStream.readObject();
 
@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.grinder.common.Closer;
 import net.grinder.util.ListenerSupport;
@@ -59,7 +61,10 @@ final class SocketWrapper implements ResourcePool.Resource {
       public void inform(ClosedListener l) { l.socketClosed(); }
     };
 
-  private Address m_address;
+  private final Address m_address;
+
+  private final ConcurrentMap<Object, Object> m_connectionState =
+    new ConcurrentHashMap<Object, Object>();
 
   /**
    * Constructor.
@@ -72,7 +77,28 @@ final class SocketWrapper implements ResourcePool.Resource {
    *           If an error occurred.
    */
   public SocketWrapper(Socket socket) throws CommunicationException {
+    this(socket, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param socket
+   *          Socket to wrap. If the caller maintains any references to the
+   *          socket, if should synchronise access to the socket streams as
+   *          described in {@link SocketWrapper}.
+   * @param address
+   *          An external object that identifies this socket, or
+   *          <code>null</code>. This can be used in conjunction with
+   *          {@link FanOutServerSender#send} to address a particular target.
+   *          We only care about its equality semantics.
+   * @throws CommunicationException
+   *           If an error occurred.
+   */
+  public SocketWrapper(Socket socket, Address address)
+    throws CommunicationException {
     m_socket = socket;
+    m_address = address;
 
     try {
       m_inputStream = m_socket.getInputStream();
@@ -81,7 +107,8 @@ final class SocketWrapper implements ResourcePool.Resource {
       m_connectionIdentity =
         new ConnectionIdentity(m_socket.getInetAddress(),
                                m_socket.getPort(),
-                               System.currentTimeMillis());
+                               System.currentTimeMillis(),
+                               address);
     }
     catch (IOException e) {
       Closer.close(m_socket);
@@ -149,23 +176,21 @@ final class SocketWrapper implements ResourcePool.Resource {
   }
 
   /**
-   * Set an external object that identifies this socket. This can be used in
-   * conjunction with {@link FanOutServerSender#send} to address a particular
-   * target.
+   * Return the address for this socket.
    *
-   * @param address
-   *            The address. We only care about its equality semantics.
+   * @return The address, or <code>null</code> if no address has been set.
    */
-  public void setAddress(Address address) {
-    m_address = address;
+  public Address getAddress() {
+    return m_address;
   }
 
   /**
-   * Return the address for this socket.
+   * Return state that is kept for the lifetime of the connection, for the
+   * messages read from it. See {@link MessageInputStream}.
    *
-   * @return The address, or <code>null</code> if no address has been set.
+   * @return The connection state.
    */
-  public Address getAddress() {
-    return m_address;
+  public ConcurrentMap<Object, Object> getConnectionState() {
+    return m_connectionState;
   }
 }
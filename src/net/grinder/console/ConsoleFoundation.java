@@ -45,10 +45,14 @@ import net.grinder.console.communication.server.DispatchClientCommands;
 import net.grinder.console.distribution.FileDistribution;
 import net.grinder.console.distribution.FileDistributionImplementation;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.console.model.ResultsExport;
+import net.grinder.console.model.SampleCapture;
 import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelImplementation;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.console.model.SampleModelViewsImplementation;
+import net.grinder.console.model.SampleStream;
+import net.grinder.console.model.TimeSeriesStore;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
 import net.grinder.messages.console.ReportStatisticsMessage;
@@ -129,6 +133,14 @@ public final class ConsoleFoundation {
     m_container.registerComponentImplementation(
       SampleModelViewsImplementation.class);
 
+    m_container.registerComponentImplementation(SampleCapture.class);
+
+    m_container.registerComponentImplementation(TimeSeriesStore.class);
+
+    m_container.registerComponentImplementation(SampleStream.class);
+
+    m_container.registerComponentImplementation(ResultsExport.class);
+
     m_container.registerComponentImplementation(
       ConsoleCommunicationImplementation.class);
 
@@ -192,6 +204,24 @@ public final class ConsoleFoundation {
     communication.shutdown();
 
     m_timer.cancel();
+
+    final TimeSeriesStore timeSeriesStore =
+      (TimeSeriesStore)m_container.getComponentInstanceOfType(
+        TimeSeriesStore.class);
+
+    timeSeriesStore.shutdown();
+
+    final SampleStream sampleStream =
+      (SampleStream)m_container.getComponentInstanceOfType(
+        SampleStream.class);
+
+    sampleStream.shutdown();
+
+    final ResultsExport resultsExport =
+      (ResultsExport)m_container.getComponentInstanceOfType(
+        ResultsExport.class);
+
+    resultsExport.shutdown();
   }
 
   /**
@@ -208,6 +238,9 @@ public final class ConsoleFoundation {
     // Need to request components, or they won't be instantiated.
     m_container.getComponentInstanceOfType(WireMessageDispatch.class);
     m_container.getComponentInstanceOfType(WireFileDistribution.class);
+    m_container.getComponentInstanceOfType(TimeSeriesStore.class);
+    m_container.getComponentInstanceOfType(SampleStream.class);
+    m_container.getComponentInstanceOfType(ResultsExport.class);
 
     while (communication.processOneMessage()) {
       // Process until communication is shut down.
@@ -134,6 +134,30 @@ public final class ConsoleProperties {
   public static final String SAVE_TOTALS_WITH_RESULTS_PROPERTY =
     "grinder.console.saveTotalsWithResults";
 
+  /** Property name. */
+  public static final String SAMPLE_HISTORY_DIRECTORY_PROPERTY =
+    "grinder.console.sampleHistoryDirectory";
+
+  /** Property name. */
+  public static final String SAMPLE_HISTORY_RETENTION_PROPERTY =
+    "grinder.console.sampleHistoryRetention";
+
+  /** Property name. */
+  public static final String SAMPLE_STREAM_PORT_PROPERTY =
+    "grinder.console.sampleStreamPort";
+
+  /** Property name. */
+  public static final String SHORT_WINDOW_PROPERTY =
+    "grinder.console.shortWindow";
+
+  /** Property name. */
+  public static final String LONG_WINDOW_PROPERTY =
+    "grinder.console.longWindow";
+
+  /** Property name. */
+  public static final String RESULTS_EXPORT_DIRECTORY_PROPERTY =
+    "grinder.console.resultsExportDirectory";
+
   private final PropertyChangeSupport m_changeSupport =
     new PropertyChangeSupport(this);
 
@@ -205,6 +229,24 @@ public final class ConsoleProperties {
   private final BooleanProperty m_saveTotalsWithResults =
     new BooleanProperty(SAVE_TOTALS_WITH_RESULTS_PROPERTY, false);
 
+  private final FileProperty m_sampleHistoryDirectory =
+    new FileProperty(SAMPLE_HISTORY_DIRECTORY_PROPERTY);
+
+  private final IntProperty m_sampleHistoryRetention =
+    new IntProperty(SAMPLE_HISTORY_RETENTION_PROPERTY, 0);
+
+  private final IntProperty m_sampleStreamPort =
+    new IntProperty(SAMPLE_STREAM_PORT_PROPERTY, 0);
+
+  private final IntProperty m_shortWindow =
+    new IntProperty(SHORT_WINDOW_PROPERTY, 10000);
+
+  private final IntProperty m_longWindow =
+    new IntProperty(LONG_WINDOW_PROPERTY, 60000);
+
+  private final FileProperty m_resultsExportDirectory =
+    new FileProperty(RESULTS_EXPORT_DIRECTORY_PROPERTY);
+
   private final Resources m_resources;
 
   /**
@@ -283,6 +325,12 @@ public final class ConsoleProperties {
     m_stopProcessesAsk.set(properties.getStopProcessesAsk());
     m_distributeOnStartAsk.set(properties.getDistributeOnStartAsk());
     m_saveTotalsWithResults.set(properties.getSaveTotalsWithResults());
+    m_sampleHistoryDirectory.set(properties.getSampleHistoryDirectory());
+    m_sampleHistoryRetention.set(properties.getSampleHistoryRetention());
+    m_sampleStreamPort.set(properties.getSampleStreamPort());
+    m_shortWindow.set(properties.getShortWindow());
+    m_longWindow.set(properties.getLongWindow());
+    m_resultsExportDirectory.set(properties.getResultsExportDirectory());
   }
 
   /**
@@ -833,6 +881,153 @@ public final class ConsoleProperties {
     m_saveTotalsWithResults.save();
   }
 
+  /**
+   * Get the directory in which the history of every sample is recorded.
+   *
+   * @return The directory. <code>null</code> => don't record the history.
+   * @see TimeSeriesStore
+   */
+  public File getSampleHistoryDirectory() {
+    return m_sampleHistoryDirectory.get();
+  }
+
+  /**
+   * Set the directory in which the history of every sample is recorded.
+   *
+   * @param directory The directory. <code>null</code> => don't record the
+   * history.
+   */
+  public void setSampleHistoryDirectory(File directory) {
+    m_sampleHistoryDirectory.set(directory);
+  }
+
+  /**
+   * Get the number of minutes for which the sample history is kept.
+   *
+   * @return The retention period in minutes. <code>0</code> => keep
+   * everything.
+   */
+  public int getSampleHistoryRetention() {
+    return m_sampleHistoryRetention.get();
+  }
+
+  /**
+   * Set the number of minutes for which the sample history is kept.
+   *
+   * @param minutes The retention period in minutes. <code>0</code> => keep
+   * everything.
+   * @throws ConsoleException If the period is negative.
+   */
+  public void setSampleHistoryRetention(int minutes) throws ConsoleException {
+    if (minutes < 0) {
+      throw new DisplayMessageConsoleException(
+        m_resources, "sampleHistoryRetentionNegativeError.text");
+    }
+
+    m_sampleHistoryRetention.set(minutes);
+  }
+
+  /**
+   * Get the port on which the statistics of each sample are streamed.
+   *
+   * @return The port. <code>0</code> => don't stream the statistics.
+   * @see SampleStream
+   */
+  public int getSampleStreamPort() {
+    return m_sampleStreamPort.get();
+  }
+
+  /**
+   * Set the port on which the statistics of each sample are streamed.
+   *
+   * @param port The port. <code>0</code> => don't stream the statistics.
+   * @throws ConsoleException If the port number is not sensible.
+   */
+  public void setSampleStreamPort(int port) throws ConsoleException {
+    if (port != 0 &&
+        (port < CommunicationDefaults.MIN_PORT ||
+         port > CommunicationDefaults.MAX_PORT)) {
+      throw new DisplayMessageConsoleException(
+        m_resources,
+        "invalidPortNumberError.text",
+        new Object[] {
+          CommunicationDefaults.MIN_PORT,
+          CommunicationDefaults.MAX_PORT, }
+        );
+    }
+
+    m_sampleStreamPort.set(port);
+  }
+
+  /**
+   * Get the duration of the short rolling window.
+   *
+   * @return The duration in milliseconds.
+   */
+  public int getShortWindow() {
+    return m_shortWindow.get();
+  }
+
+  /**
+   * Set the duration of the short rolling window.
+   *
+   * @param duration The duration in milliseconds.
+   * @throws ConsoleException If the number is negative or zero.
+   */
+  public void setShortWindow(int duration) throws ConsoleException {
+    if (duration <= 0) {
+      throw new DisplayMessageConsoleException(
+        m_resources, "windowLessThanOneError.text");
+    }
+
+    m_shortWindow.set(duration);
+  }
+
+  /**
+   * Get the duration of the long rolling window.
+   *
+   * @return The duration in milliseconds.
+   */
+  public int getLongWindow() {
+    return m_longWindow.get();
+  }
+
+  /**
+   * Set the duration of the long rolling window.
+   *
+   * @param duration The duration in milliseconds.
+   * @throws ConsoleException If the number is negative or zero.
+   */
+  public void setLongWindow(int duration) throws ConsoleException {
+    if (duration <= 0) {
+      throw new DisplayMessageConsoleException(
+        m_resources, "windowLessThanOneError.text");
+    }
+
+    m_longWindow.set(duration);
+  }
+
+  /**
+   * Get the directory to which the statistics of every sample are exported.
+   *
+   * @return The directory. <code>null</code> => don't export the
+   * statistics.
+   * @see ResultsExport
+   */
+  public File getResultsExportDirectory() {
+    return m_resultsExportDirectory.get();
+  }
+
+  /**
+   * Set the directory to which the statistics of every sample are exported.
+   *
+   * @param directory The directory. <code>null</code> => don't export the
+   * statistics.
+   */
+  public void setResultsExportDirectory(File directory) {
+    m_resultsExportDirectory.set(directory);
+  }
+
 
   private abstract class Property {
     private final String m_propertyName;
@@ -0,0 +1,417 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import net.grinder.common.Test;
+import net.grinder.console.common.ConsoleException;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Exports the interval statistics of every sample for every test, and the
+ * totals, to a compressed columnar file.
+ *
+ * <p>
+ * Nothing is exported unless {@link
+ * ConsoleProperties#getResultsExportDirectory()} is set. Each console
+ * writes a single file to the directory, named
+ * <code>results-<em>start time</em>.gresults</code>. The samples and their
+ * columns are provided by a {@link SampleCapture}, which is shared with the
+ * {@link TimeSeriesStore}.
+ * </p>
+ *
+ * <p>
+ * Samples are encoded as they arrive and buffered in a block. Each block
+ * is compressed and appended to the file when it has {@link
+ * #SAMPLES_PER_BLOCK} samples, when the set of tests or the columns
+ * change, and on shutdown, so the file is always complete up to the last
+ * block. Use {@link ResultsExportReader} to read the file.
+ * </p>
+ *
+ * <p>
+ * File format. Values are big-endian.
+ * </p>
+ *
+ * <pre>
+ *   int    Magic number, 0x47524531.
+ *          Then blocks, until the end of the file:
+ *   int    Compressed length of the block, L.
+ *   byte[] L bytes of block data, compressed with the DEFLATE algorithm
+ *          (java.util.zip.Deflater, with the zlib wrapper).
+ *
+ * Block data:
+ *   int    Number of samples, N.
+ *   int    Number of columns, C.
+ *          For each column: byte type (0 = long, 1 = double), UTF name.
+ *   int    Number of tests, T.
+ *          For each test: int test number, UTF description.
+ *          Then 1 + (1 + T) * C encoded columns. The first is the sample
+ *          times, in milliseconds since the Epoch. Then C columns for the
+ *          totals, followed by C columns for each test.
+ *
+ * Encoded column:
+ *   int    Length of the encoded values, in bytes.
+ *          N variable length values, 7 bits per byte, least significant
+ *          group first, the top bit set on all but the last byte.
+ *          Times and longs: the difference from the previous value (the
+ *          first value is relative to 0), zig-zag encoded so that small
+ *          negative numbers are short. Doubles: the raw long bits,
+ *          exclusive-or the raw long bits of the previous value.
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class ResultsExport {
+
+  static final int MAGIC = 0x47524531;
+
+  static final String SUFFIX = ".gresults";
+
+  /** Maximum number of samples in a block. */
+  static final int SAMPLES_PER_BLOCK = 60;
+
+  private final ConsoleProperties m_properties;
+  private final ErrorHandler m_errorHandler;
+  private final String m_fileName;
+
+  // Guarded by this.
+  private final Deflater m_deflater = new Deflater();
+  private final ByteArrayOutputStream m_blockBytes =
+    new ByteArrayOutputStream();
+  private final ByteArrayOutputStream m_compressedBytes =
+    new ByteArrayOutputStream();
+  private Block m_block;
+  private File m_file;
+  private OutputStream m_output;
+  private File m_failedDirectory;
+
+  /**
+   * Constructor.
+   *
+   * @param properties The console properties.
+   * @param sampleCapture The sample capture.
+   * @param errorHandler Error handler.
+   */
+  public ResultsExport(ConsoleProperties properties,
+                       SampleCapture sampleCapture,
+                       ErrorHandler errorHandler) {
+    this(properties,
+         sampleCapture,
+         errorHandler,
+         new StandardTimeAuthority());
+  }
+
+  ResultsExport(ConsoleProperties properties,
+                SampleCapture sampleCapture,
+                ErrorHandler errorHandler,
+                TimeAuthority timeAuthority) {
+
+    m_properties = properties;
+    m_errorHandler = errorHandler;
+    m_fileName =
+      "results-" + timeAuthority.getTimeInMilliseconds() + SUFFIX;
+
+    sampleCapture.addListener(new SampleCapture.Listener() {
+        public void newTests() {
+          synchronized (ResultsExport.this) {
+            writeBlock();
+          }
+        }
+
+        public void newSample(SampleCapture.Sample sample) {
+          recordSample(sample);
+        }
+      });
+  }
+
+  /**
+   * The file being written.
+   *
+   * @return The file, or <code>null</code> if nothing has been exported.
+   */
+  public synchronized File getFile() {
+    return m_file;
+  }
+
+  /**
+   * Write the current block and close the file.
+   */
+  public synchronized void shutdown() {
+    writeBlock();
+    closeFile();
+  }
+
+  private synchronized void recordSample(SampleCapture.Sample sample) {
+    final File directory = m_properties.getResultsExportDirectory();
+
+    if (m_file != null && !m_file.getParentFile().equals(directory)) {
+      writeBlock();
+      closeFile();
+    }
+
+    if (directory == null || directory.equals(m_failedDirectory)) {
+      return;
+    }
+
+    try {
+      if (m_output == null) {
+        directory.mkdirs();
+        m_file = new File(directory, m_fileName);
+
+        // The file might exist if the directory was changed back.
+        final boolean exists = m_file.length() > 0;
+        m_output =
+          new BufferedOutputStream(new FileOutputStream(m_file, exists));
+
+        if (!exists) {
+          final DataOutputStream out = new DataOutputStream(m_output);
+          out.writeInt(MAGIC);
+          out.flush();
+        }
+      }
+
+      if (m_block != null && !m_block.canAppend(sample)) {
+        writeBlock();
+      }
+
+      if (m_block == null) {
+        m_block = new Block(sample);
+      }
+
+      m_block.append(sample);
+
+      if (m_block.size() == SAMPLES_PER_BLOCK) {
+        writeBlock();
+      }
+
+      if (m_output != null) {
+        m_failedDirectory = null;
+      }
+    }
+    catch (IOException e) {
+      handleIOException(e);
+    }
+  }
+
+  private void writeBlock() {
+    if (m_block == null) {
+      return;
+    }
+
+    final Block block = m_block;
+    m_block = null;
+
+    if (block.size() == 0 || m_output == null) {
+      return;
+    }
+
+    try {
+      m_blockBytes.reset();
+      block.write(new DataOutputStream(m_blockBytes));
+
+      m_compressedBytes.reset();
+      m_deflater.reset();
+
+      final DeflaterOutputStream deflaterStream =
+        new DeflaterOutputStream(m_compressedBytes, m_deflater);
+      m_blockBytes.writeTo(deflaterStream);
+      deflaterStream.finish();
+
+      final DataOutputStream out = new DataOutputStream(m_output);
+      out.writeInt(m_compressedBytes.size());
+      m_compressedBytes.writeTo(out);
+      out.flush();
+    }
+    catch (IOException e) {
+      handleIOException(e);
+    }
+  }
+
+  private void handleIOException(IOException e) {
+    // Don't keep trying the same directory.
+    m_failedDirectory = m_file.getParentFile();
+    m_block = null;
+    closeFile();
+
+    m_errorHandler.handleException(
+      new ConsoleException("Failed to export results", e));
+  }
+
+  private void closeFile() {
+    if (m_output != null) {
+      try {
+        m_output.close();
+      }
+      catch (IOException e) {
+        // Ignore.
+      }
+
+      m_output = null;
+    }
+  }
+
+  /**
+   * The samples that have not yet been written. Each column is encoded as
+   * samples are appended.
+   */
+  private final class Block {
+    private final ModelTestIndex m_modelTestIndex;
+    private final int[] m_testNumbers;
+    private final SampleCapture.Columns m_columns;
+    private final ColumnEncoder m_times = new ColumnEncoder();
+    private final ColumnEncoder[] m_encoders;
+    private int m_size;
+
+    public Block(SampleCapture.Sample firstSample) {
+      m_modelTestIndex = firstSample.getModelTestIndex();
+      m_testNumbers = firstSample.getTestNumbers();
+      m_columns = firstSample.getColumns();
+
+      m_encoders =
+        new ColumnEncoder[(1 + m_testNumbers.length) * m_columns.size()];
+
+      for (int i = 0; i < m_encoders.length; ++i) {
+        m_encoders[i] = new ColumnEncoder();
+      }
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    /**
+     * Whether a sample has the same columns and tests as this block.
+     */
+    public boolean canAppend(SampleCapture.Sample sample) {
+      return m_columns == sample.getColumns() &&
+        m_testNumbers == sample.getTestNumbers();
+    }
+
+    public void append(SampleCapture.Sample sample) {
+      final int numberOfColumns = m_columns.size();
+
+      m_times.addLong(sample.getTime());
+
+      for (int series = 0; series <= m_testNumbers.length; ++series) {
+        for (int column = 0; column < numberOfColumns; ++column) {
+          final ColumnEncoder encoder =
+            m_encoders[series * numberOfColumns + column];
+          final long value = sample.getValue(series, column);
+
+          if (m_columns.isDouble(column)) {
+            encoder.addDoubleBits(value);
+          }
+          else {
+            encoder.addLong(value);
+          }
+        }
+      }
+
+      ++m_size;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+      out.writeInt(m_size);
+      out.writeInt(m_columns.size());
+
+      for (int i = 0; i < m_columns.size(); ++i) {
+        out.writeByte(m_columns.isDouble(i) ? 1 : 0);
+        out.writeUTF(m_columns.getNames().get(i));
+      }
+
+      final int numberOfTests = m_testNumbers.length;
+      out.writeInt(numberOfTests);
+
+      for (int i = 0; i < numberOfTests; ++i) {
+        final Test test = m_modelTestIndex.getTest(i);
+        out.writeInt(test.getNumber());
+        out.writeUTF(test.getDescription() != null ?
+                     test.getDescription() : "");
+      }
+
+      m_times.write(out);
+
+      for (ColumnEncoder encoder : m_encoders) {
+        encoder.write(out);
+      }
+    }
+  }
+
+  /**
+   * Encodes the values of a column.
+   *
+   * <p>Package scope for unit tests.</p>
+   */
+  static final class ColumnEncoder {
+    private byte[] m_bytes = new byte[16];
+    private int m_length;
+    private long m_previous;
+
+    public void addLong(long value) {
+      final long delta = value - m_previous;
+      m_previous = value;
+      addVariableLength((delta << 1) ^ (delta >> 63));
+    }
+
+    public void addDouble(double value) {
+      addDoubleBits(Double.doubleToRawLongBits(value));
+    }
+
+    public void addDoubleBits(long bits) {
+      addVariableLength(bits ^ m_previous);
+      m_previous = bits;
+    }
+
+    private void addVariableLength(long value) {
+      if (m_length + 10 > m_bytes.length) {
+        final byte[] newBytes = new byte[m_bytes.length * 2];
+        System.arraycopy(m_bytes, 0, newBytes, 0, m_length);
+        m_bytes = newBytes;
+      }
+
+      while ((value & ~0x7FL) != 0) {
+        m_bytes[m_length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+
+      m_bytes[m_length++] = (byte) value;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+      out.writeInt(m_length);
+      out.write(m_bytes, 0, m_length);
+    }
+  }
+}
@@ -0,0 +1,420 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Reads the files written by {@link ResultsExport}.
+ *
+ * <p>
+ * The blocks of a file are read in turn with {@link #next()}. Values are
+ * only decoded when they are requested, so reading a few columns of a large
+ * file is cheap. A final block that is incomplete, for example because the
+ * console was killed while it was being written, is ignored.
+ * </p>
+ *
+ * <p>
+ * The {@link #main} method converts a file to comma separated values.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class ResultsExportReader {
+
+  private final DataInputStream m_input;
+
+  /**
+   * Constructor.
+   *
+   * @param file The file to read.
+   * @throws IOException If the file could not be opened, or is not an
+   * export file.
+   */
+  public ResultsExportReader(File file) throws IOException {
+    this(new FileInputStream(file));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param in The stream to read. It is buffered by the reader.
+   * @throws IOException If the stream could not be read, or is not an
+   * export file.
+   */
+  public ResultsExportReader(InputStream in) throws IOException {
+    m_input = new DataInputStream(new BufferedInputStream(in));
+
+    final int magic = m_input.readInt();
+
+    if (magic != ResultsExport.MAGIC) {
+      m_input.close();
+      throw new IOException(
+        "Not a results export file (magic " +
+        Integer.toHexString(magic) + ")");
+    }
+  }
+
+  /**
+   * Read the next block.
+   *
+   * @return The block, or <code>null</code> if there are no more complete
+   * blocks.
+   * @throws IOException If the file could not be read, or is corrupt.
+   */
+  public Block next() throws IOException {
+    final byte[] compressed;
+
+    try {
+      compressed = new byte[m_input.readInt()];
+      m_input.readFully(compressed);
+    }
+    catch (EOFException e) {
+      return null;
+    }
+
+    final DataInputStream in =
+      new DataInputStream(
+        new BufferedInputStream(
+          new InflaterInputStream(new ByteArrayInputStream(compressed))));
+
+    try {
+      return new Block(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Close the file.
+   *
+   * @throws IOException If the file could not be closed.
+   */
+  public void close() throws IOException {
+    m_input.close();
+  }
+
+  /**
+   * A block of samples with the same tests and columns.
+   */
+  public static final class Block {
+    private final int m_numberOfSamples;
+    private final List<String> m_columnNames;
+    private final boolean[] m_isDouble;
+    private final int[] m_testNumbers;
+    private final List<String> m_testDescriptions;
+    private final byte[] m_times;
+    private final byte[][] m_columns;
+
+    private Block(DataInputStream in) throws IOException {
+      m_numberOfSamples = in.readInt();
+
+      final int numberOfColumns = in.readInt();
+      final List<String> columnNames = new ArrayList<String>(numberOfColumns);
+      m_isDouble = new boolean[numberOfColumns];
+
+      for (int i = 0; i < numberOfColumns; ++i) {
+        m_isDouble[i] = in.readByte() != 0;
+        columnNames.add(in.readUTF());
+      }
+
+      m_columnNames = Collections.unmodifiableList(columnNames);
+
+      final int numberOfTests = in.readInt();
+      final List<String> descriptions = new ArrayList<String>(numberOfTests);
+      m_testNumbers = new int[numberOfTests];
+
+      for (int i = 0; i < numberOfTests; ++i) {
+        m_testNumbers[i] = in.readInt();
+        descriptions.add(in.readUTF());
+      }
+
+      m_testDescriptions = Collections.unmodifiableList(descriptions);
+
+      m_times = readColumn(in);
+      m_columns = new byte[(1 + numberOfTests) * numberOfColumns][];
+
+      for (int i = 0; i < m_columns.length; ++i) {
+        m_columns[i] = readColumn(in);
+      }
+    }
+
+    private static byte[] readColumn(DataInputStream in) throws IOException {
+      final byte[] result = new byte[in.readInt()];
+      in.readFully(result);
+      return result;
+    }
+
+    /**
+     * The number of samples.
+     *
+     * @return The number of samples.
+     */
+    public int getNumberOfSamples() {
+      return m_numberOfSamples;
+    }
+
+    /**
+     * The names of the statistics, using the expression syntax.
+     *
+     * @return The column names.
+     */
+    public List<String> getColumnNames() {
+      return m_columnNames;
+    }
+
+    /**
+     * Whether a column has double values.
+     *
+     * @param column The column.
+     * @return <code>true</code> => use {@link #getDoubleValues}.
+     */
+    public boolean isDouble(int column) {
+      return m_isDouble[column];
+    }
+
+    /**
+     * The test numbers. The series for the test at index <code>i</code> is
+     * <code>i + 1</code>.
+     *
+     * @return The test numbers.
+     */
+    public int[] getTestNumbers() {
+      return m_testNumbers.clone();
+    }
+
+    /**
+     * The test descriptions, in the same order as {@link #getTestNumbers()}.
+     *
+     * @return The descriptions.
+     */
+    public List<String> getTestDescriptions() {
+      return m_testDescriptions;
+    }
+
+    /**
+     * The sample times.
+     *
+     * @return The times, in milliseconds since the Epoch.
+     */
+    public long[] getTimes() {
+      return decodeLongs(m_times);
+    }
+
+    /**
+     * The values of a long column.
+     *
+     * @param series <code>0</code> for the totals, otherwise the index of
+     * the test plus one.
+     * @param column The column.
+     * @return The values.
+     */
+    public long[] getLongValues(int series, int column) {
+      if (m_isDouble[column]) {
+        throw new IllegalArgumentException(
+          "Column " + m_columnNames.get(column) + " has double values");
+      }
+
+      return decodeLongs(m_columns[series * m_isDouble.length + column]);
+    }
+
+    /**
+     * The values of a column as doubles.
+     *
+     * @param series <code>0</code> for the totals, otherwise the index of
+     * the test plus one.
+     * @param column The column.
+     * @return The values.
+     */
+    public double[] getDoubleValues(int series, int column) {
+      final byte[] bytes = m_columns[series * m_isDouble.length + column];
+      final double[] result = new double[m_numberOfSamples];
+
+      if (m_isDouble[column]) {
+        final Decoder decoder = new Decoder(bytes);
+        long bits = 0;
+
+        for (int i = 0; i < result.length; ++i) {
+          bits ^= decoder.next();
+          result[i] = Double.longBitsToDouble(bits);
+        }
+      }
+      else {
+        final long[] longs = decodeLongs(bytes);
+
+        for (int i = 0; i < result.length; ++i) {
+          result[i] = longs[i];
+        }
+      }
+
+      return result;
+    }
+
+    private long[] decodeLongs(byte[] bytes) {
+      final Decoder decoder = new Decoder(bytes);
+      final long[] result = new long[m_numberOfSamples];
+      long value = 0;
+
+      for (int i = 0; i < result.length; ++i) {
+        final long zigZag = decoder.next();
+        value += (zigZag >>> 1) ^ -(zigZag & 1);
+        result[i] = value;
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Decodes variable length values.
+   */
+  private static final class Decoder {
+    private final byte[] m_bytes;
+    private int m_position;
+
+    public Decoder(byte[] bytes) {
+      m_bytes = bytes;
+    }
+
+    public long next() {
+      long result = 0;
+
+      for (int shift = 0; ; shift += 7) {
+        final byte b = m_bytes[m_position++];
+        result |= (long) (b & 0x7F) << shift;
+
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+    }
+  }
+
+  /**
+   * Write an export file to the standard output as comma separated values.
+   * Each sample has a row for the totals and a row for each test. A
+   * heading row is written whenever the columns change.
+   *
+   * @param args The name of the export file.
+   * @throws IOException If the file could not be read.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println(
+        "Usage: java " + ResultsExportReader.class.getName() + " <file>");
+      System.exit(1);
+    }
+
+    final ResultsExportReader reader =
+      new ResultsExportReader(new File(args[0]));
+
+    final Writer out =
+      new BufferedWriter(new OutputStreamWriter(System.out));
+
+    try {
+      List<String> columnNames = null;
+      Block block;
+
+      while ((block = reader.next()) != null) {
+        final int numberOfColumns = block.getColumnNames().size();
+
+        if (!block.getColumnNames().equals(columnNames)) {
+          columnNames = block.getColumnNames();
+          out.write("Time,Test,Description");
+
+          for (String name : columnNames) {
+            out.write(",\"" + name + "\"");
+          }
+
+          out.write('\n');
+        }
+
+        final long[] times = block.getTimes();
+        final int[] testNumbers = block.getTestNumbers();
+        final List<String> descriptions = block.getTestDescriptions();
+
+        final String[] prefixes = new String[1 + testNumbers.length];
+        final Object[][] values = new Object[prefixes.length][];
+
+        for (int series = 0; series < prefixes.length; ++series) {
+          prefixes[series] =
+            series == 0 ?
+            ",Totals," :
+            "," + testNumbers[series - 1] + ",\"" +
+            descriptions.get(series - 1).replace("\"", "\"\"") + "\"";
+
+          values[series] = new Object[numberOfColumns];
+
+          for (int column = 0; column < numberOfColumns; ++column) {
+            values[series][column] =
+              block.isDouble(column) ?
+              (Object) block.getDoubleValues(series, column) :
+              (Object) block.getLongValues(series, column);
+          }
+        }
+
+        for (int i = 0; i < times.length; ++i) {
+          for (int series = 0; series < prefixes.length; ++series) {
+            out.write(Long.toString(times[i]));
+            out.write(prefixes[series]);
+
+            for (int column = 0; column < numberOfColumns; ++column) {
+              out.write(',');
+
+              if (block.isDouble(column)) {
+                out.write(
+                  Double.toString(((double[]) values[series][column])[i]));
+              }
+              else {
+                out.write(
+                  Long.toString(((long[]) values[series][column])[i]));
+              }
+            }
+
+            out.write('\n');
+          }
+        }
+      }
+    }
+    finally {
+      out.flush();
+      reader.close();
+    }
+  }
+}
@@ -29,7 +29,8 @@ import net.grinder.util.ListenerSupport;
 
 
 /**
- * Manages the cumulative statistics for a single test or set of tests.
+ * Manages the cumulative statistics for a single test or set of tests,
+ * including the {@link SlidingWindow}s of recent samples.
  *
  * @author Philip Aston
  * @version $Revision: 4003 $
@@ -42,6 +43,7 @@ final class SampleAccumulator {
   private final PeakStatisticExpression m_peakTPSExpression;
   private final StatisticsIndexMap.LongIndex m_periodIndex;
   private final StatisticsSetFactory m_statisticsSetFactory;
+  private final SlidingWindow[] m_windows;
 
   private final StatisticsSet m_cumulativeStatistics;
   private StatisticsSet m_intervalStatistics;
@@ -49,12 +51,19 @@ final class SampleAccumulator {
 
   public SampleAccumulator(PeakStatisticExpression peakTPSExpression,
                            StatisticsIndexMap.LongIndex periodIndex,
-                           StatisticsSetFactory statisticsSetFactory) {
+                           StatisticsSetFactory statisticsSetFactory,
+                           SlidingWindow.Definition[] windows) {
 
     m_peakTPSExpression = peakTPSExpression;
     m_periodIndex = periodIndex;
     m_statisticsSetFactory = statisticsSetFactory;
 
+    m_windows = new SlidingWindow[windows.length];
+
+    for (int i = 0; i < windows.length; ++i) {
+      m_windows[i] = new SlidingWindow(windows[i]);
+    }
+
     m_cumulativeStatistics = m_statisticsSetFactory.create();
     m_intervalStatistics = m_statisticsSetFactory.create();
     m_lastSampleStatistics = m_statisticsSetFactory.create();
@@ -77,6 +86,10 @@ final class SampleAccumulator {
     m_intervalStatistics.setValue(m_periodIndex, sampleInterval);
     m_cumulativeStatistics.setValue(m_periodIndex, period);
 
+    for (SlidingWindow window : m_windows) {
+      window.add(m_intervalStatistics);
+    }
+
     m_peakTPSExpression.update(m_intervalStatistics, m_cumulativeStatistics);
 
     m_listeners.apply(
@@ -97,6 +110,10 @@ final class SampleAccumulator {
     m_intervalStatistics.reset();
     m_lastSampleStatistics.reset();
     m_cumulativeStatistics.reset();
+
+    for (SlidingWindow window : m_windows) {
+      window.zero();
+    }
   }
 
   public StatisticsSet getLastSampleStatistics() {
@@ -106,4 +123,8 @@ final class SampleAccumulator {
   public StatisticsSet getCumulativeStatistics() {
     return m_cumulativeStatistics;
   }
+
+  public SlidingWindow getWindow(int i) {
+    return m_windows[i];
+  }
 }
@@ -0,0 +1,391 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.console.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import net.grinder.common.Test;
+import net.grinder.statistics.StatisticExpression;
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsException;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.util.ListenerSupport;
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Captures the interval statistics of every sample for every test, and the
+ * totals, as a row of column values. Shared by the components that record
+ * each sample, such as {@link TimeSeriesStore} and {@link ResultsExport}, so
+ * that the columns are evaluated at most once per sample.
+ *
+ * <p>
+ * There is a column for each statistic in the {@link StatisticsIndexMap};
+ * sample statistics have a column for each of their <em>sum</em>,
+ * <em>count</em>, and <em>variance</em>. Columns are named using the
+ * expression syntax, e.g. <code>errors</code> or <code>(sum
+ * timedTests)</code>. Statistics can be registered at run time, so the
+ * columns are checked before each sample. A new {@link Columns} is created
+ * when they change, so listeners can tell by comparing references.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class SampleCapture {
+
+  private final StatisticsServices m_statisticsServices;
+  private final TimeAuthority m_timeAuthority;
+
+  private final ListenerSupport<Listener> m_listeners =
+    new ListenerSupport<Listener>();
+
+  // Guarded by this.
+  private Columns m_columns = new Columns();
+  private ModelTestIndex m_modelTestIndex = new ModelTestIndex();
+  private int[] m_testNumbers = new int[0];
+  private StatisticsSet m_lastTotals;
+
+  /**
+   * Constructor.
+   *
+   * @param sampleModel The sample model.
+   * @param statisticsServices Statistics services.
+   * @throws StatisticsException If a column could not be created.
+   */
+  public SampleCapture(SampleModel sampleModel,
+                       StatisticsServices statisticsServices)
+    throws StatisticsException {
+    this(sampleModel, statisticsServices, new StandardTimeAuthority());
+  }
+
+  SampleCapture(SampleModel sampleModel,
+                StatisticsServices statisticsServices,
+                TimeAuthority timeAuthority)
+    throws StatisticsException {
+
+    m_statisticsServices = statisticsServices;
+    m_timeAuthority = timeAuthority;
+
+    updateColumns();
+
+    sampleModel.addModelListener(new SampleModel.AbstractListener() {
+        public void newSample() {
+          final Sample sample = createSample();
+
+          m_listeners.apply(
+            new ListenerSupport.Informer<Listener>() {
+              public void inform(Listener l) { l.newSample(sample); }
+            });
+        }
+
+        public void newTests(Set<Test> newTests,
+                             ModelTestIndex modelTestIndex) {
+          setTests(modelTestIndex);
+        }
+
+        public void resetTests() {
+          setTests(new ModelTestIndex());
+        }
+      });
+
+    // Called after the tests have been sampled, and before newSample().
+    sampleModel.addTotalSampleListener(new SampleListener() {
+        public void update(StatisticsSet intervalStatistics,
+                           StatisticsSet cumulativeStatistics) {
+          synchronized (SampleCapture.this) {
+            m_lastTotals = intervalStatistics;
+          }
+        }
+      });
+  }
+
+  /**
+   * Add a listener.
+   *
+   * @param listener The listener.
+   */
+  public void addListener(Listener listener) {
+    m_listeners.add(listener);
+  }
+
+  /**
+   * The current columns.
+   *
+   * @return The columns.
+   */
+  public synchronized Columns getColumns() {
+    try {
+      updateColumns();
+    }
+    catch (StatisticsException e) {
+      // Statistics are only ever added, so existing names remain valid.
+      throw new AssertionError(e);
+    }
+
+    return m_columns;
+  }
+
+  private void setTests(ModelTestIndex modelTestIndex) {
+    synchronized (this) {
+      m_modelTestIndex = modelTestIndex;
+      m_testNumbers = new int[modelTestIndex.getNumberOfTests()];
+
+      for (int i = 0; i < m_testNumbers.length; ++i) {
+        m_testNumbers[i] = modelTestIndex.getTest(i).getNumber();
+      }
+    }
+
+    m_listeners.apply(
+      new ListenerSupport.Informer<Listener>() {
+        public void inform(Listener l) { l.newTests(); }
+      });
+  }
+
+  private synchronized Sample createSample() {
+    return new Sample(m_timeAuthority.getTimeInMilliseconds(),
+                      getColumns(),
+                      m_modelTestIndex,
+                      m_testNumbers,
+                      m_lastTotals);
+  }
+
+  private void updateColumns() throws StatisticsException {
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    final List<String> names = new ArrayList<String>();
+    names.addAll(indexMap.getLongIndexNames());
+    names.addAll(indexMap.getDoubleIndexNames());
+
+    final Set<String> sampleNames = indexMap.getLongSampleIndexNames();
+    sampleNames.addAll(indexMap.getDoubleSampleIndexNames());
+
+    for (String name : sampleNames) {
+      names.add("(sum " + name + ")");
+      names.add("(count " + name + ")");
+      names.add("(variance " + name + ")");
+    }
+
+    if (!names.equals(m_columns.getNames())) {
+      m_columns =
+        new Columns(names,
+                    m_statisticsServices.getStatisticExpressionFactory());
+    }
+  }
+
+  /**
+   * Listener interface.
+   */
+  public interface Listener {
+
+    /**
+     * The set of tests has changed. Called before the next sample.
+     */
+    void newTests();
+
+    /**
+     * A new sample has been captured.
+     *
+     * @param sample The sample. Only valid for the duration of the call.
+     */
+    void newSample(Sample sample);
+  }
+
+  /**
+   * An immutable set of columns.
+   */
+  public static final class Columns {
+    private final List<String> m_names;
+    private final List<StatisticExpression> m_expressions;
+
+    private Columns() {
+      m_names = Collections.emptyList();
+      m_expressions = Collections.emptyList();
+    }
+
+    private Columns(List<String> names,
+                    StatisticExpressionFactory expressionFactory)
+      throws StatisticsException {
+
+      final List<StatisticExpression> expressions =
+        new ArrayList<StatisticExpression>(names.size());
+
+      for (String name : names) {
+        expressions.add(expressionFactory.createExpression(name));
+      }
+
+      m_names = Collections.unmodifiableList(names);
+      m_expressions = expressions;
+    }
+
+    /**
+     * The column names.
+     *
+     * @return The names, in column order.
+     */
+    public List<String> getNames() {
+      return m_names;
+    }
+
+    /**
+     * The number of columns.
+     *
+     * @return The number of columns.
+     */
+    public int size() {
+      return m_names.size();
+    }
+
+    /**
+     * The column with the given name.
+     *
+     * @param name The name.
+     * @return The column, or <code>-1</code> if there is no such column.
+     */
+    public int indexOf(String name) {
+      return m_names.indexOf(name);
+    }
+
+    /**
+     * Whether a column has double values.
+     *
+     * @param column The column.
+     * @return <code>true</code> => double values, <code>false</code> =>
+     * long values.
+     */
+    public boolean isDouble(int column) {
+      return m_expressions.get(column).isDouble();
+    }
+
+    private long getValue(int column, StatisticsSet statistics) {
+      final StatisticExpression expression = m_expressions.get(column);
+
+      if (expression.isDouble()) {
+        return Double.doubleToRawLongBits(
+          expression.getDoubleValue(statistics));
+      }
+
+      return expression.getLongValue(statistics);
+    }
+  }
+
+  /**
+   * A captured sample. The values are only evaluated when first requested.
+   */
+  public static final class Sample {
+    private final long m_time;
+    private final Columns m_columns;
+    private final ModelTestIndex m_modelTestIndex;
+    private final int[] m_testNumbers;
+    private final StatisticsSet m_totals;
+
+    // Guarded by this.
+    private long[] m_values;
+
+    private Sample(long time,
+                   Columns columns,
+                   ModelTestIndex modelTestIndex,
+                   int[] testNumbers,
+                   StatisticsSet totals) {
+      m_time = time;
+      m_columns = columns;
+      m_modelTestIndex = modelTestIndex;
+      m_testNumbers = testNumbers;
+      m_totals = totals;
+    }
+
+    /**
+     * When the sample was taken.
+     *
+     * @return The time, in milliseconds since the Epoch.
+     */
+    public long getTime() {
+      return m_time;
+    }
+
+    /**
+     * The columns.
+     *
+     * @return The columns.
+     */
+    public Columns getColumns() {
+      return m_columns;
+    }
+
+    /**
+     * The tests.
+     *
+     * @return The tests.
+     */
+    public ModelTestIndex getModelTestIndex() {
+      return m_modelTestIndex;
+    }
+
+    /**
+     * The numbers of the tests, in order. The same array is returned for
+     * every sample until the tests change, and must not be modified.
+     *
+     * @return The test numbers.
+     */
+    public int[] getTestNumbers() {
+      return m_testNumbers;
+    }
+
+    /**
+     * Get a value. Series <code>0</code> is the totals, and series
+     * <em>n</em> is test <em>n - 1</em> of {@link #getModelTestIndex()}.
+     * Missing values are zero.
+     *
+     * @param series The series.
+     * @param column The column.
+     * @return The value. Double values are returned as their raw long bits.
+     */
+    public synchronized long getValue(int series, int column) {
+      if (m_values == null) {
+        final int numberOfColumns = m_columns.size();
+        m_values = new long[(1 + m_testNumbers.length) * numberOfColumns];
+
+        for (int s = 0; s <= m_testNumbers.length; ++s) {
+          final StatisticsSet statistics =
+            s == 0 ? m_totals : m_modelTestIndex.getLastSampleStatistics(s - 1);
+
+          if (statistics != null) {
+            for (int c = 0; c < numberOfColumns; ++c) {
+              m_values[s * numberOfColumns + c] =
+                m_columns.getValue(c, statistics);
+            }
+          }
+        }
+      }
+
+      return m_values[series * m_columns.size() + column];
+    }
+  }
+}
@@ -104,6 +104,26 @@ public interface SampleModel {
    */
   StatisticExpression getPeakTPSExpression();
 
+  /**
+   * Get the expression for the TPS over a rolling window of recent samples.
+   * The expression can only be applied to the cumulative statistics
+   * provided by this model.
+   *
+   * @param window The window.
+   * @return The window TPS expression for this model.
+   */
+  StatisticExpression getWindowTPSExpression(Window window);
+
+  /**
+   * Get the expression for the mean test time over a rolling window of
+   * recent samples. The expression can only be applied to the cumulative
+   * statistics provided by this model.
+   *
+   * @param window The window.
+   * @return The window mean test time expression for this model.
+   */
+  StatisticExpression getWindowMeanTestTimeExpression(Window window);
+
   /**
    * Get the cumulative statistics for this model.
    *
@@ -147,6 +167,20 @@ public interface SampleModel {
   void addTestReport(TestStatisticsMap statisticsDelta);
 
 
+  /**
+   * The rolling windows of recent samples.
+   *
+   * @see ConsoleProperties#getShortWindow()
+   * @see ConsoleProperties#getLongWindow()
+   */
+  enum Window {
+    /** The short window. */
+    SHORT,
+
+    /** The long window. */
+    LONG,
+  }
+
   /**
    * Interface for listeners to {@link SampleModelImplementation}.
    */
@@ -21,18 +21,30 @@
 
 package net.grinder.console.model;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.grinder.common.GrinderException;
 import net.grinder.common.Test;
+import net.grinder.common.UncheckedInterruptedException;
 import net.grinder.console.common.ErrorHandler;
 import net.grinder.console.common.Resources;
 import net.grinder.statistics.PeakStatisticExpression;
@@ -55,11 +67,26 @@ import net.grinder.util.ListenerSupport;
  * back.
  * </p>
  *
+ * <p>
+ * The accumulators are held in a dense array that is replaced, never
+ * modified, when tests are registered, so reports are merged without
+ * locking the model. Large reports are split into contiguous shards that
+ * are merged in parallel; each shard sums its own contribution to the
+ * totals, so the total accumulator is updated once per shard rather than
+ * once per test.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4003 $
  */
 public final class SampleModelImplementation implements SampleModel {
 
+  /**
+   * Reports with fewer entries per available shard than this are merged by
+   * the calling thread.
+   */
+  static final int MINIMUM_SHARD_SIZE = 256;
+
   private final ConsoleProperties m_properties;
   private final StatisticsServices m_statisticsServices;
   private final Timer m_timer;
@@ -83,14 +110,23 @@ public final class SampleModelImplementation implements SampleModel {
   private final StatisticsIndexMap.LongIndex m_periodIndex;
   private final StatisticExpression m_tpsExpression;
   private final PeakStatisticExpression m_peakTPSExpression;
+  private final SlidingWindow.Definition[] m_windows;
+  private final StatisticExpression[] m_windowTPSExpressions;
+  private final StatisticExpression[] m_windowMeanTestTimeExpressions;
 
   private final SampleAccumulator m_totalSampleAccumulator;
 
+  private final int m_numberOfShards;
+
   /**
-   * A {@link SampleAccumulator} for each test. Guarded by itself.
+   * A {@link SampleAccumulator} for each test. Replaced while holding
+   * m_tests.
    */
-  private final Map<Test, SampleAccumulator> m_accumulators =
-    Collections.synchronizedMap(new HashMap<Test, SampleAccumulator>());
+  private volatile AccumulatorIndex m_accumulatorIndex =
+    new AccumulatorIndex();
+
+  // Guarded by this.
+  private ExecutorService m_shardExecutor;
 
   // Guarded by this.
   private InternalState m_state;
@@ -113,10 +149,32 @@ public final class SampleModelImplementation implements SampleModel {
                                    ErrorHandler errorHandler)
     throws GrinderException {
 
+    this(properties,
+         statisticsServices,
+         timer,
+         resources,
+         errorHandler,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor that allows the number of shards to be specified.
+   *
+   * <p>Package scope for unit tests.</p>
+   */
+  SampleModelImplementation(ConsoleProperties properties,
+                            StatisticsServices statisticsServices,
+                            Timer timer,
+                            Resources resources,
+                            ErrorHandler errorHandler,
+                            int numberOfShards)
+    throws GrinderException {
+
     m_properties = properties;
     m_statisticsServices = statisticsServices;
     m_timer = timer;
     m_errorHandler = errorHandler;
+    m_numberOfShards = numberOfShards;
 
     m_stateIgnoringString = resources.getString("state.ignoring.label") + ' ';
     m_stateWaitingString = resources.getString("state.waiting.label");
@@ -138,9 +196,53 @@ public final class SampleModelImplementation implements SampleModel {
       statisticExpressionFactory.createPeak(
         indexMap.getDoubleIndex("peakTPS"), m_tpsExpression);
 
+    final SlidingWindow.Definition shortWindow =
+      new SlidingWindow.Definition(indexMap, m_properties.getShortWindow());
+
+    final SlidingWindow.Definition longWindow =
+      new SlidingWindow.Definition(indexMap, m_properties.getLongWindow());
+
+    // Indexed by Window.ordinal().
+    m_windows = new SlidingWindow.Definition[] { shortWindow, longWindow };
+
+    m_windowTPSExpressions = new StatisticExpression[m_windows.length];
+    m_windowMeanTestTimeExpressions =
+      new StatisticExpression[m_windows.length];
+
+    for (int i = 0; i < m_windows.length; ++i) {
+      m_windowTPSExpressions[i] = new WindowExpression(i) {
+          protected double getValue(SlidingWindow window) {
+            return window.getTPS();
+          }
+        };
+
+      m_windowMeanTestTimeExpressions[i] = new WindowExpression(i) {
+          protected double getValue(SlidingWindow window) {
+            return window.getMeanTestTime();
+          }
+        };
+    }
+
+    m_properties.addPropertyChangeListener(
+      ConsoleProperties.SHORT_WINDOW_PROPERTY,
+      new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent event) {
+          shortWindow.setDuration(((Integer)event.getNewValue()).intValue());
+        }
+      });
+
+    m_properties.addPropertyChangeListener(
+      ConsoleProperties.LONG_WINDOW_PROPERTY,
+      new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent event) {
+          longWindow.setDuration(((Integer)event.getNewValue()).intValue());
+        }
+      });
+
     m_totalSampleAccumulator =
       new SampleAccumulator(m_peakTPSExpression, m_periodIndex,
-                            m_statisticsServices.getStatisticsSetFactory());
+                            m_statisticsServices.getStatisticsSetFactory(),
+                            m_windows);
 
     setInternalState(new WaitingForTriggerState());
   }
@@ -163,6 +265,27 @@ public final class SampleModelImplementation implements SampleModel {
     return m_peakTPSExpression;
   }
 
+  /**
+   * Get the expression for the TPS over a rolling window of recent samples.
+   *
+   * @param window The window.
+   * @return The window TPS expression for this model.
+   */
+  public StatisticExpression getWindowTPSExpression(Window window) {
+    return m_windowTPSExpressions[window.ordinal()];
+  }
+
+  /**
+   * Get the expression for the mean test time over a rolling window of
+   * recent samples.
+   *
+   * @param window The window.
+   * @return The window mean test time expression for this model.
+   */
+  public StatisticExpression getWindowMeanTestTimeExpression(Window window) {
+    return m_windowMeanTestTimeExpressions[window.ordinal()];
+  }
+
   /**
    * Register new tests.
    *
@@ -172,7 +295,7 @@ public final class SampleModelImplementation implements SampleModel {
     // Need to copy collection, might be immutable.
     final Set<Test> newTests = new HashSet<Test>(tests);
 
-    final Test[] testArray;
+    final AccumulatorIndex accumulatorIndex;
 
     synchronized (m_tests) {
       newTests.removeAll(m_tests);
@@ -185,28 +308,31 @@ public final class SampleModelImplementation implements SampleModel {
       m_tests.addAll(newTests);
 
       // Create an index of m_tests sorted by test number.
-      testArray = m_tests.toArray(new Test[m_tests.size()]);
-    }
+      final Test[] testArray = m_tests.toArray(new Test[m_tests.size()]);
 
-    final SampleAccumulator[] accumulatorArray =
-      new SampleAccumulator[testArray.length];
+      final SampleAccumulator[] accumulatorArray =
+        new SampleAccumulator[testArray.length];
 
-    synchronized (m_accumulators) {
-      for (Test test : newTests) {
-        m_accumulators.put(test,
-                           new SampleAccumulator(
-                             m_peakTPSExpression,
-                             m_periodIndex,
-                             m_statisticsServices.getStatisticsSetFactory()));
-      }
+      final AccumulatorIndex oldIndex = m_accumulatorIndex;
 
       for (int i = 0; i < accumulatorArray.length; i++) {
-        accumulatorArray[i] = m_accumulators.get(testArray[i]);
+        final SampleAccumulator existing = oldIndex.get(testArray[i]);
+
+        accumulatorArray[i] = existing != null ?
+          existing :
+          new SampleAccumulator(m_peakTPSExpression,
+                                m_periodIndex,
+                                m_statisticsServices.getStatisticsSetFactory(),
+                                m_windows);
       }
+
+      accumulatorIndex = new AccumulatorIndex(testArray, accumulatorArray);
+      m_accumulatorIndex = accumulatorIndex;
     }
 
     final ModelTestIndex modelTestIndex =
-      new ModelTestIndex(testArray, accumulatorArray);
+      new ModelTestIndex(accumulatorIndex.m_tests,
+                         accumulatorIndex.m_accumulators);
 
     m_listeners.apply(
       new ListenerSupport.Informer<Listener>() {
@@ -239,7 +365,7 @@ public final class SampleModelImplementation implements SampleModel {
    * @param listener The sample listener.
    */
   public void addSampleListener(Test test, SampleListener listener) {
-    final SampleAccumulator sampleAccumulator = m_accumulators.get(test);
+    final SampleAccumulator sampleAccumulator = m_accumulatorIndex.get(test);
 
     if (sampleAccumulator != null) {
       sampleAccumulator.addSampleListener(listener);
@@ -265,9 +391,9 @@ public final class SampleModelImplementation implements SampleModel {
 
     synchronized (m_tests) {
       m_tests.clear();
+      m_accumulatorIndex = new AccumulatorIndex();
     }
 
-    m_accumulators.clear();
     m_totalSampleAccumulator.zero();
 
     m_listeners.apply(
@@ -309,15 +435,150 @@ public final class SampleModelImplementation implements SampleModel {
   }
 
   private void zero() {
-    synchronized (m_accumulators) {
-      for (SampleAccumulator sampleAccumulator : m_accumulators.values()) {
-        sampleAccumulator.zero();
-      }
+    for (SampleAccumulator sampleAccumulator :
+         m_accumulatorIndex.m_accumulators) {
+      sampleAccumulator.zero();
     }
 
     m_totalSampleAccumulator.zero();
   }
 
+  /**
+   * Merge a report into the test and total accumulators.
+   *
+   * <p>Reports are delivered by a single thread. Each test appears at most
+   * once in a report, so the shards of a report update disjoint
+   * accumulators.</p>
+   */
+  private void mergeReport(TestStatisticsMap report,
+                           final boolean accumulate) {
+
+    final AccumulatorIndex index = m_accumulatorIndex;
+
+    final int reportSize = report.size();
+    final SampleAccumulator[] accumulators =
+      new SampleAccumulator[reportSize];
+    final StatisticsSet[] statistics = new StatisticsSet[reportSize];
+    final int[] size = { 0 };
+
+    report.new ForEach() {
+      public void next(Test test, StatisticsSet testStatistics) {
+        final SampleAccumulator sampleAccumulator = index.get(test);
+
+        if (sampleAccumulator == null) {
+          m_errorHandler.handleInformationMessage(
+            m_unknownTestString + " " + test);
+        }
+        else if (size[0] < accumulators.length) {
+          accumulators[size[0]] = sampleAccumulator;
+          statistics[size[0]] = testStatistics;
+          ++size[0];
+        }
+      }
+    }
+    .iterate();
+
+    final int n = size[0];
+    final int shards =
+      Math.min(m_numberOfShards, n / MINIMUM_SHARD_SIZE);
+
+    if (shards < 2) {
+      addTotals(mergeShard(accumulators, statistics, 0, n, accumulate),
+                accumulate);
+      return;
+    }
+
+    final ExecutorService executor = getShardExecutor();
+    final List<Future<StatisticsSet>> futures =
+      new ArrayList<Future<StatisticsSet>>(shards - 1);
+
+    for (int i = 1; i < shards; ++i) {
+      final int from = (int) ((long) n * i / shards);
+      final int to = (int) ((long) n * (i + 1) / shards);
+
+      futures.add(executor.submit(new Callable<StatisticsSet>() {
+          public StatisticsSet call() {
+            return mergeShard(accumulators, statistics, from, to, accumulate);
+          }
+        }));
+    }
+
+    // The calling thread merges the first shard itself.
+    addTotals(mergeShard(accumulators, statistics, 0, n / shards, accumulate),
+              accumulate);
+
+    try {
+      for (Future<StatisticsSet> future : futures) {
+        addTotals(future.get(), accumulate);
+      }
+    }
+    catch (InterruptedException e) {
+      throw new UncheckedInterruptedException(e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw (RuntimeException) cause;
+    }
+  }
+
+  private StatisticsSet mergeShard(SampleAccumulator[] accumulators,
+                                   StatisticsSet[] statistics,
+                                   int from,
+                                   int to,
+                                   boolean accumulate) {
+
+    final StatisticsSet totals =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    for (int i = from; i < to; ++i) {
+      accumulators[i].addIntervalStatistics(statistics[i]);
+
+      if (accumulate) {
+        accumulators[i].addCumulativeStaticstics(statistics[i]);
+      }
+
+      if (!statistics[i].isComposite()) {
+        totals.add(statistics[i]);
+      }
+    }
+
+    return totals;
+  }
+
+  private void addTotals(StatisticsSet totals, boolean accumulate) {
+    m_totalSampleAccumulator.addIntervalStatistics(totals);
+
+    if (accumulate) {
+      m_totalSampleAccumulator.addCumulativeStaticstics(totals);
+    }
+  }
+
+  private synchronized ExecutorService getShardExecutor() {
+    if (m_shardExecutor == null) {
+      final AtomicInteger threadNumber = new AtomicInteger();
+
+      m_shardExecutor = Executors.newFixedThreadPool(
+        m_numberOfShards - 1,
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            final Thread thread =
+              new Thread(runnable,
+                         "sample model shard " +
+                         threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    }
+
+    return m_shardExecutor;
+  }
+
   private InternalState getInternalState() {
     synchronized (this) {
       return m_state;
@@ -418,32 +679,7 @@ public final class SampleModelImplementation implements SampleModel {
     private volatile long m_sampleCount = 1;
 
     public void newTestReport(TestStatisticsMap testStatisticsMap) {
-      testStatisticsMap.new ForEach() {
-        public void next(Test test, StatisticsSet statistics) {
-          final SampleAccumulator sampleAccumulator = m_accumulators.get(test);
-
-          if (sampleAccumulator == null) {
-            m_errorHandler.handleInformationMessage(
-              m_unknownTestString + " " + test);
-          }
-          else {
-            sampleAccumulator.addIntervalStatistics(statistics);
-
-            if (shouldAccumulateSamples()) {
-              sampleAccumulator.addCumulativeStaticstics(statistics);
-            }
-
-            if (!statistics.isComposite()) {
-              m_totalSampleAccumulator.addIntervalStatistics(statistics);
-
-              if (shouldAccumulateSamples()) {
-                m_totalSampleAccumulator.addCumulativeStaticstics(statistics);
-              }
-            }
-          }
-        }
-      }
-      .iterate();
+      mergeReport(testStatisticsMap, shouldAccumulateSamples());
     }
 
     protected void schedule() {
@@ -474,10 +710,9 @@ public final class SampleModelImplementation implements SampleModel {
 
         final long sampleInterval = m_properties.getSampleInterval();
 
-        synchronized (m_accumulators) {
-          for (SampleAccumulator sampleAccumulator : m_accumulators.values()) {
-            sampleAccumulator.fireSample(sampleInterval, period);
-          }
+        for (SampleAccumulator sampleAccumulator :
+             m_accumulatorIndex.m_accumulators) {
+          sampleAccumulator.fireSample(sampleInterval, period);
         }
 
         m_totalSampleAccumulator.fireSample(sampleInterval, period);
@@ -563,4 +798,81 @@ public final class SampleModelImplementation implements SampleModel {
       return true;
     }
   }
+
+  /**
+   * Reads a window of the accumulator that owns the cumulative statistics
+   * to which it is applied. The window figures are kept by the console, so
+   * they take no space in the statistics sent by worker processes.
+   */
+  private abstract class WindowExpression implements StatisticExpression {
+    private final int m_window;
+
+    public WindowExpression(int window) {
+      m_window = window;
+    }
+
+    public final double getDoubleValue(StatisticsSet statisticsSet) {
+      final SampleAccumulator accumulator =
+        statisticsSet == m_totalSampleAccumulator.getCumulativeStatistics() ?
+        m_totalSampleAccumulator :
+        m_accumulatorIndex.getByCumulativeStatistics(statisticsSet);
+
+      if (accumulator == null) {
+        return Double.NaN;
+      }
+
+      return getValue(accumulator.getWindow(m_window));
+    }
+
+    public final long getLongValue(StatisticsSet statisticsSet) {
+      return (long)getDoubleValue(statisticsSet);
+    }
+
+    public final boolean isDouble() {
+      return true;
+    }
+
+    protected abstract double getValue(SlidingWindow window);
+  }
+
+  /**
+   * Immutable dense index of the test accumulators, ordered by test
+   * number.
+   */
+  private static final class AccumulatorIndex {
+    private final Test[] m_tests;
+    private final SampleAccumulator[] m_accumulators;
+    private final Map<Test, Integer> m_positions;
+    private final Map<StatisticsSet, SampleAccumulator>
+      m_cumulativeStatistics;
+
+    public AccumulatorIndex() {
+      this(new Test[0], new SampleAccumulator[0]);
+    }
+
+    public AccumulatorIndex(Test[] tests, SampleAccumulator[] accumulators) {
+      m_tests = tests;
+      m_accumulators = accumulators;
+      m_positions = new HashMap<Test, Integer>(tests.length * 2);
+      m_cumulativeStatistics =
+        new IdentityHashMap<StatisticsSet, SampleAccumulator>(tests.length);
+
+      for (int i = 0; i < tests.length; ++i) {
+        m_positions.put(tests[i], i);
+        m_cumulativeStatistics.put(accumulators[i].getCumulativeStatistics(),
+                                   accumulators[i]);
+      }
+    }
+
+    public SampleAccumulator get(Test test) {
+      final Integer position = m_positions.get(test);
+
+      return position != null ? m_accumulators[position] : null;
+    }
+
+    public SampleAccumulator getByCumulativeStatistics(
+      StatisticsSet cumulativeStatistics) {
+      return m_cumulativeStatistics.get(cumulativeStatistics);
+    }
+  }
 }
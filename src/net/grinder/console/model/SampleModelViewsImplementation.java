@@ -46,6 +46,7 @@ public class SampleModelViewsImplementation implements SampleModelViews {
     new ListenerSupport<Listener>();
   private final StatisticsServices m_statisticsServices;
   private final ExpressionView m_peakTPSExpressionView;
+  private final ExpressionView[] m_windowExpressionViews;
 
   // Guarded by this.
   private NumberFormat m_numberFormat;
@@ -79,6 +80,21 @@ public class SampleModelViewsImplementation implements SampleModelViews {
       statisticExpressionFactory
         .createExpressionView("Peak TPS", model.getPeakTPSExpression());
 
+    m_windowExpressionViews = new ExpressionView[] {
+      statisticExpressionFactory.createExpressionView(
+        "Short Window TPS",
+        model.getWindowTPSExpression(SampleModel.Window.SHORT)),
+      statisticExpressionFactory.createExpressionView(
+        "Short Window Mean Test Time (ms)",
+        model.getWindowMeanTestTimeExpression(SampleModel.Window.SHORT)),
+      statisticExpressionFactory.createExpressionView(
+        "Long Window TPS",
+        model.getWindowTPSExpression(SampleModel.Window.LONG)),
+      statisticExpressionFactory.createExpressionView(
+        "Long Window Mean Test Time (ms)",
+        model.getWindowMeanTestTimeExpression(SampleModel.Window.LONG)),
+    };
+
     resetStatisticsViews();
 
     properties.addPropertyChangeListener(
@@ -109,6 +125,10 @@ public class SampleModelViewsImplementation implements SampleModelViews {
 
       m_cumulativeStatisticsView.add(summaryStatisticsView);
       m_cumulativeStatisticsView.add(m_peakTPSExpressionView);
+
+      for (ExpressionView view : m_windowExpressionViews) {
+        m_cumulativeStatisticsView.add(view);
+      }
     }
 
     m_listeners.apply(
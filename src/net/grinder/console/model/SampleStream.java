@@ -0,0 +1,536 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpression;
+import net.grinder.statistics.StatisticsSet;
+
+
+/**
+ * Streams the interval statistics of every sample to TCP clients.
+ *
+ * <p>
+ * Nothing is served unless {@link ConsoleProperties#getSampleStreamPort()} is
+ * set. The server binds to the console host. Each client receives one line
+ * of JSON for each sample, starting with the next sample after it connects.
+ * For example:
+ * </p>
+ *
+ * <pre>
+ * {"time":1287478123000,
+ *  "columns":["Tests","Errors","Mean Test Time (ms)", ...],
+ *  "totals":[210,0,12.3, ...],
+ *  "tests":[{"test":1,"description":"Home page","values":[70,0,9.1, ...]},
+ *           ...]}
+ * </pre>
+ *
+ * <p>
+ * (Shown here on several lines; each sample is sent as a single line.) The
+ * columns are those of {@link SampleModelViews#getIntervalStatisticsView()}.
+ * Values that are undefined, such as the mean time of a test that has not
+ * run, are <code>null</code>.
+ * </p>
+ *
+ * <p>
+ * The line is built once by the sampling thread, and queued for each client.
+ * A thread per client writes to the socket. A client that reads too slowly
+ * never delays the sampling thread. Once it has {@link #MAXIMUM_QUEUED}
+ * samples outstanding, its oldest sample is discarded. The client is then
+ * sent <code>{"skipped":<em>n</em>}</code> before its next sample.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class SampleStream {
+
+  /** The number of samples that may be queued for a client. */
+  static final int MAXIMUM_QUEUED = 8;
+
+  private final ConsoleProperties m_properties;
+  private final SampleModel m_sampleModel;
+  private final SampleModelViews m_sampleModelViews;
+  private final ErrorHandler m_errorHandler;
+
+  // Guarded by this.
+  private Server m_server;
+
+  // Guarded by this. Interval statistics of the totals for the last sample.
+  private StatisticsSet m_totalStatistics;
+
+  // Guarded by this.
+  private ModelTestIndex m_modelTestIndex = new ModelTestIndex();
+
+  /**
+   * Constructor.
+   *
+   * @param properties The console properties.
+   * @param sampleModel The sample model.
+   * @param sampleModelViews Provides the columns.
+   * @param errorHandler Where to report problems.
+   */
+  public SampleStream(ConsoleProperties properties,
+                      SampleModel sampleModel,
+                      SampleModelViews sampleModelViews,
+                      ErrorHandler errorHandler) {
+    m_properties = properties;
+    m_sampleModel = sampleModel;
+    m_sampleModelViews = sampleModelViews;
+    m_errorHandler = errorHandler;
+
+    m_sampleModel.addTotalSampleListener(
+      new SampleListener() {
+        public void update(StatisticsSet intervalStatistics,
+                           StatisticsSet cumulativeStatistics) {
+          synchronized (SampleStream.this) {
+            m_totalStatistics = intervalStatistics;
+          }
+        }
+      });
+
+    m_sampleModel.addModelListener(new SampleModel.AbstractListener() {
+        public void newTests(Set<Test> newTests,
+                             ModelTestIndex modelTestIndex) {
+          synchronized (SampleStream.this) {
+            m_modelTestIndex = modelTestIndex;
+          }
+        }
+
+        public void resetTests() {
+          synchronized (SampleStream.this) {
+            m_modelTestIndex = new ModelTestIndex();
+          }
+        }
+
+        public void newSample() {
+          publish();
+        }
+      });
+
+    m_properties.addPropertyChangeListener(
+      ConsoleProperties.SAMPLE_STREAM_PORT_PROPERTY,
+      new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent event) {
+          restart();
+        }
+      });
+
+    m_properties.addPropertyChangeListener(
+      ConsoleProperties.CONSOLE_HOST_PROPERTY,
+      new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent event) {
+          restart();
+        }
+      });
+
+    restart();
+  }
+
+  /**
+   * The port on which we are listening.
+   *
+   * @return The port, or <code>-1</code> if we are not listening.
+   */
+  public synchronized int getPort() {
+    return m_server != null ? m_server.m_serverSocket.getLocalPort() : -1;
+  }
+
+  /**
+   * The number of connected clients.
+   *
+   * @return The number of clients.
+   */
+  public synchronized int getNumberOfClients() {
+    return m_server != null ? m_server.getNumberOfClients() : 0;
+  }
+
+  /**
+   * Stop listening and disconnect the clients.
+   */
+  public synchronized void shutdown() {
+    if (m_server != null) {
+      m_server.shutdown();
+      m_server = null;
+    }
+  }
+
+  private synchronized void restart() {
+    shutdown();
+
+    final int port = m_properties.getSampleStreamPort();
+
+    if (port == 0) {
+      return;
+    }
+
+    final String host = m_properties.getConsoleHost();
+
+    try {
+      final ServerSocket serverSocket = new ServerSocket();
+
+      try {
+        serverSocket.bind(
+          host == null || host.length() == 0 ?
+            new InetSocketAddress(port) :
+            new InetSocketAddress(InetAddress.getByName(host), port));
+      }
+      catch (IOException e) {
+        serverSocket.close();
+        throw e;
+      }
+
+      m_server = new Server(serverSocket);
+    }
+    catch (IOException e) {
+      m_errorHandler.handleException(e);
+    }
+  }
+
+  private void publish() {
+    final Server server;
+    final ModelTestIndex modelTestIndex;
+    final StatisticsSet totalStatistics;
+
+    synchronized (this) {
+      server = m_server;
+      modelTestIndex = m_modelTestIndex;
+      totalStatistics = m_totalStatistics;
+    }
+
+    if (server == null || server.getNumberOfClients() == 0) {
+      return;
+    }
+
+    final ExpressionView[] views =
+      m_sampleModelViews.getIntervalStatisticsView().getExpressionViews();
+
+    final int numberOfTests = modelTestIndex.getNumberOfTests();
+
+    final StringBuilder json = new StringBuilder(256 + numberOfTests * 80);
+
+    json.append("{\"time\":").append(System.currentTimeMillis());
+
+    json.append(",\"columns\":[");
+
+    for (int i = 0; i < views.length; ++i) {
+      if (i > 0) {
+        json.append(',');
+      }
+
+      appendString(json, views[i].getDisplayName());
+    }
+
+    json.append("],\"totals\":");
+
+    appendValues(json, views, totalStatistics);
+
+    json.append(",\"tests\":[");
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      final Test test = modelTestIndex.getTest(i);
+
+      if (i > 0) {
+        json.append(',');
+      }
+
+      json.append("{\"test\":").append(test.getNumber());
+      json.append(",\"description\":");
+      appendString(json, test.getDescription());
+      json.append(",\"values\":");
+      appendValues(json, views, modelTestIndex.getLastSampleStatistics(i));
+      json.append('}');
+    }
+
+    json.append("]}\n");
+
+    server.publish(toBytes(json));
+  }
+
+  private static void appendValues(StringBuilder json,
+                                   ExpressionView[] views,
+                                   StatisticsSet statistics) {
+    json.append('[');
+
+    for (int i = 0; i < views.length; ++i) {
+      if (i > 0) {
+        json.append(',');
+      }
+
+      final StatisticExpression expression = views[i].getExpression();
+
+      if (statistics == null) {
+        json.append("null");
+      }
+      else if (expression.isDouble()) {
+        final double value = expression.getDoubleValue(statistics);
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+          json.append("null");
+        }
+        else {
+          json.append(value);
+        }
+      }
+      else {
+        json.append(expression.getLongValue(statistics));
+      }
+    }
+
+    json.append(']');
+  }
+
+  private static void appendString(StringBuilder json, String s) {
+    if (s == null) {
+      json.append("null");
+      return;
+    }
+
+    json.append('"');
+
+    for (int i = 0; i < s.length(); ++i) {
+      final char c = s.charAt(i);
+
+      switch (c) {
+      case '"':
+        json.append("\\\"");
+        break;
+
+      case '\\':
+        json.append("\\\\");
+        break;
+
+      case '\n':
+        json.append("\\n");
+        break;
+
+      case '\r':
+        json.append("\\r");
+        break;
+
+      case '\t':
+        json.append("\\t");
+        break;
+
+      default:
+        if (c < 0x20) {
+          json.append(String.format("\\u%04x", (int) c));
+        }
+        else {
+          json.append(c);
+        }
+      }
+    }
+
+    json.append('"');
+  }
+
+  private static byte[] toBytes(CharSequence s) {
+    try {
+      return s.toString().getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Accepts clients for a server socket.
+   */
+  private final class Server implements Runnable {
+    private final ServerSocket m_serverSocket;
+    private final Thread m_thread;
+
+    // Guarded by itself.
+    private final List<Client> m_clients = new ArrayList<Client>();
+
+    public Server(ServerSocket serverSocket) {
+      m_serverSocket = serverSocket;
+
+      m_thread = new Thread(this, "Sample stream " + serverSocket);
+      m_thread.setDaemon(true);
+      m_thread.start();
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          final Client client = new Client(this, m_serverSocket.accept());
+
+          synchronized (m_clients) {
+            m_clients.add(client);
+          }
+        }
+      }
+      catch (IOException e) {
+        // Shut down.
+      }
+    }
+
+    public int getNumberOfClients() {
+      synchronized (m_clients) {
+        return m_clients.size();
+      }
+    }
+
+    public void publish(byte[] sample) {
+      final Client[] clients;
+
+      synchronized (m_clients) {
+        clients = m_clients.toArray(new Client[m_clients.size()]);
+      }
+
+      for (Client client : clients) {
+        client.publish(sample);
+      }
+    }
+
+    public void remove(Client client) {
+      synchronized (m_clients) {
+        m_clients.remove(client);
+      }
+    }
+
+    public void shutdown() {
+      try {
+        m_serverSocket.close();
+      }
+      catch (IOException e) {
+        // Ignore.
+      }
+
+      final Client[] clients;
+
+      synchronized (m_clients) {
+        clients = m_clients.toArray(new Client[m_clients.size()]);
+        m_clients.clear();
+      }
+
+      for (Client client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  /**
+   * A connected client, and the thread that writes to it.
+   */
+  private static final class Client implements Runnable {
+    private static final byte[] CLOSE = new byte[0];
+
+    private final Server m_server;
+    private final Socket m_socket;
+    private final BlockingQueue<byte[]> m_queue =
+      new ArrayBlockingQueue<byte[]>(MAXIMUM_QUEUED);
+    private final AtomicInteger m_skipped = new AtomicInteger();
+
+    public Client(Server server, Socket socket) {
+      m_server = server;
+      m_socket = socket;
+
+      final Thread thread =
+        new Thread(this, "Sample stream client " + socket);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public void publish(byte[] sample) {
+      while (!m_queue.offer(sample)) {
+        if (m_queue.poll() != null) {
+          m_skipped.incrementAndGet();
+        }
+      }
+    }
+
+    public void run() {
+      try {
+        final OutputStream out =
+          new BufferedOutputStream(m_socket.getOutputStream());
+
+        while (true) {
+          final byte[] sample = m_queue.take();
+
+          if (sample == CLOSE) {
+            break;
+          }
+
+          final int skipped = m_skipped.getAndSet(0);
+
+          if (skipped > 0) {
+            out.write(toBytes("{\"skipped\":" + skipped + "}\n"));
+          }
+
+          out.write(sample);
+          out.flush();
+        }
+      }
+      catch (IOException e) {
+        // Client has gone away.
+      }
+      catch (InterruptedException e) {
+        // Exit.
+      }
+      finally {
+        m_server.remove(this);
+
+        try {
+          m_socket.close();
+        }
+        catch (IOException e) {
+          // Ignore.
+        }
+      }
+    }
+
+    public void close() {
+      m_queue.clear();
+      m_queue.offer(CLOSE);
+
+      try {
+        // Also interrupts a write to a client that has stopped reading.
+        m_socket.close();
+      }
+      catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+}
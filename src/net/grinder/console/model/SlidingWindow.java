@@ -0,0 +1,205 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import net.grinder.statistics.ImmutableStatisticsSet;
+import net.grinder.statistics.StatisticsIndexMap;
+
+
+/**
+ * Rolling totals of the most recent samples of a {@link SampleAccumulator}.
+ *
+ * <p>
+ * The figures of each sample interval are held in a ring, together with
+ * running totals. Each new sample is added to the totals, and the oldest
+ * samples are subtracted until the remaining samples just cover the
+ * window's duration, so the cost of each sample is independent of the
+ * length of the window. The totals are held by the console, not in a
+ * statistics set, and are read by the expressions returned from {@link
+ * SampleModel#getWindowTPSExpression} and {@link
+ * SampleModel#getWindowMeanTestTimeExpression}.
+ * </p>
+ *
+ * <p>
+ * Samples are added by the sample thread; the totals may be read by any
+ * thread.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class SlidingWindow {
+
+  private static final int TESTS = 0;
+  private static final int TEST_TIME = 1;
+  private static final int UNTIMED_TESTS = 2;
+  private static final int PERIOD = 3;
+  private static final int STRIDE = 4;
+
+  private final Definition m_definition;
+
+  private final long[] m_totals = new long[STRIDE];
+
+  private long[] m_ring = new long[STRIDE * 8];
+
+  /** Index of the oldest sample in the ring. */
+  private int m_first = 0;
+
+  /** Number of samples in the ring. */
+  private int m_size = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param definition The window definition.
+   */
+  public SlidingWindow(Definition definition) {
+    m_definition = definition;
+  }
+
+  /**
+   * Add the statistics of a sample interval to the window.
+   *
+   * @param interval The interval statistics. The <em>period</em> should be
+   *  set to the length of the interval.
+   */
+  public synchronized void add(ImmutableStatisticsSet interval) {
+
+    final Definition d = m_definition;
+
+    if (m_size * STRIDE == m_ring.length) {
+      final long[] newRing = new long[m_ring.length * 2];
+      final int start = m_first * STRIDE;
+      final int firstPart = m_ring.length - start;
+      System.arraycopy(m_ring, start, newRing, 0, firstPart);
+      System.arraycopy(m_ring, 0, newRing, firstPart, start);
+      m_ring = newRing;
+      m_first = 0;
+    }
+
+    final int capacity = m_ring.length / STRIDE;
+    final int last = ((m_first + m_size) % capacity) * STRIDE;
+
+    m_ring[last + TESTS] = interval.getCount(d.m_timedTestsIndex);
+    m_ring[last + TEST_TIME] = interval.getSum(d.m_timedTestsIndex);
+    m_ring[last + UNTIMED_TESTS] = interval.getValue(d.m_untimedTestsIndex);
+    m_ring[last + PERIOD] = interval.getValue(d.m_periodIndex);
+    ++m_size;
+
+    for (int i = 0; i < STRIDE; ++i) {
+      m_totals[i] += m_ring[last + i];
+    }
+
+    // Drop the oldest samples that are not needed to cover the window.
+    final long duration = d.m_duration;
+
+    while (m_size > 1 &&
+           m_totals[PERIOD] - m_ring[m_first * STRIDE + PERIOD] >= duration) {
+      final int first = m_first * STRIDE;
+
+      for (int i = 0; i < STRIDE; ++i) {
+        m_totals[i] -= m_ring[first + i];
+      }
+
+      m_first = (m_first + 1) % capacity;
+      --m_size;
+    }
+  }
+
+  /**
+   * The number of transactions per second over the window.
+   *
+   * @return The TPS. <code>NaN</code> if the window is empty.
+   */
+  public synchronized double getTPS() {
+    return 1000d * (m_totals[TESTS] + m_totals[UNTIMED_TESTS]) /
+           m_totals[PERIOD];
+  }
+
+  /**
+   * The mean time of the successful timed tests in the window.
+   *
+   * @return The mean test time, in milliseconds. <code>NaN</code> if there
+   * are no timed tests in the window.
+   */
+  public synchronized double getMeanTestTime() {
+    return (double) m_totals[TEST_TIME] / m_totals[TESTS];
+  }
+
+  /**
+   * Discard the samples held by the window.
+   */
+  public synchronized void zero() {
+    m_first = 0;
+    m_size = 0;
+
+    for (int i = 0; i < STRIDE; ++i) {
+      m_totals[i] = 0;
+    }
+  }
+
+  /**
+   * The number of samples held by the window.
+   *
+   * <p>Package scope for unit tests.</p>
+   *
+   * @return The number of samples.
+   */
+  synchronized int size() {
+    return m_size;
+  }
+
+  /**
+   * Describes a window: which statistics it reads, and its duration.
+   * Shared by the windows of every accumulator.
+   */
+  static final class Definition {
+    private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+    private final StatisticsIndexMap.LongIndex m_untimedTestsIndex;
+    private final StatisticsIndexMap.LongIndex m_periodIndex;
+
+    private volatile long m_duration;
+
+    /**
+     * Constructor.
+     *
+     * @param indexMap The statistics index map.
+     * @param duration The duration of the window, in milliseconds.
+     */
+    public Definition(StatisticsIndexMap indexMap, long duration) {
+      m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+      m_untimedTestsIndex = indexMap.getLongIndex("untimedTests");
+      m_periodIndex = indexMap.getLongIndex("period");
+      m_duration = duration;
+    }
+
+    /**
+     * Change the duration of the window. Takes effect when the next sample
+     * is added.
+     *
+     * @param duration The duration, in milliseconds.
+     */
+    public void setDuration(long duration) {
+      m_duration = duration;
+    }
+  }
+}
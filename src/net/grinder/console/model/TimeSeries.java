@@ -0,0 +1,110 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+
+/**
+ * The result of a {@link TimeSeriesStore} query: a series of points, in
+ * time order, each summarising one or more sample intervals.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class TimeSeries {
+
+  private final long[] m_times;
+  private final double[] m_means;
+  private final double[] m_minima;
+  private final double[] m_maxima;
+  private final int[] m_counts;
+
+  TimeSeries(long[] times,
+             double[] means,
+             double[] minima,
+             double[] maxima,
+             int[] counts) {
+    m_times = times;
+    m_means = means;
+    m_minima = minima;
+    m_maxima = maxima;
+    m_counts = counts;
+  }
+
+  /**
+   * The number of points.
+   *
+   * @return The number of points.
+   */
+  public int size() {
+    return m_times.length;
+  }
+
+  /**
+   * The time of the first sample summarised by a point.
+   *
+   * @param i The point.
+   * @return The time, in milliseconds since the Epoch.
+   */
+  public long getTime(int i) {
+    return m_times[i];
+  }
+
+  /**
+   * The mean of the sample values summarised by a point.
+   *
+   * @param i The point.
+   * @return The mean value.
+   */
+  public double getValue(int i) {
+    return m_means[i];
+  }
+
+  /**
+   * The smallest sample value summarised by a point.
+   *
+   * @param i The point.
+   * @return The minimum value.
+   */
+  public double getMinimum(int i) {
+    return m_minima[i];
+  }
+
+  /**
+   * The largest sample value summarised by a point.
+   *
+   * @param i The point.
+   * @return The maximum value.
+   */
+  public double getMaximum(int i) {
+    return m_maxima[i];
+  }
+
+  /**
+   * The number of samples summarised by a point.
+   *
+   * @param i The point.
+   * @return The number of samples.
+   */
+  public int getNumberOfSamples(int i) {
+    return m_counts[i];
+  }
+}
@@ -0,0 +1,621 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import net.grinder.common.Test;
+import net.grinder.console.common.ConsoleException;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Records the interval statistics of every sample for every test, and the
+ * totals, in an append-only columnar store on disk.
+ *
+ * <p>
+ * Nothing is recorded unless {@link
+ * ConsoleProperties#getSampleHistoryDirectory()} is set. The samples and
+ * their columns are provided by a {@link SampleCapture}. Queries name
+ * columns using the expression syntax, e.g. <code>errors</code> or
+ * <code>(sum timedTests)</code>. See {@link #getStatisticNames()}.
+ * Statistics can be registered at run time, so each segment records the
+ * columns it was created with.
+ * </p>
+ *
+ * <p>
+ * The data is held in segment files. A segment has a fixed set of tests and
+ * room for a fixed number of samples. A new segment is started when the
+ * current segment is full, or when the set of tests changes. Only the
+ * current segment is memory mapped; for each older segment we keep just its
+ * file name, tests, and time range. Segments with the same tests share
+ * the same record of them, so heap use grows only slowly with the duration
+ * of the run. Segments older than {@link
+ * ConsoleProperties#getSampleHistoryRetention()} are deleted.
+ * </p>
+ *
+ * <p>
+ * Segment file format. Values are big-endian.
+ * </p>
+ *
+ * <pre>
+ *   int    Magic number, 0x47545331.
+ *   int    Number of samples written. Updated after each sample.
+ *   int    Capacity, the maximum number of samples.
+ *   int    Number of columns, C.
+ *          For each column: byte type (0 = long, 1 = double), UTF name.
+ *   int    Number of tests, T.
+ *          For each test: int test number.
+ *          Padding to a multiple of 8 bytes.
+ *   long[] Capacity sample times, in milliseconds since the Epoch.
+ *   long[] (1 + T) * C blocks of capacity values. The first C blocks are
+ *          for the totals, then C blocks for each test. Doubles are stored
+ *          as their raw long bits.
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class TimeSeriesStore {
+
+  private static final int MAGIC = 0x47545331;
+
+  private static final String SUFFIX = ".samples";
+
+  /** Segments are sized to take roughly this number of bytes. */
+  private static final long TARGET_SEGMENT_SIZE = 16 * 1024 * 1024;
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 4096;
+
+  private final ConsoleProperties m_properties;
+  private final ErrorHandler m_errorHandler;
+  private final TimeAuthority m_timeAuthority;
+
+  private final SampleCapture m_sampleCapture;
+  private final String m_filePrefix;
+
+  // Guarded by this.
+  private final LinkedList<Segment> m_sealedSegments =
+    new LinkedList<Segment>();
+  private Segment m_currentSegment;
+  private int m_nextSegmentNumber;
+  private File m_failedDirectory;
+
+  /**
+   * Constructor.
+   *
+   * @param properties The console properties.
+   * @param sampleCapture The sample capture.
+   * @param errorHandler Error handler.
+   */
+  public TimeSeriesStore(ConsoleProperties properties,
+                         SampleCapture sampleCapture,
+                         ErrorHandler errorHandler) {
+    this(properties,
+         sampleCapture,
+         errorHandler,
+         new StandardTimeAuthority());
+  }
+
+  TimeSeriesStore(ConsoleProperties properties,
+                  SampleCapture sampleCapture,
+                  ErrorHandler errorHandler,
+                  TimeAuthority timeAuthority) {
+
+    m_properties = properties;
+    m_errorHandler = errorHandler;
+    m_timeAuthority = timeAuthority;
+    m_sampleCapture = sampleCapture;
+    m_filePrefix = "samples-" + timeAuthority.getTimeInMilliseconds() + "-";
+
+    sampleCapture.addListener(new SampleCapture.Listener() {
+        public void newTests() {
+          synchronized (TimeSeriesStore.this) {
+            sealCurrentSegment();
+          }
+        }
+
+        public void newSample(SampleCapture.Sample sample) {
+          recordSample(sample);
+        }
+      });
+  }
+
+  /**
+   * The names of the statistics that are recorded.
+   *
+   * @return The names, suitable for {@link #query}.
+   */
+  public List<String> getStatisticNames() {
+    return m_sampleCapture.getColumns().getNames();
+  }
+
+  /**
+   * Query the recorded samples.
+   *
+   * <p>
+   * If there are more samples in the range than <code>maximumPoints</code>,
+   * the range is divided into <code>maximumPoints</code> equal periods and
+   * the samples in each period are summarised by a single point.
+   * </p>
+   *
+   * @param test The test, or <code>null</code> for the totals.
+   * @param statistic The statistic, one of {@link #getStatisticNames()}.
+   * @param from Start of the range, in milliseconds since the Epoch.
+   * @param to End of the range (inclusive).
+   * @param maximumPoints The maximum number of points to return.
+   * @return The samples.
+   * @throws ConsoleException If the statistic is unknown, or the store could
+   * not be read.
+   */
+  public TimeSeries query(Test test,
+                          String statistic,
+                          long from,
+                          long to,
+                          int maximumPoints)
+    throws ConsoleException {
+
+    if (maximumPoints < 1) {
+      throw new IllegalArgumentException("maximumPoints must be positive");
+    }
+
+    if (!getStatisticNames().contains(statistic)) {
+      throw new ConsoleException("Unknown statistic '" + statistic + "'");
+    }
+
+    synchronized (this) {
+      final List<Segment> segments = new ArrayList<Segment>(m_sealedSegments);
+
+      if (m_currentSegment != null) {
+        segments.add(m_currentSegment);
+      }
+
+      long first = Long.MAX_VALUE;
+      long last = Long.MIN_VALUE;
+
+      for (Segment segment : segments) {
+        first = Math.min(first, segment.getFirstTime());
+        last = Math.max(last, segment.getLastTime());
+      }
+
+      final Downsampler downsampler =
+        new Downsampler(Math.max(from, first),
+                        Math.min(to, last),
+                        maximumPoints);
+
+      for (Segment segment : segments) {
+        final int series = segment.getSeries(test);
+        final int column = segment.getColumn(statistic);
+
+        if (series == -1 ||
+            column == -1 ||
+            segment.getLastTime() < from ||
+            segment.getFirstTime() > to) {
+          continue;
+        }
+
+        final int size = segment.size();
+        final long[] times = new long[size];
+        final long[] values = new long[size];
+
+        try {
+          segment.read(segment.getBlock(series, column), times, values);
+        }
+        catch (IOException e) {
+          throw new ConsoleException(
+            "Failed to read sample history from " + segment.getFile(), e);
+        }
+
+        final boolean isDouble = segment.isDouble(column);
+
+        for (int i = 0; i < size; ++i) {
+          if (times[i] >= from && times[i] <= to) {
+            downsampler.add(times[i],
+                            isDouble ?
+                            Double.longBitsToDouble(values[i]) : values[i]);
+          }
+        }
+      }
+
+      return downsampler.create();
+    }
+  }
+
+  /**
+   * Close the current segment.
+   */
+  public synchronized void shutdown() {
+    sealCurrentSegment();
+  }
+
+  private synchronized void recordSample(SampleCapture.Sample sample) {
+    final File directory = m_properties.getSampleHistoryDirectory();
+
+    if (m_currentSegment != null &&
+        (!m_currentSegment.canAppend(sample) ||
+         !m_currentSegment.getFile().getParentFile().equals(directory))) {
+      sealCurrentSegment();
+    }
+
+    if (directory == null || directory.equals(m_failedDirectory)) {
+      return;
+    }
+
+    try {
+      if (m_currentSegment == null) {
+        directory.mkdirs();
+
+        m_currentSegment =
+          new Segment(
+            new File(directory,
+                     m_filePrefix + m_nextSegmentNumber++ + SUFFIX),
+            sample);
+      }
+
+      m_currentSegment.append(sample);
+      m_failedDirectory = null;
+    }
+    catch (IOException e) {
+      // Don't keep trying the same directory.
+      m_failedDirectory = directory;
+
+      if (m_currentSegment != null) {
+        m_currentSegment.seal();
+        m_currentSegment = null;
+      }
+
+      m_errorHandler.handleException(
+        new ConsoleException("Failed to record sample history", e));
+    }
+  }
+
+  private void sealCurrentSegment() {
+    if (m_currentSegment != null) {
+      m_currentSegment.seal();
+
+      if (m_currentSegment.size() > 0) {
+        m_sealedSegments.add(m_currentSegment);
+      }
+      else {
+        m_currentSegment.getFile().delete();
+      }
+
+      m_currentSegment = null;
+    }
+
+    final int retention = m_properties.getSampleHistoryRetention();
+
+    if (retention > 0) {
+      final long cutOff =
+        m_timeAuthority.getTimeInMilliseconds() - retention * 60000L;
+
+      while (m_sealedSegments.size() > 0 &&
+             m_sealedSegments.getFirst().getLastTime() < cutOff) {
+        m_sealedSegments.removeFirst().getFile().delete();
+      }
+    }
+  }
+
+  /**
+   * A segment file. Writable until sealed.
+   */
+  private final class Segment {
+    private final File m_file;
+    private final SampleCapture.Columns m_columns;
+    private final int[] m_testNumbers;
+    private final int m_capacity;
+    private final int m_dataOffset;
+
+    private RandomAccessFile m_randomAccessFile;
+    private MappedByteBuffer m_buffer;
+    private int m_size;
+    private long m_firstTime;
+    private long m_lastTime;
+
+    public Segment(File file, SampleCapture.Sample firstSample)
+      throws IOException {
+
+      m_file = file;
+      m_columns = firstSample.getColumns();
+      m_testNumbers = firstSample.getTestNumbers();
+
+      final int numberOfColumns = m_columns.size();
+      final long blocks = 1 + (1 + m_testNumbers.length) * numberOfColumns;
+
+      m_capacity = (int) Math.max(MINIMUM_CAPACITY,
+                                  Math.min(MAXIMUM_CAPACITY,
+                                           TARGET_SEGMENT_SIZE / 8 / blocks));
+
+      final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+      final DataOutputStream header = new DataOutputStream(byteStream);
+
+      header.writeInt(MAGIC);
+      header.writeInt(0);
+      header.writeInt(m_capacity);
+      header.writeInt(numberOfColumns);
+
+      for (int i = 0; i < numberOfColumns; ++i) {
+        header.writeByte(m_columns.isDouble(i) ? 1 : 0);
+        header.writeUTF(m_columns.getNames().get(i));
+      }
+
+      header.writeInt(m_testNumbers.length);
+
+      for (int testNumber : m_testNumbers) {
+        header.writeInt(testNumber);
+      }
+
+      while (header.size() % 8 != 0) {
+        header.writeByte(0);
+      }
+
+      header.close();
+
+      m_dataOffset = byteStream.size();
+
+      final long length = m_dataOffset + blocks * m_capacity * 8;
+
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Too many tests to record");
+      }
+
+      m_randomAccessFile = new RandomAccessFile(m_file, "rw");
+
+      try {
+        m_buffer = m_randomAccessFile.getChannel().map(
+          FileChannel.MapMode.READ_WRITE, 0, length);
+        m_buffer.put(byteStream.toByteArray());
+      }
+      catch (IOException e) {
+        seal();
+        throw e;
+      }
+    }
+
+    public File getFile() {
+      return m_file;
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    public long getFirstTime() {
+      return m_firstTime;
+    }
+
+    public long getLastTime() {
+      return m_lastTime;
+    }
+
+    /**
+     * The series for a test, or <code>-1</code> if the segment has no
+     * values for the test. Series 0 is the totals.
+     */
+    public int getSeries(Test test) {
+      if (test == null) {
+        return 0;
+      }
+
+      final int i = Arrays.binarySearch(m_testNumbers, test.getNumber());
+
+      return i >= 0 ? i + 1 : -1;
+    }
+
+    /**
+     * The column for a statistic, or <code>-1</code> if the segment has no
+     * values for the statistic.
+     */
+    public int getColumn(String statistic) {
+      return m_columns.indexOf(statistic);
+    }
+
+    /**
+     * Whether a sample can be appended. Samples are compared by reference,
+     * as {@link SampleCapture} only creates new columns or test numbers when
+     * they change.
+     */
+    public boolean canAppend(SampleCapture.Sample sample) {
+      return m_size < m_capacity &&
+        m_columns == sample.getColumns() &&
+        m_testNumbers == sample.getTestNumbers();
+    }
+
+    public boolean isDouble(int column) {
+      return m_columns.isDouble(column);
+    }
+
+    public int getBlock(int series, int column) {
+      return 1 + series * m_columns.size() + column;
+    }
+
+    private int getOffset(int block, int sample) {
+      return m_dataOffset + (block * m_capacity + sample) * 8;
+    }
+
+    public void append(SampleCapture.Sample sample) {
+      final int index = m_size;
+      final int numberOfColumns = m_columns.size();
+      final long time = sample.getTime();
+
+      m_buffer.putLong(getOffset(0, index), time);
+
+      for (int series = 0; series <= m_testNumbers.length; ++series) {
+        for (int column = 0; column < numberOfColumns; ++column) {
+          m_buffer.putLong(getOffset(getBlock(series, column), index),
+                           sample.getValue(series, column));
+        }
+      }
+
+      if (m_size == 0) {
+        m_firstTime = time;
+      }
+
+      m_lastTime = time;
+
+      m_buffer.putInt(4, ++m_size);
+    }
+
+    public void read(int block, long[] times, long[] values)
+      throws IOException {
+
+      if (m_buffer != null) {
+        for (int i = 0; i < m_size; ++i) {
+          times[i] = m_buffer.getLong(getOffset(0, i));
+          values[i] = m_buffer.getLong(getOffset(block, i));
+        }
+      }
+      else {
+        final RandomAccessFile file = new RandomAccessFile(m_file, "r");
+
+        try {
+          read(file.getChannel(), getOffset(0, 0), times);
+          read(file.getChannel(), getOffset(block, 0), values);
+        }
+        finally {
+          file.close();
+        }
+      }
+    }
+
+    private void read(FileChannel channel, long position, long[] result)
+      throws IOException {
+
+      final ByteBuffer buffer = ByteBuffer.allocate(result.length * 8);
+
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) == -1) {
+          throw new EOFException();
+        }
+      }
+
+      buffer.flip();
+      buffer.asLongBuffer().get(result);
+    }
+
+    /**
+     * Release the mapped buffer and the file. The buffer is only unmapped
+     * when it is garbage collected.
+     */
+    public void seal() {
+      m_buffer = null;
+
+      if (m_randomAccessFile != null) {
+        try {
+          m_randomAccessFile.close();
+        }
+        catch (IOException e) {
+          // Ignore.
+        }
+
+        m_randomAccessFile = null;
+      }
+    }
+  }
+
+  /**
+   * Summarises samples into at most a given number of points.
+   */
+  private static final class Downsampler {
+    private final long m_from;
+    private final long m_period;
+
+    private final long[] m_times;
+    private final double[] m_sums;
+    private final double[] m_minima;
+    private final double[] m_maxima;
+    private final int[] m_counts;
+
+    public Downsampler(long from, long to, int maximumPoints) {
+      m_from = from;
+      m_period = Math.max(0, to - from) / maximumPoints + 1;
+
+      m_times = new long[maximumPoints];
+      m_sums = new double[maximumPoints];
+      m_minima = new double[maximumPoints];
+      m_maxima = new double[maximumPoints];
+      m_counts = new int[maximumPoints];
+    }
+
+    public void add(long time, double value) {
+      final int i = (int) ((time - m_from) / m_period);
+
+      if (m_counts[i]++ == 0) {
+        m_times[i] = time;
+        m_minima[i] = value;
+        m_maxima[i] = value;
+      }
+      else {
+        m_times[i] = Math.min(m_times[i], time);
+        m_minima[i] = Math.min(m_minima[i], value);
+        m_maxima[i] = Math.max(m_maxima[i], value);
+      }
+
+      m_sums[i] += value;
+    }
+
+    public TimeSeries create() {
+      int size = 0;
+
+      for (int count : m_counts) {
+        if (count > 0) {
+          ++size;
+        }
+      }
+
+      final long[] times = new long[size];
+      final double[] means = new double[size];
+      final double[] minima = new double[size];
+      final double[] maxima = new double[size];
+      final int[] counts = new int[size];
+
+      int j = 0;
+
+      for (int i = 0; i < m_counts.length; ++i) {
+        if (m_counts[i] > 0) {
+          times[j] = m_times[i];
+          means[j] = m_sums[i] / m_counts[i];
+          minima[j] = m_minima[i];
+          maxima[j] = m_maxima[i];
+          counts[j] = m_counts[i];
+          ++j;
+        }
+      }
+
+      return new TimeSeries(times, means, minima, maxima, counts);
+    }
+  }
+}
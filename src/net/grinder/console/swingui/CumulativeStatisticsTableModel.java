@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 import net.grinder.console.common.Resources;
+import net.grinder.console.model.ModelTestIndex;
 import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.statistics.StatisticsSet;
@@ -60,8 +61,9 @@ final class CumulativeStatisticsTableModel extends DynamicStatisticsTableModel {
     addColumns(getModelViews().getCumulativeStatisticsView());
   }
 
-  protected StatisticsSet getStatistics(int row) {
-    return getLastModelTestIndex().getCumulativeStatistics(row);
+  protected StatisticsSet getStatistics(ModelTestIndex modelTestIndex,
+                                       int row) {
+    return modelTestIndex.getCumulativeStatistics(row);
   }
 
   public synchronized int getRowCount() {
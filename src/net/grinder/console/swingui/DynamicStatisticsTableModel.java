@@ -24,6 +24,9 @@ package net.grinder.console.swingui;
 import java.awt.Color;
 import java.io.IOException;
 import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Set;
 import javax.swing.table.AbstractTableModel;
 
@@ -42,6 +45,14 @@ import net.grinder.statistics.StatisticsView;
 /**
  * Abstract table model for statistics tables.
  *
+ * <p>
+ * The formatted values of the statistics columns are calculated by the
+ * sampling thread after each sample, and cached. The Swing thread then only
+ * has to tell the table about the rows whose values have changed. If the
+ * Swing thread falls behind, the updates for several samples are coalesced
+ * into one.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4003 $
  */
@@ -60,6 +71,9 @@ abstract class DynamicStatisticsTableModel
   // Guarded by this.
   private ModelTestIndex m_lastModelTestIndex;
 
+  // Guarded by this.
+  private SampleModel.State m_lastState;
+
   // Guarded by this.
   private StatisticsView m_statisticsView;
 
@@ -69,6 +83,15 @@ abstract class DynamicStatisticsTableModel
   // Guarded by this.
   private String[] m_columnLabels;
 
+  // Guarded by this.
+  private CellCache m_cellCache;
+
+  // Guarded by this. Calculated, but not yet announced to the table.
+  private CellCache m_pendingCellCache;
+
+  // Guarded by this.
+  private BitSet m_pendingChangedRows;
+
   protected DynamicStatisticsTableModel(
     SampleModel model,
     SampleModelViews modelViews,
@@ -84,6 +107,14 @@ abstract class DynamicStatisticsTableModel
     m_testDescriptionColumnString =
       m_resources.getString("table.descriptionColumn.label");
 
+    // Added before the dispatched listener, so the values for a sample are
+    // calculated before the Swing thread is told about it.
+    m_model.addModelListener(new SampleModel.AbstractListener() {
+        public void newSample() {
+          updateCellCache();
+        }
+      });
+
     m_model.addModelListener(
       (SampleModel.Listener) swingDispatcherFactory.create(this));
     m_modelViews.addListener((Listener) swingDispatcherFactory.create(this));
@@ -91,7 +122,12 @@ abstract class DynamicStatisticsTableModel
     resetTests();
   }
 
-  protected abstract StatisticsSet getStatistics(int row);
+  protected abstract StatisticsSet getStatistics(ModelTestIndex modelTestIndex,
+                                                int row);
+
+  protected final StatisticsSet getStatistics(int row) {
+    return getStatistics(getLastModelTestIndex(), row);
+  }
 
   protected final SampleModel getModel() {
     return m_model;
@@ -148,12 +184,138 @@ abstract class DynamicStatisticsTableModel
     addColumns(statisticsView);
   }
 
+  /**
+   * The tables don't show the model state, but the model zeroes its
+   * statistics when it moves to a new state. Discard the cached values,
+   * which may now be stale, and redraw every row. The model also calls this
+   * after every sample without changing state, and that is ignored.
+   */
   public final void stateChanged() {
-    fireTableRowsUpdated(0, getRowCount());
+    final SampleModel.State state = m_model.getState();
+
+    synchronized (this) {
+      if (state == m_lastState) {
+        return;
+      }
+
+      m_lastState = state;
+      m_cellCache = null;
+      m_pendingCellCache = null;
+    }
+
+    final int rowCount = getRowCount();
+
+    if (rowCount > 0) {
+      fireTableRowsUpdated(0, rowCount - 1);
+    }
+  }
+
+  /**
+   * Calculate the formatted values for the current sample. Called by the
+   * sampling thread.
+   */
+  private void updateCellCache() {
+    final ModelTestIndex modelTestIndex;
+    final ExpressionView[] columnViews;
+    final CellCache previous;
+    final BitSet previousChangedRows;
+
+    synchronized (this) {
+      modelTestIndex = m_lastModelTestIndex;
+      columnViews = m_columnViews;
+
+      if (m_pendingCellCache != null) {
+        previous = m_pendingCellCache;
+        previousChangedRows = m_pendingChangedRows;
+      }
+      else {
+        previous = m_cellCache;
+        previousChangedRows = null;
+      }
+    }
+
+    // NumberFormats are not thread safe.
+    final NumberFormat modelNumberFormat = getModelViews().getNumberFormat();
+    final NumberFormat numberFormat = (NumberFormat) modelNumberFormat.clone();
+
+    final int numberOfRows = modelTestIndex.getNumberOfTests();
+    final String[][] values = new String[numberOfRows][];
+    final BitSet changedRows = new BitSet(numberOfRows);
+
+    final boolean comparable =
+      previous != null &&
+      previous.matches(modelTestIndex, columnViews, modelNumberFormat);
+
+    for (int row = 0; row < numberOfRows; ++row) {
+      final StatisticsSet statistics = getStatistics(modelTestIndex, row);
+      values[row] = new String[columnViews.length];
+
+      for (int i = 0; i < columnViews.length; ++i) {
+        values[row][i] =
+          format(columnViews[i].getExpression(), statistics, numberFormat);
+      }
+
+      if (!comparable || !Arrays.equals(values[row], previous.m_values[row])) {
+        changedRows.set(row);
+      }
+    }
+
+    if (comparable && previousChangedRows != null) {
+      changedRows.or(previousChangedRows);
+    }
+
+    synchronized (this) {
+      m_pendingCellCache =
+        new CellCache(modelTestIndex, columnViews, modelNumberFormat, values);
+      m_pendingChangedRows = changedRows;
+    }
   }
 
-  public final synchronized void newSample() {
-    fireTableRowsUpdated(0, getRowCount());
+  /**
+   * Install the values calculated by the sampling thread, and tell the table
+   * which rows have changed. Called in the Swing thread.
+   */
+  public final void newSample() {
+    final BitSet changedRows;
+    final int numberOfTests;
+
+    synchronized (this) {
+      if (m_pendingCellCache == null) {
+        // Coalesced with an earlier notification.
+        return;
+      }
+
+      final CellCache cellCache = m_pendingCellCache;
+      m_pendingCellCache = null;
+
+      if (!cellCache.matches(m_lastModelTestIndex,
+                             m_columnViews,
+                             getModelViews().getNumberFormat())) {
+        // The tests or columns have changed since the values were
+        // calculated. The table has already been told about the change.
+        return;
+      }
+
+      m_cellCache = cellCache;
+      changedRows = m_pendingChangedRows;
+      numberOfTests = m_lastModelTestIndex.getNumberOfTests();
+    }
+
+    for (int row = changedRows.nextSetBit(0);
+         row >= 0;
+         row = changedRows.nextSetBit(row)) {
+      final int end = changedRows.nextClearBit(row);
+      fireTableRowsUpdated(row, end - 1);
+      row = end;
+    }
+
+    // Rows that don't belong to a test, such as the totals, are always
+    // updated.
+    final int rowCount = getRowCount();
+
+    if (rowCount > numberOfTests) {
+      fireTableRowsUpdated(numberOfTests, rowCount - 1);
+    }
   }
 
   public final synchronized void newTests(Set<Test> newTests,
@@ -204,6 +366,17 @@ abstract class DynamicStatisticsTableModel
       return m_lastModelTestIndex.getTest(row).getDescription();
     }
     else {
+      final CellCache cellCache = m_cellCache;
+
+      // The number format is replaced when the significant figures
+      // preference changes.
+      if (cellCache != null &&
+          cellCache.matches(m_lastModelTestIndex,
+                            m_columnViews,
+                            getModelViews().getNumberFormat())) {
+        return cellCache.m_values[row][column - 2];
+      }
+
       return getDynamicField(getStatistics(row), column - 2);
     }
   }
@@ -212,25 +385,30 @@ abstract class DynamicStatisticsTableModel
                                                 int dynamicColumn) {
 
     if (dynamicColumn < m_columnViews.length) {
-      final StatisticExpression expression =
-        m_columnViews[dynamicColumn].getExpression();
+      return format(m_columnViews[dynamicColumn].getExpression(),
+                    statistics,
+                    getModelViews().getNumberFormat());
+    }
+    else {
+      return "?";
+    }
+  }
 
-      if (expression.isDouble()) {
-        final double value = expression.getDoubleValue(statistics);
+  private static String format(StatisticExpression expression,
+                               StatisticsSet statistics,
+                               NumberFormat numberFormat) {
+    if (expression.isDouble()) {
+      final double value = expression.getDoubleValue(statistics);
 
-        if (Double.isNaN(value)) {
-          return "";
-        }
-        else {
-          return getModelViews().getNumberFormat().format(value);
-        }
+      if (Double.isNaN(value)) {
+        return "";
       }
       else {
-        return String.valueOf(expression.getLongValue(statistics));
+        return numberFormat.format(value);
       }
     }
     else {
-      return "?";
+      return String.valueOf(expression.getLongValue(statistics));
     }
   }
 
@@ -278,4 +456,33 @@ abstract class DynamicStatisticsTableModel
       writer.write(lineDelimeter);
     }
   }
+
+  /**
+   * Formatted values of the statistics columns for a given test index, set
+   * of columns, and number format.
+   */
+  private static final class CellCache {
+    private final ModelTestIndex m_modelTestIndex;
+    private final ExpressionView[] m_columnViews;
+    private final NumberFormat m_numberFormat;
+    private final String[][] m_values;
+
+    public CellCache(ModelTestIndex modelTestIndex,
+                     ExpressionView[] columnViews,
+                     NumberFormat numberFormat,
+                     String[][] values) {
+      m_modelTestIndex = modelTestIndex;
+      m_columnViews = columnViews;
+      m_numberFormat = numberFormat;
+      m_values = values;
+    }
+
+    public boolean matches(ModelTestIndex modelTestIndex,
+                           ExpressionView[] columnViews,
+                           NumberFormat numberFormat) {
+      return m_modelTestIndex == modelTestIndex &&
+             m_columnViews == columnViews &&
+             m_numberFormat == numberFormat;
+    }
+  }
 }
@@ -22,6 +22,7 @@
 package net.grinder.console.swingui;
 
 import net.grinder.console.common.Resources;
+import net.grinder.console.model.ModelTestIndex;
 import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.statistics.StatisticsSet;
@@ -51,7 +52,8 @@ final class SampleStatisticsTableModel extends DynamicStatisticsTableModel {
     addColumns(getModelViews().getIntervalStatisticsView());
   }
 
-  protected StatisticsSet getStatistics(int row) {
-    return getLastModelTestIndex().getLastSampleStatistics(row);
+  protected StatisticsSet getStatistics(ModelTestIndex modelTestIndex,
+                                       int row) {
+    return modelTestIndex.getLastSampleStatistics(row);
   }
 }
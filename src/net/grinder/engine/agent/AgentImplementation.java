@@ -44,11 +44,13 @@ import net.grinder.communication.FanOutStreamSender;
 import net.grinder.communication.IgnoreShutdownSender;
 import net.grinder.communication.MessageDispatchSender;
 import net.grinder.communication.MessagePump;
+import net.grinder.communication.Sender;
 import net.grinder.communication.TeeSender;
 import net.grinder.engine.common.ConnectorFactory;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
 import net.grinder.engine.communication.ConsoleListener;
+import net.grinder.engine.process.CompiledScriptCache;
 import net.grinder.messages.agent.StartGrinderMessage;
 import net.grinder.messages.console.AgentAddress;
 import net.grinder.messages.console.AgentProcessReportMessage;
@@ -224,6 +226,13 @@ public final class AgentImplementation implements Agent {
                 consoleScript.canRead()) {
               // The script directory may not be the file's direct parent.
               script = new ScriptLocation(fileStoreDirectory, consoleScript);
+
+              if (!properties.containsKey(
+                    CompiledScriptCache.DIRECTORY_PROPERTY)) {
+                properties.setProperty(
+                  CompiledScriptCache.DIRECTORY_PROPERTY,
+                  m_fileStore.getCompiledScriptDirectory().getPath());
+              }
             }
 
             m_agentIdentity.setNumber(startMessage.getAgentNumber());
@@ -257,6 +266,9 @@ public final class AgentImplementation implements Agent {
         while (script == null);
 
         if (script != null) {
+          final ReportAggregator reportAggregator =
+            createReportAggregator(consoleCommunication, properties);
+
           final String jvmArguments =
             properties.getProperty("grinder.jvm.arguments");
 
@@ -351,6 +363,10 @@ public final class AgentImplementation implements Agent {
           }
 
           workerLauncher.shutdown();
+
+          if (reportAggregator != null) {
+            reportAggregator.shutdown();
+          }
         }
 
         if (consoleCommunication == null) {
@@ -412,6 +428,40 @@ public final class AgentImplementation implements Agent {
     return properties;
   }
 
+  /**
+   * If requested, create a {@link ReportAggregator} and redirect the
+   * workers' console connections to it.
+   */
+  private ReportAggregator createReportAggregator(
+    ConsoleCommunication consoleCommunication,
+    GrinderProperties properties) {
+
+    if (consoleCommunication == null ||
+        !properties.getBoolean("grinder.aggregateReports", false)) {
+      return null;
+    }
+
+    try {
+      final ReportAggregator reportAggregator =
+        new ReportAggregator(
+          consoleCommunication.getSender(),
+          m_timer,
+          properties.getInt("grinder.reportToConsole.interval", 500));
+
+      reportAggregator.setWorkerProperties(properties);
+
+      m_logger.output("aggregating worker reports on port " +
+                      reportAggregator.getPort());
+
+      return reportAggregator;
+    }
+    catch (CommunicationException e) {
+      m_logger.error(e.getMessage() + ", worker reports will be sent " +
+                     "directly to the console");
+      return null;
+    }
+  }
+
   private void shutdownConsoleCommunication(
     ConsoleCommunication consoleCommunication) {
 
@@ -541,6 +591,10 @@ public final class AgentImplementation implements Agent {
       return m_connector;
     }
 
+    public Sender getSender() {
+      return m_sender;
+    }
+
     public void shutdown() {
       m_reportRunningTask.cancel();
 
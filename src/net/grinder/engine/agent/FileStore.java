@@ -52,6 +52,7 @@ final class FileStore {
   private final Logger m_logger;
 
   private final File m_readmeFile;
+  private final File m_compiledScriptDirectory;
 
   // Access guarded by self.
   private final Directory m_incomingDirectory;
@@ -84,6 +85,9 @@ final class FileStore {
 
     m_readmeFile = new File(rootDirectory, "README.txt");
 
+    // Not within the current directory, so survives new distributions.
+    m_compiledScriptDirectory = new File(rootDirectory, "compiled-scripts");
+
     try {
       m_incomingDirectory = new Directory(new File(rootDirectory, "incoming"));
       m_currentDirectory = new Directory(new File(rootDirectory, "current"));
@@ -113,6 +117,15 @@ final class FileStore {
     }
   }
 
+  /**
+   * Directory in which worker processes can cache compiled scripts.
+   *
+   * @return The directory. It might not exist.
+   */
+  public File getCompiledScriptDirectory() {
+    return m_compiledScriptDirectory;
+  }
+
   public CacheHighWaterMark getCacheHighWaterMark() {
     return m_cacheHighWaterMark;
   }
@@ -0,0 +1,183 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.agent;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Message;
+import net.grinder.communication.MessagePump;
+import net.grinder.communication.Sender;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.statistics.TestStatisticsMap;
+
+
+/**
+ * Receives the console messages of an agent's workers, and forwards them to
+ * the console. Statistics reports are merged per test and forwarded as a
+ * single report each interval; all other messages, including the worker
+ * process reports, are forwarded immediately.
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class ReportAggregator {
+
+  private static final String LOCAL_ADDRESS = "127.0.0.1";
+
+  private final Sender m_consoleSender;
+  private final Acceptor m_acceptor;
+  private final ServerReceiver m_receiver = new ServerReceiver();
+  private final MessagePump m_messagePump;
+  private final TimerTask m_flushTask;
+
+  /** Guarded by this. */
+  private TestStatisticsMap m_statistics = new TestStatisticsMap();
+
+  /**
+   * Constructor.
+   *
+   * @param consoleSender Sender to the console.
+   * @param timer Timer used to schedule the forwarding of reports.
+   * @param interval Interval in milliseconds at which merged reports are
+   *  forwarded.
+   * @throws CommunicationException If the local port could not be bound.
+   */
+  public ReportAggregator(Sender consoleSender, Timer timer, long interval)
+    throws CommunicationException {
+
+    m_consoleSender = consoleSender;
+    m_acceptor = new Acceptor(LOCAL_ADDRESS, 0, 1);
+
+    m_receiver.receiveFrom(m_acceptor,
+                           new ConnectionType[] { ConnectionType.WORKER },
+                           2,
+                           100);
+
+    m_messagePump = new MessagePump(m_receiver, new AggregatingSender(), 1);
+    m_messagePump.start();
+
+    m_flushTask = new TimerTask() {
+        public void run() {
+          try {
+            flush();
+          }
+          catch (CommunicationException e) {
+            // Really an assertion. Can't use logger because its not
+            // thread-safe.
+            System.err.println("Failed to forward statistics to console");
+            e.printStackTrace();
+          }
+        }
+      };
+
+    timer.schedule(m_flushTask, interval, interval);
+  }
+
+  /**
+   * Redirect the console connection of workers created with the given
+   * properties to this aggregator.
+   *
+   * @param properties The worker properties.
+   */
+  public void setWorkerProperties(GrinderProperties properties) {
+    properties.setProperty(GrinderProperties.CONSOLE_HOST, LOCAL_ADDRESS);
+    properties.setInt(GrinderProperties.CONSOLE_PORT, getPort());
+  }
+
+  /**
+   * The port the aggregator is listening on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return m_acceptor.getPort();
+  }
+
+  /**
+   * Forward the statistics merged since the last call, if any.
+   *
+   * @throws CommunicationException If the report could not be sent.
+   */
+  public void flush() throws CommunicationException {
+    final TestStatisticsMap statistics;
+
+    synchronized (this) {
+      if (m_statistics.size() == 0) {
+        return;
+      }
+
+      statistics = m_statistics;
+      m_statistics = new TestStatisticsMap();
+    }
+
+    m_consoleSender.send(new ReportStatisticsMessage(statistics));
+  }
+
+  /**
+   * Shut down the aggregator, forwarding any outstanding statistics.
+   */
+  public void shutdown() {
+    m_flushTask.cancel();
+    m_messagePump.shutdown();
+
+    try {
+      m_acceptor.shutdown();
+    }
+    catch (CommunicationException e) {
+      // Ignore - we're shutting down.
+    }
+
+    try {
+      flush();
+    }
+    catch (CommunicationException e) {
+      // Ignore - peer has probably shut down.
+    }
+  }
+
+  private final class AggregatingSender implements Sender {
+    public void send(Message message) throws CommunicationException {
+      if (message instanceof ReportStatisticsMessage) {
+        final TestStatisticsMap delta =
+          ((ReportStatisticsMessage) message).getStatisticsDelta();
+
+        synchronized (ReportAggregator.this) {
+          m_statistics.add(delta);
+        }
+      }
+      else {
+        m_consoleSender.send(message);
+      }
+    }
+
+    public void shutdown() {
+    }
+  }
+}
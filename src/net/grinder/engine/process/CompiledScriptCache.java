@@ -0,0 +1,211 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.util.StreamCopier;
+
+
+/**
+ * A directory of compiled scripts, shared by the worker processes of an
+ * agent, so that each worker need not compile the script from source.
+ *
+ * <p>
+ * Entries are keyed by a digest of the script engine version, the script
+ * path, and the script contents, so a changed script is never loaded from a
+ * stale entry. Entries are written to a temporary file and renamed, so
+ * concurrent workers never see partial entries. Problems reading or writing
+ * the cache are not fatal; the caller compiles from source instead.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class CompiledScriptCache {
+
+  /** Property that specifies the cache directory. */
+  public static final String DIRECTORY_PROPERTY = "grinder.scriptCache";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final File m_directory;
+
+  /**
+   * Create a cache as configured by the worker process properties.
+   *
+   * @param properties The properties.
+   * @return The cache, or <code>null</code> if no cache directory has been
+   *  set.
+   */
+  public static CompiledScriptCache create(GrinderProperties properties) {
+    final File directory = properties.getFile(DIRECTORY_PROPERTY, null);
+
+    if (directory == null) {
+      return null;
+    }
+
+    return new CompiledScriptCache(properties.resolveRelativeFile(directory));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param directory The cache directory. Created on demand.
+   */
+  public CompiledScriptCache(File directory) {
+    m_directory = directory;
+  }
+
+  /**
+   * The cache directory.
+   *
+   * @return The directory.
+   */
+  public File getDirectory() {
+    return m_directory;
+  }
+
+  /**
+   * Calculate the key for a script.
+   *
+   * @param engine Identifies the script engine and its version.
+   * @param script The script.
+   * @return The key.
+   * @throws IOException If the script could not be read.
+   */
+  public String key(String engine, File script) throws IOException {
+    final MessageDigest digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+
+    digest.update(engine.getBytes("UTF-8"));
+    digest.update((byte) 0);
+    digest.update(script.getPath().getBytes("UTF-8"));
+    digest.update((byte) 0);
+    digest.update(readFully(new FileInputStream(script)));
+
+    final byte[] bytes = digest.digest();
+    final char[] result = new char[bytes.length * 2];
+
+    for (int i = 0; i < bytes.length; ++i) {
+      result[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      result[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Look up a compiled script.
+   *
+   * @param key The key.
+   * @return The compiled script, or <code>null</code> if there is no entry.
+   */
+  public byte[] get(String key) {
+    final File file = new File(m_directory, key);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      return readFully(new FileInputStream(file));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Store a compiled script.
+   *
+   * @param key The key.
+   * @param compiled The compiled script.
+   * @return <code>true</code> if and only if the entry was written.
+   */
+  public boolean put(String key, byte[] compiled) {
+    m_directory.mkdirs();
+
+    File temporary = null;
+
+    try {
+      temporary = File.createTempFile("tmp" + key, null, m_directory);
+
+      final OutputStream out = new FileOutputStream(temporary);
+
+      try {
+        out.write(compiled);
+      }
+      finally {
+        out.close();
+      }
+
+      final File file = new File(m_directory, key);
+
+      // Another worker may have got there first. On some platforms
+      // renameTo() won't replace an existing file.
+      if (temporary.renameTo(file) || file.isFile()) {
+        return true;
+      }
+    }
+    catch (IOException e) {
+      // Fall through.
+    }
+    finally {
+      if (temporary != null) {
+        temporary.delete();
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Remove an entry, perhaps because it could not be loaded.
+   *
+   * @param key The key.
+   */
+  public void remove(String key) {
+    new File(m_directory, key).delete();
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    new StreamCopier(4096, true).copy(in, result);
+    return result.toByteArray();
+  }
+}
@@ -211,7 +211,11 @@ final class GrinderProcess {
     final Timer timer = new Timer(true);
     timer.schedule(new TickLoggerTimerTask(), 0, 1000);
 
-    final ScriptEngine scriptEngine = new MultilingualScriptEngine();
+    final GrinderProperties properties = m_context.getProperties();
+
+    final ScriptEngine scriptEngine =
+      new MultilingualScriptEngine(m_initialisationMessage.getScript(),
+                                   properties);
 
     // Don't start the message pump until we've initialised Jython. Jython 2.5+
     // tests to see whether the stdin stream is a tty, and on some versions of
@@ -235,7 +239,6 @@ final class GrinderProcess {
 
     logger.output(numbers.toString());
 
-    final GrinderProperties properties = m_context.getProperties();
     final short numberOfThreads =
       properties.getShort("grinder.threads", (short)1);
     final int reportToConsoleInterval =
@@ -256,7 +259,18 @@ final class GrinderProcess {
     logger.output("executing \"" + m_initialisationMessage.getScript() +
       "\" using " + scriptEngine.getDescription());
 
-    scriptEngine.initialise(m_initialisationMessage.getScript());
+    // Scripts typically record many methods as they are initialised. Weave
+    // them together, rather than retransforming classes for each one.
+    instrumenter.deferWeaving();
+
+    try {
+      scriptEngine.initialise(m_initialisationMessage.getScript());
+    }
+    finally {
+      instrumenter.applyDeferredWeaving();
+    }
+
+    m_context.getParallelInvoker().setScriptEngine(scriptEngine);
 
     // Don't initialise the data writer until now as the script may
     // declare new statistics.
@@ -372,6 +386,7 @@ final class GrinderProcess {
       shutdownTimerTask.cancel();
     }
 
+    m_context.getParallelInvoker().shutdown();
     scriptEngine.shutdown();
 
     // Final report to the console.
@@ -381,7 +381,8 @@ final class LoggerImplementation {
     private int m_currentRunNumber = -1;
     private int m_currentTestNumber = -1;
 
-    // Scratch space.
+    // Scratch space. Guarded by this, since tasks that the worker thread
+    // runs in parallel share its logger.
     private final StringBuffer m_buffer = new StringBuffer();
 
     // Reused for optimisation.
@@ -422,7 +423,7 @@ final class LoggerImplementation {
       return m_currentRunNumber;
     }
 
-    public void setCurrentRunNumber(int runNumber) {
+    public synchronized void setCurrentRunNumber(int runNumber) {
       if (runNumber != m_currentRunNumber) {
         m_currentRunNumberCharacters = null;
       }
@@ -462,7 +463,7 @@ final class LoggerImplementation {
       return m_errorWriter;
     }
 
-    char[] formatMessage(String message) {
+    synchronized char[] formatMessage(String message) {
       m_buffer.setLength(0);
 
       m_buffer.append(getDateString());
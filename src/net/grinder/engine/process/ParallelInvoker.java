@@ -0,0 +1,311 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+package net.grinder.engine.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.common.GrinderException;
+import net.grinder.common.Test;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
+import net.grinder.script.InvalidContextException;
+
+
+/**
+ * Runs a group of tasks for a worker thread in parallel, using a bounded pool
+ * of threads shared by the worker process.
+ *
+ * <p>
+ * Each task runs with a child of the worker thread's {@link ThreadContext}.
+ * The child shares the worker thread's logger and data log, but has its own
+ * dispatch context stack. Plug-ins can keep separate state for each task
+ * (see {@link net.grinder.plugininterface.ParallelPluginThreadListener}),
+ * which is discarded when the task completes. The group is timed against a
+ * parent test, which becomes composite if the tasks record tests of their
+ * own.
+ * </p>
+ *
+ * <p>
+ * A task that starts a group of its own runs that group's tasks in sequence,
+ * so nested groups can't exhaust the pool and deadlock.
+ * </p>
+ *
+ * Package scope.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class ParallelInvoker {
+
+  private final ThreadContextLocator m_threadContextLocator;
+  private final TestRegistryImplementation m_testRegistry;
+  private final int m_numberOfThreads;
+
+  private volatile ScriptEngine m_scriptEngine;
+
+  // Guarded by this.
+  private ExecutorService m_executor;
+  private boolean m_shutdown;
+
+  /**
+   * Constructor.
+   *
+   * @param threadContextLocator
+   *          Thread context locator.
+   * @param testRegistry
+   *          Test registry, used to find the parent test's recorder.
+   * @param numberOfThreads
+   *          Maximum number of threads to use to run tasks.
+   */
+  ParallelInvoker(ThreadContextLocator threadContextLocator,
+                  TestRegistryImplementation testRegistry,
+                  int numberOfThreads) {
+    m_threadContextLocator = threadContextLocator;
+    m_testRegistry = testRegistry;
+    m_numberOfThreads = numberOfThreads;
+  }
+
+  /**
+   * Set the script engine used to run tasks that are script objects.
+   *
+   * @param scriptEngine The script engine.
+   */
+  void setScriptEngine(ScriptEngine scriptEngine) {
+    m_scriptEngine = scriptEngine;
+  }
+
+  /**
+   * Run tasks in parallel, and wait for them all to complete.
+   *
+   * @param test
+   *          The test to record the time for the whole group against.
+   * @param tasks
+   *          The tasks. Each task should be a {@link Runnable}, a
+   *          {@link Callable}, or a callable script object.
+   * @throws GrinderException
+   *           If a task could not be run, or failed. If several tasks failed,
+   *           the first failure is reported.
+   */
+  void invoke(Test test, Object[] tasks) throws GrinderException {
+    final ThreadContext threadContext = m_threadContextLocator.get();
+
+    if (threadContext == null) {
+      throw new InvalidContextException(
+        "invokeInParallel() must be called from a worker thread");
+    }
+
+    final List<Callable<?>> callables = new ArrayList<Callable<?>>();
+
+    for (int i = 0; i < tasks.length; ++i) {
+      callables.add(createCallable(tasks[i]));
+    }
+
+    final Recorder recorder = (Recorder) m_testRegistry.register(test);
+
+    recorder.start();
+
+    boolean success = false;
+
+    try {
+      if (threadContext.getWorkerContext() != threadContext) {
+        runInSequence(callables);
+      }
+      else {
+        runInParallel(threadContext, callables);
+      }
+
+      success = true;
+    }
+    finally {
+      recorder.end(success);
+    }
+  }
+
+  /**
+   * Stop the pool threads. Tasks that are running are interrupted.
+   */
+  void shutdown() {
+    synchronized (this) {
+      m_shutdown = true;
+
+      if (m_executor != null) {
+        // Cancel the queued tasks so their worker threads stop waiting.
+        for (Runnable queued : m_executor.shutdownNow()) {
+          ((Future<?>) queued).cancel(false);
+        }
+      }
+    }
+  }
+
+  private Callable<?> createCallable(final Object task)
+    throws GrinderException {
+
+    if (task instanceof Callable<?>) {
+      return (Callable<?>) task;
+    }
+
+    if (task instanceof Runnable) {
+      return Executors.callable((Runnable) task);
+    }
+
+    final ScriptEngine scriptEngine = m_scriptEngine;
+
+    if (scriptEngine == null) {
+      throw new InvalidContextException("Script engine is not initialised");
+    }
+
+    final WorkerRunnable runnable = scriptEngine.createWorkerRunnable(task);
+
+    return new Callable<Object>() {
+      public Object call() throws Exception {
+        runnable.run();
+        return null;
+      }
+    };
+  }
+
+  private void runInSequence(List<Callable<?>> callables)
+    throws GrinderException {
+
+    for (Callable<?> callable : callables) {
+      try {
+        callable.call();
+      }
+      catch (Exception e) {
+        throw taskFailed(e);
+      }
+    }
+  }
+
+  private void runInParallel(ThreadContext threadContext,
+                             List<Callable<?>> callables)
+    throws GrinderException {
+
+    final ExecutorService executor = getExecutor();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (final Callable<?> callable : callables) {
+      final ThreadContext childContext = threadContext.createChildContext();
+
+      futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            m_threadContextLocator.set(childContext);
+
+            try {
+              return callable.call();
+            }
+            finally {
+              // Flush any report the task delayed.
+              childContext.setDelayReports(false);
+              childContext.fireEndTaskEvent();
+              m_threadContextLocator.set(null);
+            }
+          }
+        }));
+    }
+
+    Throwable failure = null;
+
+    try {
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+        }
+        catch (CancellationException e) {
+          if (failure == null) {
+            failure = new ShutdownException("Process has been shut down");
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+
+      throw new UncheckedInterruptedException(e);
+    }
+
+    if (failure != null) {
+      throw taskFailed(failure);
+    }
+  }
+
+  private static GrinderException taskFailed(Throwable t) {
+    if (t instanceof GrinderException) {
+      return (GrinderException) t;
+    }
+
+    if (t instanceof RuntimeException) {
+      // Includes ShutdownException, which must reach the worker thread.
+      throw (RuntimeException) t;
+    }
+
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+
+    return new EngineException("Parallel task failed", t);
+  }
+
+  private synchronized ExecutorService getExecutor()
+    throws InvalidContextException {
+
+    if (m_shutdown) {
+      throw new InvalidContextException("Worker process is shutting down");
+    }
+
+    if (m_executor == null) {
+      final AtomicInteger threadNumber = new AtomicInteger();
+
+      m_executor = Executors.newFixedThreadPool(
+        m_numberOfThreads,
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            final Thread thread =
+              new Thread(runnable,
+                         "parallel task thread " +
+                         threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    }
+
+    return m_executor;
+  }
+}
@@ -52,6 +52,8 @@ interface ProcessContext {
 
   ThreadContextLocator getThreadContextLocator();
 
+  ParallelInvoker getParallelInvoker();
+
   /**
    * {@link GrinderProcess} calls {@link #setExecutionStartTime} just
    * before launching threads, after which it is never called again.
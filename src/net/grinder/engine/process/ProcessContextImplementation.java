@@ -66,6 +66,7 @@ final class ProcessContextImplementation implements ProcessContext {
   private final Logger m_processLogger;
   private final ThreadContextLocator m_threadContextLocator;
   private final TestRegistryImplementation m_testRegistryImplementation;
+  private final ParallelInvoker m_parallelInvoker;
   private final InternalScriptContext m_scriptContext;
   private final Sleeper m_sleeper;
   private final StatisticsServices m_statisticsServices;
@@ -122,6 +123,11 @@ final class ProcessContextImplementation implements ProcessContext {
                        m_testStatisticsHelper,
                        m_timeAuthority);
 
+    m_parallelInvoker =
+      new ParallelInvoker(m_threadContextLocator,
+                          m_testRegistryImplementation,
+                          properties.getInt("grinder.parallelThreads", 16));
+
     final ThreadStopper threadStopper = new ThreadStopper() {
       public boolean stopThread(int threadNumber) {
         return m_threadContexts.shutdown(threadNumber);
@@ -140,7 +146,8 @@ final class ProcessContextImplementation implements ProcessContext {
       scriptStatistics,
       m_testRegistryImplementation,
       threadStarter,
-      threadStopper);
+      threadStopper,
+      m_parallelInvoker);
 
     final PluginRegistryImplementation pluginRegistry =
       new PluginRegistryImplementation(externalLogger, m_scriptContext,
@@ -192,6 +199,10 @@ final class ProcessContextImplementation implements ProcessContext {
     return m_threadContextLocator;
   }
 
+  public ParallelInvoker getParallelInvoker() {
+    return m_parallelInvoker;
+  }
+
   public void setExecutionStartTime() {
     m_executionStartTime = m_timeAuthority.getTimeInMilliseconds();
   }
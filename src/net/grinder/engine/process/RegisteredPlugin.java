@@ -22,10 +22,14 @@
 package net.grinder.engine.process;
 
 import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.grinder.common.Logger;
+import net.grinder.common.SkeletonThreadLifeCycleListener;
 import net.grinder.engine.common.EngineException;
 import net.grinder.plugininterface.GrinderPlugin;
+import net.grinder.plugininterface.ParallelPluginThreadListener;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadListener;
@@ -46,8 +50,22 @@ final class RegisteredPlugin implements PluginProcessContext {
   private final ScriptContext m_scriptContext;
   private final ThreadContextLocator m_threadContextLocator;
   private final StatisticsServices m_statisticsServices;
-  private final ThreadLocal<PluginThreadListener> m_threadListenerThreadLocal =
-    new ThreadLocal<PluginThreadListener>();
+
+  /**
+   * Keyed by worker thread context. Tasks a worker thread runs in parallel
+   * share its listener, unless the listener is a {@link
+   * ParallelPluginThreadListener}.
+   */
+  private final Map<ThreadContext, PluginThreadListener> m_threadListeners =
+    new ConcurrentHashMap<ThreadContext, PluginThreadListener>();
+
+  /**
+   * Keyed by child thread context. Each child context is used by a single
+   * thread at a time.
+   */
+  private final Map<ThreadContext, PluginThreadListener> m_taskListeners =
+    new ConcurrentHashMap<ThreadContext, PluginThreadListener>();
+
   private final TimeAuthority m_timeAuthority;
 
   public RegisteredPlugin(GrinderPlugin plugin, ScriptContext scriptContext,
@@ -77,39 +95,107 @@ final class RegisteredPlugin implements PluginProcessContext {
     return createPluginThreadListener(threadContext);
   }
 
-  PluginThreadListener createPluginThreadListener(ThreadContext threadContext)
+  PluginThreadListener createPluginThreadListener(
+    final ThreadContext threadContext)
     throws EngineException {
 
-    final PluginThreadListener existingPluginThreadListener =
-      m_threadListenerThreadLocal.get();
+    final ThreadContext workerContext = threadContext.getWorkerContext();
 
-    if (existingPluginThreadListener != null) {
-      return existingPluginThreadListener;
+    final PluginThreadListener workerListener =
+      createWorkerListener(workerContext);
+
+    if (threadContext == workerContext ||
+        !(workerListener instanceof ParallelPluginThreadListener)) {
+      return workerListener;
+    }
+
+    final PluginThreadListener existingTaskListener =
+      m_taskListeners.get(threadContext);
+
+    if (existingTaskListener != null) {
+      return existingTaskListener;
     }
 
-    final PluginThreadListener newPluginThreadListener;
+    final PluginThreadListener newTaskListener;
 
     try {
-      newPluginThreadListener = m_plugin.createThreadListener(threadContext);
+      newTaskListener =
+        ((ParallelPluginThreadListener) workerListener).createTaskListener(
+          threadContext);
     }
     catch (PluginException e) {
-      final Logger logger = threadContext.getThreadLogger();
+      throw listenerFailed(workerContext, e);
+    }
+
+    m_taskListeners.put(threadContext, newTaskListener);
+
+    threadContext.registerTaskLifeCycleListener(newTaskListener);
+
+    threadContext.registerTaskLifeCycleListener(
+      new SkeletonThreadLifeCycleListener() {
+        public void endThread() {
+          m_taskListeners.remove(threadContext);
+        }
+      });
 
-      final PrintWriter errorLogWriter = logger.getErrorLogWriter();
+    return newTaskListener;
+  }
+
+  private PluginThreadListener createWorkerListener(
+    final ThreadContext workerContext)
+    throws EngineException {
 
-      synchronized (errorLogWriter) {
-        logger.error("Plugin could not create thread listener: " + e);
-        e.printStackTrace(errorLogWriter);
+    final PluginThreadListener existingPluginThreadListener =
+      m_threadListeners.get(workerContext);
+
+    if (existingPluginThreadListener != null) {
+      return existingPluginThreadListener;
+    }
+
+    synchronized (m_threadListeners) {
+      final PluginThreadListener racingPluginThreadListener =
+        m_threadListeners.get(workerContext);
+
+      if (racingPluginThreadListener != null) {
+        return racingPluginThreadListener;
+      }
+
+      final PluginThreadListener newPluginThreadListener;
+
+      try {
+        newPluginThreadListener = m_plugin.createThreadListener(workerContext);
+      }
+      catch (PluginException e) {
+        throw listenerFailed(workerContext, e);
       }
 
-      throw new EngineException("Plugin could not create thread listener", e);
+      m_threadListeners.put(workerContext, newPluginThreadListener);
+
+      workerContext.registerThreadLifeCycleListener(newPluginThreadListener);
+
+      workerContext.registerThreadLifeCycleListener(
+        new SkeletonThreadLifeCycleListener() {
+          public void endThread() {
+            m_threadListeners.remove(workerContext);
+          }
+        });
+
+      return newPluginThreadListener;
     }
+  }
 
-    m_threadListenerThreadLocal.set(newPluginThreadListener);
+  private static EngineException listenerFailed(ThreadContext threadContext,
+                                                PluginException e) {
+    final Logger logger = threadContext.getThreadLogger();
 
-    threadContext.registerThreadLifeCycleListener(newPluginThreadListener);
+    final PrintWriter errorLogWriter = logger.getErrorLogWriter();
+
+    synchronized (errorLogWriter) {
+      logger.error("Plugin could not create thread listener: " + e);
+      e.printStackTrace(errorLogWriter);
+    }
 
-    return newPluginThreadListener;
+    return new EngineException("Plugin could not create thread listener", e);
   }
 
   public StatisticsServices getStatisticsServices() {
@@ -30,6 +30,7 @@ import net.grinder.script.InternalScriptContext;
 import net.grinder.script.InvalidContextException;
 import net.grinder.script.Statistics;
 import net.grinder.script.SSLControl;
+import net.grinder.script.Test;
 import net.grinder.script.TestRegistry;
 import net.grinder.util.Sleeper;
 
@@ -54,6 +55,7 @@ final class ScriptContextImplementation implements InternalScriptContext {
   private final TestRegistry m_testRegistry;
   private final ThreadStarter m_threadStarter;
   private final ThreadStopper m_threadStopper;
+  private final ParallelInvoker m_parallelInvoker;
 
   public ScriptContextImplementation(WorkerIdentity workerIdentity,
                                      WorkerIdentity firstWorkerIdentity,
@@ -66,7 +68,8 @@ final class ScriptContextImplementation implements InternalScriptContext {
                                      Statistics scriptStatistics,
                                      TestRegistry testRegistry,
                                      ThreadStarter threadStarter,
-                                     ThreadStopper threadStopper) {
+                                     ThreadStopper threadStopper,
+                                     ParallelInvoker parallelInvoker) {
     m_workerIdentity = workerIdentity;
     m_firstWorkerIdentity = firstWorkerIdentity;
     m_threadContextLocator = threadContextLocator;
@@ -79,6 +82,7 @@ final class ScriptContextImplementation implements InternalScriptContext {
     m_testRegistry = testRegistry;
     m_threadStarter = threadStarter;
     m_threadStopper = threadStopper;
+    m_parallelInvoker = parallelInvoker;
   }
 
   public int getAgentNumber() {
@@ -152,6 +156,11 @@ final class ScriptContextImplementation implements InternalScriptContext {
     return m_threadStopper.stopThread(threadNumber);
   }
 
+  public void invokeInParallel(Test test, Object[] tasks)
+    throws GrinderException {
+    m_parallelInvoker.invoke(test, tasks);
+  }
+
   public FilenameFactory getFilenameFactory() {
     return m_filenameFactory;
   }
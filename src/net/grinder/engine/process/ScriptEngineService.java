@@ -0,0 +1,62 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.EngineException;
+
+
+/**
+ * Creates the {@link ScriptEngine} for the scripts with particular file
+ * extensions.
+ *
+ * <p>
+ * Implementations are listed, one class name per line, in
+ * <code>META-INF/services/net.grinder.engine.process.ScriptEngineService</code>
+ * resources, and must have a public no-argument constructor. The Jython,
+ * JRuby, and Java services are built in. Creating a service should be cheap;
+ * the expensive work belongs in {@link #createScriptEngine}, which is only
+ * called for the service that handles the script.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public interface ScriptEngineService {
+
+  /**
+   * The file extensions of the scripts handled by the service.
+   *
+   * @return The extensions, without the leading <code>.</code>.
+   */
+  String[] getExtensions();
+
+  /**
+   * Create a script engine.
+   *
+   * @param properties The worker process properties.
+   * @return The engine.
+   * @throws EngineException If the engine could not be created.
+   */
+  ScriptEngine createScriptEngine(GrinderProperties properties)
+    throws EngineException;
+}
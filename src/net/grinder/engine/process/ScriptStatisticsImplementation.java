@@ -24,9 +24,11 @@ package net.grinder.engine.process;
 import net.grinder.common.GrinderException;
 import net.grinder.communication.QueuedSender;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
+import net.grinder.messages.console.RegisterStatisticMessage;
 import net.grinder.script.InvalidContextException;
 import net.grinder.script.Statistics;
 import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
 
@@ -101,10 +103,7 @@ final class ScriptStatisticsImplementation implements Statistics {
   public void registerDataLogExpression(String displayName, String expression)
     throws GrinderException {
 
-    if (m_threadContextLocator.get() != null) {
-      throw new InvalidContextException(
-        "registerDataLogExpression() is not supported from worker threads");
-    }
+    checkNotWorkerThread("registerDataLogExpression()");
 
     m_statisticsServices.getDetailStatisticsView().add(
       StatisticsServicesImplementation.getInstance()
@@ -134,4 +133,60 @@ final class ScriptStatisticsImplementation implements Statistics {
 
     return statisticsForLastTest;
   }
+
+  public void registerLongStatistic(String statisticName)
+    throws GrinderException {
+
+    checkNotWorkerThread("registerLongStatistic()");
+    getStatisticsIndexMap().registerLongIndex(statisticName);
+    queueRegistration(RegisterStatisticMessage.LONG, statisticName);
+  }
+
+  public void registerDoubleStatistic(String statisticName)
+    throws GrinderException {
+
+    checkNotWorkerThread("registerDoubleStatistic()");
+    getStatisticsIndexMap().registerDoubleIndex(statisticName);
+    queueRegistration(RegisterStatisticMessage.DOUBLE, statisticName);
+  }
+
+  public void registerLongSampleStatistic(String statisticName)
+    throws GrinderException {
+
+    checkNotWorkerThread("registerLongSampleStatistic()");
+    getStatisticsIndexMap().registerLongSampleIndex(statisticName);
+    queueRegistration(RegisterStatisticMessage.LONG_SAMPLE, statisticName);
+  }
+
+  public void registerDoubleSampleStatistic(String statisticName)
+    throws GrinderException {
+
+    checkNotWorkerThread("registerDoubleSampleStatistic()");
+    getStatisticsIndexMap().registerDoubleSampleIndex(statisticName);
+    queueRegistration(RegisterStatisticMessage.DOUBLE_SAMPLE, statisticName);
+  }
+
+  private StatisticsIndexMap getStatisticsIndexMap() {
+    return m_statisticsServices.getStatisticsIndexMap();
+  }
+
+  private void queueRegistration(int type, String statisticName)
+    throws GrinderException {
+
+    // Queue up, will get flushed before the next statistics report. The
+    // console registers the statistic as it reads the message.
+    m_consoleSender.queue(
+      new RegisterStatisticMessage(type,
+                                   statisticName,
+                                   getStatisticsIndexMap()));
+  }
+
+  private void checkNotWorkerThread(String method)
+    throws InvalidContextException {
+
+    if (m_threadContextLocator.get() != null) {
+      throw new InvalidContextException(
+        method + " is not supported from worker threads");
+    }
+  }
 }
@@ -28,7 +28,9 @@ import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.statistics.ImmutableStatisticsSet;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 
 
 /**
@@ -122,6 +124,19 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
     getStatisticsChecked().addValue(getDoubleIndex(statisticName), value);
   }
 
+  public void addLongSample(String statisticName, long value)
+    throws InvalidContextException, NoSuchStatisticException {
+
+    getStatisticsChecked().addSample(getLongSampleIndex(statisticName), value);
+  }
+
+  public void addDoubleSample(String statisticName, double value)
+    throws InvalidContextException, NoSuchStatisticException {
+
+    getStatisticsChecked().addSample(
+      getDoubleSampleIndex(statisticName), value);
+  }
+
   public long getLong(String statisticName) throws NoSuchStatisticException {
     return getImmutableStatistics().getValue(getLongIndex(statisticName));
   }
@@ -178,4 +193,36 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
 
     return index;
   }
+
+  private LongSampleIndex getLongSampleIndex(String statisticName)
+    throws NoSuchStatisticException {
+
+    final LongSampleIndex index =
+      m_testStatisticsHelper.getStatisticsIndexMap().getLongSampleIndex(
+        statisticName);
+
+    // The standard sample statistics are maintained by the engine.
+    if (index == null || !index.isRegistered()) {
+      throw new NoSuchStatisticException(
+        "'" + statisticName + "' is not a registered long sample statistic.");
+    }
+
+    return index;
+  }
+
+  private DoubleSampleIndex getDoubleSampleIndex(String statisticName)
+    throws NoSuchStatisticException {
+
+    final DoubleSampleIndex index =
+      m_testStatisticsHelper.getStatisticsIndexMap().getDoubleSampleIndex(
+        statisticName);
+
+    if (index == null || !index.isRegistered()) {
+      throw new NoSuchStatisticException(
+        "'" + statisticName +
+        "' is not a registered double sample statistic.");
+    }
+
+    return index;
+  }
 }
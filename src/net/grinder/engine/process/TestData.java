@@ -63,6 +63,8 @@ final class TestData implements RegisteredTest, Recorder {
   private final RecorderHolderThreadLocal m_recorderHolderTL =
     new RecorderHolderThreadLocal();
 
+  private volatile int m_sampleInterval = 1;
+
   TestData(ThreadContextLocator threadContextLocator,
            StatisticsSetFactory statisticsSetFactory,
            TestStatisticsHelper testStatisticsHelper,
@@ -100,6 +102,13 @@ final class TestData implements RegisteredTest, Recorder {
     m_instrumenter.instrument(getTest(), this, target);
   }
 
+  /**
+   * {@inheritDoc}.
+   */
+  public void setSampleInterval(int interval) {
+    m_sampleInterval = interval;
+  }
+
   public void start() throws EngineException {
     m_recorderHolderTL.getHolder().start();
   }
@@ -111,34 +120,54 @@ final class TestData implements RegisteredTest, Recorder {
   /**
    * Thread local storage which keeps a {@link RecorderHolder} for each
    * worker thread that has ever used this test.
+   *
+   * <p>
+   * A thread that runs parallel tasks serves a different child context for
+   * each task, so its holder is replaced when the context changes. Worker
+   * threads always have the same context, and skip the check.
+   * </p>
    */
   private final class RecorderHolderThreadLocal {
     private final ThreadLocal<RecorderHolder> m_threadLocal =
       new ThreadLocal<RecorderHolder>() {
 
       public RecorderHolder initialValue() {
-        final ThreadContext threadContext = m_threadContextLocator.get();
-
-        if (threadContext == null) {
-          throw new UncheckedException("Only Worker Threads can invoke tests");
-        }
-
-        final TestRecorder recorder =
-          new TestRecorder(threadContext.getDispatchResultReporter(),
-                           new StopWatchImplementation(m_timeAuthority));
-
-        return new RecorderHolder(threadContext, recorder);
+        return createHolder(m_threadContextLocator.get());
       }
     };
 
     public RecorderHolder getHolder() throws EngineException {
       try {
-        return m_threadLocal.get();
+        final RecorderHolder holder = m_threadLocal.get();
+
+        if (holder.isForChildContext()) {
+          final ThreadContext threadContext = m_threadContextLocator.get();
+
+          if (threadContext != holder.getThreadContext()) {
+            final RecorderHolder newHolder = createHolder(threadContext);
+            m_threadLocal.set(newHolder);
+            return newHolder;
+          }
+        }
+
+        return holder;
       }
       catch (UncheckedException e) {
         throw new EngineException(e.getMessage());
       }
     }
+
+    private RecorderHolder createHolder(ThreadContext threadContext) {
+      if (threadContext == null) {
+        throw new UncheckedException("Only Worker Threads can invoke tests");
+      }
+
+      final TestRecorder recorder =
+        new TestRecorder(threadContext.getDispatchResultReporter(),
+                         new StopWatchImplementation(m_timeAuthority));
+
+      return new RecorderHolder(threadContext, recorder);
+    }
   }
 
   /**
@@ -156,21 +185,56 @@ final class TestData implements RegisteredTest, Recorder {
    * recorded multiple times, making life simpler for the user, and for the
    * script engine instrumentation.
    * </p>
+   *
+   * <p>
+   * If the test has a sample interval, only one in every interval
+   * outermost invocations is timed by the {@link TestRecorder}. The others
+   * are simply counted, and an {@link UnsampledContext} stands in for the
+   * recorder on the dispatch context stack so that nested tests still see
+   * their parent.
+   * </p>
    */
-  private static final class RecorderHolder implements Recorder {
+  private final class RecorderHolder implements Recorder {
 
     private final ThreadContext m_threadContext;
+    private final boolean m_isForChildContext;
     private final TestRecorder m_recorder;
+    private final UnsampledContext m_unsampledContext;
     private int m_nestingDepth = 0;
+    private int m_skipCount = 0;
+    private boolean m_sampled;
 
     public RecorderHolder(ThreadContext threadContext, TestRecorder recorder) {
       m_threadContext = threadContext;
+      m_isForChildContext = threadContext.getWorkerContext() != threadContext;
       m_recorder = recorder;
+      m_unsampledContext =
+        new UnsampledContext(new StopWatchImplementation(m_timeAuthority));
+    }
+
+    public ThreadContext getThreadContext() {
+      return m_threadContext;
+    }
+
+    public boolean isForChildContext() {
+      return m_isForChildContext;
     }
 
     public void start() throws DispatchStateException {
       if (m_nestingDepth++ == 0) {
         // Entering outer frame.
+        if (m_skipCount > 0) {
+          --m_skipCount;
+          m_sampled = false;
+
+          m_threadContext.pushDispatchContext(m_unsampledContext);
+          m_unsampledContext.start();
+          return;
+        }
+
+        m_skipCount = m_sampleInterval - 1;
+        m_sampled = true;
+
         m_threadContext.pushDispatchContext(m_recorder);
         m_recorder.start();
       }
@@ -179,10 +243,72 @@ final class TestData implements RegisteredTest, Recorder {
     public void end(boolean success)  {
       if (--m_nestingDepth == 0) {
         // Leaving outer frame.
-        m_recorder.end(success);
-        m_threadContext.popDispatchContext();
+        if (m_sampled) {
+          m_recorder.end(success);
+          m_threadContext.popDispatchContext();
+        }
+        else {
+          m_unsampledContext.end();
+          m_threadContext.popDispatchContext();
+
+          if (success) {
+            m_testStatisticsHelper.recordUntimedTest(m_testStatistics);
+          }
+          else {
+            m_testStatisticsHelper.incrementErrors(m_testStatistics);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Stands in for a {@link TestRecorder} on the dispatch context stack when
+   * an invocation is not sampled. Nested tests mark our test as composite,
+   * and time the script pauses, as usual. There are no statistics to
+   * report.
+   */
+  private final class UnsampledContext implements DispatchContext {
+
+    private final StopWatch m_pauseTimer;
+
+    public UnsampledContext(StopWatch pauseTimer) {
+      m_pauseTimer = pauseTimer;
+    }
+
+    public void start() {
+      m_pauseTimer.reset();
+    }
+
+    public void end() {
+      if (m_pauseTimer.isRunning()) {
+        m_pauseTimer.stop();
       }
     }
+
+    public Test getTest() {
+      return TestData.this.getTest();
+    }
+
+    public StatisticsForTest getStatisticsForTest() {
+      return null;
+    }
+
+    public void report() {
+      // Counted by RecorderHolder.end().
+    }
+
+    public StopWatch getPauseTimer() {
+      return m_pauseTimer;
+    }
+
+    public long getElapsedTime() {
+      return -1;
+    }
+
+    public void setHasNestedContexts() {
+      m_testStatistics.setIsComposite();
+    }
   }
 
   /**
@@ -48,4 +48,6 @@ interface TestStatisticsHelper {
   StatisticsIndexMap getStatisticsIndexMap();
 
   void incrementErrors(StatisticsSet testStatistics);
+
+  void recordUntimedTest(StatisticsSet testStatistics);
 }
@@ -93,4 +93,8 @@ final class TestStatisticsHelperImplementation
   public void incrementErrors(StatisticsSet testStatistics) {
     testStatistics.addValue(m_errorsIndex, 1);
   }
+
+  public void recordUntimedTest(StatisticsSet testStatistics) {
+    testStatistics.addValue(m_untimedTestsIndex, 1);
+  }
 }
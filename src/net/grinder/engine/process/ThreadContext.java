@@ -74,5 +74,37 @@ interface ThreadContext extends PluginThreadContext {
   void reportPendingDispatchContext();
 
   void shutdown();
+
+  /**
+   * Create a context for a task that a worker thread runs on another thread.
+   * The child context shares this context's logger, data log, SSL context
+   * factory and life cycle listeners, but has its own dispatch context stack.
+   *
+   * @return The child context.
+   */
+  ThreadContext createChildContext();
+
+  /**
+   * The context of the worker thread.
+   *
+   * @return This context, or the context that created this context if it is
+   *         a child context.
+   */
+  ThreadContext getWorkerContext();
+
+  /**
+   * Register a listener for the end of a child context's task. The
+   * listener's {@link ThreadLifeCycleListener#endThread()} is called by
+   * {@link #fireEndTaskEvent()}; its other methods are not called.
+   *
+   * @param listener The listener.
+   */
+  void registerTaskLifeCycleListener(ThreadLifeCycleListener listener);
+
+  /**
+   * Called when the task of a child context is complete. Has no effect for
+   * a worker thread's context.
+   */
+  void fireEndTaskEvent();
 }
 
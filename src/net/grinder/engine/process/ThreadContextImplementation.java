@@ -50,8 +50,10 @@ final class ThreadContextImplementation
   implements ThreadContext, PluginThreadContext {
 
   private final ListenerSupport<ThreadLifeCycleListener>
-    m_threadLifeCycleListeners =
-      new ListenerSupport<ThreadLifeCycleListener>();
+    m_threadLifeCycleListeners;
+
+  private final ListenerSupport<ThreadLifeCycleListener>
+    m_taskLifeCycleListeners = new ListenerSupport<ThreadLifeCycleListener>();
 
   private final DispatchContextStack m_dispatchContextStack =
     new DispatchContextStack();
@@ -60,6 +62,15 @@ final class ThreadContextImplementation
   private final FilenameFactory m_filenameFactory;
   private final DispatchResultReporter m_dispatchResultReporter;
 
+  /** The worker thread's context, or {@code null} if we are it. */
+  private final ThreadContextImplementation m_parent;
+
+  /**
+   * For a child context, the worker thread's current dispatch context when
+   * the child was created.
+   */
+  private final DispatchContext m_forkingDispatchContext;
+
   private SSLContextFactory m_sslContextFactory;
 
   private boolean m_delayReports;
@@ -77,8 +88,11 @@ final class ThreadContextImplementation
                                      PrintWriter dataWriter)
     throws EngineException {
 
+    m_threadLifeCycleListeners = new ListenerSupport<ThreadLifeCycleListener>();
     m_threadLogger = threadLogger;
     m_filenameFactory = filenameFactory;
+    m_parent = null;
+    m_forkingDispatchContext = null;
 
     // Undocumented property. Added so Tom Barnes can investigate overhead
     // of data logging.
@@ -118,6 +132,32 @@ final class ThreadContextImplementation
       });
   }
 
+  private ThreadContextImplementation(ThreadContextImplementation parent,
+                                      DispatchContext forkingDispatchContext) {
+    m_parent = parent;
+    m_forkingDispatchContext = forkingDispatchContext;
+    m_threadLifeCycleListeners = parent.m_threadLifeCycleListeners;
+    m_threadLogger = parent.m_threadLogger;
+    m_filenameFactory = parent.m_filenameFactory;
+    m_dispatchResultReporter = parent.m_dispatchResultReporter;
+  }
+
+  public ThreadContext createChildContext() {
+    return new ThreadContextImplementation(
+      (ThreadContextImplementation) getWorkerContext(),
+      peekDispatchContext());
+  }
+
+  private DispatchContext peekDispatchContext() {
+    final DispatchContext top = m_dispatchContextStack.peekTop();
+
+    return top != null ? top : m_forkingDispatchContext;
+  }
+
+  public ThreadContext getWorkerContext() {
+    return m_parent != null ? m_parent : this;
+  }
+
   public FilenameFactory getFilenameFactory() {
     return m_filenameFactory;
   }
@@ -135,11 +175,20 @@ final class ThreadContextImplementation
   }
 
   public SSLContextFactory getThreadSSLContextFactory() {
+    if (m_parent != null) {
+      return m_parent.getThreadSSLContextFactory();
+    }
+
     return m_sslContextFactory;
   }
 
   public void setThreadSSLContextFactory(SSLContextFactory sslContextFactory) {
-    m_sslContextFactory = sslContextFactory;
+    if (m_parent != null) {
+      m_parent.setThreadSSLContextFactory(sslContextFactory);
+    }
+    else {
+      m_sslContextFactory = sslContextFactory;
+    }
   }
 
   public DispatchResultReporter getDispatchResultReporter() {
@@ -186,10 +235,24 @@ final class ThreadContextImplementation
 
   }
 
+  public void registerTaskLifeCycleListener(
+    ThreadLifeCycleListener listener) {
+    m_taskLifeCycleListeners.add(listener);
+  }
+
+  public void fireEndTaskEvent() {
+    if (m_parent != null) {
+      m_taskLifeCycleListeners.apply(
+        new Informer<ThreadLifeCycleListener>() {
+          public void inform(ThreadLifeCycleListener l) { l.endThread(); }
+        });
+    }
+  }
+
   public void pushDispatchContext(DispatchContext dispatchContext)
     throws ShutdownException {
 
-    if (m_shutdown) {
+    if (m_shutdown || m_parent != null && m_parent.m_shutdown) {
       // As soon as we're shutdown, we disable the instrumentation. This
       // avoids reporting of misleading test failures.
 
@@ -205,7 +268,7 @@ final class ThreadContextImplementation
     getThreadLogger().setCurrentTestNumber(
       dispatchContext.getTest().getNumber());
 
-    final DispatchContext existingContext = m_dispatchContextStack.peekTop();
+    final DispatchContext existingContext = peekDispatchContext();
 
     if (existingContext != null) {
       existingContext.setHasNestedContexts();
@@ -233,7 +296,14 @@ final class ThreadContextImplementation
         dispatchContext.getPauseTimer());
     }
 
-    m_statisticsForLastTest = dispatchContext.getStatisticsForTest();
+    final StatisticsForTest statisticsForTest =
+      dispatchContext.getStatisticsForTest();
+
+    // Invocations that are not sampled have no statistics, and don't
+    // replace those of the last test.
+    if (statisticsForTest != null) {
+      m_statisticsForLastTest = statisticsForTest;
+    }
 
     // Flush any pending report created by an inner test.
     reportPendingDispatchContext();
@@ -31,6 +31,9 @@ import net.grinder.statistics.StatisticsSet;
 /**
  * Writes lines to the data file on behalf of a particular thread.
  *
+ * <p>Synchronised, since tasks the thread runs in parallel share its
+ * writer.</p>
+ *
  * @author Philip Aston
  * @version $Revision: 3762 $
  */
@@ -54,10 +57,10 @@ class ThreadDataWriter {
     m_bufferAfterThreadIDIndex = m_buffer.length();
   }
 
-  public void report(int runNumber,
-                     Test test,
-                     long timeSinceExecutionStart,
-                     StatisticsSet statistics) {
+  public synchronized void report(int runNumber,
+                                  Test test,
+                                  long timeSinceExecutionStart,
+                                  StatisticsSet statistics) {
 
     if (runNumber == m_lastRunNumber && m_lastRunNumber != -1) {
       m_buffer.setLength(m_bufferAfterRunNumberIndex);
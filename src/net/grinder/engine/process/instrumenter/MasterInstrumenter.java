@@ -32,6 +32,7 @@ import net.grinder.engine.process.instrumenter.dcr.DCRInstrumenterFactory;
 import net.grinder.engine.process.instrumenter.traditionaljython.JythonInstrumenterFactory;
 import net.grinder.script.NonInstrumentableTypeException;
 import net.grinder.script.NotWrappableTypeException;
+import net.grinder.util.weave.WeavingException;
 
 
 /**
@@ -45,6 +46,8 @@ public final class MasterInstrumenter implements Instrumenter {
   private final List<Instrumenter> m_instrumenters =
     new ArrayList<Instrumenter>();
 
+  private final DCRInstrumenterFactory m_dcrInstrumenterFactory;
+
   /**
    * Constructor for MasterInstrumenter.
    * @param logger Logger.
@@ -65,15 +68,18 @@ public final class MasterInstrumenter implements Instrumenter {
       addedTraditionalJythonInstrumenter = false;
     }
 
-    final DCRInstrumenterFactory dcrInstrumenterFactory =
-          DCRInstrumenterFactory.createFactory(logger);
+    m_dcrInstrumenterFactory = DCRInstrumenterFactory.createFactory(logger);
 
-    if (dcrInstrumenterFactory != null) {
+    if (m_dcrInstrumenterFactory != null) {
       if (!addedTraditionalJythonInstrumenter) {
-        dcrInstrumenterFactory.addJythonInstrumenter(m_instrumenters);
+        m_dcrInstrumenterFactory.addJythonInstrumenter(m_instrumenters);
       }
 
-      dcrInstrumenterFactory.addJavaInstrumenter(m_instrumenters);
+      // Must precede the Java instrumenter, which would otherwise
+      // instrument the JRuby implementation classes.
+      m_dcrInstrumenterFactory.addJRubyInstrumenter(m_instrumenters);
+
+      m_dcrInstrumenterFactory.addJavaInstrumenter(m_instrumenters);
     }
 
     logger.output("instrumentation agents: " + getDescription());
@@ -114,6 +120,29 @@ public final class MasterInstrumenter implements Instrumenter {
     throw new NonInstrumentableTypeException("Failed to wrap " + target);
   }
 
+  /**
+   * Collect byte code instrumentation until {@link #applyDeferredWeaving} is
+   * called, so that the classes are retransformed together. Instrumented
+   * objects are not recorded in the meantime.
+   */
+  public void deferWeaving() {
+    if (m_dcrInstrumenterFactory != null) {
+      m_dcrInstrumenterFactory.deferWeaving();
+    }
+  }
+
+  /**
+   * Apply the byte code instrumentation collected since
+   * {@link #deferWeaving} was called.
+   *
+   * @throws WeavingException If the instrumentation could not be applied.
+   */
+  public void applyDeferredWeaving() throws WeavingException {
+    if (m_dcrInstrumenterFactory != null) {
+      m_dcrInstrumenterFactory.applyDeferredWeaving();
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -73,7 +73,8 @@ public final class DCRInstrumenterFactory {
 
     return new DCRInstrumenterFactory(instrumentation,
                                       RecorderLocator.class,
-                                      RecorderLocator.getRecorderRegistry());
+                                      RecorderLocator.getRecorderRegistry(),
+                                      logger);
   }
 
   private final DCRWeaver m_weaver;
@@ -84,7 +85,8 @@ public final class DCRInstrumenterFactory {
    */
   DCRInstrumenterFactory(Instrumentation instrumentation,
                          Class<?> recorderAdviceClass,
-                         RecorderRegistry recorderRegistry) {
+                         RecorderRegistry recorderRegistry,
+                         Logger logger) {
 
     m_recorderRegistry = recorderRegistry;
     final ASMTransformerFactory transformerFactory;
@@ -96,7 +98,26 @@ public final class DCRInstrumenterFactory {
       throw new AssertionError(e);
     }
 
-    m_weaver = new DCRWeaver(transformerFactory, instrumentation);
+    m_weaver = new DCRWeaver(transformerFactory, instrumentation, logger);
+  }
+
+  /**
+   * Collect the weaving requested by the instrumenters, rather than applying
+   * it for each instrumented object.
+   *
+   * @see #applyDeferredWeaving
+   */
+  public void deferWeaving() {
+    m_weaver.deferChanges();
+  }
+
+  /**
+   * Apply the weaving collected since {@link #deferWeaving} was called.
+   *
+   * @throws WeavingException If the weaving could not be applied.
+   */
+  public void applyDeferredWeaving() throws WeavingException {
+    m_weaver.applyDeferredChanges();
   }
 
   /**
@@ -127,6 +148,28 @@ public final class DCRInstrumenterFactory {
     return false;
   }
 
+  /**
+   * Add a JRuby instrumenter.
+   *
+   * @param instrumenters The list of instrumenters to modify.
+   * @return {@code true} if and only if {@code instrumenters} was modified.
+   */
+  public boolean addJRubyInstrumenter(List<Instrumenter> instrumenters) {
+
+    try {
+      instrumenters.add(new JRubyInstrumenter(m_weaver, m_recorderRegistry));
+      return true;
+    }
+    catch (WeavingException e) {
+      // Unsupported version of JRuby.
+    }
+    catch (LinkageError e) {
+      // JRuby not available.
+    }
+
+    return false;
+  }
+
   /**
    * Add a Jython instrumenter.
    *
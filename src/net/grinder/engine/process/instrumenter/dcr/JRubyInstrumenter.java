@@ -0,0 +1,219 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.instrumenter.dcr;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.script.NonInstrumentableTypeException;
+import net.grinder.util.weave.Weaver;
+import net.grinder.util.weave.WeavingException;
+import net.grinder.util.weave.Weaver.TargetSource;
+
+import org.jruby.RubyClass;
+import org.jruby.RubyMethod;
+import org.jruby.RubyModule;
+import org.jruby.RubyProc;
+import org.jruby.internal.runtime.methods.DynamicMethod;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.builtin.IRubyObject;
+
+
+/**
+ * DCRInstrumenter for JRuby.
+ *
+ * <p>
+ * Ruby objects passed to {@link net.grinder.script.Test#record} are
+ * instrumented directly, so there is no need to wrap them in Java callback
+ * objects.
+ * </p>
+ *
+ * <ul>
+ * <li>For a {@code Proc} (a block or lambda), or a {@code Method} bound with
+ * {@code Object#method}, invocations through {@code call} are recorded.</li>
+ * <li>For any other Ruby object, including a class or a module, every Ruby
+ * method invoked with the object as {@code self} is recorded. The
+ * {@code DynamicMethod} implementations of the methods found in the object's
+ * class hierarchy, up to but excluding {@code Object}, are instrumented.
+ * Recording a class records {@code new}.</li>
+ * </ul>
+ *
+ * <p>
+ * The advice is keyed on the target, and woven into the JRuby invocation
+ * classes themselves, so recorded methods keep their cached and JIT compiled
+ * call sites.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision:$
+ */
+final class JRubyInstrumenter extends DCRInstrumenter {
+
+  private final List<Method> m_procMethods;
+  private final List<Method> m_methodMethods;
+
+  /**
+   * Constructor for JRubyInstrumenter.
+   *
+   * @param weaver The weaver.
+   * @param recorderRegistry The recorder registry.
+   * @throws WeavingException If the JRuby version isn't supported.
+   */
+  public JRubyInstrumenter(Weaver weaver,
+                           RecorderRegistry recorderRegistry)
+    throws WeavingException {
+
+    super(weaver, recorderRegistry);
+
+    m_procMethods = callMethods(RubyProc.class);
+    m_methodMethods = callMethods(RubyMethod.class);
+
+    if (m_procMethods.isEmpty() || m_methodMethods.isEmpty()) {
+      throw new WeavingException("Unsupported version of JRuby");
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getDescription() {
+    return "byte code transforming instrumenter for JRuby";
+  }
+
+  @Override
+  protected boolean instrument(Object target, Recorder recorder)
+    throws NonInstrumentableTypeException {
+
+    if (target instanceof RubyProc) {
+      instrumentAll(target, m_procMethods, TargetSource.FIRST_PARAMETER,
+                    recorder);
+    }
+    else if (target instanceof RubyMethod) {
+      instrumentAll(target, m_methodMethods, TargetSource.FIRST_PARAMETER,
+                    recorder);
+    }
+    else if (target instanceof IRubyObject) {
+      final IRubyObject rubyObject = (IRubyObject) target;
+      final RubyClass objectClass = rubyObject.getRuntime().getObject();
+
+      final Set<Class<?>> methodClasses = new HashSet<Class<?>>();
+
+      for (RubyModule module = rubyObject.getMetaClass();
+           module != null && module != objectClass;
+           module = module.getSuperClass()) {
+
+        for (DynamicMethod method : module.getMethods().values()) {
+          methodClasses.add(method.getClass());
+        }
+      }
+
+      if (methodClasses.isEmpty()) {
+        throw new NonInstrumentableTypeException(
+          "No Ruby methods found for " + target.getClass());
+      }
+
+      for (Class<?> methodClass : methodClasses) {
+        // The self argument follows the DynamicMethod and the ThreadContext.
+        instrumentAll(target,
+                      dynamicMethodCallMethods(methodClass),
+                      TargetSource.THIRD_PARAMETER,
+                      recorder);
+      }
+    }
+    else {
+      // Let the Java instrumenter have a go.
+      return false;
+    }
+
+    return true;
+  }
+
+  private void instrumentAll(Object target,
+                             List<Method> methods,
+                             TargetSource targetSource,
+                             Recorder recorder)
+    throws NonInstrumentableTypeException {
+
+    for (Method method : methods) {
+      instrument(target, method, targetSource, recorder);
+    }
+  }
+
+  /**
+   * The {@code call} methods of a {@code Proc} or {@code Method}
+   * implementation.
+   */
+  private static List<Method> callMethods(Class<?> theClass) {
+    final List<Method> result = new ArrayList<Method>();
+
+    for (Method method : theClass.getDeclaredMethods()) {
+      final Class<?>[] parameterTypes = method.getParameterTypes();
+
+      if (method.getName().startsWith("call") &&
+          parameterTypes.length >= 1 &&
+          parameterTypes[0] == ThreadContext.class) {
+        result.add(method);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * The {@code call} methods of a {@code DynamicMethod} implementation.
+   *
+   * <p>
+   * We don't instrument {@code DynamicMethod} itself, since every Ruby call
+   * passes through it. Its arity specific defaults delegate to the general
+   * form, which every implementation declares. Overridden methods might be
+   * instrumented more than once, but nested calls for the same test are
+   * ignored.
+   * </p>
+   */
+  private static List<Method> dynamicMethodCallMethods(Class<?> methodClass) {
+    final List<Method> result = new ArrayList<Method>();
+
+    for (Class<?> c = methodClass;
+         c != null && c != DynamicMethod.class;
+         c = c.getSuperclass()) {
+
+      for (Method method : c.getDeclaredMethods()) {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+
+        if (method.getName().equals("call") &&
+            !Modifier.isAbstract(method.getModifiers()) &&
+            parameterTypes.length >= 2 &&
+            parameterTypes[0] == ThreadContext.class &&
+            parameterTypes[1] == IRubyObject.class) {
+          result.add(method);
+        }
+      }
+    }
+
+    return result;
+  }
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import net.grinder.common.UncheckedGrinderException;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.util.weave.j2se6.DCRWeaver;
 import extra166y.CustomConcurrentHashMap;
 
 
@@ -53,8 +54,20 @@ public final class RecorderLocator implements RecorderRegistry {
    */
   static void clearRecorders() {
     s_instance.m_recorders.clear();
+
+    synchronized (s_instance) {
+      s_recordedLocations = new boolean[0];
+    }
   }
 
+  /**
+   * Indexed by location number, {@code true} if a recorder has ever been
+   * registered for the location. Lets the woven code skip the map lookups for
+   * locations that have never been recorded with a single array load. Copied
+   * on write, guarded by s_instance.
+   */
+  private static volatile boolean[] s_recordedLocations = new boolean[0];
+
   /**
    * Target reference -> location -> recorder list. Location strings are
    * interned, so we use an identity hash map for both maps. We use concurrent
@@ -126,6 +139,56 @@ public final class RecorderLocator implements RecorderRegistry {
     }
   }
 
+  /**
+   * Called when a weaved method is entered. The fast path, used by code woven
+   * by {@link DCRWeaver}.
+   *
+   * @param target
+   *          The reference used to call the method. The class is used for
+   *          static methods or constructors.
+   * @param location
+   *          Unique identity generated when the method was instrumented.
+   *          Will be interned.
+   * @param locationID
+   *          The number of the location.
+   */
+  public static void enter(Object target, String location, int locationID) {
+    final boolean[] recordedLocations = s_recordedLocations;
+
+    if (locationID < recordedLocations.length &&
+        recordedLocations[locationID]) {
+      enter(target, location);
+    }
+  }
+
+  /**
+   * Called when a weaved method is exited. The fast path, used by code woven
+   * by {@link DCRWeaver}.
+   *
+   * @param target
+   *          The reference used to call the method. The class is used for
+   *          static methods or constructors.
+   * @param location
+   *          Unique identity generated when the method was instrumented.
+   *          Will be interned.
+   * @param locationID
+   *          The number of the location.
+   * @param success
+   *          {@code true} if the exit was a normal return, {code false} if an
+   *          exception was thrown.
+   */
+  public static void exit(Object target,
+                          String location,
+                          int locationID,
+                          boolean success) {
+    final boolean[] recordedLocations = s_recordedLocations;
+
+    if (locationID < recordedLocations.length &&
+        recordedLocations[locationID]) {
+      exit(target, location, success);
+    }
+  }
+
   /**
    * Called when a weaved method is exited.
    *
@@ -210,6 +273,23 @@ public final class RecorderLocator implements RecorderRegistry {
       locationMap.putIfAbsent(location.intern(), newList);
 
     (oldList != null ? oldList : newList).add(recorder);
+
+    final int locationID = DCRWeaver.getLocationID(location);
+
+    if (locationID >= 0) {
+      synchronized (this) {
+        final boolean[] old = s_recordedLocations;
+
+        if (locationID >= old.length || !old[locationID]) {
+          final boolean[] recordedLocations =
+            new boolean[locationID < old.length ?
+                        old.length : Math.max(old.length * 2, locationID + 1)];
+          System.arraycopy(old, 0, recordedLocations, 0, old.length);
+          recordedLocations[locationID] = true;
+          s_recordedLocations = recordedLocations;
+        }
+      }
+    }
   }
 
   private static final class RecordingFailureException
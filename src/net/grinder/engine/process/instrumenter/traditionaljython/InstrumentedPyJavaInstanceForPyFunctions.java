@@ -30,6 +30,13 @@ import org.python.core.PyObject;
 /**
  * An instrumented <code>PyJavaInstance</code>, used to wrap PyFunctions.
  *
+ * <p>
+ * Calls to the proxy are dispatched directly to the function, rather than
+ * through <code>PyInstance.__call__</code>, which would look up and invoke
+ * the Java <code>__call__</code> method of the function reflectively. Calls
+ * with up to three arguments do not allocate an argument array.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4073 $
  */
@@ -37,6 +44,7 @@ class InstrumentedPyJavaInstanceForPyFunctions
   extends AbstractInstrumentedPyJavaInstance {
 
   private final PyFunction m_pyFunction;
+  private final PyDispatcher m_dispatcher;
 
   public InstrumentedPyJavaInstanceForPyFunctions(
     Test test,
@@ -44,6 +52,27 @@ class InstrumentedPyJavaInstanceForPyFunctions
     PyDispatcher dispatcher) {
     super(test, pyFunction, dispatcher);
     m_pyFunction = pyFunction;
+    m_dispatcher = dispatcher;
+  }
+
+  public final PyObject __call__() {
+    return m_dispatcher.dispatchCall(m_pyFunction);
+  }
+
+  public final PyObject __call__(PyObject arg1) {
+    return m_dispatcher.dispatchCall(m_pyFunction, arg1);
+  }
+
+  public final PyObject __call__(PyObject arg1, PyObject arg2) {
+    return m_dispatcher.dispatchCall(m_pyFunction, arg1, arg2);
+  }
+
+  public final PyObject __call__(PyObject arg1, PyObject arg2, PyObject arg3) {
+    return m_dispatcher.dispatchCall(m_pyFunction, arg1, arg2, arg3);
+  }
+
+  public final PyObject __call__(PyObject[] args, String[] keywords) {
+    return m_dispatcher.dispatchCall(m_pyFunction, args, keywords);
   }
 
   public final PyObject invoke(final String name) {
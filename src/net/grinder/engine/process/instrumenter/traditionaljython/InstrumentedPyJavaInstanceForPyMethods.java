@@ -23,6 +23,7 @@ package net.grinder.engine.process.instrumenter.traditionaljython;
 
 import net.grinder.common.Test;
 
+import org.python.core.PyFunction;
 import org.python.core.PyMethod;
 import org.python.core.PyObject;
 
@@ -30,6 +31,15 @@ import org.python.core.PyObject;
 /**
  * An instrumented <code>PyJavaInstance</code>, used to wrap PyMethods.
  *
+ * <p>
+ * Calls to the proxy are dispatched directly to the method, rather than
+ * through <code>PyInstance.__call__</code>, which would look up and invoke
+ * the Java <code>__call__</code> method of the method reflectively. For
+ * methods bound to an instance, we also cache the underlying function and
+ * pass it the instance ourselves, so calls with up to two arguments do not
+ * allocate an argument array.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4073 $
  */
@@ -37,12 +47,61 @@ class InstrumentedPyJavaInstanceForPyMethods
   extends AbstractInstrumentedPyJavaInstance {
 
   private final PyMethod m_pyMethod;
+  private final PyDispatcher m_dispatcher;
+
+  /** The function of a bound method, or <code>null</code>. */
+  private final PyObject m_boundFunction;
+  private final PyObject m_self;
 
   public InstrumentedPyJavaInstanceForPyMethods(Test test,
                                                 PyMethod pyMethod,
                                                 PyDispatcher dispatcher) {
     super(test, pyMethod, dispatcher);
     m_pyMethod = pyMethod;
+    m_dispatcher = dispatcher;
+
+    // Other types of function, e.g. PyReflectedFunction, treat the first
+    // argument specially, so we only take the short cut for Python functions.
+    if (pyMethod.im_self != null && pyMethod.im_func instanceof PyFunction) {
+      m_boundFunction = pyMethod.im_func;
+      m_self = pyMethod.im_self;
+    }
+    else {
+      m_boundFunction = null;
+      m_self = null;
+    }
+  }
+
+  public final PyObject __call__() {
+    if (m_boundFunction != null) {
+      return m_dispatcher.dispatchCall(m_boundFunction, m_self);
+    }
+
+    return m_dispatcher.dispatchCall(m_pyMethod);
+  }
+
+  public final PyObject __call__(PyObject arg1) {
+    if (m_boundFunction != null) {
+      return m_dispatcher.dispatchCall(m_boundFunction, m_self, arg1);
+    }
+
+    return m_dispatcher.dispatchCall(m_pyMethod, arg1);
+  }
+
+  public final PyObject __call__(PyObject arg1, PyObject arg2) {
+    if (m_boundFunction != null) {
+      return m_dispatcher.dispatchCall(m_boundFunction, m_self, arg1, arg2);
+    }
+
+    return m_dispatcher.dispatchCall(m_pyMethod, arg1, arg2);
+  }
+
+  public final PyObject __call__(PyObject arg1, PyObject arg2, PyObject arg3) {
+    return m_dispatcher.dispatchCall(m_pyMethod, arg1, arg2, arg3);
+  }
+
+  public final PyObject __call__(PyObject[] args, String[] keywords) {
+    return m_dispatcher.dispatchCall(m_pyMethod, args, keywords);
   }
 
   public final PyObject invoke(final String name) {
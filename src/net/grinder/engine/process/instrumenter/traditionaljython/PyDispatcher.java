@@ -22,6 +22,7 @@
 package net.grinder.engine.process.instrumenter.traditionaljython;
 
 import net.grinder.common.UncheckedGrinderException;
+import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.ScriptEngine.Recorder;
 
 import org.python.core.Py;
@@ -38,6 +39,12 @@ import org.python.core.PyObject;
  * methods.
  * </p>
  *
+ * <p>
+ * The <code>dispatchCall</code> methods are a fast path for the common case
+ * of calling a known target with a few arguments. They avoid allocating a
+ * {@link Callable} and an argument array for each invocation.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4017 $
  */
@@ -60,29 +67,162 @@ final class PyDispatcher {
   }
 
   public PyObject dispatch(Callable callable) {
+    start();
+
+    boolean success = false;
 
     try {
-      m_recorder.start();
+      final PyObject result = callable.call();
 
-      boolean success = false;
+      success = true;
+
+      return result;
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
+    }
+  }
 
-      try {
-        final PyObject result = callable.call();
+  public PyObject dispatchCall(PyObject target) {
+    start();
 
-        success = true;
+    boolean success = false;
 
-        return result;
-      }
-      finally {
-        m_recorder.end(success);
-      }
+    try {
+      final PyObject result = target.__call__();
+
+      success = true;
+
+      return result;
     }
-    catch (UncheckedGrinderException e) {
-      // Don't translate our unchecked exceptions.
-      throw e;
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
     }
-    catch (Exception e) {
+  }
+
+  public PyObject dispatchCall(PyObject target, PyObject arg1) {
+    start();
+
+    boolean success = false;
+
+    try {
+      final PyObject result = target.__call__(arg1);
+
+      success = true;
+
+      return result;
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
+    }
+  }
+
+  public PyObject dispatchCall(PyObject target,
+                               PyObject arg1,
+                               PyObject arg2) {
+    start();
+
+    boolean success = false;
+
+    try {
+      final PyObject result = target.__call__(arg1, arg2);
+
+      success = true;
+
+      return result;
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
+    }
+  }
+
+  public PyObject dispatchCall(PyObject target,
+                               PyObject arg1,
+                               PyObject arg2,
+                               PyObject arg3) {
+    start();
+
+    boolean success = false;
+
+    try {
+      final PyObject result = target.__call__(arg1, arg2, arg3);
+
+      success = true;
+
+      return result;
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
+    }
+  }
+
+  public PyObject dispatchCall(PyObject target,
+                               PyObject[] args,
+                               String[] keywords) {
+    start();
+
+    boolean success = false;
+
+    try {
+      final PyObject result = target.__call__(args, keywords);
+
+      success = true;
+
+      return result;
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+    finally {
+      end(success);
+    }
+  }
+
+  private void start() {
+    try {
+      m_recorder.start();
+    }
+    catch (EngineException e) {
+      throw Py.JavaError(e);
+    }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+  }
+
+  private void end(boolean success) {
+    try {
+      m_recorder.end(success);
+    }
+    catch (EngineException e) {
       throw Py.JavaError(e);
     }
+    catch (RuntimeException e) {
+      throw translate(e);
+    }
+  }
+
+  private static RuntimeException translate(RuntimeException e) {
+    if (e instanceof UncheckedGrinderException) {
+      // Don't translate our unchecked exceptions.
+      return e;
+    }
+
+    return Py.JavaError(e);
   }
 }
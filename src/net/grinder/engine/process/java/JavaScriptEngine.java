@@ -0,0 +1,314 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.java;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.objectweb.asm.ClassReader;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.ScriptEngine;
+import net.grinder.util.Directory;
+import net.grinder.util.Directory.DirectoryException;
+
+
+/**
+ * Script engine for <code>TestRunner</code>s written in Java, or any other
+ * language that compiles to Java class files.
+ *
+ * <p>
+ * The script can be a <code>.class</code> file, a <code>.jar</code> file
+ * whose manifest names the <code>TestRunner</code> class with a
+ * <code>Main-Class</code> attribute, or a <code>.java</code> source file
+ * that is compiled when the worker process starts. The script directory is
+ * also on the class path, and for source scripts on the source path.
+ * </p>
+ *
+ * <p>
+ * The <code>TestRunner</code> class must implement
+ * {@link java.util.concurrent.Callable} and have a public no-argument
+ * constructor. As with the other engines, an instance is created for each
+ * worker thread and called for each run. If the instance also implements
+ * {@link java.io.Closeable}, it is closed when the worker thread finishes.
+ * Process initialisation, such as creating and recording <code>Test</code>s,
+ * belongs in the class's static initialiser. The script context is
+ * {@link net.grinder.script.Grinder#grinder}.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class JavaScriptEngine implements ScriptEngine {
+
+  private Constructor<?> m_testRunnerConstructor;
+
+  /** Where source scripts are compiled to, or <code>null</code>. */
+  private Directory m_compiledDirectory;
+
+  /**
+   * Load the <code>TestRunner</code> class and run its static initialiser.
+   *
+   * @param script The script.
+   * @throws EngineException If process initialisation failed.
+   */
+  public void initialise(ScriptLocation script) throws EngineException {
+    boolean initialised = false;
+
+    try {
+      load(script);
+      initialised = true;
+    }
+    finally {
+      if (!initialised) {
+        try {
+          deleteCompiledDirectory();
+        }
+        catch (DirectoryException e) {
+          // Report the original failure.
+        }
+      }
+    }
+  }
+
+  private void load(ScriptLocation script) throws EngineException {
+
+    final File file = script.getFile();
+    final String name = file.getName();
+    final File scriptDirectory = script.getDirectory().getFile();
+
+    final File classPath;
+    final String className;
+
+    try {
+      if (name.endsWith(".jar")) {
+        classPath = file;
+        className = getMainClass(file);
+      }
+      else if (name.endsWith(".class")) {
+        className = getClassName(file);
+
+        File root = file.getParentFile();
+
+        for (int i = className.indexOf('.');
+             i != -1;
+             i = className.indexOf('.', i + 1)) {
+          root = root.getParentFile();
+        }
+
+        classPath = root;
+      }
+      else {
+        final File output = File.createTempFile("grinder-java", "");
+        output.delete();
+        m_compiledDirectory = new Directory(output);
+        m_compiledDirectory.create();
+
+        new JavaSourceCompiler().compile(file, scriptDirectory, output);
+
+        classPath = output;
+        className = JavaSourceCompiler.getClassName(file);
+      }
+    }
+    catch (IOException e) {
+      throw new EngineException("Failed to read " + file, e);
+    }
+    catch (LinkageError e) {
+      throw new EngineException("Failed to compile " + file, e);
+    }
+
+    final Class<?> testRunnerClass;
+
+    try {
+      final ClassLoader loader =
+        new URLClassLoader(new URL[] {
+                             classPath.toURI().toURL(),
+                             scriptDirectory.toURI().toURL(), },
+                           getClass().getClassLoader());
+
+      testRunnerClass = Class.forName(className, true, loader);
+    }
+    catch (IOException e) {
+      throw new EngineException("Failed to load " + file, e);
+    }
+    catch (ClassNotFoundException e) {
+      throw new EngineException("Failed to load " + file, e);
+    }
+    catch (ExceptionInInitializerError e) {
+      throw new JavaScriptExecutionException("initialising " + className,
+                                             e.getCause());
+    }
+    catch (LinkageError e) {
+      throw new EngineException("Failed to load " + file, e);
+    }
+
+    if (!Callable.class.isAssignableFrom(testRunnerClass)) {
+      throw new JavaScriptExecutionException(
+        className + " does not implement " + Callable.class.getName());
+    }
+
+    try {
+      m_testRunnerConstructor = testRunnerClass.getConstructor();
+    }
+    catch (NoSuchMethodException e) {
+      throw new JavaScriptExecutionException(
+        className + " does not have a public no-argument constructor");
+    }
+  }
+
+  private static String getMainClass(File jar) throws IOException {
+    final JarFile jarFile = new JarFile(jar);
+
+    try {
+      final Manifest manifest = jarFile.getManifest();
+
+      final String mainClass = manifest != null ?
+        manifest.getMainAttributes().getValue("Main-Class") : null;
+
+      if (mainClass == null) {
+        throw new IOException("No Main-Class attribute in manifest");
+      }
+
+      return mainClass.trim();
+    }
+    finally {
+      jarFile.close();
+    }
+  }
+
+  private static String getClassName(File classFile) throws IOException {
+    final InputStream in = new FileInputStream(classFile);
+
+    try {
+      return new ClassReader(in).getClassName().replace('/', '.');
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public WorkerRunnable createWorkerRunnable() throws EngineException {
+    final Object testRunner;
+
+    try {
+      testRunner = m_testRunnerConstructor.newInstance();
+    }
+    catch (InvocationTargetException e) {
+      throw new JavaScriptExecutionException(
+        "creating per-thread TestRunner object", e.getCause());
+    }
+    catch (Exception e) {
+      throw new JavaScriptExecutionException(
+        "creating per-thread TestRunner object", e);
+    }
+
+    return new JavaWorkerRunnable((Callable<?>) testRunner);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public WorkerRunnable createWorkerRunnable(Object testRunner)
+    throws EngineException {
+
+    if (testRunner instanceof Callable<?>) {
+      return new JavaWorkerRunnable((Callable<?>) testRunner);
+    }
+
+    throw new JavaScriptExecutionException(
+      "testRunner object is not a " + Callable.class.getName());
+  }
+
+  /**
+   * Shut down the engine, removing any compiled classes.
+   *
+   * @throws EngineException If the engine could not be shut down.
+   */
+  public void shutdown() throws EngineException {
+    try {
+      deleteCompiledDirectory();
+    }
+    catch (DirectoryException e) {
+      throw new EngineException("Failed to remove compiled script", e);
+    }
+  }
+
+  private void deleteCompiledDirectory() throws DirectoryException {
+    if (m_compiledDirectory != null) {
+      m_compiledDirectory.deleteContents();
+      m_compiledDirectory.delete();
+      m_compiledDirectory = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getDescription() {
+    return "Java " + System.getProperty("java.version");
+  }
+
+  private static final class JavaWorkerRunnable
+    implements ScriptEngine.WorkerRunnable {
+
+    private final Callable<?> m_testRunner;
+
+    public JavaWorkerRunnable(Callable<?> testRunner) {
+      m_testRunner = testRunner;
+    }
+
+    public void run() throws ScriptExecutionException {
+      try {
+        m_testRunner.call();
+      }
+      catch (Exception e) {
+        throw new JavaScriptExecutionException("calling TestRunner", e);
+      }
+    }
+
+    public void shutdown() throws ScriptExecutionException {
+      if (m_testRunner instanceof Closeable) {
+        try {
+          ((Closeable) m_testRunner).close();
+        }
+        catch (Exception e) {
+          throw new JavaScriptExecutionException(
+            "closing TestRunner instance", e);
+        }
+      }
+    }
+  }
+}
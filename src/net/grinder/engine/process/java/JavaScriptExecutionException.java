@@ -0,0 +1,64 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.java;
+
+import net.grinder.engine.process.ScriptEngine.ScriptExecutionException;
+
+
+/**
+ * Exception that wraps errors encountered when invoking Java
+ * <code>TestRunner</code>s.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class JavaScriptExecutionException extends ScriptExecutionException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor for problems with the script that did not arise from some
+   * other exception.
+   *
+   * @param message The message.
+   */
+  public JavaScriptExecutionException(String message) {
+    super(message);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param doingWhat What we were doing.
+   * @param t The exception thrown by the script.
+   */
+  public JavaScriptExecutionException(String doingWhat, Throwable t) {
+    super("Java exception " + doingWhat, t);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getShortMessage() {
+    return getMessage();
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.java;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import net.grinder.engine.common.EngineException;
+
+
+/**
+ * Compiles Java source scripts in process, using <code>javax.tools</code>.
+ *
+ * <p>
+ * <code>javax.tools</code> is only available with Java 6 or later, and only
+ * from a JDK, so this class is kept separate from {@link JavaScriptEngine}.
+ * Class files and jars can be run with a JRE.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class JavaSourceCompiler {
+
+  private static final Pattern s_packagePattern =
+    Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;");
+
+  /**
+   * Compile a source file.
+   *
+   * @param source The source file.
+   * @param sourcePath Where to find other sources that it uses.
+   * @param outputDirectory Where to write the class files.
+   * @throws EngineException If the source could not be compiled.
+   */
+  public void compile(File source, File sourcePath, File outputDirectory)
+    throws EngineException {
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    if (compiler == null) {
+      throw new EngineException(
+        "No Java compiler is available, Java source scripts require a JDK");
+    }
+
+    final DiagnosticCollector<JavaFileObject> diagnostics =
+      new DiagnosticCollector<JavaFileObject>();
+
+    final StandardJavaFileManager fileManager =
+      compiler.getStandardFileManager(diagnostics, null, null);
+
+    final List<String> options = Arrays.asList(
+      "-g",
+      "-d", outputDirectory.getPath(),
+      "-sourcepath", sourcePath.getPath(),
+      "-classpath", System.getProperty("java.class.path"));
+
+    final boolean success;
+
+    try {
+      success = compiler.getTask(
+        null,
+        fileManager,
+        diagnostics,
+        options,
+        null,
+        fileManager.getJavaFileObjects(source)).call().booleanValue();
+    }
+    finally {
+      try {
+        fileManager.close();
+      }
+      catch (IOException e) {
+        // Nothing was opened for writing.
+      }
+    }
+
+    if (!success) {
+      final StringBuffer message = new StringBuffer();
+      message.append("Failed to compile ").append(source);
+
+      for (Diagnostic<? extends JavaFileObject> d :
+           diagnostics.getDiagnostics()) {
+        if (d.getKind() == Diagnostic.Kind.ERROR) {
+          message.append("\n  ");
+
+          if (d.getSource() != null) {
+            message.append(d.getSource().getName())
+                   .append(':').append(d.getLineNumber()).append(": ");
+          }
+
+          message.append(d.getMessage(null));
+        }
+      }
+
+      throw new EngineException(message.toString());
+    }
+  }
+
+  /**
+   * The name of the class declared by a source file. Follows the Java
+   * convention that a public class is declared in a file of the same name.
+   *
+   * @param source The source file.
+   * @return The fully qualified class name.
+   * @throws IOException If the file could not be read.
+   */
+  public static String getClassName(File source) throws IOException {
+    final String name = source.getName();
+    final String simpleName = name.substring(0, name.lastIndexOf('.'));
+
+    final BufferedReader reader = new BufferedReader(new FileReader(source));
+
+    try {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        final Matcher matcher = s_packagePattern.matcher(line);
+
+        if (matcher.find()) {
+          return matcher.group(1) + "." + simpleName;
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    return simpleName;
+  }
+}
@@ -21,11 +21,19 @@
 
 package net.grinder.engine.process.jruby;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.grinder.common.GrinderProperties;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.CompiledScriptCache;
 import net.grinder.engine.process.ScriptEngine;
 
 import org.jruby.Ruby;
@@ -38,39 +46,203 @@ import org.jruby.runtime.builtin.IRubyObject;
  * Allow JRuby code to be used for Grinder scripts as well... why you
  * be hatin' on Ruby folks? ;-)
  *
+ * <p>How worker threads share JRuby runtimes is controlled by the
+ * <code>grinder.jruby.runtimes</code> property:</p>
+ *
+ * <ul>
+ * <li><code>shared</code> (the default) - every worker thread uses
+ * the same runtime.</li>
+ * <li>a number <em>N</em> - the script is loaded into a pool of
+ * <em>N</em> runtimes, and new <code>TestRunner</code> instances are
+ * handed out from each in turn.</li>
+ * <li><code>thread</code> - each worker thread has its own runtime.
+ * A runtime is created for each of the <code>grinder.threads</code>
+ * worker threads, and the script is loaded into it before the worker
+ * threads start. Worker threads that the script starts later share
+ * these runtimes in turn.</li>
+ * </ul>
+ *
+ * <p>The script is always loaded on the process thread, so module
+ * level code can do things that worker threads cannot, such as
+ * registering statistics.</p>
+ *
+ * <p>Each runtime has its own globals and constants, so module level
+ * script state is not shared between runtimes. Tests are shared, since
+ * they are identified by number.</p>
+ *
  * @author Mike Stone
  */
 public final class JRubyScriptEngine implements ScriptEngine {
     private static final String TEST_RUNNER_CLASS_NAME = "TestRunner";
-    private Ruby m_runtime;
+
+    /** The property that selects how JRuby runtimes are shared. */
+    public static final String RUNTIMES_PROPERTY = "grinder.jruby.runtimes";
+
+    /** The property that selects the JRuby compile mode. */
+    public static final String COMPILE_MODE_PROPERTY = "grinder.jruby.compileMode";
+
+    /** Pool size that means one runtime per worker thread. */
+    private static final int PER_THREAD = 0;
+
+    private final int m_poolSize;
+
+    private final int m_numberOfThreads;
+
+    /** Every runtime the script has been loaded into. */
+    private final List<Ruby> m_runtimes = new CopyOnWriteArrayList<Ruby>();
+
+    /**
+     * The first runtime, created early (see
+     * <code>MultilingualScriptEngine</code>).
+     */
+    private final Ruby m_firstRuntime;
+
+    /**
+     * Runtimes not yet claimed by a worker thread, when using a runtime
+     * per thread.
+     */
+    private final Queue<Ruby> m_unclaimedRuntimes = new ConcurrentLinkedQueue<Ruby>();
+
+    private final AtomicInteger m_nextRuntime = new AtomicInteger();
+
+    private ScriptLocation m_script;
 
     public JRubyScriptEngine() throws EngineException {
-        m_runtime = Ruby.newInstance();
+        this(new GrinderProperties());
+    }
+
+    public JRubyScriptEngine(GrinderProperties properties) throws EngineException {
+        m_poolSize = parsePoolSize(properties.getProperty(RUNTIMES_PROPERTY, "shared"));
+        m_numberOfThreads = Math.max(1, properties.getInt("grinder.threads", 1));
+        configureCompiler(properties);
+        m_firstRuntime = Ruby.newInstance();
+    }
+
+    /**
+     * JRuby reads its compiler options from system properties when
+     * each runtime is created. Options set on the worker process
+     * command line take precedence.
+     *
+     * <p><code>grinder.jruby.compileMode=force</code> compiles the
+     * whole script, including the <code>TestRunner</code> methods, to
+     * byte code when it is loaded, so the worker threads don't start
+     * in the interpreter. If there is a compiled script cache, JRuby
+     * saves the classes it compiles there, keyed by the method
+     * source, and the other workers load them rather than compiling
+     * them again.</p>
+     */
+    private static void configureCompiler(GrinderProperties properties) throws EngineException {
+        final String compileMode = properties.getProperty(COMPILE_MODE_PROPERTY);
+
+        if (compileMode != null) {
+            final String mode = compileMode.trim().toUpperCase();
+
+            if (!mode.equals("JIT") && !mode.equals("FORCE") && !mode.equals("OFF")) {
+                throw new EngineException("Invalid value for " + COMPILE_MODE_PROPERTY + ": '" + compileMode + "', expected 'jit', 'force', or 'off'");
+            }
+
+            setDefaultSystemProperty("jruby.compile.mode", mode);
+        }
+
+        final CompiledScriptCache cache = CompiledScriptCache.create(properties);
+
+        if (cache != null) {
+            setDefaultSystemProperty("jruby.jit.codeCache", new File(cache.getDirectory(), "jruby").getPath());
+        }
+    }
+
+    private static void setDefaultSystemProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    private static int parsePoolSize(String value) throws EngineException {
+        final String trimmed = value.trim();
+
+        if ("shared".equals(trimmed)) {
+            return 1;
+        }
+
+        if ("thread".equals(trimmed)) {
+            return PER_THREAD;
+        }
+
+        try {
+            final int result = Integer.parseInt(trimmed);
+
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through.
+        }
+
+        throw new EngineException("Invalid value for " + RUNTIMES_PROPERTY + ": '" + value + "', expected 'shared', 'thread', or a positive number");
     }
 
     @Override
     public void initialise(ScriptLocation script) throws EngineException {
-        m_runtime.setCurrentDirectory(script.getDirectory().getFile().getPath());
+        m_script = script;
+
+        // Load every runtime now, on the process thread, so any problems
+        // are reported before the worker threads start.
+        final int numberOfRuntimes = m_poolSize == PER_THREAD ? m_numberOfThreads : m_poolSize;
+
+        loadScript(m_firstRuntime);
+
+        for (int i = 1; i < numberOfRuntimes; ++i) {
+            loadScript(Ruby.newInstance());
+        }
+
+        if (m_poolSize == PER_THREAD) {
+            m_unclaimedRuntimes.addAll(m_runtimes);
+        }
+    }
+
+    private void loadScript(Ruby runtime) throws EngineException {
+        runtime.setCurrentDirectory(m_script.getDirectory().getFile().getPath());
 
         try {
-            m_runtime.runFromMain(new FileInputStream(script.getFile()), script.getFile().getPath());
+            runtime.runFromMain(new FileInputStream(m_script.getFile()), m_script.getFile().getPath());
         } catch (FileNotFoundException e) {
-            throw new EngineException("Could not find script " + script.getFile().getPath());
+            throw new EngineException("Could not find script " + m_script.getFile().getPath());
+        }
+
+        if (!runtime.isClassDefined(TEST_RUNNER_CLASS_NAME)) {
+            throw new EngineException("There is no class defined named '" + TEST_RUNNER_CLASS_NAME + "' in " + m_script);
         }
 
-        if (!m_runtime.isClassDefined(TEST_RUNNER_CLASS_NAME)) {
-            throw new EngineException("There is no class defined named '" + TEST_RUNNER_CLASS_NAME + "' in " + script);
+        m_runtimes.add(runtime);
+    }
+
+    /**
+     * Choose the runtime for a new worker thread. Called on the
+     * worker thread.
+     */
+    private Ruby nextRuntime() {
+        if (m_poolSize == PER_THREAD) {
+            final Ruby unclaimed = m_unclaimedRuntimes.poll();
+
+            if (unclaimed != null) {
+                return unclaimed;
+            }
         }
+
+        final int next = m_nextRuntime.getAndIncrement() & Integer.MAX_VALUE;
+        return m_runtimes.get(next % m_runtimes.size());
     }
 
     @Override
     public WorkerRunnable createWorkerRunnable() throws EngineException {
-        return new JRubyWorkerRunnable();
+        final Ruby runtime = nextRuntime();
+        return new JRubyWorkerRunnable(runtime.evalScriptlet(TEST_RUNNER_CLASS_NAME + ".new"));
     }
 
     @Override
     public WorkerRunnable createWorkerRunnable(Object testRunner) throws EngineException {
         if (testRunner instanceof IRubyObject) {
+            // Runs in the runtime that created the TestRunner.
             return new JRubyWorkerRunnable((IRubyObject) testRunner);
         }
 
@@ -79,33 +251,56 @@ public final class JRubyScriptEngine implements ScriptEngine {
 
     @Override
     public void shutdown() throws EngineException {
-        m_runtime.evalScriptlet("exitfunc() if respond_to? :exitfunc");
+        for (Ruby runtime : m_runtimes) {
+            runtime.evalScriptlet("exitfunc() if respond_to? :exitfunc");
+        }
     }
 
     @Override
     public String getDescription() {
-        return "JRuby " + Constants.VERSION;
+        final String version = "JRuby " + Constants.VERSION;
+
+        if (m_poolSize == PER_THREAD) {
+            return version + " (runtime per thread)";
+        } else if (m_poolSize > 1) {
+            return version + " (" + m_poolSize + " runtimes)";
+        }
+
+        return version;
     }
 
-    private class JRubyWorkerRunnable implements ScriptEngine.WorkerRunnable {
+    private static final class JRubyWorkerRunnable implements ScriptEngine.WorkerRunnable {
         private IRubyObject m_testRunner;
 
-        private JRubyWorkerRunnable() throws EngineException {
-            m_testRunner = m_runtime.evalScriptlet(TEST_RUNNER_CLASS_NAME + ".new");
-        }
+        /**
+         * TestRunner instances respond to run. Procs and lambdas, such as
+         * the tasks passed to invokeInParallel, respond to call.
+         */
+        private final String m_method;
+
+        /**
+         * The runtime's context for the worker thread, looked up on
+         * the first run.
+         */
+        private ThreadContext m_context;
 
-        public JRubyWorkerRunnable(IRubyObject testRunner) throws EngineException {
+        public JRubyWorkerRunnable(IRubyObject testRunner) {
             m_testRunner = testRunner;
+            m_method = testRunner.respondsTo("run") ? "run" : "call";
         }
 
         public void run() throws ScriptExecutionException {
-            // Does this need to be run in a new context...?
-            m_testRunner.callMethod(m_runtime.getCurrentContext(), "run");
+            if (m_context == null) {
+                m_context = m_testRunner.getRuntime().getCurrentContext();
+            }
+
+            m_testRunner.callMethod(m_context, m_method);
         }
 
         public void shutdown() throws ScriptExecutionException {
             // Let the GC deal with it in time.
             m_testRunner = null;
+            m_context = null;
         }
     }
 }
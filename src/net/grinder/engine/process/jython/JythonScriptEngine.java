@@ -22,18 +22,26 @@
 
 package net.grinder.engine.process.jython;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.CompiledScriptCache;
 import net.grinder.engine.process.ScriptEngine;
 
+import org.python.core.BytecodeLoader;
 import org.python.core.Py;
 import org.python.core.PyException;
 import org.python.core.PyInstance;
 import org.python.core.PyObject;
 import org.python.core.PyString;
 import org.python.core.PySystemState;
+import org.python.core.imp;
 import org.python.util.PythonInterpreter;
 
 
@@ -51,6 +59,7 @@ public final class JythonScriptEngine implements ScriptEngine {
   private final PySystemState m_systemState;
   private final PythonInterpreter m_interpreter;
   private final JythonVersionAdapter m_versionAdapter;
+  private final CompiledScriptCache m_compiledScriptCache;
   private PyObject m_testRunnerFactory;
 
   /**
@@ -59,11 +68,25 @@ public final class JythonScriptEngine implements ScriptEngine {
    * @throws EngineException If the script engine could not be created.
    */
   public JythonScriptEngine() throws EngineException {
+    this(null);
+  }
+
+  /**
+   * Constructor for JythonScriptEngine.
+   *
+   * @param compiledScriptCache
+   *          Cache of compiled scripts, or <code>null</code> to always compile
+   *          the script from source.
+   * @throws EngineException If the script engine could not be created.
+   */
+  public JythonScriptEngine(CompiledScriptCache compiledScriptCache)
+    throws EngineException {
 
     PySystemState.initialize();
     m_systemState = new PySystemState();
     m_interpreter = new PythonInterpreter(null, m_systemState);
     m_versionAdapter = new JythonVersionAdapter();
+    m_compiledScriptCache = compiledScriptCache;
   }
 
   /**
@@ -80,7 +103,14 @@ public final class JythonScriptEngine implements ScriptEngine {
 
     try {
       // Run the test script, script does global set up here.
-      m_interpreter.execfile(script.getFile().getPath());
+      final PyObject compiledScript = getCompiledScript(script.getFile());
+
+      if (compiledScript != null) {
+        m_interpreter.exec(compiledScript);
+      }
+      else {
+        m_interpreter.execfile(script.getFile().getPath());
+      }
     }
     catch (PyException e) {
       throw new JythonScriptExecutionException("initialising test script", e);
@@ -96,6 +126,63 @@ public final class JythonScriptEngine implements ScriptEngine {
     }
   }
 
+  /**
+   * Load the compiled script from the cache, or compile it and add it to the
+   * cache.
+   *
+   * @return The compiled script, or <code>null</code> if there is no cache,
+   *         or the script could not be compiled. In the latter case,
+   *         <code>execfile</code> will report the problem.
+   */
+  private PyObject getCompiledScript(File file) {
+    if (m_compiledScriptCache == null ||
+        !m_versionAdapter.canCompileScripts()) {
+      return null;
+    }
+
+    final String key;
+
+    try {
+      key = m_compiledScriptCache.key(getDescription(), file);
+    }
+    catch (IOException e) {
+      return null;
+    }
+
+    final byte[] cached = m_compiledScriptCache.get(key);
+
+    if (cached != null) {
+      try {
+        return m_versionAdapter.makeCode(cached, file.getPath());
+      }
+      catch (Exception e) {
+        // Unusable. Replace it.
+        m_compiledScriptCache.remove(key);
+      }
+      catch (LinkageError e) {
+        // Corrupt. Replace it.
+        m_compiledScriptCache.remove(key);
+      }
+    }
+
+    try {
+      final byte[] compiled = m_versionAdapter.compileScript(file);
+
+      final PyObject result =
+        m_versionAdapter.makeCode(compiled, file.getPath());
+
+      m_compiledScriptCache.put(key, compiled);
+
+      return result;
+    }
+    catch (Exception e) {
+      return null;
+    }
+    catch (LinkageError e) {
+      return null;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -250,8 +337,13 @@ public final class JythonScriptEngine implements ScriptEngine {
     // The softly spoken Welshman.
     private final PyObject m_dieQuietly = Py.java2py(Object.class);
 
+    // Class name for compiled scripts. Each is loaded by its own class
+    // loader, so there are no clashes.
+    private static final String COMPILED_SCRIPT_NAME = "__main__";
+
     private final Field m_instanceClassField;
     private final String m_version;
+    private final Method m_compileSourceMethod;
 
     public JythonVersionAdapter() throws EngineException {
       Field f;
@@ -283,6 +375,46 @@ public final class JythonScriptEngine implements ScriptEngine {
       }
 
       m_version = version;
+
+      Method compileSource;
+
+      try {
+        // Package scope in Jython 2.2, public in 2.5.
+        compileSource = imp.class.getDeclaredMethod("compileSource",
+                                                    String.class,
+                                                    InputStream.class,
+                                                    String.class);
+        compileSource.setAccessible(true);
+      }
+      catch (Exception e) {
+        compileSource = null;
+      }
+
+      m_compileSourceMethod = compileSource;
+    }
+
+    public boolean canCompileScripts() {
+      return m_compileSourceMethod != null;
+    }
+
+    public byte[] compileScript(File file) throws Exception {
+      final InputStream in = new FileInputStream(file);
+
+      try {
+        return (byte[]) m_compileSourceMethod.invoke(null,
+                                                     COMPILED_SCRIPT_NAME,
+                                                     in,
+                                                     file.getPath());
+      }
+      finally {
+        in.close();
+      }
+    }
+
+    public PyObject makeCode(byte[] compiled, String fileName) {
+      return BytecodeLoader.makeCode(COMPILED_SCRIPT_NAME + "$py",
+                                     compiled,
+                                     fileName);
     }
 
     public String getVersion() {
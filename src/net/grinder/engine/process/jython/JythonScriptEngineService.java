@@ -0,0 +1,54 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.jython;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.CompiledScriptCache;
+import net.grinder.engine.process.ScriptEngine;
+import net.grinder.engine.process.ScriptEngineService;
+
+
+/**
+ * {@link ScriptEngineService} for Jython scripts.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class JythonScriptEngineService implements ScriptEngineService {
+
+  /**
+   * {@inheritDoc}
+   */
+  public String[] getExtensions() {
+    return new String[] { "py", "jy" };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ScriptEngine createScriptEngine(GrinderProperties properties)
+    throws EngineException {
+
+    return new JythonScriptEngine(CompiledScriptCache.create(properties));
+  }
+}
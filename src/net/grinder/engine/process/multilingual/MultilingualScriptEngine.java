@@ -21,14 +21,11 @@
 
 package net.grinder.engine.process.multilingual;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import net.grinder.common.GrinderProperties;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
 import net.grinder.engine.process.ScriptEngine;
-import net.grinder.engine.process.jruby.JRubyScriptEngine;
-import net.grinder.engine.process.jython.JythonScriptEngine;
+import net.grinder.engine.process.ScriptEngineService;
 
 
 /**
@@ -37,44 +34,38 @@ import net.grinder.engine.process.jython.JythonScriptEngine;
  * to use homogeneous scripts, but ultimately it would be cool if they
  * could be heterogeneous.
  *
+ * <p>Only the engine for the script's extension is created, see
+ * {@link ScriptEngineService}.</p>
+ *
  * @author Mike Stone
  */
 public final class MultilingualScriptEngine implements ScriptEngine {
-    private Map<String, ScriptEngine> m_engineTypes;
-    private ScriptEngine m_engine;
-
-    public MultilingualScriptEngine() throws EngineException {
-        // To see why these need to be initialized now instead of
-        // during the initialise method, see the comment in the run
-        // method of GrinderProcess.  Presumably that comment is
-        // accurate.  JRuby probably doesn't strictly need to be
-        // initialized, but might as well.  If this weren't necessary,
-        // we could use a map of string to Class<? extends
-        // ScriptEngine> instead, and initialize during the initialise
-        // method.
-        JythonScriptEngine jython = new JythonScriptEngine();
-        JRubyScriptEngine jruby = new JRubyScriptEngine();
-        m_engineTypes = new HashMap<String, ScriptEngine>();
-        m_engineTypes.put("py", jython);
-        m_engineTypes.put("jy", jython);
-        m_engineTypes.put("rb", jruby);
-        m_engineTypes.put("jrb", jruby);
+    private final ScriptEngine m_engine;
+
+    public MultilingualScriptEngine(ScriptLocation script, GrinderProperties properties) throws EngineException {
+        this(new ScriptEngineRegistry(MultilingualScriptEngine.class.getClassLoader()), script, properties);
     }
 
-    @Override
-    public void initialise(ScriptLocation script) throws EngineException {
-        if (m_engine == null) {
-            m_engine = m_engineTypes.get(getExtension(script));
+    MultilingualScriptEngine(ScriptEngineRegistry registry, ScriptLocation script, GrinderProperties properties) throws EngineException {
+        // The engine is created now, rather than in initialise(),
+        // because Jython must be initialised before GrinderProcess
+        // starts the message pump. See the comment in its run method.
+        final String extension = getExtension(script);
+        final ScriptEngineService service = registry.get(extension);
 
-            if (m_engine == null) {
-                throw new EngineException("Could not find engine for script " + script + ", with extension " + getExtension(script));
-            }
+        if (service == null) {
+            throw new EngineException("Could not find engine for script " + script + ", with extension " + extension);
         }
 
+        m_engine = service.createScriptEngine(properties);
+    }
+
+    @Override
+    public void initialise(ScriptLocation script) throws EngineException {
         m_engine.initialise(script);
     }
 
-    private String getExtension(ScriptLocation script) {
+    private static String getExtension(ScriptLocation script) {
         String[] split = script.getFile().getName().split("\\.");
 
         // No extension...
@@ -102,12 +93,6 @@ public final class MultilingualScriptEngine implements ScriptEngine {
 
     @Override
     public String getDescription() {
-        String version = "Multilingual 0.0.1";
-
-        if (m_engine != null) {
-            return version + ": " + m_engine.getDescription();
-        }
-
-        return version;
+        return "Multilingual 0.0.1: " + m_engine.getDescription();
     }
 }
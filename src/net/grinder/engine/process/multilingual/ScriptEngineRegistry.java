@@ -0,0 +1,123 @@
+// Copyright (C) 2010 Mike Stone
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.process.multilingual;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.ScriptEngineService;
+
+
+/**
+ * The {@link ScriptEngineService}s, keyed by script extension.  A
+ * poor man's <code>java.util.ServiceLoader</code>, which needs Java
+ * 6.
+ *
+ * <p>The built in services are registered first, so plug-ins can
+ * replace them for an extension.</p>
+ *
+ * @author Mike Stone
+ */
+final class ScriptEngineRegistry {
+    static final String SERVICES_RESOURCE = "META-INF/services/" + ScriptEngineService.class.getName();
+
+    private static final String[] BUILT_IN_SERVICES = {
+        "net.grinder.engine.process.jython.JythonScriptEngineService",
+        "net.grinder.engine.process.jruby.JRubyScriptEngineService",
+        "net.grinder.engine.process.java.JavaScriptEngineService",
+    };
+
+    private final Map<String, ScriptEngineService> m_services = new HashMap<String, ScriptEngineService>();
+
+    /**
+     * Register the built in services, and those listed in
+     * <code>META-INF/services</code> resources.
+     */
+    public ScriptEngineRegistry(ClassLoader classLoader) throws EngineException {
+        for (String className : BUILT_IN_SERVICES) {
+            register(load(classLoader, className));
+        }
+
+        final Enumeration<URL> resources;
+
+        try {
+            resources = classLoader.getResources(SERVICES_RESOURCE);
+        } catch (IOException e) {
+            throw new EngineException("Failed to find script engine services", e);
+        }
+
+        while (resources.hasMoreElements()) {
+            final URL url = resources.nextElement();
+
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+
+                try {
+                    String line;
+
+                    while ((line = reader.readLine()) != null) {
+                        final int comment = line.indexOf('#');
+                        final String className = (comment >= 0 ? line.substring(0, comment) : line).trim();
+
+                        if (className.length() > 0) {
+                            register(load(classLoader, className));
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                throw new EngineException("Failed to read " + url, e);
+            }
+        }
+    }
+
+    private static ScriptEngineService load(ClassLoader classLoader, String className) throws EngineException {
+        try {
+            return (ScriptEngineService) Class.forName(className, true, classLoader).newInstance();
+        } catch (Exception e) {
+            throw new EngineException("Failed to create script engine service " + className, e);
+        } catch (LinkageError e) {
+            throw new EngineException("Failed to create script engine service " + className, e);
+        }
+    }
+
+    public void register(ScriptEngineService service) {
+        for (String extension : service.getExtensions()) {
+            m_services.put(extension, service);
+        }
+    }
+
+    /**
+     * @return The service for the extension, or <code>null</code>.
+     */
+    public ScriptEngineService get(String extension) {
+        return m_services.get(extension);
+    }
+}
@@ -0,0 +1,446 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.relay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.Logger;
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.common.processidentity.WorkerIdentity;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.Address;
+import net.grinder.communication.ClientReceiver;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionIdentity;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Connector;
+import net.grinder.communication.FanOutServerSender;
+import net.grinder.communication.Message;
+import net.grinder.communication.MessagePump;
+import net.grinder.communication.Sender;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.messages.console.AgentAddress;
+import net.grinder.messages.console.AgentProcessReportMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.TestStatisticsMap;
+
+
+/**
+ * Accepts agent and worker connections in place of the console, and
+ * relays them to an upstream console. The upstream console may itself be
+ * a relay.
+ *
+ * <p>
+ * Statistics reports are merged per test, and worker process reports are
+ * coalesced so that only the latest report for each worker is sent. Both are
+ * forwarded once per interval over a single worker connection. Other worker
+ * messages are forwarded immediately.
+ * </p>
+ *
+ * <p>
+ * The console addresses agents by their connection, so the relay opens an
+ * upstream agent connection on behalf of each of its agents when it first
+ * hears from it. Messages the console sends on that connection, such as the
+ * start, stop, reset, and file distribution commands, are passed down to the
+ * agent. The connection is closed when the agent reports it has finished,
+ * or when the agent's own connection to the relay closes.
+ * Agent traffic is light; the worker connections and statistics that dominate
+ * the console's load terminate at the relay.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class ConsoleRelay {
+
+  private final String m_consoleHost;
+  private final int m_consolePort;
+  private final Logger m_logger;
+
+  private final Acceptor m_acceptor;
+  private final ServerReceiver m_receiver = new ServerReceiver();
+  private final FanOutServerSender m_agentSender;
+  private final ClientSender m_consoleSender;
+  private final MessagePump m_messagePump;
+  private final TimerTask m_flushTask;
+
+  /** Guarded by itself. */
+  private final Map<AgentIdentity, UpstreamAgent> m_agents =
+    new HashMap<AgentIdentity, UpstreamAgent>();
+
+  /**
+   * Addresses of agents whose connections have closed. Reports from them
+   * that are still queued are dropped, rather than opening a new upstream
+   * connection. Guarded by m_agents.
+   */
+  private final Set<Address> m_disconnectedAgents = new HashSet<Address>();
+
+  /** Guarded by this. */
+  private TestStatisticsMap m_statistics = new TestStatisticsMap();
+
+  /** Guarded by this. */
+  private Map<WorkerIdentity, WorkerProcessReportMessage> m_workerReports =
+    new LinkedHashMap<WorkerIdentity, WorkerProcessReportMessage>();
+
+  /**
+   * Constructor.
+   *
+   * @param consoleHost Upstream console host.
+   * @param consolePort Upstream console port.
+   * @param host Address to listen on. Zero-length string => listen on all
+   *  interfaces.
+   * @param port Port to listen on. 0 => use any free port.
+   * @param timer Timer used to schedule the forwarding of reports.
+   * @param interval Interval in milliseconds at which merged reports are
+   *  forwarded.
+   * @param logger Logger.
+   * @throws CommunicationException If the upstream console could not be
+   *  contacted, or the port could not be bound.
+   */
+  public ConsoleRelay(String consoleHost,
+                      int consolePort,
+                      String host,
+                      int port,
+                      Timer timer,
+                      long interval,
+                      Logger logger)
+    throws CommunicationException {
+
+    m_consoleHost = consoleHost;
+    m_consolePort = consolePort;
+    m_logger = logger;
+
+    m_consoleSender =
+      ClientSender.connect(
+        new Connector(consoleHost, consolePort, ConnectionType.WORKER));
+
+    m_acceptor = new Acceptor(host, port, 1);
+
+    m_acceptor.addListener(ConnectionType.AGENT, new Acceptor.Listener() {
+        public void connectionAccepted(ConnectionType connectionType,
+                                       ConnectionIdentity connection) {
+          synchronized (m_agents) {
+            m_disconnectedAgents.remove(connection.getAddress());
+          }
+        }
+
+        public void connectionClosed(ConnectionType connectionType,
+                                     ConnectionIdentity connection) {
+          agentDisconnected(connection.getAddress());
+        }
+      });
+
+    m_receiver.receiveFrom(m_acceptor,
+                           new ConnectionType[] {
+                             ConnectionType.AGENT,
+                             ConnectionType.WORKER,
+                           },
+                           5,
+                           100);
+
+    try {
+      m_agentSender =
+        new FanOutServerSender(m_acceptor, ConnectionType.AGENT, 3);
+    }
+    catch (Acceptor.ShutdownException e) {
+      throw new CommunicationException("Acceptor shut down", e);
+    }
+
+    m_messagePump = new MessagePump(m_receiver, new UpstreamSender(), 1);
+    m_messagePump.start();
+
+    m_flushTask = new TimerTask() {
+        public void run() {
+          try {
+            flush();
+          }
+          catch (CommunicationException e) {
+            m_logger.error("Failed to forward reports to console: " +
+                           e.getMessage());
+          }
+        }
+      };
+
+    timer.schedule(m_flushTask, interval, interval);
+  }
+
+  /**
+   * The port the relay is listening on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return m_acceptor.getPort();
+  }
+
+  /**
+   * The number of agents currently relayed.
+   *
+   * @return The number of agents.
+   */
+  public int getNumberOfAgents() {
+    synchronized (m_agents) {
+      return m_agents.size();
+    }
+  }
+
+  /**
+   * Forward the statistics and worker process reports received since the
+   * last call.
+   *
+   * @throws CommunicationException If a message could not be sent.
+   */
+  public void flush() throws CommunicationException {
+    final TestStatisticsMap statistics;
+    final Map<WorkerIdentity, WorkerProcessReportMessage> workerReports;
+
+    synchronized (this) {
+      statistics = m_statistics;
+      workerReports = m_workerReports;
+
+      if (statistics.size() > 0) {
+        m_statistics = new TestStatisticsMap();
+      }
+
+      if (workerReports.size() > 0) {
+        m_workerReports =
+          new LinkedHashMap<WorkerIdentity, WorkerProcessReportMessage>();
+      }
+    }
+
+    if (statistics.size() > 0) {
+      m_consoleSender.send(new ReportStatisticsMessage(statistics));
+    }
+
+    for (WorkerProcessReportMessage report : workerReports.values()) {
+      m_consoleSender.send(report);
+    }
+  }
+
+  /**
+   * Shut down the relay.
+   */
+  public void shutdown() {
+    m_flushTask.cancel();
+    m_messagePump.shutdown();
+    m_agentSender.shutdown();
+
+    try {
+      m_acceptor.shutdown();
+    }
+    catch (CommunicationException e) {
+      // Ignore - we're shutting down.
+    }
+
+    try {
+      flush();
+    }
+    catch (CommunicationException e) {
+      // Ignore - peer has probably shut down.
+    }
+
+    final List<UpstreamAgent> agents;
+
+    synchronized (m_agents) {
+      agents = new ArrayList<UpstreamAgent>(m_agents.values());
+      m_agents.clear();
+    }
+
+    for (UpstreamAgent agent : agents) {
+      agent.shutdown();
+    }
+
+    m_consoleSender.shutdown();
+  }
+
+  private void agentReport(AgentProcessReportMessage report)
+    throws CommunicationException {
+
+    final AgentIdentity identity = report.getAgentIdentity();
+    UpstreamAgent agent;
+
+    synchronized (m_agents) {
+      agent = m_agents.get(identity);
+
+      if (agent == null) {
+        if (m_disconnectedAgents.contains(new AgentAddress(identity))) {
+          return;
+        }
+
+        agent = new UpstreamAgent(identity);
+        m_agents.put(identity, agent);
+        m_logger.output("relaying agent " + identity.getName());
+      }
+    }
+
+    agent.send(report);
+
+    if (report.getState() == AgentProcessReportMessage.STATE_FINISHED) {
+      synchronized (m_agents) {
+        m_agents.remove(identity);
+      }
+
+      agent.shutdown();
+    }
+  }
+
+  private void agentDisconnected(Address address) {
+    if (address == null) {
+      return;
+    }
+
+    UpstreamAgent agent = null;
+
+    synchronized (m_agents) {
+      m_disconnectedAgents.add(address);
+
+      final Iterator<UpstreamAgent> iterator = m_agents.values().iterator();
+
+      while (iterator.hasNext()) {
+        final UpstreamAgent candidate = iterator.next();
+
+        if (candidate.getAddress().equals(address)) {
+          iterator.remove();
+          agent = candidate;
+          break;
+        }
+      }
+    }
+
+    if (agent != null) {
+      m_logger.output("agent " + agent.getIdentity().getName() +
+                      " disconnected");
+      agent.shutdown();
+    }
+  }
+
+  /**
+   * Handles messages received from the agents and workers.
+   */
+  private final class UpstreamSender implements Sender {
+    public void send(Message message) {
+      if (message instanceof ReportStatisticsMessage) {
+        final TestStatisticsMap delta =
+          ((ReportStatisticsMessage) message).getStatisticsDelta();
+
+        synchronized (ConsoleRelay.this) {
+          m_statistics.add(delta);
+        }
+      }
+      else if (message instanceof WorkerProcessReportMessage) {
+        final WorkerProcessReportMessage report =
+          (WorkerProcessReportMessage) message;
+
+        synchronized (ConsoleRelay.this) {
+          // Remove first, so the order reflects the latest report.
+          m_workerReports.remove(report.getWorkerIdentity());
+          m_workerReports.put(report.getWorkerIdentity(), report);
+        }
+      }
+      else {
+        // A failure to forward one message shouldn't stop the relay.
+        try {
+          if (message instanceof AgentProcessReportMessage) {
+            agentReport((AgentProcessReportMessage) message);
+          }
+          else {
+            m_consoleSender.send(message);
+          }
+        }
+        catch (CommunicationException e) {
+          m_logger.error("Failed to relay message to console: " +
+                         e.getMessage());
+        }
+      }
+    }
+
+    public void shutdown() {
+    }
+  }
+
+  /**
+   * The upstream connection for a single agent.
+   */
+  private final class UpstreamAgent {
+    private final AgentIdentity m_identity;
+    private final AgentAddress m_address;
+    private final ClientSender m_sender;
+    private final MessagePump m_downstreamPump;
+
+    public UpstreamAgent(AgentIdentity identity)
+      throws CommunicationException {
+
+      m_identity = identity;
+      m_address = new AgentAddress(identity);
+
+      final ClientReceiver receiver =
+        ClientReceiver.connect(
+          new Connector(m_consoleHost, m_consolePort, ConnectionType.AGENT),
+          m_address);
+
+      m_sender = ClientSender.connect(receiver);
+
+      m_downstreamPump =
+        new MessagePump(receiver,
+                        new Sender() {
+                          public void send(Message message)
+                            throws CommunicationException {
+                            m_agentSender.send(m_address, message);
+                          }
+
+                          public void shutdown() {
+                          }
+                        },
+                        1);
+
+      m_downstreamPump.start();
+    }
+
+    public AgentIdentity getIdentity() {
+      return m_identity;
+    }
+
+    public AgentAddress getAddress() {
+      return m_address;
+    }
+
+    public void send(Message message) throws CommunicationException {
+      m_sender.send(message);
+    }
+
+    public void shutdown() {
+      m_sender.shutdown();
+      m_downstreamPump.shutdown();
+    }
+  }
+}
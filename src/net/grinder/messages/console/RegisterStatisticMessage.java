@@ -0,0 +1,272 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.concurrent.ConcurrentMap;
+
+import net.grinder.communication.Message;
+import net.grinder.communication.MessageInputStream;
+import net.grinder.statistics.StatisticsException;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsIndexMap.RemoteSlotMap;
+
+
+/**
+ * Message used to register a new statistic with the console.
+ *
+ * <p>The statistic is registered with the receiving process's
+ * {@link StatisticsIndexMap} when the message is read, so it is known before
+ * any statistics that follow the message on the same connection are read.
+ * This also applies to agents and relays that read reports on their way to
+ * the console.</p>
+ *
+ * <p>The message also carries the slots the sender has allocated to the
+ * statistic. The receiver may have allocated different slots, so it keeps a
+ * {@link RemoteSlotMap} for each connection, and uses it to translate the
+ * {@link ReportStatisticsMessage}s that follow. Once read, the message
+ * describes the receiver's slots, so it can be passed on together with the
+ * receiver's own reports.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class RegisterStatisticMessage
+  implements Message, Externalizable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Type of a basic long statistic. */
+  public static final int LONG = 0;
+
+  /** Type of a basic double statistic. */
+  public static final int DOUBLE = 1;
+
+  /** Type of a long sample statistic. */
+  public static final int LONG_SAMPLE = 2;
+
+  /** Type of a double sample statistic. */
+  public static final int DOUBLE_SAMPLE = 3;
+
+  private int m_type;
+  private String m_statisticName;
+  private int[] m_longSlots;
+  private int[] m_doubleSlots;
+
+  /**
+   * Constructor.
+   *
+   * @param type The type of statistic, one of {@link #LONG}, {@link #DOUBLE},
+   * {@link #LONG_SAMPLE}, {@link #DOUBLE_SAMPLE}.
+   * @param statisticName The statistic name.
+   * @param indexMap The index map that the statistic has been registered
+   * with.
+   */
+  public RegisterStatisticMessage(int type,
+                                  String statisticName,
+                                  StatisticsIndexMap indexMap) {
+    m_type = type;
+    m_statisticName = statisticName;
+    m_longSlots = indexMap.getLongSlots(statisticName);
+    m_doubleSlots = indexMap.getDoubleSlots(statisticName);
+  }
+
+  /**
+   * Default constructor for externalisation.
+   */
+  public RegisterStatisticMessage() {
+  }
+
+  /**
+   * Get the statistic type.
+   *
+   * @return The type.
+   */
+  public int getType() {
+    return m_type;
+  }
+
+  /**
+   * Get the statistic name.
+   *
+   * @return The name.
+   */
+  public String getStatisticName() {
+    return m_statisticName;
+  }
+
+  /**
+   * Get the long slots allocated to the statistic. See
+   * {@link StatisticsIndexMap#getLongSlots}.
+   *
+   * @return The slots.
+   */
+  public int[] getLongSlots() {
+    return m_longSlots;
+  }
+
+  /**
+   * Get the double slots allocated to the statistic. See
+   * {@link StatisticsIndexMap#getDoubleSlots}.
+   *
+   * @return The slots.
+   */
+  public int[] getDoubleSlots() {
+    return m_doubleSlots;
+  }
+
+  /**
+   * Register the statistic with an index map.
+   *
+   * @param indexMap The index map.
+   * @throws StatisticsException If the statistic could not be registered.
+   * @throws IOException If the statistic type is unknown.
+   */
+  public void register(StatisticsIndexMap indexMap)
+    throws StatisticsException, IOException {
+
+    switch (m_type) {
+      case LONG:
+        indexMap.registerLongIndex(m_statisticName);
+        break;
+
+      case DOUBLE:
+        indexMap.registerDoubleIndex(m_statisticName);
+        break;
+
+      case LONG_SAMPLE:
+        indexMap.registerLongSampleIndex(m_statisticName);
+        break;
+
+      case DOUBLE_SAMPLE:
+        indexMap.registerDoubleSampleIndex(m_statisticName);
+        break;
+
+      default:
+        throw new IOException("Unknown statistic type " + m_type);
+    }
+  }
+
+  /**
+   * Return the slot map for the connection that a message is being read
+   * from, creating it if necessary.
+   *
+   * @param in The stream the message is being read from.
+   * @param indexMap Our index map.
+   * @return The slot map, or <code>null</code> if <code>in</code> is not
+   * reading from a connection.
+   */
+  static RemoteSlotMap getRemoteSlotMap(ObjectInput in,
+                                        StatisticsIndexMap indexMap) {
+
+    final ConcurrentMap<Object, Object> connectionState =
+      MessageInputStream.getConnectionState(in);
+
+    if (connectionState == null) {
+      return null;
+    }
+
+    final RemoteSlotMap existing =
+      (RemoteSlotMap) connectionState.get(RemoteSlotMap.class);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    final RemoteSlotMap slotMap = indexMap.createRemoteSlotMap();
+
+    final RemoteSlotMap raced =
+      (RemoteSlotMap) connectionState.putIfAbsent(RemoteSlotMap.class,
+                                                  slotMap);
+
+    return raced != null ? raced : slotMap;
+  }
+
+  /**
+   * Externalisation method.
+   *
+   * @param out Handle to the output stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeByte(m_type);
+    out.writeUTF(m_statisticName);
+    writeSlots(out, m_longSlots);
+    writeSlots(out, m_doubleSlots);
+  }
+
+  /**
+   * Externalisation method.
+   *
+   * @param in Handle to the input stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void readExternal(ObjectInput in) throws IOException {
+    m_type = in.readByte();
+    m_statisticName = in.readUTF();
+    m_longSlots = readSlots(in);
+    m_doubleSlots = readSlots(in);
+
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    try {
+      register(indexMap);
+
+      final RemoteSlotMap slotMap = getRemoteSlotMap(in, indexMap);
+
+      if (slotMap != null) {
+        slotMap.add(m_statisticName, m_longSlots, m_doubleSlots);
+      }
+    }
+    catch (StatisticsException e) {
+      throw new IOException(
+        "Could not register statistic: " + e.getMessage());
+    }
+
+    m_longSlots = indexMap.getLongSlots(m_statisticName);
+    m_doubleSlots = indexMap.getDoubleSlots(m_statisticName);
+  }
+
+  private static void writeSlots(ObjectOutput out, int[] slots)
+    throws IOException {
+    out.writeByte(slots.length);
+
+    for (int slot : slots) {
+      out.writeInt(slot);
+    }
+  }
+
+  private static int[] readSlots(ObjectInput in) throws IOException {
+    final int[] result = new int[in.readUnsignedByte()];
+
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = in.readInt();
+    }
+
+    return result;
+  }
+}
@@ -21,21 +21,32 @@
 
 package net.grinder.messages.console;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 import net.grinder.communication.Message;
+import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.TestStatisticsMap;
 
 
 /**
  * Message used to report test statistics to the console.
  *
+ * <p>When read from a connection, the statistics are translated to our own
+ * slots using the registrations previously read from the same connection.
+ * See {@link RegisterStatisticMessage}.</p>
+ *
  * @author Philip Aston
  * @version $Revision: 3824 $
  */
-public final class ReportStatisticsMessage implements Message {
+public final class ReportStatisticsMessage
+  implements Message, Externalizable {
 
-  private static final long serialVersionUID = 5659643598627115683L;
+  private static final long serialVersionUID = 5659643598627115684L;
 
-  private final TestStatisticsMap m_statisticsDelta;
+  private TestStatisticsMap m_statisticsDelta;
 
   /**
    * Constructor.
@@ -46,6 +57,12 @@ public final class ReportStatisticsMessage implements Message {
     m_statisticsDelta = statisticsDelta;
   }
 
+  /**
+   * Default constructor for externalisation.
+   */
+  public ReportStatisticsMessage() {
+  }
+
   /**
    * Get the test statistics.
    *
@@ -54,4 +71,31 @@ public final class ReportStatisticsMessage implements Message {
   public TestStatisticsMap getStatisticsDelta() {
     return m_statisticsDelta;
   }
+
+  /**
+   * Externalisation method.
+   *
+   * @param out Handle to the output stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    m_statisticsDelta.writeExternal(out);
+  }
+
+  /**
+   * Externalisation method.
+   *
+   * @param in Handle to the input stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void readExternal(ObjectInput in) throws IOException {
+    m_statisticsDelta = new TestStatisticsMap();
+
+    m_statisticsDelta.readExternal(
+      in,
+      RegisterStatisticMessage.getRemoteSlotMap(
+        in,
+        StatisticsServicesImplementation.getInstance()
+        .getStatisticsIndexMap()));
+  }
 }
@@ -125,6 +125,19 @@ public class HTTPPlugin implements GrinderPlugin {
 
       final Statistics statistics = scriptContext.getStatistics();
 
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY);
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY);
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_ERRORS_KEY);
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY);
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY);
+      statistics.registerLongStatistic(
+        StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY);
+
       statistics.registerDataLogExpression(
         "HTTP response code",
         StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY);
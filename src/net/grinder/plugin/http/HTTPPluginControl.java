@@ -91,7 +91,10 @@ public final class HTTPPluginControl {
    * @exception GrinderException If an error occurs.
    */
   public static Object getThreadHTTPClientContext() throws GrinderException {
-    return getProcessContext().getPluginThreadListener();
+    final HTTPPluginThreadState threadState =
+      (HTTPPluginThreadState)getProcessContext().getPluginThreadListener();
+
+    return threadState.getHTTPClientContext();
   }
 
   /**
@@ -103,6 +106,39 @@ public final class HTTPPluginControl {
     return new HTTPUtilitiesImplementation(getProcessContext());
   }
 
+  /**
+   * Control how many responses are written to the output log.
+   *
+   * <p>By default, a line is logged for each response. At high request
+   * rates, logging every response can be expensive. This setting applies
+   * to all worker threads in the process.</p>
+   *
+   * @param interval
+   *          <code>0</code> disables response logging, <code>1</code> logs
+   *          every response, <code>n</code> logs every <code>n</code>th
+   *          response made by each worker thread.
+   * @see #setResponseLogBatchSize
+   */
+  public static void setResponseLogSampleInterval(int interval) {
+    ResponseLog.setSampleInterval(interval);
+  }
+
+  /**
+   * Control how often the logged responses are written to the output log.
+   *
+   * <p>By default, each logged response is written immediately. If
+   * <code>size</code> is greater than one, each worker thread buffers its
+   * responses and writes them as a single log entry when <code>size</code>
+   * have been buffered, or at the end of the run. This setting applies to
+   * all worker threads in the process.</p>
+   *
+   * @param size The number of responses in each batch.
+   * @see #setResponseLogSampleInterval
+   */
+  public static void setResponseLogBatchSize(int size) {
+    ResponseLog.setBatchSize(size);
+  }
+
   private static PluginProcessContext getProcessContext() {
     return HTTPPlugin.getPlugin().getPluginProcessContext();
   }
@@ -27,6 +27,7 @@ import java.util.Map;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.SkeletonThreadLifeCycleListener;
 import net.grinder.common.SSLContextFactory.SSLContextFactoryException;
+import net.grinder.plugininterface.ParallelPluginThreadListener;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginThreadContext;
 import net.grinder.plugininterface.PluginThreadListener;
@@ -43,20 +44,30 @@ import HTTPClient.URI;
 /**
  * HTTP plug-in thread state.
  *
+ * <p>
+ * Each task that a worker thread runs in parallel has its own state, with
+ * its own connections, last response, and response log, so the state is
+ * only used by one thread at a time. The task states share the worker
+ * thread's HTTPClient context, and so its cookies.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4003 $
  */
 class HTTPPluginThreadState
-  extends SkeletonThreadLifeCycleListener implements PluginThreadListener {
+  extends SkeletonThreadLifeCycleListener
+  implements ParallelPluginThreadListener {
 
   private final PluginThreadContext m_threadContext;
   private final SSLContextFactory m_sslContextFactory;
+  private final Object m_httpClientContext;
 
   private final Map<URI, HTTPConnectionWrapper> m_httpConnectionWrappers =
     new HashMap<URI, HTTPConnectionWrapper>();
   private HTTPResponse m_lastResponse;
   private final Sleeper m_slowClientSleeper;
   private final TimeAuthorityAdapter m_timeAuthority;
+  private final ResponseLog m_responseLog = new ResponseLog();
 
   HTTPPluginThreadState(PluginThreadContext threadContext,
                         SSLContextFactory sslContextFactory,
@@ -67,12 +78,37 @@ class HTTPPluginThreadState
     m_sslContextFactory = sslContextFactory;
     m_slowClientSleeper = slowClientSleeper;
     m_timeAuthority = new TimeAuthorityAdapter(timeAuthority);
+    m_httpClientContext = this;
+  }
+
+  private HTTPPluginThreadState(PluginThreadContext taskContext,
+                                HTTPPluginThreadState workerState) {
+    m_threadContext = taskContext;
+    m_sslContextFactory = workerState.m_sslContextFactory;
+    m_slowClientSleeper = workerState.m_slowClientSleeper;
+    m_timeAuthority = workerState.m_timeAuthority;
+    m_httpClientContext = workerState.m_httpClientContext;
+  }
+
+  public PluginThreadListener createTaskListener(
+    PluginThreadContext taskContext) {
+    return new HTTPPluginThreadState(taskContext, this);
   }
 
   public PluginThreadContext getThreadContext() {
     return m_threadContext;
   }
 
+  /**
+   * The HTTPClient context, which holds the cookies. Shared with the
+   * worker thread's tasks.
+   *
+   * @return The context.
+   */
+  public Object getHTTPClientContext() {
+    return m_httpClientContext;
+  }
+
   public HTTPConnectionWrapper getConnectionWrapper(URI uri)
     throws ParseException,
            ProtocolNotSuppException,
@@ -92,7 +128,7 @@ class HTTPPluginThreadState
       HTTPPluginConnectionDefaults.getConnectionDefaults();
 
     final HTTPConnection httpConnection = new HTTPConnection(uri);
-    httpConnection.setContext(this);
+    httpConnection.setContext(m_httpClientContext);
 
     if ("https".equals(uri.getScheme())) {
       httpConnection.setSSLSocketFactory(
@@ -113,9 +149,22 @@ class HTTPPluginThreadState
 
   public void beginRun() {
     // Discard our cookies.
-    CookieModule.discardAllCookies(this);
+    CookieModule.discardAllCookies(m_httpClientContext);
 
     // Close connections from previous run.
+    closeConnections();
+  }
+
+  public void endRun() {
+    m_responseLog.flush();
+  }
+
+  public void endThread() {
+    m_responseLog.flush();
+    closeConnections();
+  }
+
+  private void closeConnections() {
     for (HTTPConnectionWrapper connection : m_httpConnectionWrappers.values()) {
       connection.close();
     }
@@ -123,6 +172,10 @@ class HTTPPluginThreadState
     m_httpConnectionWrappers.clear();
   }
 
+  public ResponseLog getResponseLog() {
+    return m_responseLog;
+  }
+
   public void setLastResponse(HTTPResponse lastResponse) {
     m_lastResponse = lastResponse;
   }
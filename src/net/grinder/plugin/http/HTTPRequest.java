@@ -34,13 +34,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.grinder.common.GrinderException;
-import net.grinder.common.Logger;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadContext;
@@ -96,17 +91,13 @@ public class HTTPRequest {
     HTTPPlugin.getPlugin();
   }
 
-  private static final Pattern s_pathParser =
-    Pattern.compile("([^?#]*)(\\?([^#]*))?(#(.*))?");
-
-  private static final Pattern s_absoluteURIPattern =
-    Pattern.compile("^[^:/?#]*:.*");
-
   private volatile URI m_defaultURL;
   private volatile NVPair[] m_defaultHeaders = new NVPair[0];
   private volatile byte[] m_defaultData;
   private volatile NVPair[] m_defaultFormData;
   private volatile boolean m_readResponseBody = true;
+  private volatile RequestTemplate m_template =
+    new RequestTemplate(null, m_defaultHeaders);
 
   /**
    * Creates a new <code>HTTPRequest</code> instance.
@@ -139,7 +130,7 @@ public class HTTPRequest {
    * @throws URLException If the URL is not absolute.
    */
   public final void setUrl(String url) throws ParseException, URLException {
-    if (!isAbsolute(url)) {
+    if (!RequestTemplate.isAbsolute(url)) {
       throw new URLException("URL must be absolute");
     }
 
@@ -156,46 +147,24 @@ public class HTTPRequest {
   }
 
   /**
-   * Merges two NVPair arrays.
-   *
-   * @param defaultPairs
-   *          Default array.
-   * @param overridePairs
-   *          Array to merge. Entries take precedence over
-   *          <code>defaultPairs</code> entries with the same name.
-   * @return The merged arrays. For efficiency's sake, we do not filter out
-   *         <code>null</code> entries.
+   * The template for the current default URL and headers. A new template is
+   * created if either has changed.
    */
-  private NVPair[] mergeArrays(NVPair[] defaultPairs, NVPair[] overridePairs) {
-
-    if (defaultPairs.length == 0) {
-      return overridePairs;
-    }
-
-    if (overridePairs.length == 0) {
-      return defaultPairs;
-    }
-
-    final NVPair[] result =
-      new NVPair[defaultPairs.length + overridePairs.length];
-    final Set<String> seen = new HashSet<String>();
-
-    for (int i = 0; i < overridePairs.length; ++i) {
-      result[i] = overridePairs[i];
-      seen.add(overridePairs[i].getName());
-    }
+  private RequestTemplate getTemplate() {
+    final RequestTemplate template = m_template;
+    final URI defaultURL = m_defaultURL;
+    final NVPair[] defaultHeaders = m_defaultHeaders;
 
-    for (int i = 0; i < defaultPairs.length; ++i) {
-      if (!seen.contains(defaultPairs[i].getName())) {
-        result[overridePairs.length + i] = defaultPairs[i];
-      }
+    if (template.getDefaultURL() == defaultURL &&
+        template.getDefaultHeaders() == defaultHeaders) {
+      return template;
     }
 
-    return result;
-  }
+    final RequestTemplate newTemplate =
+      new RequestTemplate(defaultURL, defaultHeaders);
+    m_template = newTemplate;
 
-  private NVPair[] mergeHeaders(NVPair[] headers) {
-    return mergeArrays(getHeaders(), headers);
+    return newTemplate;
   }
 
   /**
@@ -854,7 +823,10 @@ public class HTTPRequest {
     final NVPair[] contentHeader = new NVPair[1];
     final byte[] data = Codecs.mpFormDataEncode(formData, null, contentHeader);
 
-    return new AbstractRequest(uri, mergeArrays(headers, contentHeader)) {
+    final NVPair[] mergedHeaders =
+      RequestTemplate.mergeArrays(headers, contentHeader);
+
+    return new AbstractRequest(uri, mergedHeaders) {
         HTTPResponse doRequest(HTTPConnection connection,
                                String path,
                                NVPair[] mergedHeaders)
@@ -1173,51 +1145,16 @@ public class HTTPRequest {
   }
 
   private abstract class AbstractRequest {
-    private final URI m_url;
+    private final RequestTemplate.Target m_target;
     private final NVPair[] m_mergedHeaders;
 
     public AbstractRequest(String uri, NVPair[] headers)
       throws ParseException, URLException {
 
-      m_mergedHeaders = mergeHeaders(headers);
-
-      final URI defaultURL = m_defaultURL;
-
-      if (uri == null) {
-        if (defaultURL == null) {
-          throw new URLException("URL not specified");
-        }
-
-        m_url = defaultURL;
-      }
-      else if (isAbsolute(uri)) {
-        m_url = new URI(uri);
-      }
-      else {
-        if (defaultURL == null) {
-          throw new URLException("URL must be absolute");
-        }
+      final RequestTemplate template = getTemplate();
 
-        if (uri.startsWith("//")) {
-          // HTTPClient.URI(URI, String) treats paths that start with two
-          // slashes as absolute. We don't want this, so handle as a special
-          // case.
-          final Matcher matcher = s_pathParser.matcher(uri);
-          matcher.matches();
-          final String path = matcher.group(1);
-          final String query = matcher.group(2);
-          final String fragment = matcher.group(3);
-
-          m_url = new URI(defaultURL.getScheme(),
-                          defaultURL.getUserinfo(),
-                          defaultURL.getHost(),
-                          defaultURL.getPort(),
-                          path, query, fragment);
-        }
-        else {
-          m_url = new URI(defaultURL, uri);
-        }
-      }
+      m_mergedHeaders = template.mergeHeaders(headers);
+      m_target = template.resolve(uri);
     }
 
     public final HTTPResponse getHTTPResponse()
@@ -1232,14 +1169,8 @@ public class HTTPRequest {
 
       final PluginThreadContext threadContext = threadState.getThreadContext();
 
-      final String pathAndQuery = m_url.getPathAndQuery();
-      final String fragment = m_url.getFragment();
-
-      final String path =
-        fragment != null ? pathAndQuery + '#' + fragment : pathAndQuery;
-
       final HTTPConnection connection =
-        threadState.getConnectionWrapper(m_url).getConnection();
+        threadState.getConnectionWrapper(m_target.getURL()).getConnection();
 
       // This will be different to the time the Test was started if
       // the Test wraps several HTTPRequests.
@@ -1249,7 +1180,8 @@ public class HTTPRequest {
       final HTTPResponse httpResponse;
 
       try {
-        httpResponse = doRequest(connection, path, m_mergedHeaders);
+        httpResponse =
+          doRequest(connection, m_target.getPath(), m_mergedHeaders);
       }
       catch (InterruptedIOException e) {
         // We never interrupt worker threads, so we can be sure this is due to
@@ -1280,30 +1212,13 @@ public class HTTPRequest {
 
       final int statusCode = httpResponse.getStatusCode();
 
-      final String message =
-        httpResponse.getOriginalURI() + " -> " + statusCode + " " +
-        httpResponse.getReasonLine() + ", " + responseLength + " bytes";
-
       final ScriptContext scriptContext =
         pluginProcessContext.getScriptContext();
 
-      final Logger logger = scriptContext.getLogger();
-
-      switch (statusCode) {
-      case HttpURLConnection.HTTP_MOVED_PERM:
-      case HttpURLConnection.HTTP_MOVED_TEMP:
-      case 307:
-        // It would be possible to perform the check automatically,
-        // but for now just chuck out some information.
-        logger.output(message +
-                      " [Redirect, ensure the next URL is " +
-                      httpResponse.getHeader("Location") + "]");
-        break;
-
-      default:
-        logger.output(message);
-        break;
-      }
+      threadState.getResponseLog().log(scriptContext.getLogger(),
+                                       httpResponse,
+                                       statusCode,
+                                       responseLength);
 
       try {
         final Statistics statistics = scriptContext.getStatistics();
@@ -1405,8 +1320,4 @@ public class HTTPRequest {
                                              HttpOutputStream outputStream)
       throws IOException, ModuleException;
   }
-
-  private static boolean isAbsolute(String uri) {
-    return s_absoluteURIPattern.matcher(uri).matches();
-  }
 }
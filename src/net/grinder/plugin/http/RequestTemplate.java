@@ -0,0 +1,300 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import HTTPClient.NVPair;
+import HTTPClient.ParseException;
+import HTTPClient.URI;
+
+
+/**
+ * The parts of an {@link HTTPRequest} that are the same for each call,
+ * prepared once.
+ *
+ * <p>
+ * A template is created for a particular default URL and set of default
+ * headers. It caches the URIs that have been resolved against the default
+ * URL, together with the request path that is sent to the server, so that
+ * scripts that issue the same request many times don't parse the URI on
+ * every call.
+ * </p>
+ *
+ * <p>
+ * HTTPClient caches the encoded bytes of each {@link NVPair} header, so
+ * headers that are reused between calls (such as the default headers, or
+ * those defined at the top of a recorded script) are only encoded once.
+ * </p>
+ *
+ * <p>
+ * Templates are immutable, apart from the cache, and are safe for use by
+ * many threads.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class RequestTemplate {
+
+  /** Bound on the number of cached URIs before the cache is flushed. */
+  private static final int MAXIMUM_CACHED_TARGETS = 1024;
+
+  /** Above this number of headers, use a hash set to merge. */
+  private static final int LINEAR_MERGE_LIMIT = 16;
+
+  private static final Pattern s_pathParser =
+    Pattern.compile("([^?#]*)(\\?([^#]*))?(#(.*))?");
+
+  private static final Pattern s_absoluteURIPattern =
+    Pattern.compile("^[^:/?#]*:.*");
+
+  private final URI m_defaultURL;
+  private final Target m_defaultTarget;
+  private final NVPair[] m_defaultHeaders;
+
+  private final ConcurrentMap<String, Target> m_targets =
+    new ConcurrentHashMap<String, Target>();
+
+  /**
+   * Constructor.
+   *
+   * @param defaultURL
+   *          The default URL, or <code>null</code>.
+   * @param defaultHeaders
+   *          The default headers.
+   */
+  public RequestTemplate(URI defaultURL, NVPair[] defaultHeaders) {
+    m_defaultURL = defaultURL;
+    m_defaultTarget = defaultURL != null ? new Target(defaultURL) : null;
+    m_defaultHeaders = defaultHeaders;
+  }
+
+  /**
+   * The default URL.
+   *
+   * @return The default URL, or <code>null</code>.
+   */
+  public URI getDefaultURL() {
+    return m_defaultURL;
+  }
+
+  /**
+   * The default headers.
+   *
+   * @return The default headers.
+   */
+  public NVPair[] getDefaultHeaders() {
+    return m_defaultHeaders;
+  }
+
+  /**
+   * Resolve a URI against the default URL.
+   *
+   * @param uri
+   *          The URI. If <code>null</code>, the default URL is used. If
+   *          relative, it is resolved relative to the default URL.
+   * @return The resolved target.
+   * @throws ParseException
+   *           If the URI cannot be parsed.
+   * @throws URLException
+   *           If the URI cannot be resolved.
+   */
+  public Target resolve(String uri) throws ParseException, URLException {
+    if (uri == null) {
+      if (m_defaultTarget == null) {
+        throw new URLException("URL not specified");
+      }
+
+      return m_defaultTarget;
+    }
+
+    final Target cached = m_targets.get(uri);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    final Target result = new Target(parse(uri));
+
+    if (m_targets.size() >= MAXIMUM_CACHED_TARGETS) {
+      m_targets.clear();
+    }
+
+    m_targets.put(uri, result);
+
+    return result;
+  }
+
+  private URI parse(String uri) throws ParseException, URLException {
+    if (isAbsolute(uri)) {
+      return new URI(uri);
+    }
+
+    if (m_defaultURL == null) {
+      throw new URLException("URL must be absolute");
+    }
+
+    if (uri.startsWith("//")) {
+      // HTTPClient.URI(URI, String) treats paths that start with two
+      // slashes as absolute. We don't want this, so handle as a special
+      // case.
+      final Matcher matcher = s_pathParser.matcher(uri);
+      matcher.matches();
+      final String path = matcher.group(1);
+      final String query = matcher.group(2);
+      final String fragment = matcher.group(3);
+
+      return new URI(m_defaultURL.getScheme(),
+                     m_defaultURL.getUserinfo(),
+                     m_defaultURL.getHost(),
+                     m_defaultURL.getPort(),
+                     path, query, fragment);
+    }
+
+    return new URI(m_defaultURL, uri);
+  }
+
+  /**
+   * Merge headers with the default headers.
+   *
+   * @param headers
+   *          Headers to merge. Entries take precedence over default headers
+   *          with the same name.
+   * @return The merged headers. For efficiency's sake, we do not filter out
+   *         <code>null</code> entries.
+   */
+  public NVPair[] mergeHeaders(NVPair[] headers) {
+    return mergeArrays(m_defaultHeaders, headers);
+  }
+
+  /**
+   * Merges two NVPair arrays.
+   *
+   * <p>
+   * There are usually only a few headers, so a linear search is cheaper than
+   * building a hash set of the names.
+   * </p>
+   *
+   * @param defaultPairs
+   *          Default array.
+   * @param overridePairs
+   *          Array to merge. Entries take precedence over
+   *          <code>defaultPairs</code> entries with the same name.
+   * @return The merged arrays. For efficiency's sake, we do not filter out
+   *         <code>null</code> entries.
+   */
+  static NVPair[] mergeArrays(NVPair[] defaultPairs, NVPair[] overridePairs) {
+
+    if (defaultPairs.length == 0) {
+      return overridePairs;
+    }
+
+    if (overridePairs.length == 0) {
+      return defaultPairs;
+    }
+
+    final NVPair[] result =
+      new NVPair[defaultPairs.length + overridePairs.length];
+    System.arraycopy(overridePairs, 0, result, 0, overridePairs.length);
+
+    if (overridePairs.length <= LINEAR_MERGE_LIMIT) {
+      for (int i = 0; i < defaultPairs.length; ++i) {
+        final String name = defaultPairs[i].getName();
+        boolean overridden = false;
+
+        for (int j = 0; j < overridePairs.length && !overridden; ++j) {
+          overridden = name.equals(overridePairs[j].getName());
+        }
+
+        if (!overridden) {
+          result[overridePairs.length + i] = defaultPairs[i];
+        }
+      }
+    }
+    else {
+      final Set<String> seen = new HashSet<String>();
+
+      for (int i = 0; i < overridePairs.length; ++i) {
+        seen.add(overridePairs[i].getName());
+      }
+
+      for (int i = 0; i < defaultPairs.length; ++i) {
+        if (!seen.contains(defaultPairs[i].getName())) {
+          result[overridePairs.length + i] = defaultPairs[i];
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Whether a URI is absolute.
+   *
+   * @param uri The URI.
+   * @return <code>true</code> if and only if <code>uri</code> is absolute.
+   */
+  public static boolean isAbsolute(String uri) {
+    return s_absoluteURIPattern.matcher(uri).matches();
+  }
+
+  /**
+   * A resolved URI.
+   */
+  static final class Target {
+    private final URI m_url;
+    private final String m_path;
+
+    private Target(URI url) {
+      m_url = url;
+
+      final String pathAndQuery = url.getPathAndQuery();
+      final String fragment = url.getFragment();
+
+      m_path = fragment != null ? pathAndQuery + '#' + fragment : pathAndQuery;
+    }
+
+    /**
+     * The URL.
+     *
+     * @return The URL.
+     */
+    public URI getURL() {
+      return m_url;
+    }
+
+    /**
+     * The path, query string, and fragment to send to the server.
+     *
+     * @return The path.
+     */
+    public String getPath() {
+      return m_path;
+    }
+  }
+}
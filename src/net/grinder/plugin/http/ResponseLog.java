@@ -0,0 +1,251 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import net.grinder.common.Logger;
+
+import HTTPClient.HTTPResponse;
+import HTTPClient.ModuleException;
+import HTTPClient.URI;
+
+
+/**
+ * Per-thread log of HTTP responses.
+ *
+ * <p>
+ * By default, a line is written to the worker thread's output log for
+ * every response. The sample interval and batch size, which apply to all
+ * worker threads in the process, can be changed through
+ * {@link HTTPPluginControl}. Batched responses are held in a fixed set of
+ * records that are reused, and are formatted and written with a single
+ * call to the logger when the batch is full, and at the end of each run.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+final class ResponseLog {
+
+  private static volatile int s_sampleInterval = 1;
+  private static volatile int s_batchSize = 1;
+
+  private Record[] m_records = new Record[0];
+  private int m_count = 0;
+  private long m_responses = 0;
+  private Logger m_logger;
+
+  /**
+   * Set the sample interval.
+   *
+   * @param interval
+   *          <code>0</code> disables logging, <code>1</code> logs every
+   *          response, <code>n</code> logs every <code>n</code>th response
+   *          for each worker thread.
+   */
+  static void setSampleInterval(int interval) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Negative sample interval");
+    }
+
+    s_sampleInterval = interval;
+  }
+
+  static int getSampleInterval() {
+    return s_sampleInterval;
+  }
+
+  /**
+   * Set the batch size.
+   *
+   * @param size
+   *          The number of responses to buffer before writing them to the
+   *          log. <code>1</code> writes each response immediately.
+   */
+  static void setBatchSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1");
+    }
+
+    s_batchSize = size;
+  }
+
+  static int getBatchSize() {
+    return s_batchSize;
+  }
+
+  /**
+   * Record a response.
+   *
+   * @param logger The worker thread's logger.
+   * @param response The response.
+   * @param statusCode The response status code.
+   * @param responseLength The number of bytes read from the response body.
+   * @throws IOException If the response could not be read.
+   * @throws ModuleException If an HTTPClient module failed.
+   */
+  public void log(Logger logger,
+                  HTTPResponse response,
+                  int statusCode,
+                  int responseLength)
+    throws IOException, ModuleException {
+
+    final int sampleInterval = s_sampleInterval;
+
+    if (sampleInterval == 0 || m_responses++ % sampleInterval != 0) {
+      return;
+    }
+
+    final boolean redirect;
+
+    switch (statusCode) {
+    case HttpURLConnection.HTTP_MOVED_PERM:
+    case HttpURLConnection.HTTP_MOVED_TEMP:
+    case 307:
+      redirect = true;
+      break;
+
+    default:
+      redirect = false;
+      break;
+    }
+
+    final String location = redirect ? response.getHeader("Location") : null;
+
+    final int batchSize = s_batchSize;
+
+    if (batchSize == 1 && m_count == 0) {
+      final StringBuilder message = new StringBuilder();
+      format(message,
+             response.getOriginalURI(),
+             statusCode,
+             response.getReasonLine(),
+             responseLength,
+             redirect,
+             location);
+      logger.output(message.toString());
+      return;
+    }
+
+    if (m_count >= m_records.length) {
+      final Record[] records = new Record[Math.max(batchSize, m_count + 1)];
+      System.arraycopy(m_records, 0, records, 0, m_records.length);
+
+      for (int i = m_records.length; i < records.length; ++i) {
+        records[i] = new Record();
+      }
+
+      m_records = records;
+    }
+
+    final Record record = m_records[m_count++];
+    record.m_uri = response.getOriginalURI();
+    record.m_statusCode = statusCode;
+    record.m_reasonLine = response.getReasonLine();
+    record.m_responseLength = responseLength;
+    record.m_redirect = redirect;
+    record.m_location = location;
+
+    m_logger = logger;
+
+    if (m_count >= batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Write any batched responses to the log.
+   */
+  public void flush() {
+    if (m_count == 0) {
+      return;
+    }
+
+    final StringBuilder message = new StringBuilder(m_count * 80);
+    message.append(m_count)
+           .append(m_count == 1 ? " response:" : " responses:");
+
+    for (int i = 0; i < m_count; ++i) {
+      final Record record = m_records[i];
+
+      message.append("\n  ");
+      format(message,
+             record.m_uri,
+             record.m_statusCode,
+             record.m_reasonLine,
+             record.m_responseLength,
+             record.m_redirect,
+             record.m_location);
+
+      record.clear();
+    }
+
+    m_count = 0;
+
+    final Logger logger = m_logger;
+    m_logger = null;
+
+    logger.output(message.toString());
+  }
+
+  private static void format(StringBuilder result,
+                             URI uri,
+                             int statusCode,
+                             String reasonLine,
+                             int responseLength,
+                             boolean redirect,
+                             String location) {
+    result.append(uri);
+    result.append(" -> ");
+    result.append(statusCode);
+    result.append(' ');
+    result.append(reasonLine);
+    result.append(", ");
+    result.append(responseLength);
+    result.append(" bytes");
+
+    if (redirect) {
+      // It would be possible to perform the check automatically,
+      // but for now just chuck out some information.
+      result.append(" [Redirect, ensure the next URL is ");
+      result.append(location);
+      result.append("]");
+    }
+  }
+
+  private static final class Record {
+    private URI m_uri;
+    private int m_statusCode;
+    private String m_reasonLine;
+    private int m_responseLength;
+    private boolean m_redirect;
+    private String m_location;
+
+    void clear() {
+      m_uri = null;
+      m_reasonLine = null;
+      m_location = null;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.plugininterface;
+
+
+/**
+ * A {@link PluginThreadListener} that keeps separate state for each task
+ * its worker thread runs in parallel.
+ *
+ * <p>
+ * Plug-ins whose thread listeners do not implement this interface have
+ * their worker thread's listener shared by the parallel tasks, and that
+ * listener must then be thread safe.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ * @see net.grinder.script.Grinder.ScriptContext#invokeInParallel
+ */
+public interface ParallelPluginThreadListener extends PluginThreadListener {
+
+  /**
+   * Called by the engine to create the listener for a task that the
+   * worker thread is running in parallel. The engine calls the task
+   * listener's {@link PluginThreadListener#endThread()} when the task is
+   * complete; no other life cycle methods are called.
+   *
+   * @param taskContext The task's thread context.
+   * @return The task listener.
+   * @throws PluginException If an error occurs.
+   */
+  PluginThreadListener createTaskListener(PluginThreadContext taskContext)
+    throws PluginException;
+}
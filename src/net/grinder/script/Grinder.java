@@ -178,6 +178,43 @@ public class Grinder {
      */
     int startWorkerThread(Object testRunner) throws GrinderException;
 
+    /**
+     * Run a group of tasks in parallel, and wait for them all to complete.
+     *
+     * <p>This is intended for simulating a browser that fetches the
+     * resources of a page concurrently. The tasks run on a pool of threads
+     * shared by the worker process, the size of which is set by the
+     * <code>grinder.parallelThreads</code> property (default 16). HTTP
+     * requests made by a task use this worker thread's cookies, but the task
+     * has its own connections, and its own last response for {@link
+     * net.grinder.plugin.http.HTTPUtilities#getLastResponse()}. Tests that
+     * the tasks invoke are recorded as usual.
+     * The time for the whole group is recorded against <code>test</code>,
+     * which is marked as composite if the tasks invoke other tests.</p>
+     *
+     * <p>A task that calls <code>invokeInParallel()</code> itself runs the
+     * nested group's tasks in sequence.</p>
+     *
+     * <p>Jython example:</p>
+     * <pre>
+     *   grinder.invokeInParallel(pageTest,
+     *                            [ lambda u=u: request.GET(u) for u in urls ])
+     * </pre>
+     *
+     * <p>JRuby example:</p>
+     * <pre>
+     *   $grinder.invokeInParallel(page_test,
+     *                             urls.map { |u| lambda { request.GET(u) } })
+     * </pre>
+     *
+     * @param test The test to record the time for the group against.
+     * @param tasks Functions, or other callable objects.
+     * @throws InvalidContextException If called from a non-worker thread.
+     * @throws GrinderException If a task could not be run, or failed. If
+     * several tasks failed, the first failure is reported.
+     */
+    void invokeInParallel(Test test, Object[] tasks) throws GrinderException;
+
     /**
      * Stop this worker thread immediately and cleanly.
      *
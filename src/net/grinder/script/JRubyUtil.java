@@ -78,6 +78,10 @@ public class JRubyUtil {
      * method properly, either something extra is invoked, or nothing
      * is recorded).
      *
+     * <p>When DCR instrumentation is available, Ruby procs, methods and
+     * objects can be passed directly to {@link Test#record}, which avoids
+     * the callback and its argument conversion on every call.</p>
+     *
      * @param test The test to record with.
      * @param callback The callback to record.
      * @return The new recorded callback.
@@ -197,10 +197,10 @@ import net.grinder.common.GrinderException;
  * <h4>HTTP Plug-in Statistics</h4>
  *
  * <p>
- * The HTTP plug-in adds a number of basic long statistics. Although these will
- * be updated for a single test, many HTTP requests might be wrapped in that
- * test. Where there is more than one HTTP request, the statistic values will
- * reflect the sum for all requests unless otherwise stated.
+ * The HTTP plug-in registers a number of basic long statistics. Although these
+ * will be updated for a single test, many HTTP requests might be wrapped in
+ * that test. Where there is more than one HTTP request, the statistic values
+ * will reflect the sum for all requests unless otherwise stated.
  * </p>
  *
  * <blockquote> <table class="table">
@@ -367,6 +367,39 @@ import net.grinder.common.GrinderException;
  * using {@link #registerSummaryExpression(String, String)} and
  * {@link #registerDataLogExpression(String, String)}.
  *
+ * <h2>Registering new statistics</h2>
+ *
+ * <p>
+ * Scripts that need more than the <em>userLong</em> and <em>userDouble</em>
+ * statistics can register their own with {@link #registerLongStatistic},
+ * {@link #registerDoubleStatistic}, {@link #registerLongSampleStatistic}, and
+ * {@link #registerDoubleSampleStatistic}. A registered statistic can be used
+ * in expressions and with {@link StatisticsForTest} in the same way as the
+ * standard statistics. For example:
+ * </p>
+ *
+ * <blockquote>
+ *
+ * <pre>
+ * grinder.statistics.registerLongStatistic("retries")
+ * grinder.statistics.registerLongSampleStatistic("queueDepth")
+ * grinder.statistics.registerSummaryExpression(
+ *   "Mean queue depth", "(/ (sum queueDepth) (count queueDepth))")
+ *
+ * # ... later, in a worker thread.
+ * grinder.statistics.forCurrentTest.addLong("retries", 1)
+ * grinder.statistics.forCurrentTest.addLongSample("queueDepth", depth)
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * <p>
+ * Statistics must be registered from the top level of the script, before
+ * the worker threads start. The console is sent the registrations before the
+ * first statistics report. Worker processes may register their statistics
+ * in any order.
+ * </p>
+ *
  *
  * @author Philip Aston
  * @version $Revision: 3940 $
@@ -539,6 +572,69 @@ public interface Statistics  {
   void registerDataLogExpression(String displayName, String expression)
      throws GrinderException, InvalidContextException;
 
+  /**
+   * Register a new basic long statistic.
+   *
+   * <p>
+   * Registering the name of an existing long statistic has no effect.
+   * </p>
+   *
+   * @param statisticName
+   *          The statistic name. This cannot contain white space or
+   *          parentheses.
+   * @throws GrinderException
+   *           If the statistic could not be registered, for example because
+   *           the name is used by a different type of statistic.
+   * @throws InvalidContextException
+   *           If called from a worker thread.
+   */
+  void registerLongStatistic(String statisticName)
+    throws GrinderException, InvalidContextException;
+
+  /**
+   * Register a new basic double statistic.
+   *
+   * @param statisticName
+   *          The statistic name.
+   * @throws GrinderException
+   *           If the statistic could not be registered.
+   * @throws InvalidContextException
+   *           If called from a worker thread.
+   * @see #registerLongStatistic(String)
+   */
+  void registerDoubleStatistic(String statisticName)
+    throws GrinderException, InvalidContextException;
+
+  /**
+   * Register a new sample statistic with long sample values. Samples can be
+   * added with {@link StatisticsForTest#addLongSample}.
+   *
+   * @param statisticName
+   *          The statistic name.
+   * @throws GrinderException
+   *           If the statistic could not be registered.
+   * @throws InvalidContextException
+   *           If called from a worker thread.
+   * @see #registerLongStatistic(String)
+   */
+  void registerLongSampleStatistic(String statisticName)
+    throws GrinderException, InvalidContextException;
+
+  /**
+   * Register a new sample statistic with double sample values. Samples can be
+   * added with {@link StatisticsForTest#addDoubleSample}.
+   *
+   * @param statisticName
+   *          The statistic name.
+   * @throws GrinderException
+   *           If the statistic could not be registered.
+   * @throws InvalidContextException
+   *           If called from a worker thread.
+   * @see #registerLongStatistic(String)
+   */
+  void registerDoubleSampleStatistic(String statisticName)
+    throws GrinderException, InvalidContextException;
+
   /**
    * Query and update methods for the statistics relating to a particular call
    * of a test.
@@ -634,6 +730,46 @@ public interface Statistics  {
     void addDouble(String statisticName, double value)
       throws InvalidContextException, NoSuchStatisticException;
 
+    /**
+     * Add a sample <code>value</code> to the long sample statistic
+     * <code>statisticName</code>.
+     *
+     * @param statisticName
+     *          The statistic name, which must have been registered with
+     *          {@link Statistics#registerLongSampleStatistic}.
+     * @param value
+     *          The sample value.
+     * @throws InvalidContextException
+     *           If called when the statistics have already been sent for the
+     *           last test performed by this thread - see
+     *           {@link Statistics#setDelayReports(boolean)}.
+     * @throws NoSuchStatisticException
+     *           If <code>statisticName</code> does not refer to a registered
+     *           long sample statistic.
+     */
+    void addLongSample(String statisticName, long value)
+      throws InvalidContextException, NoSuchStatisticException;
+
+    /**
+     * Add a sample <code>value</code> to the double sample statistic
+     * <code>statisticName</code>.
+     *
+     * @param statisticName
+     *          The statistic name, which must have been registered with
+     *          {@link Statistics#registerDoubleSampleStatistic}.
+     * @param value
+     *          The sample value.
+     * @throws InvalidContextException
+     *           If called when the statistics have already been sent for the
+     *           last test performed by this thread - see
+     *           {@link Statistics#setDelayReports(boolean)}.
+     * @throws NoSuchStatisticException
+     *           If <code>statisticName</code> does not refer to a registered
+     *           double sample statistic.
+     */
+    void addDoubleSample(String statisticName, double value)
+      throws InvalidContextException, NoSuchStatisticException;
+
     /**
      * Return the value of long statistic <code>statisticName</code>.
      *
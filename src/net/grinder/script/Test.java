@@ -113,5 +113,47 @@ public class Test extends AbstractTestSemantics implements Serializable {
     throws NonInstrumentableTypeException {
     m_registeredTest.instrument(target);
   }
+
+  /**
+   * Only time one in every <code>interval</code> invocations of this
+   * <code>Test</code>.
+   *
+   * <p>
+   * This is intended for methods that are called so often that the cost of
+   * timing and logging each call would distort the results. Every invocation
+   * is still counted, so the test and TPS figures reported to the console
+   * remain exact. Only the sampled invocations are timed, written to the data
+   * log, and contribute to the mean test time.
+   * </p>
+   *
+   * <p>
+   * Invocations that are not sampled have no statistics of their own.
+   * Within such an invocation, {@link Statistics#getForCurrentTest()} throws
+   * an {@link InvalidContextException}, as if there were no test in
+   * progress, and {@link Statistics#getForLastTest()} returns the
+   * statistics of the last sampled invocation. Scripts and plug-ins that
+   * set statistics for the current test should check
+   * {@link Statistics#isTestInProgress()} first.
+   * </p>
+   *
+   * <p>
+   * Each worker thread samples independently, starting with its first
+   * invocation. The default interval is <code>1</code>, which times every
+   * invocation.
+   * </p>
+   *
+   * @param interval
+   *          The sample interval.
+   * @throws IllegalArgumentException
+   *           If <code>interval</code> is less than <code>1</code>.
+   */
+  public final void setSampleInterval(int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException(
+        "Sample interval must be at least 1, not " + interval);
+    }
+
+    m_registeredTest.setSampleInterval(interval);
+  }
 }
 
@@ -64,5 +64,13 @@ public interface TestRegistry {
      *           If the target could not be instrumented.
      */
     void instrument(Object target) throws NonInstrumentableTypeException;
+
+    /**
+     * Set how often invocations are timed.
+     *
+     * @param interval
+     *          Time one in every {@code interval} invocations.
+     */
+    void setSampleInterval(int interval);
   }
 }
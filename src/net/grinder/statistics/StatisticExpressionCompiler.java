@@ -0,0 +1,579 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.Division;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.DoubleConstant;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.Fold;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.FoldOperation;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.LongConstant;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.Negation;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.PrimitiveDoubleStatistic;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.PrimitiveLongStatistic;
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.SquareRoot;
+import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+
+/**
+ * Compiles statistic expressions to Java byte code.
+ *
+ * <p>
+ * Each expression is compiled to a class that implements {@link Evaluator}
+ * and reads the values directly from the arrays of a {@link
+ * StatisticsSetImplementation}. The compiled expression holds the lock on
+ * the statistics set once, rather than once for each value the expression
+ * refers to, and there are no virtual calls between the nodes of the
+ * expression.
+ * </p>
+ *
+ * <p>
+ * The result has the same type, and the same value, as the expression
+ * built by {@link StatisticExpressionFactoryImplementation}. The code is
+ * generated by walking that expression, which is also kept for use with
+ * other implementations of {@link StatisticsSet}.
+ * </p>
+ *
+ * <p>
+ * Expression views are recreated whenever they are received from a worker
+ * process, so the same expression is compiled many times. Evaluators are
+ * cached by the normalised expression string, and each generated class has
+ * its own class loader so that it can be collected once it drops out of
+ * the cache and is no longer used.
+ * </p>
+ *
+ * <p>
+ * This class is public only because the generated classes are loaded by
+ * their own class loader, and must be able to see {@link Evaluator}.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class StatisticExpressionCompiler implements Opcodes {
+
+  private static final String PACKAGE = "net/grinder/statistics/compiled/";
+
+  private static final String EVALUATOR =
+    Type.getInternalName(Evaluator.class);
+
+  private static final String EVALUATE_DESCRIPTOR_SUFFIX = "([J[D)";
+
+  /**
+   * The maximum number of evaluators that are cached. Package scope for unit
+   * tests.
+   */
+  static final int MAXIMUM_CACHED_EVALUATORS = 256;
+
+  // Guarded by itself.
+  private final Map<String, Evaluator> m_evaluators =
+    new LinkedHashMap<String, Evaluator>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, Evaluator> e) {
+        return size() > MAXIMUM_CACHED_EVALUATORS;
+      }
+    };
+
+  // Guarded by m_evaluators.
+  private int m_nextClassNumber;
+
+  /**
+   * Compile an expression.
+   *
+   * @param expression
+   *          The normalised expression string, used as the cache key.
+   * @param interpreted
+   *          The parsed expression, used for statistics sets that are not
+   *          {@link StatisticsSetImplementation}s. It is returned if the
+   *          expression can't be compiled.
+   * @return The compiled expression.
+   */
+  StatisticExpression compile(String expression,
+                              StatisticExpression interpreted) {
+
+    try {
+      final Evaluator evaluator;
+
+      synchronized (m_evaluators) {
+        final Evaluator cached = m_evaluators.get(expression);
+
+        if (cached != null) {
+          evaluator = cached;
+        }
+        else {
+          final Node node = toNode(interpreted);
+
+          if (node == null) {
+            return interpreted;
+          }
+
+          evaluator = generate(node);
+          m_evaluators.put(expression, evaluator);
+        }
+      }
+
+      return new CompiledExpression(evaluator,
+                                    interpreted.isDouble(),
+                                    interpreted);
+    }
+    catch (LinkageError e) {
+      // ASM is not available, or the class can't be defined.
+      return interpreted;
+    }
+    catch (SecurityException e) {
+      return interpreted;
+    }
+  }
+
+  /**
+   * Convert a parsed expression to a tree of nodes.
+   *
+   * @param expression The parsed expression.
+   * @return The node, or <code>null</code> if the expression contains
+   *  something that isn't built by {@link
+   *  StatisticExpressionFactoryImplementation}.
+   */
+  private static Node toNode(StatisticExpression expression) {
+    if (expression instanceof LongConstant) {
+      return new LongConstantNode(((LongConstant) expression).getConstant());
+    }
+    else if (expression instanceof DoubleConstant) {
+      return new DoubleConstantNode(
+        ((DoubleConstant) expression).getConstant());
+    }
+    else if (expression instanceof PrimitiveLongStatistic) {
+      return new LongValue(((PrimitiveLongStatistic) expression).getIndex());
+    }
+    else if (expression instanceof PrimitiveDoubleStatistic) {
+      return new DoubleValue(
+        ((PrimitiveDoubleStatistic) expression).getIndex());
+    }
+    else if (expression instanceof Fold) {
+      final Fold fold = (Fold) expression;
+      final Node initialValue = toNode(fold.getInitialValue());
+      final Node[] operands = toNodes(fold.getOperands());
+
+      if (initialValue == null || operands == null) {
+        return null;
+      }
+
+      return new FoldNode(fold.getOperation(), initialValue, operands);
+    }
+    else if (expression instanceof Negation) {
+      final Node operand = toNode(((Negation) expression).getOperand());
+
+      return operand != null ? new NegationNode(operand) : null;
+    }
+    else if (expression instanceof Division) {
+      final Division division = (Division) expression;
+      final Node numerator = toNode(division.getNumerator());
+      final Node denominator = toNode(division.getDenominator());
+
+      if (numerator == null || denominator == null) {
+        return null;
+      }
+
+      return new DivisionNode(numerator, denominator);
+    }
+    else if (expression instanceof SquareRoot) {
+      final Node operand = toNode(((SquareRoot) expression).getOperand());
+
+      return operand != null ? new SquareRootNode(operand) : null;
+    }
+
+    return null;
+  }
+
+  private static Node[] toNodes(StatisticExpression[] expressions) {
+    final Node[] result = new Node[expressions.length];
+
+    for (int i = 0; i < expressions.length; ++i) {
+      result[i] = toNode(expressions[i]);
+
+      if (result[i] == null) {
+        return null;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generate and load a class for a node.
+   *
+   * <p>Called with the lock on {@link #m_evaluators} held.</p>
+   */
+  private Evaluator generate(Node node) {
+    final String className = PACKAGE + "Expression" + m_nextClassNumber++;
+
+    final ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+    classWriter.visit(V1_5,
+                      ACC_PUBLIC | ACC_FINAL | ACC_SUPER,
+                      className,
+                      null,
+                      "java/lang/Object",
+                      new String[] { EVALUATOR });
+
+    final MethodVisitor constructor =
+      classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(ALOAD, 0);
+    constructor.visitMethodInsn(INVOKESPECIAL,
+                                "java/lang/Object",
+                                "<init>",
+                                "()V");
+    constructor.visitInsn(RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    generateMethod(classWriter, "evaluateLong", node, false);
+    generateMethod(classWriter, "evaluateDouble", node, true);
+
+    classWriter.visitEnd();
+
+    final Class<?> generatedClass =
+      new GeneratedClassLoader().define(className.replace('/', '.'),
+                                        classWriter.toByteArray());
+
+    try {
+      return (Evaluator) generatedClass.newInstance();
+    }
+    catch (InstantiationException e) {
+      throw new AssertionError(e);
+    }
+    catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void generateMethod(ClassWriter classWriter,
+                                     String name,
+                                     Node node,
+                                     boolean asDouble) {
+    final MethodVisitor method =
+      classWriter.visitMethod(ACC_PUBLIC,
+                              name,
+                              EVALUATE_DESCRIPTOR_SUFFIX +
+                              (asDouble ? "D" : "J"),
+                              null,
+                              null);
+    method.visitCode();
+    node.generate(method, asDouble);
+    method.visitInsn(asDouble ? DRETURN : LRETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  /**
+   * Implemented by generated classes.
+   */
+  public interface Evaluator {
+
+    /**
+     * Evaluate the expression as a long.
+     *
+     * @param longs The long values of a statistics set.
+     * @param doubles The double values of a statistics set.
+     * @return The value.
+     */
+    long evaluateLong(long[] longs, double[] doubles);
+
+    /**
+     * Evaluate the expression as a double.
+     *
+     * @param longs The long values of a statistics set.
+     * @param doubles The double values of a statistics set.
+     * @return The value.
+     */
+    double evaluateDouble(long[] longs, double[] doubles);
+  }
+
+  /**
+   * Package scope for unit tests.
+   */
+  static final class CompiledExpression implements StatisticExpression {
+
+    private final Evaluator m_evaluator;
+    private final boolean m_isDouble;
+    private final StatisticExpression m_interpreted;
+
+    public CompiledExpression(Evaluator evaluator,
+                              boolean isDouble,
+                              StatisticExpression interpreted) {
+      m_evaluator = evaluator;
+      m_isDouble = isDouble;
+      m_interpreted = interpreted;
+    }
+
+    public double getDoubleValue(StatisticsSet statisticsSet) {
+      if (statisticsSet instanceof StatisticsSetImplementation) {
+        return ((StatisticsSetImplementation) statisticsSet)
+               .evaluateDouble(m_evaluator);
+      }
+
+      return m_interpreted.getDoubleValue(statisticsSet);
+    }
+
+    public long getLongValue(StatisticsSet statisticsSet) {
+      if (statisticsSet instanceof StatisticsSetImplementation) {
+        return ((StatisticsSetImplementation) statisticsSet)
+               .evaluateLong(m_evaluator);
+      }
+
+      return m_interpreted.getLongValue(statisticsSet);
+    }
+
+    public boolean isDouble() {
+      return m_isDouble;
+    }
+
+    Evaluator getEvaluator() {
+      return m_evaluator;
+    }
+  }
+
+  /**
+   * Each generated class has its own loader, so it can be unloaded
+   * independently of the others.
+   */
+  private static final class GeneratedClassLoader extends ClassLoader {
+    public GeneratedClassLoader() {
+      super(StatisticExpressionCompiler.class.getClassLoader());
+    }
+
+    public Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  /**
+   * Node of the parsed expression.
+   */
+  private abstract static class Node {
+    private final boolean m_isDouble;
+
+    protected Node(boolean isDouble) {
+      m_isDouble = isDouble;
+    }
+
+    public final boolean isDouble() {
+      return m_isDouble;
+    }
+
+    /**
+     * Generate code that leaves the value of the node on the stack.
+     *
+     * @param method The method to add the code to.
+     * @param asDouble <code>true</code> => the value should be a double,
+     * otherwise it should be a long.
+     */
+    public final void generate(MethodVisitor method, boolean asDouble) {
+      generateValue(method);
+
+      if (asDouble && !m_isDouble) {
+        method.visitInsn(L2D);
+      }
+      else if (!asDouble && m_isDouble) {
+        method.visitInsn(D2L);
+      }
+    }
+
+    /**
+     * Generate code that leaves the value of the node, in its natural type,
+     * on the stack.
+     *
+     * @param method The method to add the code to.
+     */
+    protected abstract void generateValue(MethodVisitor method);
+  }
+
+  private static final class LongConstantNode extends Node {
+    private final long m_value;
+
+    public LongConstantNode(long value) {
+      super(false);
+      m_value = value;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      method.visitLdcInsn(new Long(m_value));
+    }
+  }
+
+  private static final class DoubleConstantNode extends Node {
+    private final double m_value;
+
+    public DoubleConstantNode(double value) {
+      super(true);
+      m_value = value;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      method.visitLdcInsn(new Double(m_value));
+    }
+  }
+
+  private static final class LongValue extends Node {
+    private final int m_index;
+
+    public LongValue(LongIndex index) {
+      super(false);
+      m_index = index.getValue();
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      method.visitVarInsn(ALOAD, 1);
+      method.visitLdcInsn(new Integer(m_index));
+      method.visitInsn(LALOAD);
+    }
+  }
+
+  private static final class DoubleValue extends Node {
+    private final int m_index;
+
+    public DoubleValue(DoubleIndex index) {
+      super(true);
+      m_index = index.getValue();
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      method.visitVarInsn(ALOAD, 2);
+      method.visitLdcInsn(new Integer(m_index));
+      method.visitInsn(DALOAD);
+    }
+  }
+
+  /**
+   * Applies an operation to an initial value and each operand in turn. The
+   * operation is carried out with doubles if any operand, not counting the
+   * initial value, is a double.
+   */
+  private static final class FoldNode extends Node {
+    private final int m_doubleOpcode;
+    private final int m_longOpcode;
+    private final Node m_initialValue;
+    private final Node[] m_operands;
+
+    public FoldNode(FoldOperation operation,
+                    Node initialValue,
+                    Node[] operands) {
+      super(anyDouble(operands));
+
+      switch (operation) {
+        case ADD:
+          m_doubleOpcode = DADD;
+          m_longOpcode = LADD;
+          break;
+
+        case SUBTRACT:
+          m_doubleOpcode = DSUB;
+          m_longOpcode = LSUB;
+          break;
+
+        case MULTIPLY:
+          m_doubleOpcode = DMUL;
+          m_longOpcode = LMUL;
+          break;
+
+        default:
+          throw new AssertionError(operation);
+      }
+
+      m_initialValue = initialValue;
+      m_operands = operands;
+    }
+
+    private static boolean anyDouble(Node[] nodes) {
+      for (Node node : nodes) {
+        if (node.isDouble()) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      m_initialValue.generate(method, isDouble());
+
+      for (Node operand : m_operands) {
+        operand.generate(method, isDouble());
+        method.visitInsn(isDouble() ? m_doubleOpcode : m_longOpcode);
+      }
+    }
+  }
+
+  private static final class NegationNode extends Node {
+    private final Node m_operand;
+
+    public NegationNode(Node operand) {
+      super(operand.isDouble());
+      m_operand = operand;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      m_operand.generate(method, isDouble());
+      method.visitInsn(isDouble() ? DNEG : LNEG);
+    }
+  }
+
+  private static final class DivisionNode extends Node {
+    private final Node m_numerator;
+    private final Node m_denominator;
+
+    public DivisionNode(Node numerator, Node denominator) {
+      super(true);
+      m_numerator = numerator;
+      m_denominator = denominator;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      m_numerator.generate(method, true);
+      m_denominator.generate(method, true);
+      method.visitInsn(DDIV);
+    }
+  }
+
+  private static final class SquareRootNode extends Node {
+    private final Node m_operand;
+
+    public SquareRootNode(Node operand) {
+      super(true);
+      m_operand = operand;
+    }
+
+    protected void generateValue(MethodVisitor method) {
+      m_operand.generate(method, true);
+      method.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "sqrt", "(D)D");
+    }
+  }
+}
@@ -40,10 +40,12 @@ final class StatisticExpressionFactoryImplementation
   implements StatisticExpressionFactory {
 
   private final StatisticsIndexMap m_indexMap;
+  private final StatisticExpressionCompiler m_compiler;
 
   StatisticExpressionFactoryImplementation(
     StatisticsIndexMap statisticsIndexMap) {
     m_indexMap = statisticsIndexMap;
+    m_compiler = new StatisticExpressionCompiler();
   }
 
   /**
@@ -88,7 +90,10 @@ final class StatisticExpressionFactoryImplementation
   }
 
   /**
-   * Parse an expression.
+   * Parse an expression, and compile it with a {@link
+   * StatisticExpressionCompiler}. The compiler works from the parsed
+   * expression, and shares the generated code between expressions that
+   * have the same normalised form.
    *
    * @param expression The expression.
    * @return The parsed expression.
@@ -97,6 +102,26 @@ final class StatisticExpressionFactoryImplementation
   public StatisticExpression createExpression(String expression)
     throws StatisticsException {
 
+    final StatisticExpression interpreted =
+      createInterpretedExpression(expression);
+
+    return m_compiler.compile(normaliseExpressionString(expression),
+                              interpreted);
+  }
+
+  /**
+   * Parse an expression into a tree of expressions that is evaluated by
+   * walking the tree.
+   *
+   * <p>Package scope for unit tests and benchmarks.</p>
+   *
+   * @param expression The expression.
+   * @return The parsed expression.
+   * @exception StatisticsException If the expression is invalid.
+   */
+  StatisticExpression createInterpretedExpression(String expression)
+    throws StatisticsException {
+
     final ParseContext parseContext = new ParseContext(expression);
 
     final StatisticExpression result = readExpression(parseContext);
@@ -197,12 +222,8 @@ final class StatisticExpressionFactoryImplementation
    * @param value The value.
    * @return The <code>StatisticExpression</code>.
    */
-  public StatisticExpression createConstant(final long value) {
-    return new LongStatistic() {
-        public long getValue(StatisticsSet statisticsSet) {
-          return value;
-        }
-      };
+  public StatisticExpression createConstant(long value) {
+    return new LongConstant(value);
   }
 
   /**
@@ -211,12 +232,8 @@ final class StatisticExpressionFactoryImplementation
    * @param value The value.
    * @return The <code>StatisticExpression</code>.
    */
-  public StatisticExpression createConstant(final double value) {
-    return new DoubleStatistic() {
-        public double getValue(StatisticsSet statisticsSet) {
-          return value;
-        }
-      };
+  public StatisticExpression createConstant(double value) {
+    return new DoubleConstant(value);
   }
 
   /**
@@ -245,22 +262,8 @@ final class StatisticExpressionFactoryImplementation
    * @param operands The things to add.
    * @return The resulting expression.
    */
-  public StatisticExpression createSum(final StatisticExpression[] operands) {
-
-    return new FoldArgumentsExpressionFactory(0, operands) {
-        public double doDoubleOperation(
-          double result, StatisticExpression operand,
-          StatisticsSet statisticsSet) {
-          return result + operand.getDoubleValue(statisticsSet);
-        }
-
-        public long doLongOperation(
-          long result, StatisticExpression operand,
-          StatisticsSet statisticsSet) {
-          return result + operand.getLongValue(statisticsSet);
-        }
-      }
-      .getExpression();
+  public StatisticExpression createSum(StatisticExpression[] operands) {
+    return new Fold(FoldOperation.ADD, createConstant(0.0), operands);
   }
 
   /**
@@ -269,22 +272,8 @@ final class StatisticExpressionFactoryImplementation
    * @param operand The thing to negate.
    * @return The resulting expression.
    */
-  public StatisticExpression createNegation(final StatisticExpression operand) {
-
-    if (operand.isDouble()) {
-      return new DoubleStatistic() {
-        protected double getValue(StatisticsSet statisticsSet) {
-          return -operand.getDoubleValue(statisticsSet);
-        }
-      };
-    }
-    else {
-      return new LongStatistic() {
-        protected long getValue(StatisticsSet statisticsSet) {
-          return -operand.getLongValue(statisticsSet);
-        }
-      };
-    }
+  public StatisticExpression createNegation(StatisticExpression operand) {
+    return new Negation(operand);
   }
 
   /**
@@ -296,23 +285,10 @@ final class StatisticExpressionFactoryImplementation
    * @return The resulting expression.
    */
   public StatisticExpression createMinus(
-    final StatisticExpression firstOperand,
-    final StatisticExpression[] otherOperands) {
-
-    return new FoldArgumentsExpressionFactory(firstOperand, otherOperands) {
-      public double doDoubleOperation(double result,
-                                      StatisticExpression operand,
-                                      StatisticsSet statisticsSet) {
-        return result - operand.getDoubleValue(statisticsSet);
-      }
+    StatisticExpression firstOperand,
+    StatisticExpression[] otherOperands) {
 
-      public long doLongOperation(long result,
-                                  StatisticExpression operand,
-                                  StatisticsSet statisticsSet) {
-        return result - operand.getLongValue(statisticsSet);
-      }
-    }
-    .getExpression();
+    return new Fold(FoldOperation.SUBTRACT, firstOperand, otherOperands);
   }
 
 
@@ -322,23 +298,8 @@ final class StatisticExpressionFactoryImplementation
    * @param operands The things to multiply.
    * @return The resulting expression.
    */
-  public StatisticExpression
-    createProduct(final StatisticExpression[] operands) {
-
-    return new FoldArgumentsExpressionFactory(1, operands) {
-        public double doDoubleOperation(
-          double result, StatisticExpression operand,
-          StatisticsSet statisticsSet) {
-          return result * operand.getDoubleValue(statisticsSet);
-        }
-
-        public long doLongOperation(
-          long result, StatisticExpression operand,
-          StatisticsSet statisticsSet) {
-          return result * operand.getLongValue(statisticsSet);
-        }
-      }
-      .getExpression();
+  public StatisticExpression createProduct(StatisticExpression[] operands) {
+    return new Fold(FoldOperation.MULTIPLY, createConstant(1.0), operands);
   }
 
   /**
@@ -349,16 +310,10 @@ final class StatisticExpressionFactoryImplementation
    * @return The resulting expression.
    */
   public StatisticExpression
-    createDivision(final StatisticExpression numerator,
-                   final StatisticExpression denominator) {
-
-    return new DoubleStatistic() {
-        public double getValue(StatisticsSet statisticsSet) {
-          return
-            numerator.getDoubleValue(statisticsSet) /
-            denominator.getDoubleValue(statisticsSet);
-        }
-      };
+    createDivision(StatisticExpression numerator,
+                   StatisticExpression denominator) {
+
+    return new Division(numerator, denominator);
   }
 
   /**
@@ -486,13 +441,9 @@ final class StatisticExpressionFactoryImplementation
    * @return The resulting expression.
    */
   public StatisticExpression
-    createSquareRoot(final StatisticExpression operand) {
+    createSquareRoot(StatisticExpression operand) {
 
-    return new DoubleStatistic() {
-        public double getValue(StatisticsSet statisticsSet) {
-          return Math.sqrt(operand.getDoubleValue(statisticsSet));
-        }
-      };
+    return new SquareRoot(operand);
   }
 
   /**
@@ -578,8 +529,7 @@ final class StatisticExpressionFactoryImplementation
     return arrayList.toArray(new StatisticExpression[arrayList.size()]);
   }
 
-  private abstract static class DoubleStatistic
-    implements StatisticExpression {
+  abstract static class DoubleStatistic implements StatisticExpression {
     public final double getDoubleValue(StatisticsSet statisticsSet) {
       return getValue(statisticsSet);
     }
@@ -595,7 +545,56 @@ final class StatisticExpressionFactoryImplementation
     protected abstract double getValue(StatisticsSet statisticsSet);
   }
 
-  private static class PrimitiveDoubleStatistic extends DoubleStatistic {
+  abstract static class LongStatistic implements StatisticExpression {
+
+    public final double getDoubleValue(StatisticsSet statisticsSet) {
+      return getValue(statisticsSet);
+    }
+
+    public final long getLongValue(StatisticsSet statisticsSet) {
+      return getValue(statisticsSet);
+    }
+
+    public final boolean isDouble() {
+      return false;
+    }
+
+    protected abstract long getValue(StatisticsSet statisticsSet);
+  }
+
+  static final class LongConstant extends LongStatistic {
+    private final long m_value;
+
+    public LongConstant(long value) {
+      m_value = value;
+    }
+
+    public long getValue(StatisticsSet statisticsSet) {
+      return m_value;
+    }
+
+    public long getConstant() {
+      return m_value;
+    }
+  }
+
+  static final class DoubleConstant extends DoubleStatistic {
+    private final double m_value;
+
+    public DoubleConstant(double value) {
+      m_value = value;
+    }
+
+    public double getValue(StatisticsSet statisticsSet) {
+      return m_value;
+    }
+
+    public double getConstant() {
+      return m_value;
+    }
+  }
+
+  static class PrimitiveDoubleStatistic extends DoubleStatistic {
 
     private final DoubleIndex m_index;
 
@@ -610,6 +609,10 @@ final class StatisticExpressionFactoryImplementation
     protected final void setValue(StatisticsSet statisticsSet, double value) {
       statisticsSet.setValue(m_index, value);
     }
+
+    public final DoubleIndex getIndex() {
+      return m_index;
+    }
   }
 
   private static class PeakDoubleStatistic
@@ -632,24 +635,7 @@ final class StatisticExpressionFactoryImplementation
     }
   }
 
-  private abstract static class LongStatistic implements StatisticExpression {
-
-    public final double getDoubleValue(StatisticsSet statisticsSet) {
-      return getValue(statisticsSet);
-    }
-
-    public final long getLongValue(StatisticsSet statisticsSet) {
-      return getValue(statisticsSet);
-    }
-
-    public final boolean isDouble() {
-      return false;
-    }
-
-    protected abstract long getValue(StatisticsSet statisticsSet);
-  }
-
-  private static class PrimitiveLongStatistic extends LongStatistic {
+  static class PrimitiveLongStatistic extends LongStatistic {
 
     private final LongIndex m_index;
 
@@ -664,6 +650,10 @@ final class StatisticExpressionFactoryImplementation
     protected final void setValue(StatisticsSet statisticsSet, long value) {
       statisticsSet.setValue(m_index, value);
     }
+
+    public final LongIndex getIndex() {
+      return m_index;
+    }
   }
 
   private static class PeakLongStatistic
@@ -685,18 +675,63 @@ final class StatisticExpressionFactoryImplementation
     }
   }
 
-  private abstract class FoldArgumentsExpressionFactory {
+  /**
+   * The operations that a {@link Fold} can apply.
+   */
+  enum FoldOperation {
+    ADD {
+      double apply(double result, double operand) {
+        return result + operand;
+      }
 
-    private final StatisticExpression m_expression;
+      long apply(long result, long operand) {
+        return result + operand;
+      }
+    },
 
-    public FoldArgumentsExpressionFactory(
-      double initialValue, final StatisticExpression[] operands) {
-      this(createConstant(initialValue), operands);
-    }
+    SUBTRACT {
+      double apply(double result, double operand) {
+        return result - operand;
+      }
+
+      long apply(long result, long operand) {
+        return result - operand;
+      }
+    },
 
-    public FoldArgumentsExpressionFactory(
-      final StatisticExpression initialValue,
-      final StatisticExpression[] operands) {
+    MULTIPLY {
+      double apply(double result, double operand) {
+        return result * operand;
+      }
+
+      long apply(long result, long operand) {
+        return result * operand;
+      }
+    };
+
+    abstract double apply(double result, double operand);
+
+    abstract long apply(long result, long operand);
+  }
+
+  /**
+   * Applies an operation to an initial value and each operand in turn. The
+   * operation is carried out with doubles if any operand, not counting the
+   * initial value, is a double.
+   */
+  static final class Fold implements StatisticExpression {
+
+    private final FoldOperation m_operation;
+    private final StatisticExpression m_initialValue;
+    private final StatisticExpression[] m_operands;
+    private final boolean m_isDouble;
+
+    public Fold(FoldOperation operation,
+                StatisticExpression initialValue,
+                StatisticExpression[] operands) {
+      m_operation = operation;
+      m_initialValue = initialValue;
+      m_operands = operands;
 
       boolean doubleResult = false;
 
@@ -706,46 +741,134 @@ final class StatisticExpressionFactoryImplementation
         }
       }
 
-      if (doubleResult) {
-        m_expression = new DoubleStatistic() {
-            public final double getValue(
-              StatisticsSet statisticsSet) {
-              double result = initialValue.getDoubleValue(statisticsSet);
+      m_isDouble = doubleResult;
+    }
 
-              for (int i = 0; i < operands.length; ++i) {
-                result = doDoubleOperation(result, operands[i], statisticsSet);
-              }
+    public double getDoubleValue(StatisticsSet statisticsSet) {
+      if (m_isDouble) {
+        return foldDoubles(statisticsSet);
+      }
+
+      return foldLongs(statisticsSet);
+    }
 
-              return result;
-            }
-          };
+    public long getLongValue(StatisticsSet statisticsSet) {
+      if (m_isDouble) {
+        return (long)foldDoubles(statisticsSet);
       }
-      else {
-        m_expression = new LongStatistic() {
-            public final long getValue(
-              StatisticsSet statisticsSet) {
-              long result = initialValue.getLongValue(statisticsSet);
 
-              for (int i = 0; i < operands.length; ++i) {
-                result = doLongOperation(result, operands[i], statisticsSet);
-              }
+      return foldLongs(statisticsSet);
+    }
+
+    public boolean isDouble() {
+      return m_isDouble;
+    }
+
+    private double foldDoubles(StatisticsSet statisticsSet) {
+      double result = m_initialValue.getDoubleValue(statisticsSet);
 
-              return result;
-            }
-          };
+      for (int i = 0; i < m_operands.length; ++i) {
+        result = m_operation.apply(result,
+                                   m_operands[i].getDoubleValue(statisticsSet));
       }
+
+      return result;
     }
 
-    protected abstract double
-      doDoubleOperation(double result, StatisticExpression operand,
-                        StatisticsSet statisticsSet);
+    private long foldLongs(StatisticsSet statisticsSet) {
+      long result = m_initialValue.getLongValue(statisticsSet);
 
-    protected abstract long
-      doLongOperation(long result, StatisticExpression operand,
-                      StatisticsSet statisticsSet);
+      for (int i = 0; i < m_operands.length; ++i) {
+        result = m_operation.apply(result,
+                                   m_operands[i].getLongValue(statisticsSet));
+      }
+
+      return result;
+    }
+
+    public FoldOperation getOperation() {
+      return m_operation;
+    }
+
+    public StatisticExpression getInitialValue() {
+      return m_initialValue;
+    }
+
+    public StatisticExpression[] getOperands() {
+      return m_operands;
+    }
+  }
+
+  static final class Negation implements StatisticExpression {
+    private final StatisticExpression m_operand;
+
+    public Negation(StatisticExpression operand) {
+      m_operand = operand;
+    }
+
+    public double getDoubleValue(StatisticsSet statisticsSet) {
+      if (m_operand.isDouble()) {
+        return -m_operand.getDoubleValue(statisticsSet);
+      }
+
+      return -m_operand.getLongValue(statisticsSet);
+    }
+
+    public long getLongValue(StatisticsSet statisticsSet) {
+      if (m_operand.isDouble()) {
+        return (long)-m_operand.getDoubleValue(statisticsSet);
+      }
+
+      return -m_operand.getLongValue(statisticsSet);
+    }
+
+    public boolean isDouble() {
+      return m_operand.isDouble();
+    }
+
+    public StatisticExpression getOperand() {
+      return m_operand;
+    }
+  }
+
+  static final class Division extends DoubleStatistic {
+    private final StatisticExpression m_numerator;
+    private final StatisticExpression m_denominator;
+
+    public Division(StatisticExpression numerator,
+                    StatisticExpression denominator) {
+      m_numerator = numerator;
+      m_denominator = denominator;
+    }
+
+    public double getValue(StatisticsSet statisticsSet) {
+      return
+        m_numerator.getDoubleValue(statisticsSet) /
+        m_denominator.getDoubleValue(statisticsSet);
+    }
+
+    public StatisticExpression getNumerator() {
+      return m_numerator;
+    }
+
+    public StatisticExpression getDenominator() {
+      return m_denominator;
+    }
+  }
+
+  static final class SquareRoot extends DoubleStatistic {
+    private final StatisticExpression m_operand;
+
+    public SquareRoot(StatisticExpression operand) {
+      m_operand = operand;
+    }
+
+    public double getValue(StatisticsSet statisticsSet) {
+      return Math.sqrt(m_operand.getDoubleValue(statisticsSet));
+    }
 
-    final StatisticExpression getExpression() {
-      return m_expression;
+    public StatisticExpression getOperand() {
+      return m_operand;
     }
   }
 
@@ -823,7 +946,7 @@ final class StatisticExpressionFactoryImplementation
       }
     }
 
-    private ParseException createParseException(String message) {
+    public ParseException createParseException(String message) {
       return createParseException(message, m_index);
     }
 
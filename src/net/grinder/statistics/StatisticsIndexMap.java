@@ -24,9 +24,12 @@
 package net.grinder.statistics;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -55,6 +58,23 @@ import java.util.Map;
  * (e.g. <em>count()</em>), see {@link ExpressionView}.
  * </p>
  *
+ * <h4>Registered Statistics</h4>
+ *
+ * <p>
+ * As well as the standard statistics, new statistics can be registered at run
+ * time (see {@link #registerLongIndex} and friends). A registered statistic
+ * is allocated the next free slots, so {@link StatisticsSet}s only carry the
+ * statistics that have actually been registered. Sets created before a
+ * registration grow when the new slots are first used.
+ * </p>
+ *
+ * <p>
+ * Processes may register statistics in different orders, so the same
+ * statistic can have different slots in different processes. Statistics
+ * sets read from another process are translated to the local slots using
+ * a {@link RemoteSlotMap}.
+ * </p>
+ *
  * @author Philip Aston
  * @version $Revision: 4003 $
  */
@@ -62,58 +82,66 @@ public final class StatisticsIndexMap implements Serializable {
 
   private static final long serialVersionUID = 1;
 
+  // Concurrent maps as registration can happen while other threads are
+  // looking up indices.
   private final Map<String, DoubleIndex> m_doubleMap =
-    new HashMap<String, DoubleIndex>();
+    new ConcurrentHashMap<String, DoubleIndex>();
   private final Map<String, LongIndex> m_longMap =
-    new HashMap<String, LongIndex>();
+    new ConcurrentHashMap<String, LongIndex>();
   private final Map<String, DoubleSampleIndex> m_doubleSampleMap =
-    new HashMap<String, DoubleSampleIndex>();
+    new ConcurrentHashMap<String, DoubleSampleIndex>();
   private final Map<String, LongSampleIndex> m_longSampleMap =
-    new HashMap<String, LongSampleIndex>();
+    new ConcurrentHashMap<String, LongSampleIndex>();
 
   // These are bigger than m_doubleMap.size() and m_longMap.size()
-  // as the sample indicies also use slots.
-  private final int m_numberOfDoubles;
-  private final int m_numberOfLongs;
+  // as the sample indicies also use slots. Guarded by this, volatile so
+  // StatisticsSets can check whether they need to grow without locking.
+  private volatile int m_numberOfDoubles;
+  private volatile int m_numberOfLongs;
+
+  // The slots used by the standard statistics, which are the same in every
+  // process.
+  private final int m_numberOfStandardDoubles;
+  private final int m_numberOfStandardLongs;
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indicies. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_RESPONSE_STATUS_KEY =
     "httpplugin.responseStatus";
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indicies. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_RESPONSE_LENGTH_KEY =
     "httpplugin.responseLength";
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indices. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_RESPONSE_ERRORS_KEY =
     "httpplugin.responseErrors";
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indices. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_DNS_TIME_KEY =
     "httpplugin.dnsTime";
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indices. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_CONNECT_TIME_KEY =
     "httpplugin.connectTime";
 
   /**
-   * Special slot for the HTTP plugin so it doesn't steal "user"
-   * indices. Use with {@link #getLongIndex(String)}.
+   * Statistic registered by the HTTP plugin. Use with
+   * {@link #getLongIndex(String)}.
    */
   public static final String HTTP_PLUGIN_FIRST_BYTE_TIME_KEY =
     "httpplugin.firstByteTime";
@@ -131,18 +159,6 @@ public final class StatisticsIndexMap implements Serializable {
     m_longMap.put("errors", new LongIndex(nextLongIndex++));
     m_longMap.put("untimedTests", new LongIndex(nextLongIndex++));
     m_longMap.put("period", new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_RESPONSE_STATUS_KEY,
-                  new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_RESPONSE_LENGTH_KEY,
-                  new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_RESPONSE_ERRORS_KEY,
-                  new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_DNS_TIME_KEY,
-                  new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_CONNECT_TIME_KEY,
-                  new LongIndex(nextLongIndex++));
-    m_longMap.put(HTTP_PLUGIN_FIRST_BYTE_TIME_KEY,
-                  new LongIndex(nextLongIndex++));
     m_longMap.put("userLong0", new LongIndex(nextLongIndex++));
     m_longMap.put("userLong1", new LongIndex(nextLongIndex++));
     m_longMap.put("userLong2", new LongIndex(nextLongIndex++));
@@ -159,10 +175,250 @@ public final class StatisticsIndexMap implements Serializable {
     createLongSampleIndex("timedTests",
                           new LongIndex(nextLongIndex++),
                           new LongIndex(nextLongIndex++),
-                          new DoubleIndex(nextDoubleIndex++));
+                          new DoubleIndex(nextDoubleIndex++),
+                          false);
 
     m_numberOfDoubles = nextDoubleIndex;
     m_numberOfLongs = nextLongIndex;
+    m_numberOfStandardDoubles = nextDoubleIndex;
+    m_numberOfStandardLongs = nextLongIndex;
+  }
+
+  /**
+   * Register a new long statistic.
+   *
+   * <p>Registering a name that is already a long statistic returns the
+   * existing index.</p>
+   *
+   * @param statisticName The statistic name.
+   * @return The index object.
+   * @throws StatisticsException If the name is not valid, or is already used
+   *  by a different type of statistic.
+   */
+  public synchronized LongIndex registerLongIndex(String statisticName)
+    throws StatisticsException {
+
+    final LongIndex existing = m_longMap.get(statisticName);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    checkNewName(statisticName);
+
+    final LongIndex result = new LongIndex(m_numberOfLongs);
+    ++m_numberOfLongs;
+
+    m_longMap.put(statisticName, result);
+
+    return result;
+  }
+
+  /**
+   * Register a new double statistic.
+   *
+   * <p>Registering a name that is already a double statistic returns the
+   * existing index.</p>
+   *
+   * @param statisticName The statistic name.
+   * @return The index object.
+   * @throws StatisticsException If the name is not valid, or is already used
+   *  by a different type of statistic.
+   */
+  public synchronized DoubleIndex registerDoubleIndex(String statisticName)
+    throws StatisticsException {
+
+    final DoubleIndex existing = m_doubleMap.get(statisticName);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    checkNewName(statisticName);
+
+    final DoubleIndex result = new DoubleIndex(m_numberOfDoubles);
+    ++m_numberOfDoubles;
+
+    m_doubleMap.put(statisticName, result);
+
+    return result;
+  }
+
+  /**
+   * Register a new long sample statistic.
+   *
+   * <p>Registering a name that is already a long sample statistic returns the
+   * existing index.</p>
+   *
+   * @param statisticName The statistic name.
+   * @return The index object.
+   * @throws StatisticsException If the name is not valid, or is already used
+   *  by a different type of statistic.
+   */
+  public synchronized LongSampleIndex registerLongSampleIndex(
+    String statisticName) throws StatisticsException {
+
+    final LongSampleIndex existing = m_longSampleMap.get(statisticName);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    checkNewName(statisticName);
+
+    final LongSampleIndex result =
+      createLongSampleIndex(statisticName,
+                            new LongIndex(m_numberOfLongs),
+                            new LongIndex(m_numberOfLongs + 1),
+                            new DoubleIndex(m_numberOfDoubles),
+                            true);
+    m_numberOfLongs += 2;
+    ++m_numberOfDoubles;
+
+    return result;
+  }
+
+  /**
+   * Register a new double sample statistic.
+   *
+   * <p>Registering a name that is already a double sample statistic returns
+   * the existing index.</p>
+   *
+   * @param statisticName The statistic name.
+   * @return The index object.
+   * @throws StatisticsException If the name is not valid, or is already used
+   *  by a different type of statistic.
+   */
+  public synchronized DoubleSampleIndex registerDoubleSampleIndex(
+    String statisticName) throws StatisticsException {
+
+    final DoubleSampleIndex existing = m_doubleSampleMap.get(statisticName);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    checkNewName(statisticName);
+
+    final DoubleSampleIndex result =
+      createDoubleSampleIndex(statisticName,
+                              new DoubleIndex(m_numberOfDoubles),
+                              new LongIndex(m_numberOfLongs),
+                              new DoubleIndex(m_numberOfDoubles + 1),
+                              true);
+    ++m_numberOfLongs;
+    m_numberOfDoubles += 2;
+
+    return result;
+  }
+
+  /**
+   * Return the long slots used by a statistic. A long sample statistic
+   * uses two, for its sum and count. A double sample statistic uses one,
+   * for its count.
+   *
+   * @param statisticName The statistic name.
+   * @return The slots, or an empty array if the statistic is unknown or
+   * uses no long slots.
+   */
+  public int[] getLongSlots(String statisticName) {
+    final LongIndex longIndex = m_longMap.get(statisticName);
+
+    if (longIndex != null) {
+      return new int[] { longIndex.getValue() };
+    }
+
+    final LongSampleIndex longSampleIndex =
+      m_longSampleMap.get(statisticName);
+
+    if (longSampleIndex != null) {
+      return new int[] {
+        longSampleIndex.getSumIndex().getValue(),
+        longSampleIndex.getCountIndex().getValue(),
+      };
+    }
+
+    final DoubleSampleIndex doubleSampleIndex =
+      m_doubleSampleMap.get(statisticName);
+
+    if (doubleSampleIndex != null) {
+      return new int[] { doubleSampleIndex.getCountIndex().getValue() };
+    }
+
+    return new int[0];
+  }
+
+  /**
+   * Return the double slots used by a statistic. A long sample statistic
+   * uses one, for its variance. A double sample statistic uses two, for its
+   * sum and variance.
+   *
+   * @param statisticName The statistic name.
+   * @return The slots, or an empty array if the statistic is unknown or
+   * uses no double slots.
+   */
+  public int[] getDoubleSlots(String statisticName) {
+    final DoubleIndex doubleIndex = m_doubleMap.get(statisticName);
+
+    if (doubleIndex != null) {
+      return new int[] { doubleIndex.getValue() };
+    }
+
+    final LongSampleIndex longSampleIndex =
+      m_longSampleMap.get(statisticName);
+
+    if (longSampleIndex != null) {
+      return new int[] { longSampleIndex.getVarianceIndex().getValue() };
+    }
+
+    final DoubleSampleIndex doubleSampleIndex =
+      m_doubleSampleMap.get(statisticName);
+
+    if (doubleSampleIndex != null) {
+      return new int[] {
+        doubleSampleIndex.getSumIndex().getValue(),
+        doubleSampleIndex.getVarianceIndex().getValue(),
+      };
+    }
+
+    return new int[0];
+  }
+
+  /**
+   * Create a map for translating the slots of statistics sets read from
+   * another process.
+   *
+   * @return The new map.
+   */
+  public RemoteSlotMap createRemoteSlotMap() {
+    return new RemoteSlotMap();
+  }
+
+  private void checkNewName(String statisticName)
+    throws RegistrationException {
+
+    if (m_longMap.containsKey(statisticName) ||
+        m_doubleMap.containsKey(statisticName) ||
+        m_longSampleMap.containsKey(statisticName) ||
+        m_doubleSampleMap.containsKey(statisticName)) {
+      throw new RegistrationException(
+        "'" + statisticName + "' is already registered as a different " +
+        "type of statistic");
+    }
+
+    if (statisticName.length() == 0) {
+      throw new RegistrationException("Statistic names cannot be empty");
+    }
+
+    // The name must be a single token in statistic expressions.
+    for (int i = 0; i < statisticName.length(); ++i) {
+      final char c = statisticName.charAt(i);
+
+      if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+        throw new RegistrationException(
+          "'" + statisticName + "' is not a valid statistic name");
+      }
+    }
   }
 
   int getNumberOfDoubles() {
@@ -226,23 +482,58 @@ public final class StatisticsIndexMap implements Serializable {
   }
 
   /**
-   * Factory for {@link LongSampleIndex}s.
+   * The names of the long statistics.
+   *
+   * @return The names, in alphabetical order.
+   */
+  public Set<String> getLongIndexNames() {
+    return new TreeSet<String>(m_longMap.keySet());
+  }
+
+  /**
+   * The names of the double statistics.
    *
-   * <p>If this is made public and called from somewhere other than our
-   * constructor, we need to address synchronisation.</p>
+   * @return The names, in alphabetical order.
+   */
+  public Set<String> getDoubleIndexNames() {
+    return new TreeSet<String>(m_doubleMap.keySet());
+  }
+
+  /**
+   * The names of the long sample statistics.
+   *
+   * @return The names, in alphabetical order.
+   */
+  public Set<String> getLongSampleIndexNames() {
+    return new TreeSet<String>(m_longSampleMap.keySet());
+  }
+
+  /**
+   * The names of the double sample statistics.
+   *
+   * @return The names, in alphabetical order.
+   */
+  public Set<String> getDoubleSampleIndexNames() {
+    return new TreeSet<String>(m_doubleSampleMap.keySet());
+  }
+
+  /**
+   * Factory for {@link LongSampleIndex}s.
    *
    * @param statisticName Name to register index under.
    * @param sumIndex Index to hold sum.
    * @param countIndex Index to hold count.
    * @param varianceIndex Index to hold variance.
+   * @param registered Whether the statistic was registered at run time.
    * @return The new index.
    */
   private LongSampleIndex createLongSampleIndex(String statisticName,
                                                 LongIndex sumIndex,
                                                 LongIndex countIndex,
-                                                DoubleIndex varianceIndex) {
+                                                DoubleIndex varianceIndex,
+                                                boolean registered) {
     final LongSampleIndex result =
-      new LongSampleIndex(sumIndex, countIndex, varianceIndex);
+      new LongSampleIndex(sumIndex, countIndex, varianceIndex, registered);
 
     m_longSampleMap.put(statisticName, result);
 
@@ -254,9 +545,6 @@ public final class StatisticsIndexMap implements Serializable {
    *
    * <p>Package scope for unit tests.</p>
    *
-   * <p>If this is made public and called from somewhere other than our
-   * constructor, we need to address synchronisation.</p>
-   *
    * @param statisticName Name to register index under.
    * @param sumIndex Index to hold sum.
    * @param countIndex Index to hold count.
@@ -267,8 +555,17 @@ public final class StatisticsIndexMap implements Serializable {
                                             DoubleIndex sumIndex,
                                             LongIndex countIndex,
                                             DoubleIndex varianceIndex) {
+    return createDoubleSampleIndex(
+      statisticName, sumIndex, countIndex, varianceIndex, false);
+  }
+
+  private DoubleSampleIndex createDoubleSampleIndex(String statisticName,
+                                                    DoubleIndex sumIndex,
+                                                    LongIndex countIndex,
+                                                    DoubleIndex varianceIndex,
+                                                    boolean registered) {
     final DoubleSampleIndex result =
-      new DoubleSampleIndex(sumIndex, countIndex, varianceIndex);
+      new DoubleSampleIndex(sumIndex, countIndex, varianceIndex, registered);
 
     m_doubleSampleMap.put(statisticName, result);
 
@@ -324,10 +621,24 @@ public final class StatisticsIndexMap implements Serializable {
   static class SampleIndex {
     private final LongIndex m_countIndex;
     private final DoubleIndex m_varianceIndex;
+    private final boolean m_registered;
 
-    protected SampleIndex(LongIndex countIndex, DoubleIndex varianceIndex) {
+    protected SampleIndex(LongIndex countIndex,
+                          DoubleIndex varianceIndex,
+                          boolean registered) {
       m_countIndex = countIndex;
       m_varianceIndex = varianceIndex;
+      m_registered = registered;
+    }
+
+    /**
+     * Whether the statistic was registered at run time. Samples of the
+     * standard sample statistics are recorded by The Grinder itself.
+     *
+     * @return <code>true</code> => the statistic was registered.
+     */
+    public final boolean isRegistered() {
+      return m_registered;
     }
 
     /**
@@ -366,8 +677,9 @@ public final class StatisticsIndexMap implements Serializable {
 
     private DoubleSampleIndex(DoubleIndex sumIndex,
                               LongIndex countIndex,
-                              DoubleIndex varianceIndex) {
-      super(countIndex, varianceIndex);
+                              DoubleIndex varianceIndex,
+                              boolean registered) {
+      super(countIndex, varianceIndex, registered);
       m_sumIndex = sumIndex;
     }
 
@@ -394,8 +706,9 @@ public final class StatisticsIndexMap implements Serializable {
 
     private LongSampleIndex(LongIndex sumIndex,
                             LongIndex countIndex,
-                            DoubleIndex varianceIndex) {
-      super(countIndex, varianceIndex);
+                            DoubleIndex varianceIndex,
+                            boolean registered) {
+      super(countIndex, varianceIndex, registered);
       m_sumIndex = sumIndex;
     }
 
@@ -412,4 +725,145 @@ public final class StatisticsIndexMap implements Serializable {
       return m_sumIndex;
     }
   }
+
+  /**
+   * Translates the slots that another process has allocated to its
+   * registered statistics to the slots that this index map has allocated to
+   * the same statistics. The standard statistics have the same slots in
+   * every process.
+   *
+   * <p>There should be one for each connection that statistics sets are read
+   * from. Values in remote slots that have not been mapped are discarded.</p>
+   */
+  public final class RemoteSlotMap {
+
+    // Local slots, indexed by the remote slot less the number of standard
+    // slots; -1 if not mapped. Replaced rather than updated, so they can be
+    // read without locking.
+    private volatile int[] m_longSlots = new int[0];
+    private volatile int[] m_doubleSlots = new int[0];
+
+    private RemoteSlotMap() {
+    }
+
+    /**
+     * Map the slots that the remote process uses for a statistic to the
+     * local slots. The statistic must already be registered locally.
+     *
+     * @param statisticName The statistic name.
+     * @param remoteLongSlots The remote long slots, in the order returned by
+     * {@link StatisticsIndexMap#getLongSlots}.
+     * @param remoteDoubleSlots The remote double slots, in the order returned
+     * by {@link StatisticsIndexMap#getDoubleSlots}.
+     * @throws StatisticsException If the statistic is not known locally, or
+     * the remote slots don't match it.
+     */
+    public synchronized void add(String statisticName,
+                                 int[] remoteLongSlots,
+                                 int[] remoteDoubleSlots)
+      throws StatisticsException {
+
+      final int[] localLongSlots = getLongSlots(statisticName);
+      final int[] localDoubleSlots = getDoubleSlots(statisticName);
+
+      if (localLongSlots.length + localDoubleSlots.length == 0) {
+        throw new RegistrationException(
+          "'" + statisticName + "' has not been registered");
+      }
+
+      if (remoteLongSlots.length != localLongSlots.length ||
+          remoteDoubleSlots.length != localDoubleSlots.length) {
+        throw new RegistrationException(
+          "'" + statisticName + "' is a different type of statistic in the " +
+          "remote process");
+      }
+
+      final int[] longSlots = map(statisticName,
+                                  m_longSlots,
+                                  m_numberOfStandardLongs,
+                                  remoteLongSlots,
+                                  localLongSlots);
+
+      m_doubleSlots = map(statisticName,
+                          m_doubleSlots,
+                          m_numberOfStandardDoubles,
+                          remoteDoubleSlots,
+                          localDoubleSlots);
+      m_longSlots = longSlots;
+    }
+
+    private int[] map(String statisticName,
+                      int[] slots,
+                      int numberOfStandardSlots,
+                      int[] remoteSlots,
+                      int[] localSlots)
+      throws RegistrationException {
+
+      int length = slots.length;
+
+      for (int remoteSlot : remoteSlots) {
+        if (remoteSlot < numberOfStandardSlots) {
+          throw new RegistrationException(
+            "'" + statisticName + "' has a standard slot in the remote " +
+            "process; it has different standard statistics");
+        }
+
+        length = Math.max(length, remoteSlot - numberOfStandardSlots + 1);
+      }
+
+      final int[] result = new int[length];
+      Arrays.fill(result, -1);
+      System.arraycopy(slots, 0, result, 0, slots.length);
+
+      for (int i = 0; i < remoteSlots.length; ++i) {
+        result[remoteSlots[i] - numberOfStandardSlots] = localSlots[i];
+      }
+
+      return result;
+    }
+
+    /**
+     * Translate a remote long slot.
+     *
+     * @param remoteSlot The remote slot.
+     * @return The local slot, or <code>-1</code> if the remote slot has not
+     * been mapped.
+     */
+    int getLongSlot(int remoteSlot) {
+      return getSlot(m_longSlots, m_numberOfStandardLongs, remoteSlot);
+    }
+
+    /**
+     * Translate a remote double slot.
+     *
+     * @param remoteSlot The remote slot.
+     * @return The local slot, or <code>-1</code> if the remote slot has not
+     * been mapped.
+     */
+    int getDoubleSlot(int remoteSlot) {
+      return getSlot(m_doubleSlots, m_numberOfStandardDoubles, remoteSlot);
+    }
+
+    private int getSlot(int[] slots, int numberOfStandardSlots,
+                        int remoteSlot) {
+      if (remoteSlot < numberOfStandardSlots) {
+        return remoteSlot;
+      }
+
+      final int i = remoteSlot - numberOfStandardSlots;
+
+      return i < slots.length ? slots[i] : -1;
+    }
+  }
+
+  /**
+   * Exception raised when a statistic cannot be registered.
+   */
+  static final class RegistrationException extends StatisticsException {
+    private static final long serialVersionUID = 1L;
+
+    RegistrationException(String message) {
+      super(message);
+    }
+  }
 }
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
+import net.grinder.statistics.StatisticsIndexMap.RemoteSlotMap;
 import net.grinder.util.Serialiser;
 
 
@@ -58,9 +59,11 @@ public final class StatisticsSetFactory {
     statistics.writeExternal(out, m_serialiser);
   }
 
-  StatisticsSet readStatisticsExternal(ObjectInput in) throws IOException {
+  StatisticsSet readStatisticsExternal(ObjectInput in, RemoteSlotMap slotMap)
+    throws IOException {
     return new StatisticsSetImplementation(m_statisticsIndexMap,
                                            in,
-                                           m_serialiser);
+                                           m_serialiser,
+                                           slotMap);
   }
 }
@@ -30,6 +30,7 @@ import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
 import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.RemoteSlotMap;
 import net.grinder.statistics.StatisticsIndexMap.SampleIndex;
 import net.grinder.util.Serialiser;
 
@@ -39,14 +40,18 @@ import net.grinder.util.Serialiser;
  * can access individual values using an index obtained from a {@link
  * StatisticsIndexMap}.
  *
+ * <p>The arrays are sized to the statistics registered when the set is
+ * created, and grow if a statistic registered later is updated. Values beyond
+ * the end of the arrays are zero.</p>
+ *
  * @author Philip Aston
  * @version $Revision: 4003 $
  */
 final class StatisticsSetImplementation implements StatisticsSet {
 
   private final StatisticsIndexMap m_statisticsIndexMap;
-  private final long[] m_longData;
-  private final double[] m_doubleData;
+  private long[] m_longData;
+  private double[] m_doubleData;
 
   // true => all statistics are zero; false => they might be.
   private boolean m_zero = true;
@@ -93,10 +98,11 @@ final class StatisticsSetImplementation implements StatisticsSet {
 
     if (!m_zero) {
       synchronized (result) {
+        // The result is at least as large as we are.
         System.arraycopy(
-          m_longData, 0, result.m_longData, 0, result.m_longData.length);
+          m_longData, 0, result.m_longData, 0, m_longData.length);
         System.arraycopy(
-          m_doubleData, 0, result.m_doubleData, 0, result.m_doubleData.length);
+          m_doubleData, 0, result.m_doubleData, 0, m_doubleData.length);
 
         result.m_zero = false;
         result.m_composite = m_composite;
@@ -116,7 +122,8 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @return The value.
    */
   public synchronized long getValue(LongIndex index) {
-    return m_longData[index.getValue()];
+    final int i = index.getValue();
+    return i < m_longData.length ? m_longData[i] : 0;
   }
 
   /**
@@ -129,7 +136,37 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @return The value.
    */
   public synchronized double getValue(DoubleIndex index) {
-    return m_doubleData[index.getValue()];
+    final int i = index.getValue();
+    return i < m_doubleData.length ? m_doubleData[i] : 0;
+  }
+
+  /**
+   * Evaluate a compiled expression against the values.
+   *
+   * @param evaluator The compiled expression.
+   * @return The value.
+   * @see StatisticExpressionCompiler
+   */
+  synchronized long evaluateLong(
+    StatisticExpressionCompiler.Evaluator evaluator) {
+    // Compiled code indexes the arrays directly.
+    grow(m_statisticsIndexMap.getNumberOfLongs(),
+         m_statisticsIndexMap.getNumberOfDoubles());
+    return evaluator.evaluateLong(m_longData, m_doubleData);
+  }
+
+  /**
+   * Evaluate a compiled expression against the values.
+   *
+   * @param evaluator The compiled expression.
+   * @return The value.
+   * @see StatisticExpressionCompiler
+   */
+  synchronized double evaluateDouble(
+    StatisticExpressionCompiler.Evaluator evaluator) {
+    grow(m_statisticsIndexMap.getNumberOfLongs(),
+         m_statisticsIndexMap.getNumberOfDoubles());
+    return evaluator.evaluateDouble(m_longData, m_doubleData);
   }
 
   /**
@@ -142,7 +179,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param value The value.
    */
   public synchronized void setValue(LongIndex index, long value) {
-    m_longData[index.getValue()] = value;
+    longData(index)[index.getValue()] = value;
     m_zero &= value == 0;
   }
 
@@ -156,7 +193,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param value The value.
    */
   public synchronized void setValue(DoubleIndex index, double value) {
-    m_doubleData[index.getValue()] = value;
+    doubleData(index)[index.getValue()] = value;
     m_zero &= value == 0;
   }
 
@@ -170,7 +207,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param value The value.
    */
   public synchronized void addValue(LongIndex index, long value) {
-    m_longData[index.getValue()] += value;
+    longData(index)[index.getValue()] += value;
     m_zero &= value == 0;
   }
 
@@ -185,7 +222,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
    */
   public synchronized void addValue(DoubleIndex index, double value) {
 
-    m_doubleData[index.getValue()] += value;
+    doubleData(index)[index.getValue()] += value;
     m_zero &= value == 0;
   }
 
@@ -204,8 +241,8 @@ final class StatisticsSetImplementation implements StatisticsSet {
                           getValue(index.getVarianceIndex()),
                           value));
 
-    m_longData[index.getSumIndex().getValue()] += value;
-    ++m_longData[index.getCountIndex().getValue()];
+    longData(index.getSumIndex())[index.getSumIndex().getValue()] += value;
+    ++longData(index.getCountIndex())[index.getCountIndex().getValue()];
     m_zero = false;
   }
 
@@ -224,11 +261,44 @@ final class StatisticsSetImplementation implements StatisticsSet {
                           getValue(index.getVarianceIndex()),
                           value));
 
-    m_doubleData[index.getSumIndex().getValue()] += value;
-    ++m_longData[index.getCountIndex().getValue()];
+    doubleData(index.getSumIndex())[index.getSumIndex().getValue()] += value;
+    ++longData(index.getCountIndex())[index.getCountIndex().getValue()];
     m_zero = false;
   }
 
+  private long[] longData(LongIndex index) {
+    if (index.getValue() >= m_longData.length) {
+      grow(m_statisticsIndexMap.getNumberOfLongs(), 0);
+    }
+
+    return m_longData;
+  }
+
+  private double[] doubleData(DoubleIndex index) {
+    if (index.getValue() >= m_doubleData.length) {
+      grow(0, m_statisticsIndexMap.getNumberOfDoubles());
+    }
+
+    return m_doubleData;
+  }
+
+  /**
+   * Ensure the arrays have at least the given lengths.
+   */
+  private void grow(int numberOfLongs, int numberOfDoubles) {
+    if (numberOfLongs > m_longData.length) {
+      final long[] longData = new long[numberOfLongs];
+      System.arraycopy(m_longData, 0, longData, 0, m_longData.length);
+      m_longData = longData;
+    }
+
+    if (numberOfDoubles > m_doubleData.length) {
+      final double[] doubleData = new double[numberOfDoubles];
+      System.arraycopy(m_doubleData, 0, doubleData, 0, m_doubleData.length);
+      m_doubleData = doubleData;
+    }
+  }
+
   /**
    * Reset the sample statistic specified by <code>index</code>.
    *
@@ -372,6 +442,9 @@ final class StatisticsSetImplementation implements StatisticsSet {
     final StatisticsSetImplementation operandImplementation =
       (StatisticsSetImplementation)operand;
 
+    grow(operandImplementation.m_longData.length,
+         operandImplementation.m_doubleData.length);
+
     final boolean[] isVarianceIndex = new boolean[m_doubleData.length];
 
     for (LongSampleIndex index: m_statisticsIndexMap.getLongSampleIndicies()) {
@@ -387,7 +460,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
                           operand.getValue(countIndex),
                           operand.getValue(varianceIndex)));
 
-      isVarianceIndex[varianceIndex.getValue()] = true;
+      markVarianceIndex(isVarianceIndex, varianceIndex);
     }
 
     for (DoubleSampleIndex index :
@@ -405,7 +478,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
                                  operand.getValue(countIndex),
                                  operand.getValue(varianceIndex)));
 
-      isVarianceIndex[varianceIndex.getValue()] = true;
+      markVarianceIndex(isVarianceIndex, varianceIndex);
     }
 
     final long[] longData = operandImplementation.m_longData;
@@ -429,6 +502,15 @@ final class StatisticsSetImplementation implements StatisticsSet {
     }
   }
 
+  private static void markVarianceIndex(boolean[] isVarianceIndex,
+                                        DoubleIndex varianceIndex) {
+    // Indices registered since isVarianceIndex was allocated are beyond the
+    // end of the operand's data, so don't need to be marked.
+    if (varianceIndex.getValue() < isVarianceIndex.length) {
+      isVarianceIndex[varianceIndex.getValue()] = true;
+    }
+  }
+
   public synchronized boolean isZero() {
     return m_zero;
   }
@@ -465,16 +547,21 @@ final class StatisticsSetImplementation implements StatisticsSet {
         return false;
       }
 
+      // Missing values are zero, so sets of different sizes can be equal.
       final long[] otherLongData = otherStatistics.m_longData;
+      final int longs = Math.max(m_longData.length, otherLongData.length);
 
-      for (int i = 0; i < m_longData.length; i++) {
-        if (m_longData[i] != otherLongData[i]) {
+      for (int i = 0; i < longs; i++) {
+        if (valueAt(m_longData, i) != valueAt(otherLongData, i)) {
           return false;
         }
       }
 
-      for (int i = 0; i < m_doubleData.length; i++) {
-        if (m_doubleData[i] != otherStatistics.m_doubleData[i]) {
+      final double[] otherDoubleData = otherStatistics.m_doubleData;
+      final int doubles = Math.max(m_doubleData.length, otherDoubleData.length);
+
+      for (int i = 0; i < doubles; i++) {
+        if (valueAt(m_doubleData, i) != valueAt(otherDoubleData, i)) {
           return false;
         }
       }
@@ -483,6 +570,14 @@ final class StatisticsSetImplementation implements StatisticsSet {
     return true;
   }
 
+  private static long valueAt(long[] data, int i) {
+    return i < data.length ? data[i] : 0;
+  }
+
+  private static double valueAt(double[] data, int i) {
+    return i < data.length ? data[i] : 0;
+  }
+
   /**
    * Defer to <code>Object.hashCode()</code>.
    *
@@ -568,6 +663,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
    */
   synchronized void writeExternal(ObjectOutput out, Serialiser serialiser)
     throws IOException {
+
+    // The lengths allow a set to be read by a process that has registered
+    // more statistics.
+    serialiser.writeUnsignedLong(out, m_longData.length);
+    serialiser.writeUnsignedLong(out, m_doubleData.length);
+
     for (int i = 0; i < m_longData.length; i++) {
       serialiser.writeLong(out, m_longData[i]);
     }
@@ -588,22 +689,49 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param statisticsIndexMap The {@link StatisticsIndexMap} to use.
    * @param in Handle to the input stream.
    * @param serialiser <code>Serialiser</code> helper object.
+   * @param slotMap
+   *          Translates the slots of the process that wrote the set, or
+   *          <code>null</code> if it used the same slots as we do.
    * @exception IOException If an error occurs.
    * @see #writeExternal(ObjectOutput, Serialiser)
    */
   StatisticsSetImplementation(StatisticsIndexMap statisticsIndexMap,
-                              ObjectInput in, Serialiser serialiser)
+                              ObjectInput in,
+                              Serialiser serialiser,
+                              RemoteSlotMap slotMap)
     throws IOException {
     this(statisticsIndexMap);
 
-    for (int i = 0; i < m_longData.length; i++) {
-      m_longData[i] = serialiser.readLong(in);
-      m_zero &= m_longData[i] == 0;
+    final long numberOfLongs = serialiser.readUnsignedLong(in);
+    final long numberOfDoubles = serialiser.readUnsignedLong(in);
+
+    if (slotMap == null &&
+        (numberOfLongs > m_longData.length ||
+         numberOfDoubles > m_doubleData.length)) {
+      throw new IOException(
+        "Statistics set has more values (" + numberOfLongs + ", " +
+        numberOfDoubles + ") than have been registered (" +
+        m_longData.length + ", " + m_doubleData.length + ")");
     }
 
-    for (int i = 0; i < m_doubleData.length; i++) {
-      m_doubleData[i] = serialiser.readDouble(in);
-      m_zero &= m_doubleData[i] == 0;
+    for (int i = 0; i < numberOfLongs; i++) {
+      final long value = serialiser.readLong(in);
+      final int slot = slotMap != null ? slotMap.getLongSlot(i) : i;
+
+      if (slot >= 0) {
+        m_longData[slot] = value;
+        m_zero &= value == 0;
+      }
+    }
+
+    for (int i = 0; i < numberOfDoubles; i++) {
+      final double value = serialiser.readDouble(in);
+      final int slot = slotMap != null ? slotMap.getDoubleSlot(i) : i;
+
+      if (slot >= 0) {
+        m_doubleData[slot] = value;
+        m_zero &= value == 0;
+      }
     }
 
     m_composite = in.readBoolean();
@@ -31,6 +31,7 @@ import java.util.Map.Entry;
 
 import net.grinder.common.AbstractTestSemantics;
 import net.grinder.common.Test;
+import net.grinder.statistics.StatisticsIndexMap.RemoteSlotMap;
 
 
 /**
@@ -48,7 +49,7 @@ public final class TestStatisticsMap implements java.io.Externalizable {
   // The serialVersionUID should be incremented whenever the default
   // statistic indices are changed in StatisticsIndexMap, or
   // when the StatisticsSet externalisation methods are changed.
-  private static final long serialVersionUID = 3L;
+  private static final long serialVersionUID = 5L;
 
   private final transient StatisticsSetFactory m_statisticsSetFactory;
 
@@ -313,6 +314,21 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @exception IOException If an I/O error occurs.
    */
   public void readExternal(ObjectInput in) throws IOException {
+    readExternal(in, null);
+  }
+
+  /**
+   * Efficient externalisation method for statistics written by a process
+   * that might have allocated different slots to registered statistics.
+   *
+   * @param in Handle to the input stream.
+   * @param slotMap
+   *          Translates the slots of the process that wrote the statistics,
+   *          or <code>null</code> if it used the same slots as we do.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void readExternal(ObjectInput in, RemoteSlotMap slotMap)
+    throws IOException {
 
     final int n = in.readInt();
 
@@ -320,7 +336,7 @@ public final class TestStatisticsMap implements java.io.Externalizable {
 
     for (int i = 0; i < n; i++) {
       m_data.put(new LightweightTest(in.readInt()),
-                 m_statisticsSetFactory.readStatisticsExternal(in));
+                 m_statisticsSetFactory.readStatisticsExternal(in, slotMap));
     }
   }
 
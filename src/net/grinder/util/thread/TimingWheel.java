@@ -0,0 +1,441 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * A hashed timing wheel, suitable for large numbers of timeouts that are
+ * frequently reset or cancelled before they expire.
+ *
+ * <p>
+ * Time is divided into ticks. Each timeout is hashed into one of a fixed
+ * number of slots according to the tick in which it is due; a slot is visited
+ * once per revolution of the wheel, and timeouts that are not yet due are
+ * left in place or moved to a closer slot. Scheduling, cancelling and
+ * resetting a timeout are O(1) and do not contend on a shared lock - changes
+ * are handed to the wheel through a lock free queue. Extending a timeout with
+ * {@link Timeout#reset} is just a volatile write; the wheel moves the timeout
+ * lazily when it reaches its old slot.
+ * </p>
+ *
+ * <p>
+ * Expired timeouts are run by the thread calling {@link #expireTimeouts()},
+ * usually the wheel's own daemon thread (see {@link #start()}). Tasks should
+ * be short, and must not block.
+ * </p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public final class TimingWheel {
+
+  private static final int PENDING = 0;
+  private static final int CANCELLED = 1;
+  private static final int EXPIRED = 2;
+
+  private static final AtomicIntegerFieldUpdater<Entry> s_stateUpdater =
+    AtomicIntegerFieldUpdater.newUpdater(Entry.class, "m_state");
+
+  private static final AtomicIntegerFieldUpdater<Entry> s_queuedUpdater =
+    AtomicIntegerFieldUpdater.newUpdater(Entry.class, "m_queued");
+
+  private final TimeAuthority m_timeAuthority;
+  private final String m_name;
+  private final long m_tickMillis;
+  private final long m_startTime;
+  private final Entry[] m_slots;
+  private final int m_mask;
+
+  private final ConcurrentLinkedQueue<Entry> m_changes =
+    new ConcurrentLinkedQueue<Entry>();
+
+  private final Object m_tickLock = new Object();
+
+  /** Guarded by m_tickLock. The next tick to process. */
+  private long m_tick = 0;
+
+  /** Guarded by m_tickLock. */
+  private int m_size = 0;
+
+  private volatile Thread m_thread;
+
+  /**
+   * Constructor.
+   *
+   * @param timeAuthority Source of the current time.
+   * @param name Name for the thread created by {@link #start()}.
+   * @param tickMillis Duration of a tick in milliseconds. Timeouts expire up
+   *          to one tick late.
+   * @param numberOfSlots Number of slots in the wheel. Rounded up to a power
+   *          of two. Timeouts that are further than
+   *          <code>tickMillis * numberOfSlots</code> in the future are
+   *          revisited once per revolution.
+   */
+  public TimingWheel(TimeAuthority timeAuthority,
+                     String name,
+                     long tickMillis,
+                     int numberOfSlots) {
+
+    if (tickMillis <= 0 || numberOfSlots <= 0) {
+      throw new IllegalArgumentException(
+        "Tick duration and number of slots must be positive");
+    }
+
+    m_timeAuthority = timeAuthority;
+    m_name = name;
+    m_tickMillis = tickMillis;
+    m_startTime = timeAuthority.getTimeInMilliseconds();
+
+    int size = 1;
+
+    while (size < numberOfSlots) {
+      size <<= 1;
+    }
+
+    m_slots = new Entry[size];
+    m_mask = size - 1;
+
+    for (int i = 0; i < size; ++i) {
+      final Entry sentinel = new Entry(null, 0);
+      sentinel.m_next = sentinel;
+      sentinel.m_previous = sentinel;
+      m_slots[i] = sentinel;
+    }
+  }
+
+  /**
+   * Start a daemon thread that expires timeouts as they become due.
+   */
+  public synchronized void start() {
+    if (m_thread == null) {
+      final Thread thread = new Thread(new Runnable() {
+          public void run() { runWheel(); }
+        },
+        m_name);
+
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MAX_PRIORITY);
+      m_thread = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * Stop the thread created by {@link #start()}. Timeouts that have not yet
+   * expired will not be run, unless {@link #expireTimeouts()} is called
+   * explicitly.
+   */
+  public synchronized void shutdown() {
+    final Thread thread = m_thread;
+    m_thread = null;
+
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Schedule a task.
+   *
+   * @param task The task to run when the timeout expires.
+   * @param delay Delay in milliseconds.
+   * @return A handle that can be used to cancel or reset the timeout.
+   */
+  public Timeout schedule(Runnable task, long delay) {
+    final Entry entry =
+      new Entry(task, m_timeAuthority.getTimeInMilliseconds() + delay);
+
+    entry.enqueueChange();
+
+    return entry;
+  }
+
+  /**
+   * Expire and run the timeouts that are due.
+   *
+   * <p>Called by the wheel thread; public so that a wheel can be driven
+   * without one.</p>
+   */
+  public void expireTimeouts() {
+    final List<Entry> expired = new ArrayList<Entry>();
+
+    synchronized (m_tickLock) {
+      processChanges();
+
+      final long now = m_timeAuthority.getTimeInMilliseconds();
+
+      while (tickTime(m_tick) <= now) {
+        processSlot(expired);
+        ++m_tick;
+      }
+    }
+
+    // Run outside the lock. The tasks may call back into the wheel.
+    for (Entry entry : expired) {
+      entry.m_task.run();
+    }
+  }
+
+  /**
+   * The number of timeouts held by the wheel. Changes that have not yet been
+   * processed by {@link #expireTimeouts()} are not counted.
+   *
+   * @return The number of timeouts.
+   */
+  public int size() {
+    synchronized (m_tickLock) {
+      return m_size;
+    }
+  }
+
+  private void runWheel() {
+    final Thread thread = Thread.currentThread();
+
+    while (m_thread == thread) {
+      try {
+        expireTimeouts();
+      }
+      catch (RuntimeException e) {
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+      }
+
+      final long sleepTime;
+
+      synchronized (m_tickLock) {
+        sleepTime = tickTime(m_tick) - m_timeAuthority.getTimeInMilliseconds();
+      }
+
+      if (sleepTime > 0) {
+        try {
+          Thread.sleep(sleepTime);
+        }
+        catch (InterruptedException e) {
+          // Either a spurious interrupt, or we've been shut down.
+        }
+      }
+    }
+  }
+
+  /**
+   * The time at which a tick is processed.
+   */
+  private long tickTime(long tick) {
+    return m_startTime + (tick + 1) * m_tickMillis;
+  }
+
+  /**
+   * The first tick that can expire a timeout with the given deadline. Never
+   * earlier than the next tick to be processed.
+   */
+  private long tickFor(long deadline) {
+    final long sinceStart = deadline - m_startTime;
+
+    if (sinceStart <= 0) {
+      return m_tick;
+    }
+
+    return Math.max(m_tick, (sinceStart - 1) / m_tickMillis);
+  }
+
+  private void processChanges() {
+    Entry entry;
+
+    while ((entry = m_changes.poll()) != null) {
+      // Clear the flag first so concurrent changes are not lost.
+      entry.m_queued = 0;
+
+      if (entry.m_state == PENDING) {
+        if (entry.isLinked()) {
+          entry.unlink();
+        }
+        else {
+          ++m_size;
+        }
+
+        entry.linkBefore(m_slots[(int)(tickFor(entry.m_deadline) & m_mask)]);
+      }
+      else if (entry.isLinked()) {
+        entry.unlink();
+        --m_size;
+      }
+    }
+  }
+
+  private void processSlot(List<Entry> expired) {
+    final int index = (int)(m_tick & m_mask);
+    final Entry sentinel = m_slots[index];
+    final long tickTime = tickTime(m_tick);
+
+    Entry entry = sentinel.m_next;
+
+    while (entry != sentinel) {
+      final Entry next = entry.m_next;
+
+      if (entry.m_state != PENDING) {
+        entry.unlink();
+        --m_size;
+      }
+      else {
+        final long deadline = entry.m_deadline;
+
+        if (deadline <= tickTime) {
+          entry.unlink();
+          --m_size;
+
+          if (s_stateUpdater.compareAndSet(entry, PENDING, EXPIRED)) {
+            expired.add(entry);
+          }
+        }
+        else {
+          final int newIndex = (int)(tickFor(deadline) & m_mask);
+
+          if (newIndex != index) {
+            entry.unlink();
+            entry.linkBefore(m_slots[newIndex]);
+          }
+        }
+      }
+
+      entry = next;
+    }
+  }
+
+  /**
+   * Handle to a scheduled task.
+   */
+  public interface Timeout {
+
+    /**
+     * Cancel the timeout.
+     *
+     * @return <code>true</code> if the timeout was cancelled,
+     *         <code>false</code> if it had already expired or been cancelled.
+     */
+    boolean cancel();
+
+    /**
+     * Restart the timeout so that it expires after the given delay.
+     *
+     * @param delay Delay in milliseconds from now.
+     * @return <code>false</code> if the timeout has already expired or been
+     *         cancelled, in which case this method has no effect.
+     */
+    boolean reset(long delay);
+
+    /**
+     * Suspend the timeout. It will not expire until it is {@link #reset}.
+     *
+     * @return <code>false</code> if the timeout has already expired or been
+     *         cancelled, in which case this method has no effect.
+     */
+    boolean suspend();
+
+    /**
+     * Whether the timeout has expired.
+     *
+     * @return <code>true</code> if and only if the task has been, or is
+     *         about to be, run.
+     */
+    boolean isExpired();
+  }
+
+  private final class Entry implements Timeout {
+    private final Runnable m_task;
+    private volatile long m_deadline;
+
+    // Package scope for the field updaters.
+    volatile int m_state = PENDING;
+    volatile int m_queued = 0;
+
+    // Links are owned by the thread holding m_tickLock.
+    private Entry m_next;
+    private Entry m_previous;
+
+    public Entry(Runnable task, long deadline) {
+      m_task = task;
+      m_deadline = deadline;
+    }
+
+    public boolean cancel() {
+      if (s_stateUpdater.compareAndSet(this, PENDING, CANCELLED)) {
+        enqueueChange();
+        return true;
+      }
+
+      return false;
+    }
+
+    public boolean reset(long delay) {
+      final long newDeadline = m_timeAuthority.getTimeInMilliseconds() + delay;
+      final long oldDeadline = m_deadline;
+      m_deadline = newDeadline;
+
+      if (newDeadline < oldDeadline) {
+        // Later deadlines are picked up lazily when the wheel reaches the
+        // current slot. Earlier deadlines require the entry to be moved.
+        enqueueChange();
+      }
+
+      return m_state == PENDING;
+    }
+
+    public boolean suspend() {
+      m_deadline = Long.MAX_VALUE;
+      return m_state == PENDING;
+    }
+
+    public boolean isExpired() {
+      return m_state == EXPIRED;
+    }
+
+    private void enqueueChange() {
+      if (s_queuedUpdater.compareAndSet(this, 0, 1)) {
+        m_changes.add(this);
+      }
+    }
+
+    private boolean isLinked() {
+      return m_next != null;
+    }
+
+    private void linkBefore(Entry sentinel) {
+      m_next = sentinel;
+      m_previous = sentinel.m_previous;
+      m_previous.m_next = this;
+      sentinel.m_previous = this;
+    }
+
+    private void unlink() {
+      m_previous.m_next = m_next;
+      m_next.m_previous = m_previous;
+      m_next = null;
+      m_previous = null;
+    }
+  }
+}
@@ -27,7 +27,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -60,6 +63,7 @@ public final class ASMTransformerFactory
   implements ClassFileTransformerFactory {
 
   private final String m_adviceClass;
+  private final boolean m_indexedAdvice;
 
   /**
    * Constructor.
@@ -79,6 +83,24 @@ public final class ASMTransformerFactory
    *                         boolean success);
    * </pre>
    *
+   * <p>
+   * If {@code adviceClass} also implements the following methods, woven code
+   * calls them instead, passing the number that {@link DCRWeaver} assigned to
+   * the location. The advice can then use an array indexed by location to
+   * skip locations that have nothing to do. Locations without a number use
+   * the first form.
+   * </p>
+   *
+   * <pre>
+   * public static void enter(Object reference,
+   *                          String location,
+   *                          int locationID);
+   *
+   * public static void exit(Object reference,
+   *                         String location,
+   *                         int locationID,
+   *                         boolean success);
+   * </pre>
    *
    * @param adviceClass
    *          Class that provides the advice.
@@ -110,6 +132,24 @@ public final class ASMTransformerFactory
     }
 
     m_adviceClass = Type.getInternalName(adviceClass);
+
+    m_indexedAdvice =
+      isStatic(adviceClass, "enter",
+               Object.class, String.class, Integer.TYPE) &&
+      isStatic(adviceClass, "exit",
+               Object.class, String.class, Integer.TYPE, Boolean.TYPE);
+  }
+
+  private static boolean isStatic(Class<?> c,
+                                  String name,
+                                  Class<?>... parameterTypes) {
+    try {
+      return Modifier.isStatic(
+        c.getMethod(name, parameterTypes).getModifiers());
+    }
+    catch (NoSuchMethodException e) {
+      return false;
+    }
   }
 
   /**
@@ -127,8 +167,35 @@ public final class ASMTransformerFactory
    */
   private class ASMTransformer implements ClassFileTransformer {
 
+    private static final int MAXIMUM_CACHED_CLASSES = 256;
+
     private final PointCutRegistry m_pointCutRegistry;
 
+    /**
+     * Woven byte code, keyed by class name and point cuts. The value holds
+     * the original byte code, and the result. Hits when a class is
+     * retransformed for some other reason, or when a class of the same name
+     * is loaded by another class loader. Least recently used entries are
+     * discarded. Guarded by itself.
+     */
+    private final Map<Pair<String,
+                           Map<Pair<String, String>, List<WeavingDetails>>>,
+                      Pair<byte[], byte[]>>
+      m_wovenCache =
+        new LinkedHashMap<Pair<String,
+                               Map<Pair<String, String>,
+                                   List<WeavingDetails>>>,
+                          Pair<byte[], byte[]>>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          protected boolean removeEldestEntry(
+            Map.Entry<Pair<String,
+                           Map<Pair<String, String>, List<WeavingDetails>>>,
+                      Pair<byte[], byte[]>> eldest) {
+            return size() > MAXIMUM_CACHED_CLASSES;
+          }
+        };
+
     /**
      * Constructor.
      *
@@ -188,11 +255,12 @@ public final class ASMTransformerFactory
 
           final Constructor<?> c = entry.getKey();
 
-          // The key will be unique, so we can set the value directly.
+          // The key will be unique, so we can set the value directly. The
+          // list is copied since the registry can change it.
           nameAndDescriptionToWeavingDetails.put(
                   new Pair<String, String>("<init>",
                                            Type.getConstructorDescriptor(c)),
-                  entry.getValue());
+                  new ArrayList<WeavingDetails>(entry.getValue()));
         }
       }
 
@@ -202,11 +270,25 @@ public final class ASMTransformerFactory
 
           final Method m = entry.getKey();
 
-          // The key will be unique, so we can set the value directly.
+          // The key will be unique, so we can set the value directly. The
+          // list is copied since the registry can change it.
           nameAndDescriptionToWeavingDetails.put(
                   new Pair<String, String>(m.getName(),
                                            Type.getMethodDescriptor(m)),
-                  entry.getValue());
+                  new ArrayList<WeavingDetails>(entry.getValue()));
+        }
+      }
+
+      final Pair<String, Map<Pair<String, String>, List<WeavingDetails>>>
+        cacheKey =
+          new Pair<String, Map<Pair<String, String>, List<WeavingDetails>>>(
+            internalClassName, nameAndDescriptionToWeavingDetails);
+
+      synchronized (m_wovenCache) {
+        final Pair<byte[], byte[]> cached = m_wovenCache.get(cacheKey);
+
+        if (cached != null && Arrays.equals(cached.getFirst(), originalBytes)) {
+          return cached.getSecond();
         }
       }
 
@@ -232,7 +314,14 @@ public final class ASMTransformerFactory
 
       classReader.accept(visitorChain, 0);
 
-      return classWriter.toByteArray();
+      final byte[] result = classWriter.toByteArray();
+
+      synchronized (m_wovenCache) {
+        m_wovenCache.put(cacheKey,
+                         new Pair<byte[], byte[]>(originalBytes, result));
+      }
+
+      return result;
     }
   }
 
@@ -413,14 +502,28 @@ public final class ASMTransformerFactory
           m_extractors.get(weavingDetails.getTargetSource()).extract(this);
           super.visitLdcInsn(weavingDetails.getLocation());
 
-          super.visitMethodInsn(INVOKESTATIC,
-                                m_adviceClass,
-                                "enter",
-                                "(Ljava/lang/Object;Ljava/lang/String;)V");
+          if (isIndexed(weavingDetails)) {
+            super.visitLdcInsn(weavingDetails.getLocationID());
+
+            super.visitMethodInsn(INVOKESTATIC,
+                                  m_adviceClass,
+                                  "enter",
+                                  "(Ljava/lang/Object;Ljava/lang/String;I)V");
+          }
+          else {
+            super.visitMethodInsn(INVOKESTATIC,
+                                  m_adviceClass,
+                                  "enter",
+                                  "(Ljava/lang/Object;Ljava/lang/String;)V");
+          }
         }
       }
     }
 
+    private boolean isIndexed(WeavingDetails weavingDetails) {
+      return m_indexedAdvice && weavingDetails.getLocationID() >= 0;
+    }
+
     private void generateEntryBlocks() {
       generateTryCatchBlock();
       generateEntryCall();
@@ -437,12 +540,23 @@ public final class ASMTransformerFactory
         m_extractors.get(weavingDetails.getTargetSource()).extract(this);
         super.visitLdcInsn(weavingDetails.getLocation());
 
-        super.visitInsn(success ? ICONST_1 : ICONST_0);
+        if (isIndexed(weavingDetails)) {
+          super.visitLdcInsn(weavingDetails.getLocationID());
+          super.visitInsn(success ? ICONST_1 : ICONST_0);
 
-        super.visitMethodInsn(INVOKESTATIC,
-                              m_adviceClass,
-                              "exit",
-                              "(Ljava/lang/Object;Ljava/lang/String;Z)V");
+          super.visitMethodInsn(INVOKESTATIC,
+                                m_adviceClass,
+                                "exit",
+                                "(Ljava/lang/Object;Ljava/lang/String;IZ)V");
+        }
+        else {
+          super.visitInsn(success ? ICONST_1 : ICONST_0);
+
+          super.visitMethodInsn(INVOKESTATIC,
+                                m_adviceClass,
+                                "exit",
+                                "(Ljava/lang/Object;Ljava/lang/String;Z)V");
+        }
       }
     }
 
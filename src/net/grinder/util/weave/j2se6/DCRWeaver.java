@@ -33,8 +33,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.grinder.common.Logger;
 import net.grinder.util.Pair;
 import net.grinder.util.weave.Weaver;
 import net.grinder.util.weave.WeavingException;
@@ -51,12 +52,17 @@ public final class DCRWeaver implements Weaver {
   // Guarded by this.
   private final Set<Class<?>> m_pendingClasses = new HashSet<Class<?>>();
 
+  // Guarded by this.
+  private boolean m_deferChanges;
+
   private final PointCutRegistryImplementation m_pointCutRegistry =
     new PointCutRegistryImplementation();
   private final ClassFileTransformer m_transformer;
 
   private final Instrumentation m_instrumentation;
 
+  private final Logger m_logger;
+
   /**
    * Constructor.
    *
@@ -65,8 +71,23 @@ public final class DCRWeaver implements Weaver {
    */
   public DCRWeaver(ClassFileTransformerFactory transformerFactory,
                    Instrumentation instrumentation) {
+    this(transformerFactory, instrumentation, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param transformerFactory Used to create the transformer.
+   * @param instrumentation Access to the JVM instrumentation.
+   * @param logger Logger for the cost of applying deferred changes, or
+   *          {@code null}.
+   */
+  public DCRWeaver(ClassFileTransformerFactory transformerFactory,
+                   Instrumentation instrumentation,
+                   Logger logger) {
 
     m_instrumentation = instrumentation;
+    m_logger = logger;
 
     m_transformer = transformerFactory.create(m_pointCutRegistry);
 
@@ -92,26 +113,96 @@ public final class DCRWeaver implements Weaver {
    */
   public void applyChanges() throws WeavingException {
     synchronized (this) {
-      if (m_pendingClasses.size() > 0) {
-        try {
-          m_instrumentation.retransformClasses(
-            m_pendingClasses.toArray(new Class<?>[0]));
-        }
-        catch (UnmodifiableClassException e) {
-          throw new WeavingException("Failed to modify class", e);
-        }
-
-        m_pendingClasses.clear();
+      if (!m_deferChanges) {
+        retransformPendingClasses(false);
       }
     }
   }
 
+  // Guarded by this.
+  private void retransformPendingClasses(boolean log)
+    throws WeavingException {
+
+    if (m_pendingClasses.size() == 0) {
+      return;
+    }
+
+    final Class<?>[] classes = m_pendingClasses.toArray(new Class<?>[0]);
+
+    final long start = System.nanoTime();
+
+    try {
+      m_instrumentation.retransformClasses(classes);
+    }
+    catch (UnmodifiableClassException e) {
+      throw new WeavingException("Failed to modify class", e);
+    }
+
+    m_pendingClasses.clear();
+
+    if (log && m_logger != null) {
+      m_logger.output("retransformed " + classes.length +
+                      (classes.length == 1 ? " class" : " classes") +
+                      " in " + (System.nanoTime() - start) / 1000000 +
+                      " ms");
+    }
+  }
+
+  /**
+   * Until {@link #applyDeferredChanges} is called, make
+   * {@link #applyChanges} a no-op. Classes that are woven in the meantime
+   * are retransformed together, rather than one call at a time.
+   *
+   * <p>
+   * Retransformation suspends the JVM's other threads. Use this when many
+   * methods will be woven in quick succession, such as during script
+   * initialisation. Until the changes are applied, the advice is not called.
+   * </p>
+   */
+  public void deferChanges() {
+    synchronized (this) {
+      m_deferChanges = true;
+    }
+  }
+
+  /**
+   * Apply the weaving deferred since {@link #deferChanges} was called, and
+   * return to applying changes immediately.
+   *
+   * @throws WeavingException A problem occurred with the weaving.
+   */
+  public void applyDeferredChanges() throws WeavingException {
+    synchronized (this) {
+      m_deferChanges = false;
+      retransformPendingClasses(true);
+    }
+  }
+
   private static final String s_classLoaderIdentity =
     Integer.toHexString(DCRWeaver.class.hashCode()) + ":";
-  private static final AtomicLong s_nextLocation = new AtomicLong();
+  private static final AtomicInteger s_nextLocation = new AtomicInteger();
+
+  /**
+   * Recover the number of a location string returned by {@link #weave}. The
+   * numbers are small, dense, and unique, so advice can use them as array
+   * indices.
+   *
+   * @param location The location string.
+   * @return The number, or {@code -1} if {@code location} was not generated
+   *         by this class.
+   */
+  public static int getLocationID(String location) {
+    if (location.startsWith(s_classLoaderIdentity)) {
+      try {
+        return
+          Integer.parseInt(location.substring(s_classLoaderIdentity.length()));
+      }
+      catch (NumberFormatException e) {
+        // Fall through.
+      }
+    }
 
-  private static String generateLocationString() {
-    return s_classLoaderIdentity + s_nextLocation.getAndIncrement();
+    return -1;
   }
 
 
@@ -188,7 +279,8 @@ public final class DCRWeaver implements Weaver {
 
       final String className = member.getDeclaringClass().getName();
       final String internalClassName = className.replace('.', '/');
-      final String location = generateLocationString();
+      final int locationID = s_nextLocation.getAndIncrement();
+      final String location = s_classLoaderIdentity + locationID;
 
       synchronized(this) {
         final Map<T, List<WeavingDetails>> methodNameToWeavingDetails;
@@ -220,7 +312,8 @@ public final class DCRWeaver implements Weaver {
           methodNameToWeavingDetails.put(member, weavingDetailsList);
         }
 
-        weavingDetailsList.add(new WeavingDetails(location, targetSource));
+        weavingDetailsList.add(
+          new WeavingDetails(location, locationID, targetSource));
       }
 
       synchronized(DCRWeaver.this) {
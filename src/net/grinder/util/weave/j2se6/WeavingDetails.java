@@ -32,14 +32,31 @@ import net.grinder.util.weave.Weaver.TargetSource;
  * @version $Revision:$
  */
 final class WeavingDetails extends Pair<String, TargetSource> {
+  private final int m_locationID;
+
   WeavingDetails(String location, TargetSource targetSource) {
+    this(location, -1, targetSource);
+  }
+
+  WeavingDetails(String location, int locationID, TargetSource targetSource) {
     super(location, targetSource);
+    m_locationID = locationID;
   }
 
   public String getLocation() {
     return getFirst();
   }
 
+  /**
+   * The number of the location, or {@code -1} if it has none. Not part of the
+   * identity; it is derived from the location string.
+   *
+   * @return The location number.
+   */
+  public int getLocationID() {
+    return m_locationID;
+  }
+
   public TargetSource getTargetSource() {
     return getSecond();
   }
@@ -0,0 +1,169 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Measures the throughput of the HTTPClient content decoders over a set of
+ * payloads, compared to the <code>java.util.zip</code> streams.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java HTTPClient.DecodingBenchmark [recorded response body files...]
+ * </pre>
+ *
+ * <p>If no files are given, generated HTML-like payloads of 2K, 20K, and 200K
+ * are used.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class DecodingBenchmark {
+
+  private static final long TARGET_BYTES = 500L * 1024 * 1024;
+
+  public static void main(String[] args) throws Exception {
+    final List<byte[]> payloads = new ArrayList<byte[]>();
+
+    if (args.length == 0) {
+      payloads.add(TestInflatingInputStream.content(2 * 1024));
+      payloads.add(TestInflatingInputStream.content(20 * 1024));
+      payloads.add(TestInflatingInputStream.content(200 * 1024));
+    }
+    else {
+      for (int i = 0; i < args.length; ++i) {
+        payloads.add(read(new FileInputStream(new File(args[i]))));
+      }
+    }
+
+    for (int run = 0; run < 3; ++run) {
+      System.out.println("Run " + run);
+
+      for (byte[] payload : payloads) {
+        final byte[] gzip = TestInflatingInputStream.gzip(payload);
+        final byte[] zlib = TestInflatingInputStream.deflate(payload, false);
+        final byte[] chunked = chunk(payload, 4096);
+
+        System.out.println(" " + payload.length + " byte payload");
+
+        report("GZIPInputStream", payload.length, new Decoder() {
+            public InputStream decode() throws IOException {
+              return new GZIPInputStream(new ByteArrayInputStream(gzip));
+            }
+          });
+
+        report("InflatingInputStream.gzip", payload.length, new Decoder() {
+            public InputStream decode() {
+              return InflatingInputStream.gzip(new ByteArrayInputStream(gzip));
+            }
+          });
+
+        report("InflaterInputStream", payload.length, new Decoder() {
+            public InputStream decode() {
+              return new InflaterInputStream(new ByteArrayInputStream(zlib));
+            }
+          });
+
+        report("InflatingInputStream.deflate", payload.length, new Decoder() {
+            public InputStream decode() {
+              return InflatingInputStream.deflate(
+                new ByteArrayInputStream(zlib));
+            }
+          });
+
+        report("ChunkedInputStream", payload.length, new Decoder() {
+            public InputStream decode() {
+              return new ChunkedInputStream(new ByteArrayInputStream(chunked));
+            }
+          });
+      }
+    }
+  }
+
+  private static void report(String name, int size, Decoder decoder)
+    throws Exception {
+
+    final byte[] buffer = new byte[4096];
+    final long iterations = Math.max(10, TARGET_BYTES / 10 / size);
+
+    final long start = System.nanoTime();
+
+    for (long i = 0; i < iterations; ++i) {
+      final InputStream in = decoder.decode();
+
+      while (in.read(buffer, 0, buffer.length) != -1) { }
+
+      in.close();
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    System.out.println("  " + name + ": " +
+                       (iterations * size * 1000 / nanos) + " MB/s, " +
+                       (iterations * 1000000000L / nanos) + " responses/s");
+  }
+
+  private static byte[] chunk(byte[] content, int chunkSize) throws Exception {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+    for (int i = 0; i < content.length; i += chunkSize) {
+      final int length = Math.min(chunkSize, content.length - i);
+      result.write((Integer.toHexString(length) + "\r\n").getBytes());
+      result.write(content, i, length);
+      result.write("\r\n".getBytes());
+    }
+
+    result.write("0\r\n\r\n".getBytes());
+
+    return result.toByteArray();
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int n;
+
+    while ((n = in.read(buffer)) != -1) {
+      result.write(buffer, 0, n);
+    }
+
+    in.close();
+
+    return result.toByteArray();
+  }
+
+  private interface Decoder {
+    InputStream decode() throws IOException;
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import HTTPClient.TestInflatingInputStream.DribbleInputStream;
+
+
+/**
+ * Unit tests for {@link ChunkedInputStream} and
+ * {@link Codecs#getChunkLength}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestChunkedInputStream extends TestCase {
+
+  public void testDechunk() throws Exception {
+    final String chunked =
+      "5\r\nhello\r\n" +
+      "5 ; name=value\r\n worl\r\n" +
+      "01\r\nd\r\n" +
+      "0\r\n" +
+      "Trailer: x\r\n" +
+      "\r\n" +
+      "next response";
+
+    final InputStream in =
+      new ChunkedInputStream(new ByteArrayInputStream(chunked.getBytes()));
+
+    assertEquals("hello world",
+                 new String(TestInflatingInputStream.readFully(in, 3)));
+    assertEquals(-1, in.read());
+    assertEquals(0, in.available());
+
+    final InputStream dribble =
+      new ChunkedInputStream(new DribbleInputStream(chunked.getBytes()));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+
+    while ((b = dribble.read()) != -1) {
+      out.write(b);
+    }
+
+    assertEquals("hello world", out.toString());
+  }
+
+  public void testLargeChunks() throws Exception {
+    final byte[] content = TestInflatingInputStream.content(50000);
+
+    final ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+
+    for (int i = 0; i < content.length; i += 20000) {
+      final int length = Math.min(20000, content.length - i);
+      chunked.write((Integer.toHexString(length) + "\r\n").getBytes());
+      chunked.write(content, i, length);
+      chunked.write("\r\n".getBytes());
+    }
+
+    chunked.write("0\r\n\r\n".getBytes());
+
+    assertTrue(Arrays.equals(content,
+      TestInflatingInputStream.readFully(
+        new ChunkedInputStream(
+          new ByteArrayInputStream(chunked.toByteArray())),
+        8192)));
+  }
+
+  public void testGetChunkLength() throws Exception {
+    assertEquals(0, chunkLength("0\r\n"));
+    assertEquals(0xabc, chunkLength("  aBc\n"));
+    assertEquals(0x10, chunkLength("10\t;x=\"y\"\r\n"));
+    assertEquals(Long.MAX_VALUE, chunkLength("7fffffffffffffff\r\n"));
+
+    final String[] bad = {
+      "\r\n",
+      "x\r\n",
+      "1x\r\n",
+      "1 2\r\n",
+      "1\rx",
+      "8000000000000000\r\n",
+    };
+
+    for (int i = 0; i < bad.length; ++i) {
+      try {
+        chunkLength(bad[i]);
+        fail("Expected ParseException for " + bad[i]);
+      }
+      catch (ParseException e) {
+      }
+    }
+
+    final String[] truncated = { "", "  ", "12", "12;x" };
+
+    for (int i = 0; i < truncated.length; ++i) {
+      try {
+        chunkLength(truncated[i]);
+        fail("Expected EOFException for " + truncated[i]);
+      }
+      catch (EOFException e) {
+      }
+    }
+  }
+
+  private static long chunkLength(String s)
+    throws ParseException, IOException {
+    return Codecs.getChunkLength(new ByteArrayInputStream(s.getBytes()));
+  }
+}
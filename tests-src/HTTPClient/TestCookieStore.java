@@ -0,0 +1,174 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+import HTTPClient.TestCookie.RoRequestStubFactory;
+
+
+/**
+ * Unit tests for {@link CookieStore}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestCookieStore extends TestCase {
+
+  private final RoRequestStubFactory m_roRequestStubFactory =
+    new RoRequestStubFactory();
+  private final RoRequest m_roRequest = m_roRequestStubFactory.getStub();
+
+  public void testPutGetRemove() throws Exception {
+    final CookieStore store = new CookieStore();
+    assertEquals(0, store.size());
+    assertEquals(0, store.toArray().length);
+
+    final Cookie c1 = new Cookie("a", "1", "www.grinder.org", "/", null, false);
+    final Cookie c2 = new Cookie("a", "2", "www.grinder.org", "/", null, false);
+    final Cookie c3 = new Cookie("a", "3", ".grinder.org", "/", null, false);
+
+    assertNull(store.get(c1));
+    assertFalse(store.remove(c1));
+
+    store.put(c1);
+    store.put(c3);
+    assertEquals(2, store.size());
+    assertSame(c1, store.get(c2));
+
+    store.put(c2);
+    assertEquals(2, store.size());
+    assertSame(c2, store.get(c1));
+    assertSame(c3, store.get(c3));
+
+    assertEquals(new HashSet<Cookie>(Arrays.asList(new Cookie[] { c2, c3 })),
+                 new HashSet<Cookie>(Arrays.asList(store.toArray())));
+
+    assertTrue(store.remove(c1));
+    assertEquals(1, store.size());
+    assertNull(store.get(c2));
+  }
+
+  public void testHeaderMatching() throws Exception {
+    final CookieStore store = new CookieStore();
+
+    m_roRequestStubFactory.setHost("www.grinder.org");
+    m_roRequestStubFactory.setRequestURI("/a/b/c?x=y");
+
+    assertNull(store.getHeader(m_roRequest, null));
+
+    store.put(new Cookie("host", "1", "www.grinder.org", "/", null, false));
+    store.put(new Cookie("path", "2", "www.grinder.org", "/a/b", null, false));
+    store.put(new Cookie("domain", "3", ".grinder.org", "/a", null, false));
+    store.put(new Cookie("other", "4", "ftp.grinder.org", "/", null, false));
+    store.put(new Cookie("notsub", "5", ".www.grinder.org", "/", null, false));
+    store.put(new Cookie("nopath", "6", "www.grinder.org", "/z", null, false));
+    store.put(new Cookie("secure", "7", "www.grinder.org", "/", null, true));
+    store.put(new Cookie("tld", "8", "grinder.org", "/", null, false));
+
+    final CookieStore.CookieHeader header =
+      store.getHeader(m_roRequest, null);
+
+    assertEquals("path=2; domain=3; host=1", header.getValue());
+    assertEquals(0, header.getVersion());
+
+    m_roRequestStubFactory.setHost("x.www.grinder.org");
+    assertEquals("domain=3; notsub=5",
+                 store.getHeader(m_roRequest, null).getValue());
+
+    m_roRequestStubFactory.setHost("grinder.org");
+    assertEquals("tld=8", store.getHeader(m_roRequest, null).getValue());
+
+    m_roRequestStubFactory.setHost("grinder.net");
+    assertNull(store.getHeader(m_roRequest, null));
+
+    m_roRequestStubFactory.setHost("localhost");
+    store.put(new Cookie("local", "9", "localhost", "/", null, false));
+    assertEquals("local=9", store.getHeader(m_roRequest, null).getValue());
+  }
+
+  public void testHeaderCache() throws Exception {
+    final CookieStore store = new CookieStore();
+
+    m_roRequestStubFactory.setHost("www.grinder.org");
+    m_roRequestStubFactory.setRequestURI("/");
+
+    final Cookie c1 = new Cookie("a", "1", "www.grinder.org", "/", null, false);
+    store.put(c1);
+
+    final CookieStore.CookieHeader header1 =
+      store.getHeader(m_roRequest, null);
+    assertEquals("a=1", header1.getValue());
+    assertSame(header1, store.getHeader(m_roRequest, null));
+
+    store.put(new Cookie("a", "2", "www.grinder.org", "/", null, false));
+    assertEquals("a=2", store.getHeader(m_roRequest, null).getValue());
+
+    store.remove(c1);
+    assertNull(store.getHeader(m_roRequest, null));
+    assertNull(store.getHeader(m_roRequest, null));
+
+    // Cookies that have expired are removed.
+    final Date soon = new Date(System.currentTimeMillis() + 50);
+    store.put(new Cookie("b", "1", "www.grinder.org", "/", soon, false));
+    store.put(new Cookie("c", "1", "www.grinder.org", "/", null, false));
+    assertEquals("b=1; c=1", store.getHeader(m_roRequest, null).getValue());
+
+    Thread.sleep(100);
+    assertEquals("c=1", store.getHeader(m_roRequest, null).getValue());
+    assertEquals(1, store.size());
+  }
+
+  public void testPolicyHandler() throws Exception {
+    final CookieStore store = new CookieStore();
+
+    m_roRequestStubFactory.setHost("www.grinder.org");
+    m_roRequestStubFactory.setRequestURI("/");
+
+    store.put(new Cookie("a", "1", "www.grinder.org", "/", null, false));
+    store.put(new Cookie("b", "1", "www.grinder.org", "/", null, false));
+
+    final boolean[] sendB = { false };
+
+    final CookiePolicyHandler handler = new CookiePolicyHandler() {
+        public boolean acceptCookie(Cookie cookie,
+                                    RoRequest req,
+                                    RoResponse resp) {
+          return true;
+        }
+
+        public boolean sendCookie(Cookie cookie, RoRequest req) {
+          return sendB[0] || !cookie.getName().equals("b");
+        }
+      };
+
+    assertEquals("a=1", store.getHeader(m_roRequest, handler).getValue());
+
+    // Not cached, since the handler may change its mind.
+    sendB[0] = true;
+    assertEquals("a=1; b=1", store.getHeader(m_roRequest, handler).getValue());
+  }
+}
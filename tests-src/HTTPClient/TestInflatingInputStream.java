@@ -0,0 +1,277 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for {@link InflatingInputStream}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestInflatingInputStream extends TestCase {
+
+  private final byte[] m_content = content(100000);
+
+  public void testGZip() throws Exception {
+    final byte[] encoded = gzip(m_content);
+
+    assertTrue(Arrays.equals(m_content,
+      readFully(InflatingInputStream.gzip(new ByteArrayInputStream(encoded)),
+                7)));
+
+    assertTrue(Arrays.equals(m_content,
+      readFully(InflatingInputStream.gzip(new ByteArrayInputStream(encoded)),
+                10000)));
+
+    // Single byte reads, dribbled input.
+    final InputStream in =
+      InflatingInputStream.gzip(new DribbleInputStream(encoded));
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+
+    while ((b = in.read()) != -1) {
+      out.write(b);
+    }
+
+    assertTrue(Arrays.equals(m_content, out.toByteArray()));
+    assertEquals(0, in.available());
+    assertEquals(-1, in.read(new byte[10], 0, 10));
+    in.close();
+  }
+
+  public void testGZipHeaderFields() throws Exception {
+    final byte[] encoded = gzip("hello world".getBytes());
+
+    // Set FEXTRA, FNAME, FCOMMENT, FHCRC.
+    final ByteArrayOutputStream withFields = new ByteArrayOutputStream();
+    withFields.write(encoded, 0, 3);
+    withFields.write(4 | 8 | 16 | 2);
+    withFields.write(encoded, 4, 6);
+    withFields.write(new byte[] { 3, 0, 'x', 'y', 'z' });
+    withFields.write("name\0".getBytes());
+    withFields.write("comment\0".getBytes());
+    withFields.write(new byte[] { 0, 0 });
+    withFields.write(encoded, 10, encoded.length - 10);
+
+    assertEquals("hello world",
+      new String(readFully(InflatingInputStream.gzip(
+        new ByteArrayInputStream(withFields.toByteArray())), 100)));
+  }
+
+  public void testGZipMembers() throws Exception {
+    final ByteArrayOutputStream members = new ByteArrayOutputStream();
+    members.write(gzip("hello ".getBytes()));
+    members.write(gzip("world".getBytes()));
+
+    assertEquals("hello world",
+      new String(readFully(InflatingInputStream.gzip(
+        new ByteArrayInputStream(members.toByteArray())), 100)));
+
+    // Trailing garbage is ignored.
+    members.write(new byte[] { 1, 2, 3 });
+
+    assertEquals("hello world",
+      new String(readFully(InflatingInputStream.gzip(
+        new ByteArrayInputStream(members.toByteArray())), 100)));
+  }
+
+  public void testGZipCorrupt() throws Exception {
+    final byte[] encoded = gzip(m_content);
+
+    final byte[] badMagic = encoded.clone();
+    badMagic[0] = 0;
+    assertReadFails(InflatingInputStream.gzip(
+                      new ByteArrayInputStream(badMagic)),
+                    ZipException.class);
+
+    final byte[] badCRC = encoded.clone();
+    badCRC[encoded.length - 8] ^= 1;
+    assertReadFails(InflatingInputStream.gzip(
+                      new ByteArrayInputStream(badCRC)),
+                    ZipException.class);
+
+    final byte[] badSize = encoded.clone();
+    badSize[encoded.length - 1] ^= 1;
+    assertReadFails(InflatingInputStream.gzip(
+                      new ByteArrayInputStream(badSize)),
+                    ZipException.class);
+
+    final byte[] truncated = new byte[encoded.length / 2];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+    assertReadFails(InflatingInputStream.gzip(
+                      new ByteArrayInputStream(truncated)),
+                    EOFException.class);
+
+    assertReadFails(InflatingInputStream.gzip(
+                      new ByteArrayInputStream(new byte[0])),
+                    EOFException.class);
+  }
+
+  public void testDeflate() throws Exception {
+    final byte[] zlib = deflate(m_content, false);
+
+    assertTrue(Arrays.equals(m_content,
+      readFully(InflatingInputStream.deflate(new ByteArrayInputStream(zlib)),
+                1000)));
+
+    final byte[] raw = deflate(m_content, true);
+
+    assertTrue(Arrays.equals(m_content,
+      readFully(InflatingInputStream.deflate(new DribbleInputStream(raw)),
+                1000)));
+
+    final byte[] badAdler = zlib.clone();
+    badAdler[zlib.length - 1] ^= 1;
+    assertReadFails(InflatingInputStream.deflate(
+                      new ByteArrayInputStream(badAdler)),
+                    ZipException.class);
+  }
+
+  public void testSkipAndMark() throws Exception {
+    final InputStream in =
+      InflatingInputStream.gzip(new ByteArrayInputStream(gzip(m_content)));
+
+    assertFalse(in.markSupported());
+    in.mark(10);
+
+    assertEquals(1000, in.skip(1000));
+    assertEquals(m_content[1000] & 0xff, in.read());
+    assertEquals(m_content.length - 1001, in.skip(m_content.length));
+    assertEquals(0, in.skip(10));
+    assertEquals(-1, in.read());
+  }
+
+  public void testReuse() throws Exception {
+    final byte[] encoded = gzip(m_content);
+
+    // Abandon streams half way through, close others. Each must decode
+    // correctly whatever the state of the shared inflater.
+    for (int i = 0; i < 10; ++i) {
+      final InputStream abandoned =
+        InflatingInputStream.gzip(new ByteArrayInputStream(encoded));
+      abandoned.read(new byte[100]);
+
+      final InputStream closed =
+        InflatingInputStream.deflate(
+          new ByteArrayInputStream(deflate(m_content, i % 2 == 0)));
+      closed.read(new byte[100]);
+      closed.close();
+      assertEquals(-1, closed.read());
+
+      assertTrue(Arrays.equals(m_content,
+        readFully(InflatingInputStream.gzip(new ByteArrayInputStream(encoded)),
+                  4096)));
+    }
+  }
+
+  private static void assertReadFails(InputStream in,
+                                      Class<? extends Exception> expected)
+    throws Exception {
+
+    try {
+      readFully(in, 1000);
+      fail("Expected " + expected.getName());
+    }
+    catch (Exception e) {
+      assertTrue(e.toString(), expected.isInstance(e));
+    }
+  }
+
+  static byte[] content(int size) {
+    final Random random = new Random(size);
+    final StringBuffer result = new StringBuffer();
+    final String[] words =
+      { "<div>", "</div>", "grinder", "test", "<a href=\"", "\">", "the" };
+
+    while (result.length() < size) {
+      result.append(words[random.nextInt(words.length)]);
+      result.append(random.nextInt(1000));
+    }
+
+    result.setLength(size);
+
+    return result.toString().getBytes();
+  }
+
+  static byte[] gzip(byte[] content) throws Exception {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final GZIPOutputStream out = new GZIPOutputStream(result);
+    out.write(content);
+    out.close();
+    return result.toByteArray();
+  }
+
+  static byte[] deflate(byte[] content, boolean raw) throws Exception {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final DeflaterOutputStream out =
+      new DeflaterOutputStream(result,
+                               new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+    out.write(content);
+    out.close();
+    return result.toByteArray();
+  }
+
+  static byte[] readFully(InputStream in, int bufferSize) throws Exception {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[bufferSize];
+    int n;
+
+    while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+      result.write(buffer, 0, n);
+    }
+
+    in.close();
+
+    return result.toByteArray();
+  }
+
+  /**
+   * Returns at most three bytes from each read.
+   */
+  static final class DribbleInputStream extends ByteArrayInputStream {
+    public DribbleInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 3));
+    }
+
+    public synchronized int available() {
+      return 0;
+    }
+  }
+}
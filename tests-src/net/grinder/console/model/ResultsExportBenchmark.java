@@ -0,0 +1,233 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimerTask;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Simulates a long run with a one second sample interval, exporting every
+ * sample with {@link ResultsExport}, and measures the cost of the export,
+ * the size of the file, and the time taken to read it back with {@link
+ * ResultsExportReader}.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.console.model.ResultsExportBenchmark [tests] [hours]
+ * </pre>
+ *
+ * <p>The run is repeated without an export directory to measure the cost
+ * of sampling alone.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class ResultsExportBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final int numberOfTests =
+      args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    final int hours = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+    final int samples = hours * 3600;
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final List<Test> tests = new ArrayList<Test>(numberOfTests);
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      tests.add(new StubTest(i, "test " + i));
+    }
+
+    final TestStatisticsMap[] reports =
+      createReports(statisticsServices, tests);
+
+    final File directory = File.createTempFile("benchmark", "");
+    directory.delete();
+
+    System.out.println(numberOfTests + " tests, " + samples + " samples");
+
+    final long baseline =
+      run(statisticsServices, tests, reports, samples, null);
+    System.out.println("  Sampling alone: " + baseline / 1000000 + " ms");
+
+    final long withExport =
+      run(statisticsServices, tests, reports, samples, directory);
+    System.out.println("  With export: " + withExport / 1000000 + " ms, " +
+                       (withExport - baseline) / samples / 1000 +
+                       " us per sample");
+
+    final File file = directory.listFiles()[0];
+
+    final long start = System.nanoTime();
+    final ResultsExportReader reader = new ResultsExportReader(file);
+    long values = 0;
+    ResultsExportReader.Block block;
+
+    while ((block = reader.next()) != null) {
+      final int numberOfColumns = block.getColumnNames().size();
+      final int numberOfSeries = 1 + block.getTestNumbers().length;
+
+      for (int series = 0; series < numberOfSeries; ++series) {
+        for (int column = 0; column < numberOfColumns; ++column) {
+          values += block.getDoubleValues(series, column).length;
+        }
+      }
+    }
+
+    reader.close();
+
+    final long readNanos = System.nanoTime() - start;
+
+    System.out.println("  File size: " + file.length() / 1024 + " KB, " +
+                       (file.length() * 1000 / values) / 1000d +
+                       " bytes per value (" + values + " values)");
+    System.out.println("  Read all values: " + readNanos / 1000000 + " ms");
+
+    file.delete();
+    directory.delete();
+  }
+
+  /**
+   * A few different reports, so that the values vary from sample to
+   * sample.
+   */
+  private static TestStatisticsMap[] createReports(
+    StatisticsServices statisticsServices,
+    List<Test> tests) {
+
+    final StatisticsIndexMap indexMap =
+      statisticsServices.getStatisticsIndexMap();
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      indexMap.getLongIndex("errors");
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      indexMap.getLongSampleIndex("timedTests");
+
+    final TestStatisticsMap[] result = new TestStatisticsMap[7];
+
+    for (int r = 0; r < result.length; ++r) {
+      result[r] = new TestStatisticsMap();
+
+      for (int t = 0; t < tests.size(); ++t) {
+        final StatisticsSet statistics =
+          statisticsServices.getStatisticsSetFactory().create();
+        statistics.setValue(errorsIndex, (r + t) % 5 == 0 ? 1 : 0);
+
+        for (int s = 0; s < 20 + r; ++s) {
+          statistics.addSample(timedTestsIndex, 50 + (r * s + t) % 200);
+        }
+
+        result[r].put(tests.get(t), statistics);
+      }
+    }
+
+    return result;
+  }
+
+  private static long run(StatisticsServices statisticsServices,
+                          List<Test> tests,
+                          TestStatisticsMap[] reports,
+                          int samples,
+                          File directory)
+    throws Exception {
+
+    final Resources resources = new StubResources<String>(
+      new HashMap<String, String>());
+
+    final File propertiesFile =
+      File.createTempFile("benchmark", ".properties");
+    final ConsoleProperties properties =
+      new ConsoleProperties(resources, propertiesFile);
+    properties.setResultsExportDirectory(directory);
+
+    final StubTimer timer = new StubTimer();
+    final SimulatedTime time = new SimulatedTime();
+
+    final ErrorHandler errorHandler =
+      RandomStubFactory.create(ErrorHandler.class).getStub();
+
+    final SampleModelImplementation model =
+      new SampleModelImplementation(properties,
+                                    statisticsServices,
+                                    timer,
+                                    resources,
+                                    errorHandler);
+
+    final ResultsExport export =
+      new ResultsExport(properties,
+                        new SampleCapture(model, statisticsServices, time),
+                        errorHandler,
+                        time);
+
+    model.registerTests(tests);
+
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < samples; ++i) {
+      model.addTestReport(reports[i % reports.length]);
+
+      final TimerTask task = timer.getLastScheduledTimerTask();
+
+      if (task != null) {
+        task.run();
+      }
+
+      time.m_time += 1000;
+    }
+
+    export.shutdown();
+
+    final long result = System.nanoTime() - start;
+
+    timer.cancel();
+    propertiesFile.delete();
+
+    return result;
+  }
+
+  private static final class SimulatedTime implements TimeAuthority {
+    private long m_time = System.currentTimeMillis();
+
+    public long getTimeInMilliseconds() {
+      return m_time;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Timer;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.RandomStubFactory;
+
+
+/**
+ * Load generator that replays synthetic worker reports into a
+ * {@link SampleModelImplementation} and measures the maximum rate at which
+ * they are merged.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.console.model.SampleModelBenchmark [tests] [processes]
+ * </pre>
+ *
+ * <p>Each run replays one report per process for each of a number of
+ * sample intervals, first with a single shard and then with one shard per
+ * available processor.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class SampleModelBenchmark {
+
+  private static final int INTERVALS = 20;
+
+  public static void main(String[] args) throws Exception {
+    final int numberOfTests =
+      args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final int numberOfProcesses =
+      args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final List<Test> tests = new ArrayList<Test>(numberOfTests);
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      tests.add(new StubTest(i, "test " + i));
+    }
+
+    final TestStatisticsMap[] reports =
+      createReports(statisticsServices, tests, numberOfProcesses);
+
+    final int processors = Runtime.getRuntime().availableProcessors();
+
+    for (int i = 0; i < 3; ++i) {
+      System.out.println("Run " + i + ", " + numberOfTests + " tests, " +
+                         numberOfProcesses + " processes");
+      benchmark(statisticsServices, tests, reports, 1);
+      benchmark(statisticsServices, tests, reports, processors);
+    }
+  }
+
+  private static TestStatisticsMap[] createReports(
+    StatisticsServices statisticsServices,
+    List<Test> tests,
+    int numberOfProcesses) {
+
+    final StatisticsIndexMap indexMap =
+      statisticsServices.getStatisticsIndexMap();
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      indexMap.getLongIndex("errors");
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      indexMap.getLongSampleIndex("timedTests");
+
+    final TestStatisticsMap[] result =
+      new TestStatisticsMap[numberOfProcesses];
+
+    for (int p = 0; p < numberOfProcesses; ++p) {
+      result[p] = new TestStatisticsMap();
+
+      for (int t = 0; t < tests.size(); ++t) {
+        final StatisticsSet statistics =
+          statisticsServices.getStatisticsSetFactory().create();
+        statistics.setValue(errorsIndex, (p + t) % 3);
+
+        for (int s = 0; s < 5; ++s) {
+          statistics.addSample(timedTestsIndex, 10 + (p * s + t) % 100);
+        }
+
+        result[p].put(tests.get(t), statistics);
+      }
+    }
+
+    return result;
+  }
+
+  private static void benchmark(StatisticsServices statisticsServices,
+                                List<Test> tests,
+                                TestStatisticsMap[] reports,
+                                int shards)
+    throws Exception {
+
+    final Resources resources = new StubResources<String>(
+      new HashMap<String, String>());
+
+    final File file = File.createTempFile("benchmark", ".properties");
+    final ConsoleProperties properties =
+      new ConsoleProperties(resources, file);
+
+    // Avoid the timer firing during the run; we sample explicitly.
+    properties.setSampleInterval(Integer.MAX_VALUE);
+
+    final Timer timer = new Timer(true);
+
+    final ErrorHandler errorHandler =
+      RandomStubFactory.create(ErrorHandler.class).getStub();
+
+    final SampleModelImplementation model =
+      new SampleModelImplementation(properties,
+                                    statisticsServices,
+                                    timer,
+                                    resources,
+                                    errorHandler,
+                                    shards);
+
+    model.registerTests(tests);
+
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < INTERVALS; ++i) {
+      for (TestStatisticsMap report : reports) {
+        model.addTestReport(report);
+      }
+    }
+
+    final long nanos = System.nanoTime() - start;
+    final long numberOfReports = (long) INTERVALS * reports.length;
+
+    System.out.println("  " + shards + " shard(s): " +
+                       (numberOfReports * 1000000000L / nanos) +
+                       " reports/s, " +
+                       (numberOfReports * tests.size() * 1000000000L / nanos) +
+                       " test statistics/s");
+
+    timer.cancel();
+    file.delete();
+  }
+}
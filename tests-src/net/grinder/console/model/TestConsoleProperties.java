@@ -465,6 +465,100 @@ public class TestConsoleProperties extends AbstractFileTestCase {
     }.doTest();
   }
 
+  public void testSampleHistoryDirectory() throws Exception {
+
+    new TestFileTemplate(
+      ConsoleProperties.SAMPLE_HISTORY_DIRECTORY_PROPERTY) {
+
+      protected File get(ConsoleProperties properties) {
+        return properties.getSampleHistoryDirectory();
+      }
+
+      protected void set(ConsoleProperties properties, File file) {
+        properties.setSampleHistoryDirectory(file);
+      }
+    }.doTest();
+  }
+
+  public void testResultsExportDirectory() throws Exception {
+
+    new TestFileTemplate(
+      ConsoleProperties.RESULTS_EXPORT_DIRECTORY_PROPERTY) {
+
+      protected File get(ConsoleProperties properties) {
+        return properties.getResultsExportDirectory();
+      }
+
+      protected void set(ConsoleProperties properties, File file) {
+        properties.setResultsExportDirectory(file);
+      }
+    }.doTest();
+  }
+
+  public void testSampleHistoryRetention() throws Exception {
+
+    new TestIntTemplate(ConsoleProperties.SAMPLE_HISTORY_RETENTION_PROPERTY, 0,
+      Integer.MAX_VALUE) {
+
+      protected int get(ConsoleProperties properties) {
+        return properties.getSampleHistoryRetention();
+      }
+
+      protected void set(ConsoleProperties properties, int i)
+        throws ConsoleException {
+        properties.setSampleHistoryRetention(i);
+      }
+    }.doTest();
+  }
+
+  public void testSampleStreamPort() throws Exception {
+
+    new TestIntTemplate(ConsoleProperties.SAMPLE_STREAM_PORT_PROPERTY, 0,
+      CommunicationDefaults.MAX_PORT) {
+
+      protected int get(ConsoleProperties properties) {
+        return properties.getSampleStreamPort();
+      }
+
+      protected void set(ConsoleProperties properties, int i)
+        throws ConsoleException {
+        properties.setSampleStreamPort(i);
+      }
+    }.doTest();
+  }
+
+  public void testShortWindow() throws Exception {
+
+    new TestIntTemplate(ConsoleProperties.SHORT_WINDOW_PROPERTY, 1,
+      Integer.MAX_VALUE) {
+
+      protected int get(ConsoleProperties properties) {
+        return properties.getShortWindow();
+      }
+
+      protected void set(ConsoleProperties properties, int i)
+        throws ConsoleException {
+        properties.setShortWindow(i);
+      }
+    }.doTest();
+  }
+
+  public void testLongWindow() throws Exception {
+
+    new TestIntTemplate(ConsoleProperties.LONG_WINDOW_PROPERTY, 1,
+      Integer.MAX_VALUE) {
+
+      protected int get(ConsoleProperties properties) {
+        return properties.getLongWindow();
+      }
+
+      protected void set(ConsoleProperties properties, int i)
+        throws ConsoleException {
+        properties.setLongWindow(i);
+      }
+    }.doTest();
+  }
+
   public void testFrameBounds() throws Exception {
 
     final ConsoleProperties properties =
@@ -562,6 +656,15 @@ public class TestConsoleProperties extends AbstractFileTestCase {
       p2.getScanDistributionFilesPeriod());
     assertEquals(p1.getLookAndFeel(), p2.getLookAndFeel());
     assertEquals(p1.getSaveTotalsWithResults(), p2.getSaveTotalsWithResults());
+    assertEquals(p1.getSampleHistoryDirectory(),
+                 p2.getSampleHistoryDirectory());
+    assertEquals(p1.getSampleHistoryRetention(),
+                 p2.getSampleHistoryRetention());
+    assertEquals(p1.getSampleStreamPort(), p2.getSampleStreamPort());
+    assertEquals(p1.getShortWindow(), p2.getShortWindow());
+    assertEquals(p1.getLongWindow(), p2.getLongWindow());
+    assertEquals(p1.getResultsExportDirectory(),
+                 p2.getResultsExportDirectory());
   }
 
   public void testAssignment() throws Exception {
@@ -587,6 +690,12 @@ public class TestConsoleProperties extends AbstractFileTestCase {
     p2.setExternalEditorCommand(new File("bah"));
     p2.setExternalEditorArguments("foo");
     p2.setSaveTotalsWithResults(true);
+    p2.setSampleHistoryDirectory(new File("history"));
+    p2.setSampleHistoryRetention(60);
+    p2.setSampleStreamPort(6373);
+    p2.setShortWindow(5000);
+    p2.setLongWindow(300000);
+    p2.setResultsExportDirectory(new File("export"));
 
     assertTrue(p1.getCollectSampleCount() != p2.getCollectSampleCount());
     assertTrue(p1.getIgnoreSampleCount() != p2.getIgnoreSampleCount());
@@ -616,6 +725,15 @@ public class TestConsoleProperties extends AbstractFileTestCase {
     AssertUtilities.assertNotEquals(p1.getExternalEditorArguments(),
                                     p2.getExternalEditorArguments());
     assertTrue(p1.getSaveTotalsWithResults() != p2.getSaveTotalsWithResults());
+    AssertUtilities.assertNotEquals(p1.getSampleHistoryDirectory(),
+                                    p2.getSampleHistoryDirectory());
+    assertTrue(p1.getSampleHistoryRetention() !=
+      p2.getSampleHistoryRetention());
+    assertTrue(p1.getSampleStreamPort() != p2.getSampleStreamPort());
+    assertTrue(p1.getShortWindow() != p2.getShortWindow());
+    assertTrue(p1.getLongWindow() != p2.getLongWindow());
+    AssertUtilities.assertNotEquals(p1.getResultsExportDirectory(),
+                                    p2.getResultsExportDirectory());
 
     p2.set(p1);
 
@@ -645,6 +763,15 @@ public class TestConsoleProperties extends AbstractFileTestCase {
     assertEquals(p1.getExternalEditorArguments(),
                  p2.getExternalEditorArguments());
     assertTrue(p1.getSaveTotalsWithResults() == p2.getSaveTotalsWithResults());
+    assertEquals(p1.getSampleHistoryDirectory(),
+                 p2.getSampleHistoryDirectory());
+    assertEquals(p1.getSampleHistoryRetention(),
+                 p2.getSampleHistoryRetention());
+    assertEquals(p1.getSampleStreamPort(), p2.getSampleStreamPort());
+    assertEquals(p1.getShortWindow(), p2.getShortWindow());
+    assertEquals(p1.getLongWindow(), p2.getLongWindow());
+    assertEquals(p1.getResultsExportDirectory(),
+                 p2.getResultsExportDirectory());
   }
 
   public void testWithBadFile() throws Exception {
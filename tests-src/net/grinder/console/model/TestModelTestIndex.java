@@ -54,9 +54,11 @@ public class TestModelTestIndex extends TestCase {
     final SampleAccumulator[] accumulators =
       new SampleAccumulator[] {
         new SampleAccumulator(
-          null, null, statisticsServices.getStatisticsSetFactory()),
+          null, null, statisticsServices.getStatisticsSetFactory(),
+          new SlidingWindow.Definition[0]),
         new SampleAccumulator(
-          null, null, statisticsServices.getStatisticsSetFactory()),
+          null, null, statisticsServices.getStatisticsSetFactory(),
+          new SlidingWindow.Definition[0]),
       };
 
     final ModelTestIndex modelTestIndex =
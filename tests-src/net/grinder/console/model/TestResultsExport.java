@@ -0,0 +1,301 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimerTask;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ConsoleException;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Unit tests for {@link ResultsExport}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestResultsExport extends AbstractFileTestCase {
+
+  private final Resources m_resources = new StubResources<String>(
+    new HashMap<String, String>() {
+      private static final long serialVersionUID = 1L;
+
+      {
+        put("state.ignoring.label", "");
+        put("state.waiting.label", "");
+        put("state.stopped.label", "");
+        put("state.capturing.label", "");
+      }
+    }
+  );
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+      "timedTests");
+
+  private final RandomStubFactory<ErrorHandler> m_errorHandlerStubFactory =
+    RandomStubFactory.create(ErrorHandler.class);
+  private final ErrorHandler m_errorHandler =
+    m_errorHandlerStubFactory.getStub();
+
+  private final MyTimeAuthority m_time = new MyTimeAuthority();
+
+  private final Test m_test1 = new StubTest(1, "test 1");
+  private final Test m_test2 = new StubTest(2, "test \"2\"");
+
+  private ConsoleProperties m_properties;
+  private StubTimer m_timer;
+  private SampleModelImplementation m_model;
+  private ResultsExport m_export;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_timer = new StubTimer();
+    m_properties =
+      new ConsoleProperties(m_resources, new File(getDirectory(), "p"));
+    m_model = new SampleModelImplementation(m_properties,
+                                            m_statisticsServices,
+                                            m_timer,
+                                            m_resources,
+                                            m_errorHandler);
+
+    m_export = new ResultsExport(m_properties,
+                                 new SampleCapture(m_model,
+                                                   m_statisticsServices,
+                                                   m_time),
+                                 m_errorHandler,
+                                 m_time);
+  }
+
+  protected void tearDown() throws Exception {
+    m_export.shutdown();
+    m_timer.cancel();
+    super.tearDown();
+  }
+
+  private void sample(Test[] tests, long[] errors) {
+    final TestStatisticsMap report = new TestStatisticsMap();
+
+    for (int i = 0; i < tests.length; ++i) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(m_errorsIndex, errors[i]);
+      statistics.addSample(m_timedTestsIndex, 10 * errors[i]);
+      report.put(tests[i], statistics);
+    }
+
+    m_model.addTestReport(report);
+
+    final TimerTask task = m_timer.getLastScheduledTimerTask();
+
+    if (task != null) {
+      task.run();
+    }
+
+    m_time.advance(1000);
+  }
+
+  public void testNoDirectory() throws Exception {
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    m_export.shutdown();
+
+    assertNull(m_export.getFile());
+    assertEquals(0, getDirectory().list().length);
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testExport() throws Exception {
+    final File directory = new File(getDirectory(), "export");
+    m_properties.setResultsExportDirectory(directory);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1, m_test2 }));
+
+    final long start = m_time.getTimeInMilliseconds();
+    final int samples = ResultsExport.SAMPLES_PER_BLOCK + 10;
+
+    for (int i = 0; i < samples; ++i) {
+      sample(new Test[] { m_test1, m_test2 }, new long[] { i, 2 * i });
+    }
+
+    final File file = m_export.getFile();
+    assertEquals(directory, file.getParentFile());
+
+    // The first block has been written; the rest are buffered.
+    final ResultsExportReader partialReader = new ResultsExportReader(file);
+    assertEquals(ResultsExport.SAMPLES_PER_BLOCK,
+                 partialReader.next().getNumberOfSamples());
+    assertNull(partialReader.next());
+    partialReader.close();
+
+    m_export.shutdown();
+
+    final ResultsExportReader reader = new ResultsExportReader(file);
+
+    final ResultsExportReader.Block block1 = reader.next();
+    final ResultsExportReader.Block block2 = reader.next();
+    assertNull(reader.next());
+    reader.close();
+
+    assertEquals(10, block2.getNumberOfSamples());
+
+    final int errors = block1.getColumnNames().indexOf("errors");
+    final int count = block1.getColumnNames().indexOf("(count timedTests)");
+    final int sum = block1.getColumnNames().indexOf("(sum timedTests)");
+    final int peakTPS = block1.getColumnNames().indexOf("peakTPS");
+    assertFalse(block1.isDouble(errors));
+    assertTrue(block1.isDouble(peakTPS));
+
+    assertTrue(Arrays.equals(new int[] { 1, 2 }, block1.getTestNumbers()));
+    assertEquals(Arrays.asList(new String[] { "test 1", "test \"2\"" }),
+                 block1.getTestDescriptions());
+
+    final long[] times = block1.getTimes();
+    assertEquals(start, times[0]);
+    assertEquals(start + 1000, times[1]);
+    assertEquals(start + 70000, block2.getTimes()[9] + 1000);
+
+    final long[] errors1 = block1.getLongValues(1, errors);
+    final long[] errors2 = block2.getLongValues(2, errors);
+    final long[] totalErrors = block2.getLongValues(0, errors);
+    assertEquals(0, errors1[0]);
+    assertEquals(59, errors1[59]);
+    assertEquals(120, errors2[0]);
+    assertEquals(138, errors2[9]);
+    assertEquals(60 + 120, totalErrors[0]);
+
+    assertEquals(1, block1.getLongValues(2, count)[5]);
+    assertEquals(100, block1.getLongValues(2, sum)[5]);
+    assertEquals(100d, block1.getDoubleValues(2, sum)[5], 0.0001);
+
+    try {
+      block1.getLongValues(0, peakTPS);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testNewTestsStartNewBlock() throws Exception {
+    final File directory = new File(getDirectory(), "export");
+    m_properties.setResultsExportDirectory(directory);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    for (int i = 0; i < 3; ++i) {
+      sample(new Test[] { m_test1 }, new long[] { 1 });
+    }
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test2 }));
+
+    for (int i = 0; i < 2; ++i) {
+      sample(new Test[] { m_test1, m_test2 }, new long[] { 1, 5 });
+    }
+
+    m_export.shutdown();
+
+    assertEquals(1, directory.list().length);
+
+    final ResultsExportReader reader =
+      new ResultsExportReader(m_export.getFile());
+
+    final ResultsExportReader.Block block1 = reader.next();
+    assertEquals(3, block1.getNumberOfSamples());
+    assertEquals(1, block1.getTestNumbers().length);
+
+    final ResultsExportReader.Block block2 = reader.next();
+    assertEquals(2, block2.getNumberOfSamples());
+    assertEquals(2, block2.getTestNumbers().length);
+
+    final int errors = block2.getColumnNames().indexOf("errors");
+    assertEquals(5, block2.getLongValues(2, errors)[1]);
+    assertEquals(6, block2.getLongValues(0, errors)[1]);
+
+    assertNull(reader.next());
+    reader.close();
+  }
+
+  public void testBadDirectory() throws Exception {
+    final File file = new File(getDirectory(), "file");
+    assertTrue(file.createNewFile());
+    m_properties.setResultsExportDirectory(file);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+
+    m_errorHandlerStubFactory.assertSuccess("handleException",
+                                            ConsoleException.class);
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+
+    final File directory = new File(getDirectory(), "export");
+    m_properties.setResultsExportDirectory(directory);
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    m_export.shutdown();
+
+    final ResultsExportReader reader =
+      new ResultsExportReader(m_export.getFile());
+    assertEquals(1, reader.next().getNumberOfSamples());
+    reader.close();
+
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  private static final class MyTimeAuthority implements TimeAuthority {
+    private long m_time = 1000000;
+
+    public long getTimeInMilliseconds() {
+      return m_time;
+    }
+
+    public void advance(long millis) {
+      m_time += millis;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for {@link ResultsExportReader}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestResultsExportReader extends TestCase {
+
+  private static final long[] LONGS = {
+    0, 1, -1, 63, -64, 64, 1000000, Long.MAX_VALUE, Long.MIN_VALUE, 0, 7,
+  };
+
+  private static final double[] DOUBLES = {
+    0, 1.5, 1.5, -2, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE,
+    Double.MAX_VALUE, -0d, 3.14159, 0,
+  };
+
+  /**
+   * A file with a block of a long column and a double column for the
+   * totals and one test.
+   */
+  private byte[] createFile() throws IOException {
+    final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+    final DataOutputStream block =
+      new DataOutputStream(new DeflaterOutputStream(blockBytes));
+
+    block.writeInt(LONGS.length);
+    block.writeInt(2);
+    block.writeByte(0);
+    block.writeUTF("errors");
+    block.writeByte(1);
+    block.writeUTF("peakTPS");
+    block.writeInt(1);
+    block.writeInt(9);
+    block.writeUTF("nine");
+
+    final ResultsExport.ColumnEncoder times =
+      new ResultsExport.ColumnEncoder();
+    final ResultsExport.ColumnEncoder longs =
+      new ResultsExport.ColumnEncoder();
+    final ResultsExport.ColumnEncoder doubles =
+      new ResultsExport.ColumnEncoder();
+
+    for (int i = 0; i < LONGS.length; ++i) {
+      times.addLong(1000 * i);
+      longs.addLong(LONGS[i]);
+      doubles.addDouble(DOUBLES[i]);
+    }
+
+    times.write(block);
+
+    for (int series = 0; series < 2; ++series) {
+      longs.write(block);
+      doubles.write(block);
+    }
+
+    block.close();
+
+    final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream();
+    final DataOutputStream file = new DataOutputStream(fileBytes);
+
+    file.writeInt(ResultsExport.MAGIC);
+    file.writeInt(blockBytes.size());
+    blockBytes.writeTo(file);
+    file.close();
+
+    return fileBytes.toByteArray();
+  }
+
+  public void testRead() throws Exception {
+    final ResultsExportReader reader =
+      new ResultsExportReader(new ByteArrayInputStream(createFile()));
+
+    final ResultsExportReader.Block block = reader.next();
+    assertNull(reader.next());
+    reader.close();
+
+    assertEquals(LONGS.length, block.getNumberOfSamples());
+    assertEquals(Arrays.asList(new String[] { "errors", "peakTPS" }),
+                 block.getColumnNames());
+    assertFalse(block.isDouble(0));
+    assertTrue(block.isDouble(1));
+    assertTrue(Arrays.equals(new int[] { 9 }, block.getTestNumbers()));
+    assertEquals("nine", block.getTestDescriptions().get(0));
+
+    assertEquals(0, block.getTimes()[0]);
+    assertEquals(10000, block.getTimes()[10]);
+
+    for (int series = 0; series < 2; ++series) {
+      assertTrue(Arrays.equals(LONGS, block.getLongValues(series, 0)));
+      assertTrue(Arrays.equals(DOUBLES, block.getDoubleValues(series, 1)));
+      assertEquals(-64d, block.getDoubleValues(series, 0)[4], 0);
+    }
+  }
+
+  public void testTruncatedFile() throws Exception {
+    final byte[] bytes = createFile();
+
+    final ResultsExportReader reader =
+      new ResultsExportReader(
+        new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+
+    assertNull(reader.next());
+    reader.close();
+  }
+
+  public void testBadMagic() throws Exception {
+    try {
+      new ResultsExportReader(
+        new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+}
@@ -0,0 +1,203 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.console.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Unit tests for {@link SampleCapture}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestSampleCapture extends AbstractFileTestCase {
+
+  private final Resources m_resources = new StubResources<String>(
+    new HashMap<String, String>() {
+      private static final long serialVersionUID = 1L;
+
+      {
+        put("state.ignoring.label", "");
+        put("state.waiting.label", "");
+        put("state.stopped.label", "");
+        put("state.capturing.label", "");
+      }
+    }
+  );
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final Test m_test1 = new StubTest(1, "test 1");
+  private final Test m_test2 = new StubTest(2, "test 2");
+
+  private final TimeAuthority m_timeAuthority = new TimeAuthority() {
+      public long getTimeInMilliseconds() {
+        return 123456;
+      }
+    };
+
+  private StubTimer m_timer;
+  private SampleModelImplementation m_model;
+  private SampleCapture m_sampleCapture;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_timer = new StubTimer();
+
+    m_model = new SampleModelImplementation(
+      new ConsoleProperties(m_resources, new File(getDirectory(), "p")),
+      m_statisticsServices,
+      m_timer,
+      m_resources,
+      RandomStubFactory.create(ErrorHandler.class).getStub());
+
+    m_sampleCapture =
+      new SampleCapture(m_model, m_statisticsServices, m_timeAuthority);
+  }
+
+  protected void tearDown() throws Exception {
+    m_timer.cancel();
+    super.tearDown();
+  }
+
+  private void sample(Test test, long errors) {
+    final TestStatisticsMap report = new TestStatisticsMap();
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.setValue(m_errorsIndex, errors);
+    report.put(test, statistics);
+
+    m_model.addTestReport(report);
+    m_timer.getLastScheduledTimerTask().run();
+  }
+
+  public void testColumns() throws Exception {
+    final SampleCapture.Columns columns = m_sampleCapture.getColumns();
+
+    assertTrue(columns.indexOf("errors") >= 0);
+    assertFalse(columns.isDouble(columns.indexOf("errors")));
+    assertTrue(columns.isDouble(columns.indexOf("peakTPS")));
+    assertTrue(columns.indexOf("(sum timedTests)") >= 0);
+    assertTrue(columns.indexOf("(count timedTests)") >= 0);
+    assertTrue(columns.indexOf("(variance timedTests)") >= 0);
+    assertEquals(-1, columns.indexOf("timedTests"));
+    assertEquals(columns.getNames().size(), columns.size());
+
+    assertSame(columns, m_sampleCapture.getColumns());
+
+    final String name = "TestSampleCapture.registered";
+    m_statisticsServices.getStatisticsIndexMap().registerLongIndex(name);
+
+    final SampleCapture.Columns newColumns = m_sampleCapture.getColumns();
+    assertNotSame(columns, newColumns);
+    assertEquals(-1, columns.indexOf(name));
+    assertTrue(newColumns.indexOf(name) >= 0);
+  }
+
+  public void testSamples() throws Exception {
+    final RecordingListener listener1 = new RecordingListener();
+    final RecordingListener listener2 = new RecordingListener();
+    m_sampleCapture.addListener(listener1);
+    m_sampleCapture.addListener(listener2);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1, m_test2 }));
+    assertEquals(1, listener1.m_newTests);
+    assertEquals(1, listener2.m_newTests);
+
+    sample(m_test1, 3);
+    sample(m_test2, 5);
+
+    assertEquals(2, listener1.m_samples.size());
+    assertEquals(listener1.m_samples, listener2.m_samples);
+
+    final SampleCapture.Sample sample1 = listener1.m_samples.get(0);
+    final SampleCapture.Sample sample2 = listener1.m_samples.get(1);
+
+    assertEquals(123456, sample1.getTime());
+    assertEquals("[1, 2]", Arrays.toString(sample1.getTestNumbers()));
+    assertSame(sample1.getTestNumbers(), sample2.getTestNumbers());
+    assertSame(sample1.getColumns(), sample2.getColumns());
+    assertEquals(2, sample1.getModelTestIndex().getNumberOfTests());
+
+    // Totals, then each test. Tests with no statistics have zero values.
+    assertEquals("[3, 3, 0]", listener1.m_errors.get(0).toString());
+    assertEquals("[5, 0, 5]", listener1.m_errors.get(1).toString());
+
+    m_model.reset();
+    assertEquals(2, listener1.m_newTests);
+
+    sample(m_test1, 1);
+    final SampleCapture.Sample sample3 = listener1.m_samples.get(2);
+    assertNotSame(sample1.getTestNumbers(), sample3.getTestNumbers());
+  }
+
+  private final class RecordingListener implements SampleCapture.Listener {
+    private int m_newTests;
+    private final List<SampleCapture.Sample> m_samples =
+      new ArrayList<SampleCapture.Sample>();
+    private final List<List<Long>> m_errors = new ArrayList<List<Long>>();
+
+    public void newTests() {
+      ++m_newTests;
+    }
+
+    public void newSample(SampleCapture.Sample sample) {
+      m_samples.add(sample);
+
+      final int column = sample.getColumns().indexOf("errors");
+      final List<Long> errors = new ArrayList<Long>();
+
+      for (int series = 0; series <= sample.getTestNumbers().length;
+           ++series) {
+        errors.add(sample.getValue(series, column));
+      }
+
+      m_errors.add(errors);
+    }
+  }
+}
@@ -485,6 +485,162 @@ public class TestSampleModelImplementation extends AbstractFileTestCase {
     assertEquals(0, ((StatisticsSet)totalParameters3[1]).getValue(userLong0));
   }
 
+  public void testShardedReports() throws Exception {
+    final SampleModelImplementation sampleModelImplementation =
+      new SampleModelImplementation(m_consoleProperties,
+                                    m_statisticsServices,
+                                    m_timer,
+                                    m_resources,
+                                    m_errorHandler,
+                                    4);
+
+    final RandomStubFactory<SampleListener> totalSampleListenerStubFactory =
+      RandomStubFactory.create(SampleListener.class);
+    sampleModelImplementation.addTotalSampleListener(
+      totalSampleListenerStubFactory.getStub());
+
+    final int numberOfTests =
+      SampleModelImplementation.MINIMUM_SHARD_SIZE * 4 + 7;
+
+    final List<Test> tests = new ArrayList<Test>();
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      tests.add(new StubTest(i, "test " + i));
+    }
+
+    sampleModelImplementation.registerTests(tests);
+
+    final LongIndex userLong0 =
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("userLong0");
+
+    final TestStatisticsMap testReports = new TestStatisticsMap();
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(userLong0, i);
+      testReports.put(tests.get(i), statistics);
+    }
+
+    // An unknown test.
+    testReports.put(new StubTest(-1, "unknown"),
+                    m_statisticsServices.getStatisticsSetFactory().create());
+
+    final ModelTestIndex[] modelTestIndex = new ModelTestIndex[1];
+
+    sampleModelImplementation.addModelListener(new AbstractListener() {
+        public void newTests(Set<Test> newTests,
+                             ModelTestIndex newModelTestIndex) {
+          modelTestIndex[0] = newModelTestIndex;
+        }
+      });
+
+    sampleModelImplementation.registerTests(
+      Collections.<Test>singleton(new StubTest(numberOfTests, "new")));
+
+    sampleModelImplementation.addTestReport(testReports);
+    sampleModelImplementation.addTestReport(testReports);
+
+    m_errorHandlerStubFactory.assertSuccess("handleInformationMessage",
+                                            String.class);
+    m_errorHandlerStubFactory.assertSuccess("handleInformationMessage",
+                                            String.class);
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+
+    m_timer.getLastScheduledTimerTask().run();
+
+    final Object[] totalParameters =
+      totalSampleListenerStubFactory.assertSuccess(
+        "update", StatisticsSet.class, StatisticsSet.class).getParameters();
+
+    final long expected = (long) numberOfTests * (numberOfTests - 1);
+    assertEquals(expected,
+                 ((StatisticsSet)totalParameters[0]).getValue(userLong0));
+    assertEquals(expected,
+                 ((StatisticsSet)totalParameters[1]).getValue(userLong0));
+
+    assertEquals(numberOfTests + 1, modelTestIndex[0].getNumberOfTests());
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      assertEquals(2 * i,
+                   modelTestIndex[0].getCumulativeStatistics(i).getValue(
+                     userLong0));
+    }
+
+    assertEquals(0,
+                 modelTestIndex[0].getCumulativeStatistics(numberOfTests)
+                 .getValue(userLong0));
+  }
+
+  public void testWindowExpressions() throws Exception {
+    final SampleModelImplementation sampleModelImplementation =
+      new SampleModelImplementation(m_consoleProperties,
+                                    m_statisticsServices,
+                                    m_timer,
+                                    m_resources,
+                                    m_errorHandler);
+
+    final Test test = new StubTest(1, "test 1");
+    sampleModelImplementation.registerTests(Collections.singleton(test));
+
+    final ModelTestIndex[] modelTestIndex = new ModelTestIndex[1];
+
+    sampleModelImplementation.addModelListener(new AbstractListener() {
+        public void newTests(Set<Test> newTests,
+                             ModelTestIndex newModelTestIndex) {
+          modelTestIndex[0] = newModelTestIndex;
+        }
+      });
+
+    final StatisticExpression tps =
+      sampleModelImplementation.getWindowTPSExpression(
+        SampleModel.Window.SHORT);
+    final StatisticExpression meanTestTime =
+      sampleModelImplementation.getWindowMeanTestTimeExpression(
+        SampleModel.Window.LONG);
+
+    assertTrue(tps.isDouble());
+    assertNotSame(tps,
+                  sampleModelImplementation.getWindowTPSExpression(
+                    SampleModel.Window.LONG));
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.addSample(
+      m_statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+        "timedTests"),
+      20);
+
+    final TestStatisticsMap testReport = new TestStatisticsMap();
+    testReport.put(test, statistics);
+    sampleModelImplementation.addTestReport(testReport);
+    m_timer.getLastScheduledTimerTask().run();
+
+    final long interval = m_consoleProperties.getSampleInterval();
+
+    final StatisticsSet total =
+      sampleModelImplementation.getTotalCumulativeStatistics();
+    assertEquals(1000d / interval, tps.getDoubleValue(total), 0.0001);
+    assertEquals(20d, meanTestTime.getDoubleValue(total), 0.0001);
+
+    sampleModelImplementation.registerTests(
+      Collections.<Test>singleton(new StubTest(2, "test 2")));
+
+    final StatisticsSet test1 = modelTestIndex[0].getCumulativeStatistics(0);
+    assertEquals(1000d / interval, tps.getDoubleValue(test1), 0.0001);
+    assertEquals(20L, meanTestTime.getLongValue(test1));
+
+    final StatisticsSet test2 = modelTestIndex[0].getCumulativeStatistics(1);
+    assertTrue(Double.isNaN(meanTestTime.getDoubleValue(test2)));
+
+    // The window figures are not held in the statistics.
+    assertTrue(Double.isNaN(tps.getDoubleValue(test1.snapshot())));
+
+    sampleModelImplementation.reset();
+    assertTrue(Double.isNaN(tps.getDoubleValue(test1)));
+    assertTrue(Double.isNaN(tps.getDoubleValue(total)));
+  }
+
   public void testAbstractListener() {
     // An exercise in coverage.
     final AbstractListener listener = new AbstractListener() {};
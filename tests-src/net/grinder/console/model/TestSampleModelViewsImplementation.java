@@ -73,12 +73,22 @@ public class TestSampleModelViewsImplementation extends AbstractFileTestCase {
         m_model);
 
     m_modelStubFactory.assertSuccess("getPeakTPSExpression");
+    m_modelStubFactory.assertSuccess("getWindowTPSExpression",
+                                     SampleModel.Window.SHORT);
+    m_modelStubFactory.assertSuccess("getWindowMeanTestTimeExpression",
+                                     SampleModel.Window.SHORT);
+    m_modelStubFactory.assertSuccess("getWindowTPSExpression",
+                                     SampleModel.Window.LONG);
+    m_modelStubFactory.assertSuccess("getWindowMeanTestTimeExpression",
+                                     SampleModel.Window.LONG);
 
     final Set<ExpressionView> cumulativeViewSet =
       expressionViewsSet(sampleModelViews.getCumulativeStatisticsView());
 
     assertTrue(cumulativeViewSet.containsAll(standardSummaryExpressionViews));
     assertFalse(standardSummaryExpressionViews.containsAll(cumulativeViewSet));
+    assertEquals(standardSummaryExpressionViews.size() + 5,
+                 cumulativeViewSet.size());
 
     final Set<ExpressionView> intervalViewSet =
       expressionViewsSet(sampleModelViews.getIntervalStatisticsView());
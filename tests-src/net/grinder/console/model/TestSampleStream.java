@@ -0,0 +1,277 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimerTask;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+
+
+/**
+ * Unit tests for {@link SampleStream}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestSampleStream extends AbstractFileTestCase {
+
+  private final StubResources<String> m_resources =
+    new StubResources<String>(new HashMap<String, String>());
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesTestFactory.createTestInstance();
+
+  private final RandomStubFactory<SampleModelViews>
+    m_sampleModelViewsStubFactory =
+      RandomStubFactory.create(SampleModelViews.class);
+
+  private final RandomStubFactory<ErrorHandler> m_errorHandlerStubFactory =
+    RandomStubFactory.create(ErrorHandler.class);
+
+  private final StubTimer m_timer = new StubTimer();
+
+  private final List<Socket> m_sockets = new ArrayList<Socket>();
+
+  private ConsoleProperties m_properties;
+  private SampleModelImplementation m_sampleModel;
+  private SampleStream m_sampleStream;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_sampleModelViewsStubFactory.setResult("getIntervalStatisticsView",
+      m_statisticsServices.getSummaryStatisticsView());
+
+    m_properties =
+      new ConsoleProperties(m_resources, new File(getDirectory(), "p"));
+    m_properties.setConsoleHost("127.0.0.1");
+
+    m_sampleModel =
+      new SampleModelImplementation(m_properties,
+                                    m_statisticsServices,
+                                    m_timer,
+                                    m_resources,
+                                    m_errorHandlerStubFactory.getStub());
+
+    m_sampleStream =
+      new SampleStream(m_properties,
+                       m_sampleModel,
+                       m_sampleModelViewsStubFactory.getStub(),
+                       m_errorHandlerStubFactory.getStub());
+  }
+
+  protected void tearDown() throws Exception {
+    for (Socket socket : m_sockets) {
+      socket.close();
+    }
+
+    m_sampleStream.shutdown();
+
+    super.tearDown();
+  }
+
+  private static int getFreePort() throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0);
+    final int port = serverSocket.getLocalPort();
+    serverSocket.close();
+    return port;
+  }
+
+  private BufferedReader connect() throws Exception {
+    final int numberOfClients = m_sampleStream.getNumberOfClients();
+
+    final Socket socket = new Socket("127.0.0.1", m_sampleStream.getPort());
+    m_sockets.add(socket);
+
+    for (int i = 0;
+         i < 100 && m_sampleStream.getNumberOfClients() == numberOfClients;
+         ++i) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(numberOfClients + 1, m_sampleStream.getNumberOfClients());
+
+    return new BufferedReader(
+      new InputStreamReader(socket.getInputStream(), "UTF-8"));
+  }
+
+  private TimerTask startSampling(Test[] tests) throws Exception {
+    m_sampleModel.registerTests(Arrays.asList(tests));
+    m_sampleModel.start();
+    m_sampleModel.addTestReport(createReport(tests, 1));
+
+    return m_timer.getLastScheduledTimerTask();
+  }
+
+  private TestStatisticsMap createReport(Test[] tests, long errors) {
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+    final TestStatisticsMap result = new TestStatisticsMap();
+
+    for (Test test : tests) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(errorsIndex, errors);
+      result.put(test, statistics);
+    }
+
+    return result;
+  }
+
+  public void testDisabled() throws Exception {
+    assertEquals(0, m_properties.getSampleStreamPort());
+    assertEquals(-1, m_sampleStream.getPort());
+    assertEquals(0, m_sampleStream.getNumberOfClients());
+
+    startSampling(new Test[] { new StubTest(1, "one") }).run();
+
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testStream() throws Exception {
+    final int port = getFreePort();
+    m_properties.setSampleStreamPort(port);
+    assertEquals(port, m_sampleStream.getPort());
+
+    final BufferedReader reader1 = connect();
+    final BufferedReader reader2 = connect();
+
+    final Test[] tests = {
+      new StubTest(1, "one"),
+      new StubTest(2, "say \"two\"\n"),
+    };
+
+    final TimerTask sampleTask = startSampling(tests);
+    sampleTask.run();
+
+    final String line = reader1.readLine();
+    assertEquals(line, reader2.readLine());
+
+    assertTrue(line, line.startsWith("{\"time\":"));
+    assertTrue(line,
+      line.indexOf(",\"columns\":[\"Tests\",\"Errors\",") > 0);
+    assertTrue(line, line.indexOf(",\"totals\":[0,2,null,") > 0);
+    assertTrue(line,
+      line.indexOf(
+        "{\"test\":1,\"description\":\"one\",\"values\":[0,1,null,") > 0);
+    assertTrue(line,
+      line.indexOf(
+        "{\"test\":2,\"description\":\"say \\\"two\\\"\\n\",") > 0);
+    assertTrue(line, line.endsWith("]}"));
+
+    m_sampleModel.addTestReport(createReport(tests, 3));
+    sampleTask.run();
+
+    assertTrue(reader1.readLine().indexOf(",\"totals\":[0,6,null,") > 0);
+
+    // Disabling disconnects the clients.
+    m_properties.setSampleStreamPort(0);
+    assertEquals(-1, m_sampleStream.getPort());
+    assertEquals(0, m_sampleStream.getNumberOfClients());
+
+    sampleTask.run();
+
+    String remaining;
+
+    do {
+      remaining = reader2.readLine();
+    }
+    while (remaining != null && remaining.indexOf("\"totals\"") > 0);
+
+    assertNull(remaining);
+
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testSlowClient() throws Exception {
+    m_properties.setSampleStreamPort(getFreePort());
+
+    final BufferedReader reader = connect();
+
+    final Test[] tests = new Test[2000];
+
+    for (int i = 0; i < tests.length; ++i) {
+      tests[i] = new StubTest(i, "test " + i);
+    }
+
+    final TimerTask sampleTask = startSampling(tests);
+
+    // The client doesn't read, but the sampling thread isn't held up.
+    for (int i = 0; i < 200; ++i) {
+      sampleTask.run();
+    }
+
+    int samples = 0;
+    int skipped = 0;
+
+    while (samples + skipped < 200) {
+      final String line = reader.readLine();
+
+      if (line.startsWith("{\"skipped\":")) {
+        skipped +=
+          Integer.parseInt(line.substring(11, line.length() - 1));
+      }
+      else {
+        ++samples;
+      }
+    }
+
+    assertTrue(skipped > 0);
+    assertEquals(200, samples + skipped);
+  }
+
+  public void testBadPort() throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0);
+
+    try {
+      m_properties.setSampleStreamPort(serverSocket.getLocalPort());
+
+      assertEquals(-1, m_sampleStream.getPort());
+      m_errorHandlerStubFactory.assertSuccess("handleException",
+                                              Throwable.class);
+    }
+    finally {
+      serverSocket.close();
+    }
+  }
+}
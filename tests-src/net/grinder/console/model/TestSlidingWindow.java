@@ -0,0 +1,153 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import junit.framework.TestCase;
+
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+
+
+/**
+ * Unit tests for {@link SlidingWindow}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestSlidingWindow extends TestCase {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesTestFactory.createTestInstance();
+
+  private final StatisticsIndexMap m_indexMap =
+    m_statisticsServices.getStatisticsIndexMap();
+
+  private final StatisticsSetFactory m_statisticsSetFactory =
+    m_statisticsServices.getStatisticsSetFactory();
+
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex =
+    m_indexMap.getLongSampleIndex("timedTests");
+
+  private final StatisticsIndexMap.LongIndex m_untimedTestsIndex =
+    m_indexMap.getLongIndex("untimedTests");
+
+  private final StatisticsIndexMap.LongIndex m_periodIndex =
+    m_indexMap.getLongIndex("period");
+
+  private StatisticsSet interval(long period, long[] times, long untimed) {
+    final StatisticsSet result = m_statisticsSetFactory.create();
+
+    for (int i = 0; i < times.length; ++i) {
+      result.addSample(m_timedTestsIndex, times[i]);
+    }
+
+    result.setValue(m_untimedTestsIndex, untimed);
+    result.setValue(m_periodIndex, period);
+
+    return result;
+  }
+
+  private void assertWindow(SlidingWindow window,
+                            long tests,
+                            long testTime,
+                            long untimedTests,
+                            long period) {
+    assertEquals(1000d * (tests + untimedTests) / period,
+                 window.getTPS(),
+                 0.0001);
+    assertEquals((double) testTime / tests, window.getMeanTestTime(), 0.0001);
+  }
+
+  public void testAdd() throws Exception {
+    final SlidingWindow.Definition definition =
+      new SlidingWindow.Definition(m_indexMap, 3000);
+
+    final SlidingWindow window = new SlidingWindow(definition);
+
+    window.add(interval(1000, new long[] { 10, 20 }, 1));
+    assertWindow(window, 2, 30, 1, 1000);
+    assertEquals(1, window.size());
+
+    window.add(interval(1000, new long[] { 5 }, 0));
+    window.add(interval(1000, new long[0], 2));
+    assertWindow(window, 3, 35, 3, 3000);
+    assertEquals(3, window.size());
+
+    // The first interval is no longer needed.
+    window.add(interval(1000, new long[] { 7 }, 0));
+    assertWindow(window, 2, 12, 2, 3000);
+    assertEquals(3, window.size());
+
+    // A long interval displaces several short ones.
+    window.add(interval(2500, new long[] { 100 }, 0));
+    assertWindow(window, 2, 107, 0, 3500);
+    assertEquals(2, window.size());
+
+    // An interval longer than the window is kept on its own.
+    window.add(interval(4000, new long[] { 1, 2, 3 }, 4));
+    assertWindow(window, 3, 6, 4, 4000);
+    assertEquals(1, window.size());
+
+    window.zero();
+    assertEquals(0, window.size());
+    assertTrue(Double.isNaN(window.getTPS()));
+    assertTrue(Double.isNaN(window.getMeanTestTime()));
+
+    window.add(interval(500, new long[] { 9 }, 0));
+    assertWindow(window, 1, 9, 0, 500);
+  }
+
+  public void testGrowthAndDuration() throws Exception {
+    final SlidingWindow.Definition definition =
+      new SlidingWindow.Definition(m_indexMap, 100000);
+
+    final SlidingWindow window = new SlidingWindow(definition);
+
+    // Wrap the ring before it grows.
+    definition.setDuration(5000);
+
+    for (int i = 0; i < 20; ++i) {
+      window.add(interval(1000, new long[] { i }, 0));
+    }
+
+    assertEquals(5, window.size());
+    assertWindow(window, 5, 15 + 16 + 17 + 18 + 19, 0, 5000);
+
+    definition.setDuration(100000);
+
+    for (int i = 20; i < 100; ++i) {
+      window.add(interval(1000, new long[] { i }, 0));
+    }
+
+    assertEquals(85, window.size());
+    assertWindow(window, 85, (15 + 99) * 85 / 2, 0, 85000);
+
+    definition.setDuration(10000);
+    window.add(interval(1000, new long[] { 100 }, 0));
+
+    assertEquals(10, window.size());
+    assertWindow(window, 10, (91 + 100) * 10 / 2, 0, 10000);
+  }
+}
@@ -0,0 +1,403 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimerTask;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ConsoleException;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+import net.grinder.util.TimeAuthority;
+
+
+/**
+ * Unit tests for {@link TimeSeriesStore}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestTimeSeriesStore extends AbstractFileTestCase {
+
+  private final Resources m_resources = new StubResources<String>(
+    new HashMap<String, String>() {
+      private static final long serialVersionUID = 1L;
+
+      {
+        put("state.ignoring.label", "");
+        put("state.waiting.label", "");
+        put("state.stopped.label", "");
+        put("state.capturing.label", "");
+        put("sampleHistoryRetentionNegativeError.text", "");
+      }
+    }
+  );
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+      "timedTests");
+
+  private final RandomStubFactory<ErrorHandler> m_errorHandlerStubFactory =
+    RandomStubFactory.create(ErrorHandler.class);
+  private final ErrorHandler m_errorHandler =
+    m_errorHandlerStubFactory.getStub();
+
+  private final MyTimeAuthority m_time = new MyTimeAuthority();
+
+  private final Test m_test1 = new StubTest(1, "test 1");
+  private final Test m_test2 = new StubTest(2, "test 2");
+  private final Test m_test3 = new StubTest(3, "test 3");
+
+  private ConsoleProperties m_properties;
+  private StubTimer m_timer;
+  private SampleModelImplementation m_model;
+  private TimeSeriesStore m_store;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_timer = new StubTimer();
+    m_properties =
+      new ConsoleProperties(m_resources, new File(getDirectory(), "p"));
+    m_model = new SampleModelImplementation(m_properties,
+                                            m_statisticsServices,
+                                            m_timer,
+                                            m_resources,
+                                            m_errorHandler);
+
+    m_store = new TimeSeriesStore(m_properties,
+                                  new SampleCapture(m_model,
+                                                    m_statisticsServices,
+                                                    m_time),
+                                  m_errorHandler,
+                                  m_time);
+  }
+
+  protected void tearDown() throws Exception {
+    m_store.shutdown();
+    m_timer.cancel();
+    super.tearDown();
+  }
+
+  private void sample(Test[] tests, long[] errors) {
+    final TestStatisticsMap report = new TestStatisticsMap();
+
+    for (int i = 0; i < tests.length; ++i) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(m_errorsIndex, errors[i]);
+      statistics.addSample(m_timedTestsIndex, 10 * errors[i]);
+      report.put(tests[i], statistics);
+    }
+
+    m_model.addTestReport(report);
+
+    final TimerTask task = m_timer.getLastScheduledTimerTask();
+
+    if (task != null) {
+      task.run();
+    }
+
+    m_time.advance(1000);
+  }
+
+  private int numberOfErrorSamples(Test test) throws ConsoleException {
+    return m_store.query(test, "errors", 0, Long.MAX_VALUE, 10).size();
+  }
+
+  public void testStatisticNames() throws Exception {
+    assertTrue(m_store.getStatisticNames().contains("errors"));
+    assertTrue(m_store.getStatisticNames().contains("peakTPS"));
+    assertTrue(m_store.getStatisticNames().contains("(sum timedTests)"));
+    assertTrue(m_store.getStatisticNames().contains("(count timedTests)"));
+    assertTrue(
+      m_store.getStatisticNames().contains("(variance timedTests)"));
+    assertFalse(m_store.getStatisticNames().contains("timedTests"));
+  }
+
+  public void testNoDirectory() throws Exception {
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+
+    assertEquals(0, numberOfErrorSamples(m_test1));
+    assertEquals(0, getDirectory().list().length);
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testRecordAndQuery() throws Exception {
+    final File directory = new File(getDirectory(), "history");
+    m_properties.setSampleHistoryDirectory(directory);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1, m_test2 }));
+
+    final long start = m_time.getTimeInMilliseconds();
+
+    for (int i = 0; i < 10; ++i) {
+      sample(new Test[] { m_test1, m_test2 }, new long[] { i, 2 * i });
+    }
+
+    final TimeSeries errors1 =
+      m_store.query(m_test1, "errors", 0, Long.MAX_VALUE, 100);
+    assertEquals(10, errors1.size());
+    assertEquals(start, errors1.getTime(0));
+    assertEquals(0d, errors1.getValue(0), 0.0001);
+    assertEquals(1d, errors1.getValue(1), 0.0001);
+    assertEquals(9d, errors1.getValue(9), 0.0001);
+    assertEquals(1, errors1.getNumberOfSamples(9));
+
+    final TimeSeries count2 =
+      m_store.query(m_test2, "(count timedTests)", 0, Long.MAX_VALUE, 100);
+    assertEquals(10, count2.size());
+    assertEquals(1d, count2.getValue(0), 0.0001);
+    assertEquals(1d, count2.getValue(9), 0.0001);
+
+    final TimeSeries sum2 =
+      m_store.query(m_test2, "(sum timedTests)", 0, Long.MAX_VALUE, 100);
+    assertEquals(20d, sum2.getValue(1), 0.0001);
+    assertEquals(180d, sum2.getValue(9), 0.0001);
+
+    final TimeSeries totals =
+      m_store.query(null, "errors", 0, Long.MAX_VALUE, 100);
+    assertEquals(10, totals.size());
+    assertEquals(3d, totals.getValue(1), 0.0001);
+    assertEquals(27d, totals.getValue(9), 0.0001);
+
+    final TimeSeries range =
+      m_store.query(m_test1, "errors", start + 3000, start + 5000, 100);
+    assertEquals(3, range.size());
+    assertEquals(3d, range.getValue(0), 0.0001);
+    assertEquals(5d, range.getValue(2), 0.0001);
+
+    final TimeSeries downsampled =
+      m_store.query(m_test1, "errors", 0, Long.MAX_VALUE, 3);
+    assertEquals(3, downsampled.size());
+    assertEquals(1.5d, downsampled.getValue(0), 0.0001);
+    assertEquals(0d, downsampled.getMinimum(0), 0.0001);
+    assertEquals(3d, downsampled.getMaximum(0), 0.0001);
+    assertEquals(4, downsampled.getNumberOfSamples(0));
+    assertEquals(start, downsampled.getTime(0));
+    assertEquals(5d, downsampled.getValue(1), 0.0001);
+    assertEquals(8d, downsampled.getValue(2), 0.0001);
+    assertEquals(start + 7000, downsampled.getTime(2));
+
+    assertEquals(0, numberOfErrorSamples(m_test3));
+
+    try {
+      m_store.query(m_test1, "foo", 0, Long.MAX_VALUE, 10);
+      fail("Expected ConsoleException");
+    }
+    catch (ConsoleException e) {
+    }
+
+    try {
+      m_store.query(m_test1, "errors", 0, Long.MAX_VALUE, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    final File[] files = directory.listFiles();
+    assertEquals(1, files.length);
+
+    final DataInputStream in =
+      new DataInputStream(new FileInputStream(files[0]));
+
+    try {
+      assertEquals(0x47545331, in.readInt());
+      assertEquals(10, in.readInt());
+    }
+    finally {
+      in.close();
+    }
+
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testNewTestsStartNewSegment() throws Exception {
+    final File directory = new File(getDirectory(), "history");
+    m_properties.setSampleHistoryDirectory(directory);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    for (int i = 0; i < 3; ++i) {
+      sample(new Test[] { m_test1 }, new long[] { 1 });
+    }
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test3 }));
+
+    for (int i = 0; i < 3; ++i) {
+      sample(new Test[] { m_test1, m_test3 }, new long[] { 1, 5 });
+    }
+
+    assertEquals(2, directory.list().length);
+
+    assertEquals(6, numberOfErrorSamples(m_test1));
+    assertEquals(3, numberOfErrorSamples(m_test3));
+
+    final TimeSeries totals =
+      m_store.query(null, "errors", 0, Long.MAX_VALUE, 10);
+    assertEquals(6, totals.size());
+    assertEquals(1d, totals.getValue(0), 0.0001);
+    assertEquals(6d, totals.getValue(5), 0.0001);
+
+    // Reset seals the current segment. The model needs new tests before
+    // it will sample again.
+    m_model.reset();
+    m_store.shutdown();
+
+    assertEquals(3, numberOfErrorSamples(m_test3));
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testLaterRegistrationsAreRecorded() throws Exception {
+    final File directory = new File(getDirectory(), "history");
+    m_properties.setSampleHistoryDirectory(directory);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    for (int i = 0; i < 3; ++i) {
+      sample(new Test[] { m_test1 }, new long[] { 1 });
+    }
+
+    final String name = "TestTimeSeriesStore.registered";
+
+    final StatisticsIndexMap.LongIndex index =
+      m_statisticsServices.getStatisticsIndexMap().registerLongIndex(name);
+
+    assertTrue(m_store.getStatisticNames().contains(name));
+    assertEquals(0, m_store.query(m_test1, name, 0, Long.MAX_VALUE, 10)
+                 .size());
+
+    for (int i = 0; i < 2; ++i) {
+      final TestStatisticsMap report = new TestStatisticsMap();
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(m_errorsIndex, 1);
+      statistics.setValue(index, 7);
+      report.put(m_test1, statistics);
+      m_model.addTestReport(report);
+      m_timer.getLastScheduledTimerTask().run();
+      m_time.advance(1000);
+    }
+
+    // The new column starts a new segment.
+    assertEquals(2, directory.list().length);
+
+    final TimeSeries registered =
+      m_store.query(m_test1, name, 0, Long.MAX_VALUE, 10);
+    assertEquals(2, registered.size());
+    assertEquals(7d, registered.getValue(1), 0.0001);
+
+    assertEquals(5, numberOfErrorSamples(m_test1));
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  public void testRetention() throws Exception {
+    final File directory = new File(getDirectory(), "history");
+    m_properties.setSampleHistoryDirectory(directory);
+    m_properties.setSampleHistoryRetention(1);
+
+    try {
+      m_properties.setSampleHistoryRetention(-1);
+      fail("Expected ConsoleException");
+    }
+    catch (ConsoleException e) {
+    }
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    for (int i = 0; i < 3; ++i) {
+      sample(new Test[] { m_test1 }, new long[] { 1 });
+    }
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test2 }));
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    assertEquals(2, directory.list().length);
+
+    // Sealing a segment discards those that have expired, including the
+    // segment just sealed.
+    m_time.advance(60000);
+    m_model.registerTests(Arrays.asList(new Test[] { m_test3 }));
+    assertEquals(0, directory.list().length);
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    assertEquals(1, directory.list().length);
+    assertEquals(1, numberOfErrorSamples(m_test1));
+  }
+
+  public void testBadDirectory() throws Exception {
+    final File file = new File(getDirectory(), "file");
+    assertTrue(file.createNewFile());
+    m_properties.setSampleHistoryDirectory(file);
+
+    m_model.registerTests(Arrays.asList(new Test[] { m_test1 }));
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+
+    m_errorHandlerStubFactory.assertSuccess("handleException",
+                                            ConsoleException.class);
+
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+
+    final File directory = new File(getDirectory(), "history");
+    m_properties.setSampleHistoryDirectory(directory);
+    sample(new Test[] { m_test1 }, new long[] { 1 });
+
+    assertEquals(1, numberOfErrorSamples(m_test1));
+    m_errorHandlerStubFactory.assertNoMoreCalls();
+  }
+
+  private static final class MyTimeAuthority implements TimeAuthority {
+    private long m_time = 1000000;
+
+    public long getTimeInMilliseconds() {
+      return m_time;
+    }
+
+    public void advance(long millis) {
+      m_time += millis;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.swingui;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.File;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimerTask;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.console.common.ErrorHandler;
+import net.grinder.console.common.Resources;
+import net.grinder.console.common.StubResources;
+import net.grinder.console.model.ConsoleProperties;
+import net.grinder.console.model.SampleModelImplementation;
+import net.grinder.console.model.SampleModelViews;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.testutility.StubTimer;
+
+
+/**
+ * Measures the time the Swing thread spends handling each console sample for
+ * a {@link SampleStatisticsTableModel} with many tests.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.console.swingui.StatisticsTableModelBenchmark
+ *   [tests] [percentage of tests reporting per sample]
+ * </pre>
+ *
+ * <p>The table is simulated by a listener that reads every cell of the rows
+ * it is told have changed, as if every row were visible. The time the
+ * sampling thread spends formatting values is reported separately.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class StatisticsTableModelBenchmark {
+
+  private static final int SAMPLES = 50;
+
+  public static void main(String[] args) throws Exception {
+    final int numberOfTests =
+      args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    final int percentageReporting =
+      args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    final TimingEventQueue eventQueue = new TimingEventQueue();
+    Toolkit.getDefaultToolkit().getSystemEventQueue().push(eventQueue);
+
+    for (int i = 0; i < 3; ++i) {
+      System.out.println("Run " + i + ", " + numberOfTests + " tests, " +
+                         percentageReporting + "% reporting per sample");
+      benchmark(numberOfTests, percentageReporting, eventQueue);
+    }
+
+    System.exit(0);
+  }
+
+  private static void benchmark(int numberOfTests,
+                                int percentageReporting,
+                                TimingEventQueue eventQueue)
+    throws Exception {
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final List<Test> tests = new ArrayList<Test>(numberOfTests);
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      tests.add(new StubTest(i, "test " + i));
+    }
+
+    final Resources resources =
+      new StubResources<String>(new HashMap<String, String>());
+
+    final File file = File.createTempFile("benchmark", ".properties");
+    final ConsoleProperties properties =
+      new ConsoleProperties(resources, file);
+
+    final StubTimer timer = new StubTimer();
+
+    final ErrorHandler errorHandler =
+      RandomStubFactory.create(ErrorHandler.class).getStub();
+
+    final SampleModelImplementation model =
+      new SampleModelImplementation(properties,
+                                    statisticsServices,
+                                    timer,
+                                    resources,
+                                    errorHandler);
+
+    final RandomStubFactory<SampleModelViews> sampleModelViewsStubFactory =
+      RandomStubFactory.create(SampleModelViews.class);
+    sampleModelViewsStubFactory.setResult("getIntervalStatisticsView",
+      statisticsServices.getSummaryStatisticsView());
+    sampleModelViewsStubFactory.setResult("getTestStatisticsQueries",
+      statisticsServices.getTestStatisticsQueries());
+    sampleModelViewsStubFactory.setResult("getNumberFormat",
+      new DecimalFormat("0.0"));
+
+    final SampleStatisticsTableModel tableModel =
+      new SampleStatisticsTableModel(
+        model,
+        sampleModelViewsStubFactory.getStub(),
+        resources,
+        new SwingDispatcherFactoryImplementation(errorHandler));
+
+    final long[] cellsRead = { 0 };
+
+    tableModel.addTableModelListener(new TableModelListener() {
+        public void tableChanged(TableModelEvent e) {
+          final int lastRow =
+            Math.min(e.getLastRow(), tableModel.getRowCount() - 1);
+
+          for (int row = e.getFirstRow(); row <= lastRow; ++row) {
+            for (int c = 0; c < tableModel.getColumnCount(); ++c) {
+              tableModel.getValueAt(row, c);
+              ++cellsRead[0];
+            }
+          }
+        }
+      });
+
+    model.registerTests(tests);
+    model.start();
+
+    final int reportingTests =
+      Math.max(1, numberOfTests * percentageReporting / 100);
+
+    model.addTestReport(
+      createReport(statisticsServices, tests, 0, reportingTests));
+
+    final TimerTask sampleTask = timer.getLastScheduledTimerTask();
+    sampleTask.run();
+    waitForSwingThread();
+
+    eventQueue.reset();
+    cellsRead[0] = 0;
+    long samplingNanos = 0;
+
+    for (int s = 0; s < SAMPLES; ++s) {
+      model.addTestReport(
+        createReport(statisticsServices,
+                     tests,
+                     s * reportingTests,
+                     reportingTests));
+
+      final long start = System.nanoTime();
+      sampleTask.run();
+      samplingNanos += System.nanoTime() - start;
+
+      waitForSwingThread();
+    }
+
+    System.out.println("  Swing thread: " +
+                       eventQueue.getNanos() / SAMPLES / 1000 +
+                       " us/sample, " +
+                       cellsRead[0] / SAMPLES + " cells read/sample");
+    System.out.println("  Sampling thread: " +
+                       samplingNanos / SAMPLES / 1000 + " us/sample");
+
+    file.delete();
+  }
+
+  private static TestStatisticsMap createReport(
+    StatisticsServices statisticsServices,
+    List<Test> tests,
+    int first,
+    int number) {
+
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+        "timedTests");
+
+    final TestStatisticsMap result = new TestStatisticsMap();
+
+    for (int i = 0; i < number; ++i) {
+      final StatisticsSet statistics =
+        statisticsServices.getStatisticsSetFactory().create();
+      statistics.addSample(timedTestsIndex, 10 + i % 100);
+
+      result.put(tests.get((first + i) % tests.size()), statistics);
+    }
+
+    return result;
+  }
+
+  private static void waitForSwingThread() throws Exception {
+    SwingUtilities.invokeAndWait(new Runnable() {
+        public void run() { }
+      });
+  }
+
+  /**
+   * Accumulates the time spent dispatching events.
+   */
+  private static final class TimingEventQueue extends EventQueue {
+    private volatile long m_nanos;
+
+    protected void dispatchEvent(AWTEvent event) {
+      final long start = System.nanoTime();
+
+      try {
+        super.dispatchEvent(event);
+      }
+      finally {
+        m_nanos += System.nanoTime() - start;
+      }
+    }
+
+    public void reset() {
+      m_nanos = 0;
+    }
+
+    public long getNanos() {
+      return m_nanos;
+    }
+  }
+}
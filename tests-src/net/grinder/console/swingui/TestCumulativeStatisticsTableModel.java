@@ -270,4 +270,55 @@ public class TestCumulativeStatisticsTableModel extends AbstractFileTestCase {
     assertNull(model.getForeground(0, 2));
     assertEquals(Color.RED, model.getForeground(2, 3));
   }
+
+  public void testCachedValuesAfterZeroAndFormatChange() throws Exception {
+    final StubTimer timer = new StubTimer();
+
+    final SampleModelImplementation sampleModelImplementation =
+      new SampleModelImplementation(new ConsoleProperties(m_resources, m_file),
+                                    m_statisticsServices,
+                                    timer,
+                                    m_resources,
+                                    null);
+
+    final CumulativeStatisticsTableModel model =
+      new CumulativeStatisticsTableModel(sampleModelImplementation,
+                                         m_sampleModelViews,
+                                         m_resources,
+                                         m_swingDispatcherFactory);
+
+    final Test test = new StubTest(1, "test 1");
+    sampleModelImplementation.registerTests(Arrays.asList(test));
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.addSample(
+      m_statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+        "timedTests"), 5);
+    statistics.addValue(
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors"), 1);
+
+    final TestStatisticsMap testStatisticsMap = new TestStatisticsMap();
+    testStatisticsMap.put(test, statistics);
+    sampleModelImplementation.addTestReport(testStatisticsMap);
+
+    // Fill the cell cache.
+    timer.getLastScheduledTimerTask().run();
+
+    assertEquals("1", model.getValueAt(0, 3));
+    assertEquals("5.0", model.getValueAt(0, 4));
+
+    m_sampleModelViewsStubFactory.setResult("getNumberFormat",
+                                            new DecimalFormat("0.00"));
+
+    assertEquals("5.00", model.getValueAt(0, 4));
+
+    // Zeroes the statistics.
+    sampleModelImplementation.start();
+
+    assertEquals("0", model.getValueAt(0, 3));
+    assertEquals("", model.getValueAt(0, 4));
+
+    timer.cancel();
+  }
 }
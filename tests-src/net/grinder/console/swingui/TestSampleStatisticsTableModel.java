@@ -23,11 +23,19 @@ package net.grinder.console.swingui;
 
 import java.io.File;
 import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Timer;
 
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
 import net.grinder.common.StubTest;
 import net.grinder.common.Test;
 import net.grinder.console.common.StubResources;
@@ -37,7 +45,10 @@ import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelImplementation;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
 import net.grinder.statistics.TestStatisticsQueries;
 import net.grinder.testutility.AbstractFileTestCase;
 import net.grinder.testutility.DelegatingStubFactory;
@@ -218,4 +229,167 @@ public class TestSampleStatisticsTableModel extends AbstractFileTestCase {
     assertEquals("0", model.getValueAt(0, 3));
     assertNull(model.getForeground(0, 3));
   }
+
+  public void testIncrementalUpdates() throws Exception {
+    final StubTimer timer = new StubTimer();
+
+    final SampleModelImplementation sampleModelImplementation =
+      new SampleModelImplementation(new ConsoleProperties(m_resources, m_file),
+                                    m_statisticsServices,
+                                    timer,
+                                    m_resources,
+                                    null);
+
+    final DeferringSwingDispatcherFactory swingDispatcherFactory =
+      new DeferringSwingDispatcherFactory();
+
+    final SampleStatisticsTableModel model =
+      new SampleStatisticsTableModel(sampleModelImplementation,
+                                     m_sampleModelViews,
+                                     m_resources,
+                                     swingDispatcherFactory);
+
+    final Test[] tests = {
+        new StubTest(1, "test 1"),
+        new StubTest(2, "test 2"),
+        new StubTest(3, "test 3"),
+    };
+
+    sampleModelImplementation.registerTests(Arrays.asList(tests));
+    swingDispatcherFactory.dispatch();
+    assertEquals(3, model.getRowCount());
+
+    final List<TableModelEvent> events = new ArrayList<TableModelEvent>();
+
+    model.addTableModelListener(new TableModelListener() {
+        public void tableChanged(TableModelEvent e) {
+          events.add(e);
+        }
+      });
+
+    sampleModelImplementation.start();
+    sampleModelImplementation.addTestReport(createReport(tests, 0, 2, 0));
+    swingDispatcherFactory.dispatch();
+
+    // State changes may zero the statistics, so every row is redrawn. Both
+    // changes are seen as one, since the model is already capturing when
+    // the Swing thread is told about the first.
+    assertEquals(1, events.size());
+    assertRowsUpdated(0, 2, events.get(0));
+    events.clear();
+
+    final Runnable sampleTask = timer.getLastScheduledTimerTask();
+    sampleTask.run();
+    swingDispatcherFactory.dispatch();
+
+    assertEquals(1, events.size());
+    assertRowsUpdated(0, 2, events.get(0));
+    assertEquals("0", model.getValueAt(0, 3));
+    assertEquals("2", model.getValueAt(1, 3));
+
+    // Only rows with new values are updated.
+    events.clear();
+    sampleModelImplementation.addTestReport(createReport(tests, 1, 2, 0));
+    sampleTask.run();
+    swingDispatcherFactory.dispatch();
+
+    assertEquals(1, events.size());
+    assertRowsUpdated(0, 0, events.get(0));
+    assertEquals("1", model.getValueAt(0, 3));
+
+    // Notifications that arrive before the Swing thread catches up are
+    // coalesced.
+    events.clear();
+    sampleModelImplementation.addTestReport(createReport(tests, 1, 2, 3));
+    sampleTask.run();
+    sampleModelImplementation.addTestReport(createReport(tests, 5, 2, 3));
+    sampleTask.run();
+    assertEquals("1", model.getValueAt(0, 3));
+    assertEquals("0", model.getValueAt(2, 3));
+
+    swingDispatcherFactory.dispatch();
+
+    assertEquals(2, events.size());
+    assertRowsUpdated(0, 0, events.get(0));
+    assertRowsUpdated(2, 2, events.get(1));
+    assertEquals("5", model.getValueAt(0, 3));
+    assertEquals("2", model.getValueAt(1, 3));
+    assertEquals("3", model.getValueAt(2, 3));
+
+    sampleTask.run();
+    swingDispatcherFactory.dispatch();
+    events.clear();
+
+    // Nothing changed.
+    sampleTask.run();
+    swingDispatcherFactory.dispatch();
+    assertEquals(0, events.size());
+  }
+
+  private TestStatisticsMap createReport(Test[] tests, long... errors) {
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+    final TestStatisticsMap result = new TestStatisticsMap();
+
+    for (int i = 0; i < tests.length; ++i) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(errorsIndex, errors[i]);
+      result.put(tests[i], statistics);
+    }
+
+    return result;
+  }
+
+  private static void assertRowsUpdated(int firstRow,
+                                        int lastRow,
+                                        TableModelEvent event) {
+    assertEquals(TableModelEvent.UPDATE, event.getType());
+    assertEquals(firstRow, event.getFirstRow());
+    assertEquals(lastRow, event.getLastRow());
+  }
+
+  /**
+   * Queues dispatched calls until {@link #dispatch} is called, as if the
+   * Swing thread were busy.
+   */
+  private static final class DeferringSwingDispatcherFactory
+    implements SwingDispatcherFactory {
+
+    private final List<Runnable> m_queue = new ArrayList<Runnable>();
+
+    public Object create(final Object delegate) {
+      return Proxy.newProxyInstance(
+        getClass().getClassLoader(),
+        new Class<?>[] {
+          SampleModel.Listener.class, SampleModelViews.Listener.class, },
+        new InvocationHandler() {
+          public Object invoke(Object proxy,
+                               final Method method,
+                               final Object[] args) {
+            m_queue.add(new Runnable() {
+                public void run() {
+                  try {
+                    method.invoke(delegate, args);
+                  }
+                  catch (Exception e) {
+                    throw new AssertionError(e);
+                  }
+                }
+              });
+
+            return null;
+          }
+        });
+    }
+
+    public void dispatch() {
+      for (Runnable runnable : m_queue) {
+        runnable.run();
+      }
+
+      m_queue.clear();
+    }
+  }
 }
@@ -0,0 +1,203 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.agent;
+
+import java.util.Timer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Connector;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+import net.grinder.communication.SimpleMessage;
+import net.grinder.engine.common.ConnectorFactory;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+
+
+/**
+ * Unit tests for {@link ReportAggregator}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestReportAggregator extends TestCase {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final Test m_test1 = new StubTest(1, "test 1");
+  private final Test m_test2 = new StubTest(2, "test 2");
+
+  private final QueueSender m_consoleSender = new QueueSender();
+  private final Timer m_timer = new Timer(true);
+
+  protected void tearDown() throws Exception {
+    m_timer.cancel();
+  }
+
+  private ReportStatisticsMessage createReport(Test test, long errors) {
+    final TestStatisticsMap statisticsMap = new TestStatisticsMap();
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.setValue(m_errorsIndex, errors);
+    statisticsMap.put(test, statistics);
+    return new ReportStatisticsMessage(statisticsMap);
+  }
+
+  private long errors(TestStatisticsMap statisticsMap, final Test test) {
+    final long[] result = { -1 };
+
+    statisticsMap.new ForEach() {
+      protected void next(Test t, StatisticsSet statistics) {
+        if (t.equals(test)) {
+          result[0] = statistics.getValue(m_errorsIndex);
+        }
+      }
+    }
+    .iterate();
+
+    return result[0];
+  }
+
+  public void testAggregation() throws Exception {
+    final ReportAggregator aggregator =
+      new ReportAggregator(m_consoleSender, m_timer, 1000000);
+
+    final GrinderProperties properties = new GrinderProperties();
+    aggregator.setWorkerProperties(properties);
+    assertEquals(aggregator.getPort(),
+                 properties.getInt(GrinderProperties.CONSOLE_PORT, 0));
+
+    final Connector connector =
+      new ConnectorFactory(ConnectionType.WORKER).create(properties);
+
+    final Sender worker1 = ClientSender.connect(connector);
+    final Sender worker2 = ClientSender.connect(connector);
+
+    // Nothing to forward.
+    aggregator.flush();
+    assertNull(m_consoleSender.m_messages.poll());
+
+    worker1.send(createReport(m_test1, 1));
+    worker2.send(createReport(m_test1, 2));
+    worker2.send(createReport(m_test2, 5));
+
+    // Other messages are forwarded immediately and in order, so once we
+    // have received these, the reports have been merged.
+    final SimpleMessage message1 = new SimpleMessage();
+    final SimpleMessage message2 = new SimpleMessage();
+    worker1.send(message1);
+    worker2.send(message2);
+
+    final Message received1 = m_consoleSender.take();
+    final Message received2 = m_consoleSender.take();
+    assertTrue(received1.equals(message1) && received2.equals(message2) ||
+               received1.equals(message2) && received2.equals(message1));
+
+    aggregator.flush();
+
+    final TestStatisticsMap merged =
+      ((ReportStatisticsMessage) m_consoleSender.take())
+      .getStatisticsDelta();
+
+    assertEquals(2, merged.size());
+    assertEquals(3, errors(merged, m_test1));
+    assertEquals(5, errors(merged, m_test2));
+
+    aggregator.flush();
+    assertNull(m_consoleSender.m_messages.poll());
+
+    worker1.send(createReport(m_test2, 7));
+    worker1.send(message1);
+    m_consoleSender.take();
+
+    // Shut down forwards outstanding statistics.
+    aggregator.shutdown();
+
+    final TestStatisticsMap merged2 =
+      ((ReportStatisticsMessage) m_consoleSender.take())
+      .getStatisticsDelta();
+
+    assertEquals(1, merged2.size());
+    assertEquals(7, errors(merged2, m_test2));
+
+    worker1.shutdown();
+    worker2.shutdown();
+  }
+
+  public void testPeriodicFlush() throws Exception {
+    final ReportAggregator aggregator =
+      new ReportAggregator(m_consoleSender, m_timer, 10);
+
+    final GrinderProperties properties = new GrinderProperties();
+    aggregator.setWorkerProperties(properties);
+
+    final Sender worker =
+      ClientSender.connect(
+        new ConnectorFactory(ConnectionType.WORKER).create(properties));
+
+    worker.send(createReport(m_test1, 1));
+
+    final TestStatisticsMap merged =
+      ((ReportStatisticsMessage) m_consoleSender.take())
+      .getStatisticsDelta();
+
+    assertEquals(1, errors(merged, m_test1));
+
+    worker.shutdown();
+    aggregator.shutdown();
+  }
+
+  private static final class QueueSender implements Sender {
+    private final BlockingQueue<Message> m_messages =
+      new LinkedBlockingQueue<Message>();
+
+    public void send(Message message) {
+      m_messages.add(message);
+    }
+
+    public Message take() throws InterruptedException {
+      final Message result = m_messages.poll(10, TimeUnit.SECONDS);
+      assertNotNull(result);
+      return result;
+    }
+
+    public void shutdown() {
+    }
+  }
+}
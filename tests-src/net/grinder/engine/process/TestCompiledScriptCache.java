@@ -0,0 +1,109 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.testutility.AbstractFileTestCase;
+
+
+/**
+ * Unit tests for {@link CompiledScriptCache}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestCompiledScriptCache extends AbstractFileTestCase {
+
+  public void testCreate() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+    assertNull(CompiledScriptCache.create(properties));
+
+    properties.setAssociatedFile(new File(getDirectory(), "grinder.properties"));
+    properties.setProperty(CompiledScriptCache.DIRECTORY_PROPERTY, "cache");
+
+    assertEquals(new File(getDirectory(), "cache"),
+                 CompiledScriptCache.create(properties).getDirectory());
+  }
+
+  public void testKey() throws Exception {
+    final CompiledScriptCache cache = new CompiledScriptCache(getDirectory());
+
+    final File script1 = new File(getDirectory(), "script1");
+    final File script2 = new File(getDirectory(), "script2");
+    write(script1, "hello");
+    write(script2, "hello");
+
+    final String key = cache.key("engine", script1);
+    assertEquals(40, key.length());
+    assertEquals(key, cache.key("engine", script1));
+    assertFalse(key.equals(cache.key("engine 2", script1)));
+    assertFalse(key.equals(cache.key("engine", script2)));
+
+    write(script1, "world");
+    assertFalse(key.equals(cache.key("engine", script1)));
+
+    try {
+      cache.key("engine", new File(getDirectory(), "missing"));
+      fail("Expected IOException");
+    }
+    catch (java.io.IOException e) {
+    }
+  }
+
+  public void testGetPutRemove() throws Exception {
+    final File directory = new File(getDirectory(), "a/b");
+    final CompiledScriptCache cache = new CompiledScriptCache(directory);
+
+    assertNull(cache.get("k"));
+    cache.remove("k");
+
+    final byte[] bytes = { 1, 2, 3 };
+    assertTrue(cache.put("k", bytes));
+    assertTrue(Arrays.equals(bytes, cache.get("k")));
+
+    // Only the entry, no temporary files.
+    assertEquals(1, directory.listFiles().length);
+
+    final byte[] bytes2 = { 4, 5 };
+    assertTrue(cache.put("k", bytes2));
+    assertEquals(1, directory.listFiles().length);
+
+    cache.remove("k");
+    assertNull(cache.get("k"));
+
+    // Cache directory can't be created.
+    final File file = new File(getDirectory(), "file");
+    write(file, "");
+    assertFalse(new CompiledScriptCache(file).put("k", bytes));
+  }
+
+  private static void write(File file, String text) throws Exception {
+    final Writer writer = new FileWriter(file);
+    writer.write(text);
+    writer.close();
+  }
+}
@@ -0,0 +1,285 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+package net.grinder.engine.process;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
+import net.grinder.engine.process.TestThreadContextImplementation.ProcessContextStubFactory;
+import net.grinder.script.InvalidContextException;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.StandardTimeAuthority;
+
+
+/**
+ * Unit tests for {@link ParallelInvoker}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestParallelInvoker extends TestCase {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap()
+    .getLongSampleIndex("timedTests");
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final StubThreadContextLocator m_threadContextLocator =
+    new StubThreadContextLocator();
+
+  private final StringWriter m_dataWriter = new StringWriter();
+
+  private final Test m_pageTest = new StubTest(1, "page");
+  private final Test m_resourceTest = new StubTest(2, "resource");
+
+  private TestRegistryImplementation m_testRegistry;
+  private ThreadContext m_threadContext;
+  private ParallelInvoker m_parallelInvoker;
+
+  protected void setUp() throws Exception {
+    m_testRegistry =
+      new TestRegistryImplementation(
+        m_threadContextLocator,
+        m_statisticsServices.getStatisticsSetFactory(),
+        new TestStatisticsHelperImplementation(
+          m_statisticsServices.getStatisticsIndexMap()),
+        new StandardTimeAuthority());
+
+    m_testRegistry.setInstrumenter(
+      RandomStubFactory.create(Instrumenter.class).getStub());
+
+    final ProcessContextStubFactory processContextStubFactory =
+      new ProcessContextStubFactory();
+    processContextStubFactory.setResult("getStatisticsServices",
+                                        m_statisticsServices);
+
+    m_threadContext =
+      new ThreadContextImplementation(
+        processContextStubFactory.getStub(),
+        RandomStubFactory.create(ThreadLogger.class).getStub(),
+        null,
+        new PrintWriter(m_dataWriter, true));
+
+    m_threadContextLocator.set(m_threadContext);
+
+    m_parallelInvoker =
+      new ParallelInvoker(m_threadContextLocator, m_testRegistry, 4);
+  }
+
+  protected void tearDown() throws Exception {
+    m_parallelInvoker.shutdown();
+  }
+
+  public void testInvokeInParallel() throws Exception {
+    final Recorder resourceRecorder =
+      (Recorder) m_testRegistry.register(m_resourceTest);
+
+    final CountDownLatch allStarted = new CountDownLatch(4);
+    final Set<Thread> threads =
+      Collections.synchronizedSet(new HashSet<Thread>());
+
+    final Runnable task = new Runnable() {
+      public void run() {
+        final ThreadContext threadContext = m_threadContextLocator.get();
+        assertNotSame(m_threadContext, threadContext);
+        assertSame(m_threadContext, threadContext.getWorkerContext());
+
+        threads.add(Thread.currentThread());
+
+        try {
+          resourceRecorder.start();
+
+          // Only completes if all four tasks run at the same time.
+          allStarted.countDown();
+          assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+
+          resourceRecorder.end(true);
+        }
+        catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+
+    m_parallelInvoker.invoke(m_pageTest,
+                             new Object[] { task, task, task, task, });
+
+    assertEquals(4, threads.size());
+    assertFalse(threads.contains(Thread.currentThread()));
+
+    final StatisticsSet pageStatistics = getStatistics(m_pageTest);
+    assertEquals(1, pageStatistics.getCount(m_timedTestsIndex));
+    assertTrue(pageStatistics.isComposite());
+
+    final StatisticsSet resourceStatistics = getStatistics(m_resourceTest);
+    assertEquals(4, resourceStatistics.getCount(m_timedTestsIndex));
+    assertFalse(resourceStatistics.isComposite());
+
+    // Every test is written to the worker thread's data log.
+    assertEquals(5, m_dataWriter.toString().split("\n").length);
+
+    assertSame(m_threadContext, m_threadContextLocator.get());
+  }
+
+  public void testFailures() throws Exception {
+    final RuntimeException runtimeException = new RuntimeException();
+
+    final Object[] tasks = {
+      new Runnable() { public void run() { } },
+      new Runnable() { public void run() { throw runtimeException; } },
+    };
+
+    try {
+      m_parallelInvoker.invoke(m_pageTest, tasks);
+      fail("Expected RuntimeException");
+    }
+    catch (RuntimeException e) {
+      assertSame(runtimeException, e);
+    }
+
+    final Exception exception = new Exception();
+
+    try {
+      m_parallelInvoker.invoke(
+        m_pageTest,
+        new Object[] {
+          new Callable<Object>() {
+            public Object call() throws Exception { throw exception; }
+          },
+        });
+      fail("Expected EngineException");
+    }
+    catch (EngineException e) {
+      assertSame(exception, e.getCause());
+    }
+
+    final StatisticsSet pageStatistics = getStatistics(m_pageTest);
+    assertEquals(0, pageStatistics.getCount(m_timedTestsIndex));
+    assertEquals(2, pageStatistics.getValue(m_errorsIndex));
+  }
+
+  public void testScriptTasks() throws Exception {
+    final RandomStubFactory<WorkerRunnable> workerRunnableStubFactory =
+      RandomStubFactory.create(WorkerRunnable.class);
+
+    final RandomStubFactory<ScriptEngine> scriptEngineStubFactory =
+      RandomStubFactory.create(ScriptEngine.class);
+    scriptEngineStubFactory.setResult("createWorkerRunnable",
+                                      workerRunnableStubFactory.getStub());
+
+    final Object scriptTask = new Object();
+
+    try {
+      m_parallelInvoker.invoke(m_pageTest, new Object[] { scriptTask });
+      fail("Expected InvalidContextException");
+    }
+    catch (InvalidContextException e) {
+    }
+
+    m_parallelInvoker.setScriptEngine(scriptEngineStubFactory.getStub());
+
+    m_parallelInvoker.invoke(m_pageTest, new Object[] { scriptTask });
+
+    scriptEngineStubFactory.assertSuccess("createWorkerRunnable", scriptTask);
+    scriptEngineStubFactory.assertNoMoreCalls();
+    workerRunnableStubFactory.assertSuccess("run");
+    workerRunnableStubFactory.assertNoMoreCalls();
+  }
+
+  public void testNestedGroupsRunInSequence() throws Exception {
+    final Set<Thread> threads =
+      Collections.synchronizedSet(new HashSet<Thread>());
+
+    final Runnable nestedTask = new Runnable() {
+      public void run() {
+        threads.add(Thread.currentThread());
+      }
+    };
+
+    final Runnable task = new Runnable() {
+      public void run() {
+        threads.add(Thread.currentThread());
+
+        try {
+          m_parallelInvoker.invoke(m_resourceTest,
+                                   new Object[] { nestedTask, nestedTask });
+        }
+        catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+
+    m_parallelInvoker.invoke(m_pageTest, new Object[] { task });
+
+    assertEquals(1, threads.size());
+    assertEquals(1, getStatistics(m_resourceTest).getCount(m_timedTestsIndex));
+    assertTrue(getStatistics(m_pageTest).isComposite());
+  }
+
+  public void testBadContexts() throws Exception {
+    m_threadContextLocator.set(null);
+
+    try {
+      m_parallelInvoker.invoke(m_pageTest, new Object[0]);
+      fail("Expected InvalidContextException");
+    }
+    catch (InvalidContextException e) {
+    }
+
+    m_threadContextLocator.set(m_threadContext);
+
+    m_parallelInvoker.shutdown();
+
+    try {
+      m_parallelInvoker.invoke(m_pageTest, new Object[0]);
+      fail("Expected InvalidContextException");
+    }
+    catch (InvalidContextException e) {
+    }
+  }
+
+  private StatisticsSet getStatistics(Test test) {
+    return ((TestData) m_testRegistry.register(test)).getTestStatistics();
+  }
+}
@@ -133,6 +133,9 @@ public class TestPluginRegistryImplementation extends TestCase {
 
     final RandomStubFactory<ThreadContext> threadContextStubFactory =
       RandomStubFactory.create(ThreadContext.class);
+    threadContextStubFactory.setIgnoreObjectMethods();
+    threadContextStubFactory.setResult("getWorkerContext",
+                                       threadContextStubFactory.getStub());
 
     pluginRegistry.threadCreated(threadContextStubFactory.getStub());
 
@@ -157,10 +160,13 @@ public class TestPluginRegistryImplementation extends TestCase {
       "initialize", RegisteredPlugin.class);
 
     threadListener.beginThread();
+    threadContextStubFactory.assertSuccess("getWorkerContext");
     m_grinderPluginStubFactory.assertSuccess(
       "createThreadListener", threadContextStubFactory.getStub());
     threadContextStubFactory.assertSuccess(
       "registerThreadLifeCycleListener", ThreadLifeCycleListener.class);
+    threadContextStubFactory.assertSuccess(
+      "registerThreadLifeCycleListener", ThreadLifeCycleListener.class);
 
     threadListener.beginRun();
     threadListener.endRun();
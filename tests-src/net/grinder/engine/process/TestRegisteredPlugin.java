@@ -26,6 +26,7 @@ import junit.framework.TestCase;
 import net.grinder.common.ThreadLifeCycleListener;
 import net.grinder.engine.common.EngineException;
 import net.grinder.plugininterface.GrinderPlugin;
+import net.grinder.plugininterface.ParallelPluginThreadListener;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginThreadContext;
 import net.grinder.plugininterface.PluginThreadListener;
@@ -114,6 +115,7 @@ public class TestRegisteredPlugin extends TestCase {
 
     final ThreadContextStubFactory threadContextStubFactory =
       new ThreadContextStubFactory(threadLogger);
+    threadContextStubFactory.setIgnoreObjectMethods();
     final ThreadContext threadContext =
       threadContextStubFactory.getStub();
     threadContextLocator.set(threadContext);
@@ -127,6 +129,7 @@ public class TestRegisteredPlugin extends TestCase {
     catch (EngineException e) {
     }
 
+    threadContextStubFactory.assertSuccess("getWorkerContext");
     threadContextStubFactory.assertSuccess("getThreadLogger");
     threadContextStubFactory.assertNoMoreCalls();
 
@@ -147,8 +150,14 @@ public class TestRegisteredPlugin extends TestCase {
     final PluginThreadListener pluginThreadListener2 =
       registeredPlugin.getPluginThreadListener();
 
+    threadContextStubFactory.assertSuccess("getWorkerContext");
     threadContextStubFactory.assertSuccess(
       "registerThreadLifeCycleListener", ThreadLifeCycleListener.class);
+    final ThreadLifeCycleListener endThreadListener =
+      (ThreadLifeCycleListener) threadContextStubFactory.assertSuccess(
+        "registerThreadLifeCycleListener", ThreadLifeCycleListener.class)
+        .getParameters()[0];
+    threadContextStubFactory.assertSuccess("getWorkerContext");
     threadContextStubFactory.assertNoMoreCalls();
     grinderPluginStubFactory.assertNoMoreCalls();
 
@@ -159,7 +168,106 @@ public class TestRegisteredPlugin extends TestCase {
 
     assertSame(pluginThreadListener1, pluginThreadListener3);
 
+    threadContextStubFactory.assertSuccess("getWorkerContext");
     threadContextStubFactory.assertNoMoreCalls();
+
+    // Child contexts share their worker thread's listener.
+    final RandomStubFactory<ThreadContext> childContextStubFactory =
+      RandomStubFactory.create(ThreadContext.class);
+    childContextStubFactory.setResult("getWorkerContext", threadContext);
+
+    assertSame(pluginThreadListener1,
+               registeredPlugin.createPluginThreadListener(
+                 childContextStubFactory.getStub()));
+    grinderPluginStubFactory.assertNoMoreCalls();
+
+    // A new listener is created once the worker thread has ended.
+    endThreadListener.endThread();
+
+    final PluginThreadListener pluginThreadListener4 =
+      registeredPlugin.createPluginThreadListener(threadContext);
+    assertNotSame(pluginThreadListener1, pluginThreadListener4);
+
+    grinderPluginStubFactory.assertSuccess(
+      "createThreadListener", PluginThreadContext.class);
+  }
+
+  public void testTaskListeners() throws Exception {
+
+    final RandomStubFactory<PluginThreadListener> taskListenerStubFactory =
+      RandomStubFactory.create(PluginThreadListener.class);
+    final PluginThreadListener taskListener =
+      taskListenerStubFactory.getStub();
+
+    final RandomStubFactory<ParallelPluginThreadListener>
+      workerListenerStubFactory =
+        RandomStubFactory.create(ParallelPluginThreadListener.class);
+    workerListenerStubFactory.setResult("createTaskListener", taskListener);
+    final ParallelPluginThreadListener workerListener =
+      workerListenerStubFactory.getStub();
+
+    final RandomStubFactory<GrinderPlugin> grinderPluginStubFactory =
+      RandomStubFactory.create(GrinderPlugin.class);
+    grinderPluginStubFactory.setResult("createThreadListener",
+                                       workerListener);
+
+    final RegisteredPlugin registeredPlugin =
+      new RegisteredPlugin(grinderPluginStubFactory.getStub(),
+                           RandomStubFactory.create(ScriptContext.class)
+                           .getStub(),
+                           new StubThreadContextLocator(),
+                           StatisticsServicesImplementation.getInstance(),
+                           RandomStubFactory.create(TimeAuthority.class)
+                           .getStub());
+
+    final ThreadContextStubFactory threadContextStubFactory =
+      new ThreadContextStubFactory(
+        new ThreadLoggerStubFactory().getLogger());
+    threadContextStubFactory.setIgnoreObjectMethods();
+    final ThreadContext threadContext = threadContextStubFactory.getStub();
+
+    assertSame(workerListener,
+               registeredPlugin.createPluginThreadListener(threadContext));
+    workerListenerStubFactory.assertNoMoreCalls();
+
+    final RandomStubFactory<ThreadContext> childContextStubFactory =
+      RandomStubFactory.create(ThreadContext.class);
+    childContextStubFactory.setIgnoreObjectMethods();
+    childContextStubFactory.setResult("getWorkerContext", threadContext);
+    final ThreadContext childContext = childContextStubFactory.getStub();
+
+    // Each task gets its own listener, created once.
+    assertSame(taskListener,
+               registeredPlugin.createPluginThreadListener(childContext));
+    assertSame(taskListener,
+               registeredPlugin.createPluginThreadListener(childContext));
+
+    workerListenerStubFactory.assertSuccess("createTaskListener",
+                                            childContext);
+    workerListenerStubFactory.assertNoMoreCalls();
+
+    childContextStubFactory.assertSuccess("getWorkerContext");
+    childContextStubFactory.assertSuccess("registerTaskLifeCycleListener",
+                                          taskListener);
+    final ThreadLifeCycleListener endTaskListener =
+      (ThreadLifeCycleListener) childContextStubFactory.assertSuccess(
+        "registerTaskLifeCycleListener", ThreadLifeCycleListener.class)
+        .getParameters()[0];
+    childContextStubFactory.assertSuccess("getWorkerContext");
+    childContextStubFactory.assertNoMoreCalls();
+
+    // The task listener is discarded when the task ends.
+    endTaskListener.endThread();
+
+    assertSame(taskListener,
+               registeredPlugin.createPluginThreadListener(childContext));
+    workerListenerStubFactory.assertSuccess("createTaskListener",
+                                            childContext);
+    workerListenerStubFactory.assertNoMoreCalls();
+
+    grinderPluginStubFactory.assertSuccess("createThreadListener",
+                                           PluginThreadContext.class);
+    grinderPluginStubFactory.assertNoMoreCalls();
   }
 
   /**
@@ -179,6 +287,10 @@ public class TestRegisteredPlugin extends TestCase {
     public ThreadLogger override_getThreadLogger(Object proxy) {
       return m_threadLogger;
     }
+
+    public ThreadContext override_getWorkerContext(Object proxy) {
+      return (ThreadContext) proxy;
+    }
   }
 
   public static class GrinderPluginStubFactory
@@ -109,7 +109,8 @@ public class TestScriptContextImplementation extends TestCase {
       new ScriptContextImplementation(
         workerIdentity, firstWorkerIdentity, threadContextLocator, properties,
         logger, filenameFactory, sleeper, sslControl, statistics, testRegistry,
-        threadStarterStubFactory.getStub(), threadStopperStubFactory.getStub());
+        threadStarterStubFactory.getStub(), threadStopperStubFactory.getStub(),
+        null);
 
     assertEquals(workerIdentity.getName(), scriptContext.getProcessName());
     assertEquals(workerIdentity.getNumber(),
@@ -166,7 +167,7 @@ public class TestScriptContextImplementation extends TestCase {
     final ScriptContextImplementation scriptContext =
       new ScriptContextImplementation(
         null, null, null, null, null, null, sleeper, null, null, null, null,
-        null);
+        null, null);
 
     assertTrue(
       new Time(50, 70) {
@@ -186,7 +187,7 @@ public class TestScriptContextImplementation extends TestCase {
     final ScriptContextImplementation scriptContext =
       new ScriptContextImplementation(
         null, null, threadContextLocator, null, null, null, null, null, null,
-        null, null, null);
+        null, null, null, null);
 
     try {
       scriptContext.stopThisWorkerThread();
@@ -25,12 +25,15 @@ import java.util.Arrays;
 
 import junit.framework.TestCase;
 
+import net.grinder.common.GrinderException;
 import net.grinder.communication.QueuedSender;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
+import net.grinder.messages.console.RegisterStatisticMessage;
 import net.grinder.script.InvalidContextException;
 import net.grinder.script.Statistics;
 import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesTestFactory;
 import net.grinder.statistics.StatisticsView;
@@ -217,4 +220,76 @@ public class TestScriptStatisticsImplementation extends TestCase {
       m_statisticsServices.getStatisticExpressionFactory()
       .createExpressionView("display2", "untimedTests", false)));
   }
+
+  public void testRegisterStatistics() throws Exception {
+
+    final ThreadContextLocator threadContextLocator =
+      new StubThreadContextLocator();
+
+    final Statistics scriptStatistics =
+      new ScriptStatisticsImplementation(
+        threadContextLocator,
+        m_statisticsServices,
+        m_queuedSender);
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    scriptStatistics.registerLongStatistic("retries");
+    scriptStatistics.registerDoubleStatistic("queueTime");
+    scriptStatistics.registerLongSampleStatistic("queueDepth");
+    scriptStatistics.registerDoubleSampleStatistic("latency");
+
+    assertNotNull(indexMap.getLongIndex("retries"));
+    assertNotNull(indexMap.getDoubleIndex("queueTime"));
+    assertNotNull(indexMap.getLongSampleIndex("queueDepth"));
+    assertNotNull(indexMap.getDoubleSampleIndex("latency"));
+
+    final String[] names = { "retries", "queueTime", "queueDepth", "latency" };
+    final int[] types = {
+      RegisterStatisticMessage.LONG,
+      RegisterStatisticMessage.DOUBLE,
+      RegisterStatisticMessage.LONG_SAMPLE,
+      RegisterStatisticMessage.DOUBLE_SAMPLE,
+    };
+
+    for (int i = 0; i < names.length; ++i) {
+      final CallData callData =
+        m_queuedSenderStubFactory.assertSuccess(
+          "queue", RegisterStatisticMessage.class);
+      final RegisterStatisticMessage message =
+        (RegisterStatisticMessage)callData.getParameters()[0];
+      assertEquals(types[i], message.getType());
+      assertEquals(names[i], message.getStatisticName());
+      assertTrue(Arrays.equals(indexMap.getLongSlots(names[i]),
+                               message.getLongSlots()));
+      assertTrue(Arrays.equals(indexMap.getDoubleSlots(names[i]),
+                               message.getDoubleSlots()));
+    }
+
+    m_queuedSenderStubFactory.assertNoMoreCalls();
+
+    try {
+      scriptStatistics.registerDoubleStatistic("retries");
+      fail("Expected GrinderException");
+    }
+    catch (GrinderException e) {
+      AssertUtilities.assertContains(e.getMessage(), "different type");
+    }
+
+    m_queuedSenderStubFactory.assertNoMoreCalls();
+
+    threadContextLocator.set(m_threadContext);
+
+    try {
+      scriptStatistics.registerLongStatistic("foo");
+      fail("Expected InvalidContextException");
+    }
+    catch (InvalidContextException e) {
+      AssertUtilities.assertContains(e.getMessage(), "worker threads");
+    }
+
+    assertNull(indexMap.getLongIndex("foo"));
+    m_queuedSenderStubFactory.assertNoMoreCalls();
+  }
 }
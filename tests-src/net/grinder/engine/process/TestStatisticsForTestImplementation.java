@@ -30,6 +30,7 @@ import net.grinder.script.NoSuchStatisticException;
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsServicesTestFactory;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.testutility.RandomStubFactory;
 
@@ -129,4 +130,64 @@ public class TestStatisticsForTestImplementation extends TestCase {
 
     assertEquals(10, statisticsForTest.getLong("userLong0"));
   }
+
+  public void testRegisteredSampleStatistics() throws Exception {
+    final StatisticsServices statisticsServices =
+      StatisticsServicesTestFactory.createTestInstance();
+    final StatisticsIndexMap statisticsIndexMap =
+      statisticsServices.getStatisticsIndexMap();
+
+    m_dispatchContextStubFactory.setResult("getTest", new StubTest(1, "X"));
+
+    // Created before the statistics are registered.
+    final StatisticsSet statisticsSet =
+      statisticsServices.getStatisticsSetFactory().create();
+
+    final StatisticsForTestImplementation statisticsForTest =
+      new StatisticsForTestImplementation(
+        m_dispatchContext,
+        new TestStatisticsHelperImplementation(statisticsIndexMap),
+        statisticsSet);
+
+    try {
+      statisticsForTest.addLongSample("queueDepth", 1);
+      fail("Expected NoSuchStatisticException");
+    }
+    catch (NoSuchStatisticException e) {
+    }
+
+    statisticsIndexMap.registerLongSampleIndex("queueDepth");
+    statisticsIndexMap.registerDoubleSampleIndex("latency");
+    statisticsIndexMap.registerLongIndex("retries");
+
+    statisticsForTest.addLongSample("queueDepth", 3);
+    statisticsForTest.addLongSample("queueDepth", 5);
+    statisticsForTest.addDoubleSample("latency", 1.5);
+    statisticsForTest.addLong("retries", 2);
+
+    final StatisticsIndexMap.LongSampleIndex queueDepth =
+      statisticsIndexMap.getLongSampleIndex("queueDepth");
+    assertEquals(8, statisticsSet.getSum(queueDepth));
+    assertEquals(2, statisticsSet.getCount(queueDepth));
+    assertEquals(1.0, statisticsSet.getVariance(queueDepth), 0.001);
+    assertEquals(1.5,
+      statisticsSet.getSum(statisticsIndexMap.getDoubleSampleIndex("latency")),
+      0.001);
+    assertEquals(2, statisticsForTest.getLong("retries"));
+
+    // The engine's own sample statistic can't be updated.
+    try {
+      statisticsForTest.addLongSample("timedTests", 1);
+      fail("Expected NoSuchStatisticException");
+    }
+    catch (NoSuchStatisticException e) {
+    }
+
+    try {
+      statisticsForTest.addDoubleSample("queueDepth", 1);
+      fail("Expected NoSuchStatisticException");
+    }
+    catch (NoSuchStatisticException e) {
+    }
+  }
 }
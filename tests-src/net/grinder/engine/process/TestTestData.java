@@ -21,12 +21,16 @@
 
 package net.grinder.engine.process;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 import junit.framework.TestCase;
 
 import net.grinder.common.Test;
 import net.grinder.common.StubTest;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.DispatchContext.DispatchStateException;
+import net.grinder.engine.process.TestThreadContextImplementation.ProcessContextStubFactory;
 import net.grinder.script.InvalidContextException;
 import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.statistics.StatisticsIndexMap;
@@ -83,6 +87,10 @@ public class TestTestData extends TestCase {
   private final StandardTimeAuthority m_timeAuthority =
     new StandardTimeAuthority();
 
+  protected void setUp() throws Exception {
+    m_threadContextStubFactory.setResult("getWorkerContext", m_threadContext);
+  }
+
   public void testCreateProxy() throws Exception {
     final TestData testData =
       new TestData(null, m_statisticsSetFactory, null,
@@ -126,6 +134,7 @@ public class TestTestData extends TestCase {
     testData.start();
 
     m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+    m_threadContextStubFactory.assertSuccess("getWorkerContext");
     final DispatchContext dispatchContext =
       (DispatchContext) m_threadContextStubFactory.assertSuccess(
       "pushDispatchContext", DispatchContext.class).getParameters()[0];
@@ -265,6 +274,7 @@ public class TestTestData extends TestCase {
     testData.start();
 
     m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+    m_threadContextStubFactory.assertSuccess("getWorkerContext");
     final DispatchContext dispatchContext =
       (DispatchContext)
       m_threadContextStubFactory.assertSuccess(
@@ -365,6 +375,127 @@ public class TestTestData extends TestCase {
     assertTrue(statistics.isComposite());
   }
 
+  public void testSampling() throws Exception {
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final TestData testData =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   new TestStatisticsHelperImplementation(indexMap),
+                   m_timeAuthority,
+                   m_instrumenter,
+                   new StubTest(1, "test1"));
+
+    final StatisticsSet statistics = testData.getTestStatistics();
+
+    m_threadContextLocator.set(m_threadContext);
+
+    testData.setSampleInterval(3);
+
+    for (int i = 0; i < 7; ++i) {
+      testData.start();
+      testData.start();
+      testData.end(true);
+      testData.end(i != 4);
+
+      if (i == 0) {
+        m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+        m_threadContextStubFactory.assertSuccess("getWorkerContext");
+      }
+
+      final DispatchContext dispatchContext =
+        (DispatchContext) m_threadContextStubFactory.assertSuccess(
+          "pushDispatchContext", DispatchContext.class).getParameters()[0];
+      m_threadContextStubFactory.assertSuccess("popDispatchContext");
+
+      if (i % 3 == 0) {
+        // Sampled invocations are timed and reported as usual.
+        assertNotNull(dispatchContext.getStatisticsForTest());
+        dispatchContext.report();
+      }
+      else {
+        // Others have a placeholder context, with nothing to report.
+        assertNull(dispatchContext.getStatisticsForTest());
+        assertEquals(-1, dispatchContext.getElapsedTime());
+        dispatchContext.report();
+      }
+
+      m_threadContextStubFactory.assertNoMoreCalls();
+    }
+
+    // Every invocation is counted, but only the sampled ones are timed.
+    assertEquals(3, statistics.getCount(s_timedTestsIndex));
+    assertEquals(3, statistics.getValue(s_untimedTestsIndex));
+    assertEquals(1, statistics.getValue(indexMap.getLongIndex("errors")));
+  }
+
+  public void testNestedSampling() throws Exception {
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final ProcessContextStubFactory processContextStubFactory =
+      new ProcessContextStubFactory();
+    processContextStubFactory.setResult(
+      "getStatisticsServices", StatisticsServicesImplementation.getInstance());
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        processContextStubFactory.getStub(),
+        RandomStubFactory.create(ThreadLogger.class).getStub(),
+        null,
+        new PrintWriter(new StringWriter()));
+
+    m_threadContextLocator.set(threadContext);
+
+    final TestStatisticsHelper testStatisticsHelper =
+      new TestStatisticsHelperImplementation(indexMap);
+
+    final TestData outer =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   testStatisticsHelper,
+                   m_timeAuthority,
+                   m_instrumenter,
+                   new StubTest(1, "outer"));
+
+    final TestData inner =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   testStatisticsHelper,
+                   m_timeAuthority,
+                   m_instrumenter,
+                   new StubTest(2, "inner"));
+
+    outer.setSampleInterval(2);
+
+    // Sampled.
+    outer.start();
+    outer.end(true);
+    assertFalse(outer.getTestStatistics().isComposite());
+
+    // Not sampled. The nested test still knows its parent.
+    outer.start();
+    assertNull(threadContext.getStatisticsForCurrentTest());
+
+    inner.start();
+    final StatisticsForTest innerStatistics =
+      threadContext.getStatisticsForCurrentTest();
+    assertSame(inner.getTest(), innerStatistics.getTest());
+    inner.end(true);
+
+    assertNull(threadContext.getStatisticsForCurrentTest());
+    outer.end(true);
+
+    assertTrue(outer.getTestStatistics().isComposite());
+    assertSame(innerStatistics, threadContext.getStatisticsForLastTest());
+
+    assertEquals(1, outer.getTestStatistics().getCount(s_timedTestsIndex));
+    assertEquals(1, outer.getTestStatistics().getValue(s_untimedTestsIndex));
+    assertEquals(1, inner.getTestStatistics().getCount(s_timedTestsIndex));
+    assertFalse(inner.getTestStatistics().isComposite());
+  }
+
   public void testDispatchForBug1593169() throws Exception {
     final TestData testData =
       new TestData(m_threadContextLocator,
@@ -388,6 +519,7 @@ public class TestTestData extends TestCase {
     }
 
     m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+    m_threadContextStubFactory.assertSuccess("getWorkerContext");
     m_threadContextStubFactory.assertException("pushDispatchContext",
                                                se,
                                                DispatchContext.class);
@@ -160,4 +160,19 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     helper.incrementErrors(statistics);
     assertEquals(3, statistics.getValue(m_errorsIndex));
   }
+
+  public void testRecordUntimedTest() throws Exception {
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    final TestStatisticsHelper helper =
+      new TestStatisticsHelperImplementation(m_indexMap);
+
+    helper.recordUntimedTest(statistics);
+    helper.recordUntimedTest(statistics);
+    assertEquals(2, statistics.getValue(m_untimedTestsIndex));
+    assertEquals(0, statistics.getCount(m_timedTestsIndex));
+    assertEquals(0, statistics.getValue(m_errorsIndex));
+  }
 }
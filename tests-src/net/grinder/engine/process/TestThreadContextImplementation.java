@@ -402,6 +402,100 @@ public class TestThreadContextImplementation extends TestCase {
     }
   }
 
+  public void testChildContext() throws Exception {
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        m_processContext, m_threadLogger, m_filenameFactory, null);
+
+    assertSame(threadContext, threadContext.getWorkerContext());
+
+    m_dispatchContextStubFactory.setResult("getTest", new StubTest(1, "page"));
+    threadContext.pushDispatchContext(m_dispatchContext);
+    m_dispatchContextStubFactory.resetCallHistory();
+
+    final ThreadContext childContext = threadContext.createChildContext();
+
+    assertSame(threadContext, childContext.getWorkerContext());
+    assertSame(m_threadLogger, childContext.getThreadLogger());
+    assertSame(m_filenameFactory, childContext.getFilenameFactory());
+    assertSame(threadContext.getDispatchResultReporter(),
+               childContext.getDispatchResultReporter());
+
+    childContext.setThreadSSLContextFactory(m_sslContextFactory);
+    assertSame(m_sslContextFactory, threadContext.getThreadSSLContextFactory());
+    assertSame(m_sslContextFactory, childContext.getThreadSSLContextFactory());
+
+    // The child has its own dispatch context stack.
+    assertNull(childContext.getStatisticsForCurrentTest());
+
+    final RandomStubFactory<DispatchContext> taskDispatchContextStubFactory =
+      RandomStubFactory.create(DispatchContext.class);
+    taskDispatchContextStubFactory.setResult("getTest",
+                                             new StubTest(2, "resource"));
+
+    childContext.pushDispatchContext(
+      taskDispatchContextStubFactory.getStub());
+
+    // The worker thread's dispatch context is marked as having nested
+    // contexts.
+    m_dispatchContextStubFactory.assertSuccess("setHasNestedContexts");
+    m_dispatchContextStubFactory.assertNoMoreCalls();
+
+    childContext.popDispatchContext();
+    taskDispatchContextStubFactory.assertSuccess("getTest");
+    taskDispatchContextStubFactory.assertSuccess("getStatisticsForTest");
+    taskDispatchContextStubFactory.assertSuccess("report");
+    taskDispatchContextStubFactory.assertNoMoreCalls();
+    m_dispatchContextStubFactory.assertNoMoreCalls();
+
+    // Children of children have the same worker context.
+    assertSame(threadContext,
+               childContext.createChildContext().getWorkerContext());
+
+    threadContext.shutdown();
+
+    try {
+      childContext.pushDispatchContext(
+        taskDispatchContextStubFactory.getStub());
+      fail("Expected ShutdownException");
+    }
+    catch (ShutdownException e) {
+    }
+  }
+
+  public void testTaskEvents() throws Exception {
+    final RandomStubFactory<ThreadLifeCycleListener> workerListenerStubFactory =
+      RandomStubFactory.create(ThreadLifeCycleListener.class);
+    final RandomStubFactory<ThreadLifeCycleListener> taskListenerStubFactory =
+      RandomStubFactory.create(ThreadLifeCycleListener.class);
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        m_processContext, m_threadLogger, m_filenameFactory, null);
+    threadContext.registerThreadLifeCycleListener(
+      workerListenerStubFactory.getStub());
+
+    // Task events are ignored for the worker thread.
+    threadContext.registerTaskLifeCycleListener(
+      taskListenerStubFactory.getStub());
+    threadContext.fireEndTaskEvent();
+    taskListenerStubFactory.assertNoMoreCalls();
+
+    final ThreadContext childContext = threadContext.createChildContext();
+    childContext.registerTaskLifeCycleListener(
+      taskListenerStubFactory.getStub());
+
+    childContext.fireEndTaskEvent();
+    taskListenerStubFactory.assertSuccess("endThread");
+    taskListenerStubFactory.assertNoMoreCalls();
+    workerListenerStubFactory.assertNoMoreCalls();
+
+    // Task listeners don't receive the worker thread's events.
+    threadContext.fireEndThreadEvent();
+    workerListenerStubFactory.assertSuccess("endThread");
+    taskListenerStubFactory.assertNoMoreCalls();
+  }
+
   public void testWithBadDispatchContext() throws Exception {
     final ThreadContext threadContext =
       new ThreadContextImplementation(
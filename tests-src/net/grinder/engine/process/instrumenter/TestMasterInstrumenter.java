@@ -59,6 +59,7 @@ public class TestMasterInstrumenter extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), false);
 
     assertEquals("traditional Jython instrumenter; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
@@ -95,6 +96,7 @@ public class TestMasterInstrumenter extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), false);
 
     assertEquals("traditional Jython instrumenter; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
@@ -123,10 +125,22 @@ public class TestMasterInstrumenter extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), true);
 
     assertEquals("byte code transforming instrumenter for Jython 2.1/2.2; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
     m_loggerStubFactory.assertOutputMessageContains("byte code");
     m_loggerStubFactory.assertNoMoreCalls();
   }
+
+  private static String jrubyInstrumenterDescription() {
+    // JRuby is optional.
+    try {
+      Class.forName("org.jruby.RubyProc");
+      return "byte code transforming instrumenter for JRuby; ";
+    }
+    catch (ClassNotFoundException e) {
+      return "";
+    }
+  }
 }
@@ -87,6 +87,7 @@ public class TestMasterInstrumenterWithJython25 extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), false);
 
     assertEquals("byte code transforming instrumenter for Jython 2.5; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
@@ -119,6 +120,7 @@ public class TestMasterInstrumenterWithJython25 extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), false);
 
     assertEquals("byte code transforming instrumenter for Jython 2.5; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
@@ -200,4 +202,15 @@ public class TestMasterInstrumenterWithJython25 extends TestCase {
     catch (NonInstrumentableTypeException e) {
     }
   }
+
+  private static String jrubyInstrumenterDescription() {
+    // JRuby is optional.
+    try {
+      Class.forName("org.jruby.RubyProc");
+      return "byte code transforming instrumenter for JRuby; ";
+    }
+    catch (ClassNotFoundException e) {
+      return "";
+    }
+  }
 }
@@ -0,0 +1,228 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.instrumenter.dcr;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.StreamCopier;
+import net.grinder.util.weave.Weaver;
+import net.grinder.util.weave.Weaver.TargetSource;
+import net.grinder.util.weave.j2se6.ASMTransformerFactory;
+import net.grinder.util.weave.j2se6.DCRWeaver;
+
+
+/**
+ * Measures the cost of calling a method woven with {@link RecorderLocator}
+ * advice, compared to the same method without advice.
+ *
+ * <p>The classes are transformed as they are loaded, so no agent is
+ * needed.</p>
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.engine.process.instrumenter.dcr.AdviceOverheadBenchmark
+ *   [calls]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class AdviceOverheadBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final int calls = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+
+    final Work plain = new Target();
+
+    final Woven indexed = new Woven(RecorderLocator.class);
+    final Work indexedWork = indexed.newInstance();
+
+    final Woven strings = new Woven(StringAdvice.class);
+    final Work stringsWork = strings.newInstance();
+
+    for (int i = 0; i < 3; ++i) {
+      System.out.println("Run " + i + ", nothing recorded");
+      report("  uninstrumented", plain, calls);
+      report("  indexed advice", indexedWork, calls);
+      report("  string advice", stringsWork, calls);
+    }
+
+    // Record another instance, so the woven code for our instance has to
+    // look for recorders.
+    indexed.record(indexed.newInstance());
+    strings.record(strings.newInstance());
+
+    for (int i = 0; i < 3; ++i) {
+      System.out.println("Run " + i + ", another instance recorded");
+      report("  indexed advice", indexedWork, calls);
+      report("  string advice", stringsWork, calls);
+    }
+  }
+
+  private static void report(String name, Work work, int calls) {
+    int total = 0;
+
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < calls; ++i) {
+      total += work.work(i);
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    System.out.printf("%s: %.2f ns per call (%d)%n",
+                      name, (double) nanos / calls, total);
+  }
+
+  /**
+   * The interface is loaded by the application class loader, so we can call
+   * the woven classes without reflection.
+   */
+  public interface Work {
+    int work(int x);
+  }
+
+  public static final class Target implements Work {
+    public int work(int x) {
+      return x & 7;
+    }
+  }
+
+  /**
+   * The advice used before location numbers were added.
+   */
+  public static final class StringAdvice {
+    public static void enter(Object reference, String location) {
+      RecorderLocator.enter(reference, location);
+    }
+
+    public static void exit(Object reference,
+                            String location,
+                            boolean success) {
+      RecorderLocator.exit(reference, location, success);
+    }
+  }
+
+  private static final class Woven {
+    private final Class<?> m_class;
+    private final String m_location;
+
+    public Woven(Class<?> adviceClass) throws Exception {
+      final InstrumentationStubFactory instrumentationStubFactory =
+        new InstrumentationStubFactory();
+
+      final Weaver weaver =
+        new DCRWeaver(new ASMTransformerFactory(adviceClass),
+                      instrumentationStubFactory.getStub());
+
+      m_location = weaver.weave(Target.class.getMethod("work", Integer.TYPE),
+                                TargetSource.FIRST_PARAMETER);
+
+      m_class =
+        new TransformingClassLoader(instrumentationStubFactory.m_transformer)
+        .loadClass(Target.class.getName());
+    }
+
+    public Work newInstance() throws Exception {
+      return (Work) m_class.newInstance();
+    }
+
+    public void record(Work work) {
+      RecorderLocator.getRecorderRegistry().register(work,
+                                                     m_location,
+                                                     new NullRecorder());
+    }
+  }
+
+  public static final class InstrumentationStubFactory
+    extends RandomStubFactory<Instrumentation> {
+
+    private ClassFileTransformer m_transformer;
+
+    public InstrumentationStubFactory() {
+      super(Instrumentation.class);
+    }
+
+    public void override_addTransformer(Object stub,
+                                        ClassFileTransformer transformer,
+                                        boolean canRetransform) {
+      m_transformer = transformer;
+    }
+  }
+
+  private static final class NullRecorder implements Recorder {
+    public void start() throws EngineException { }
+
+    public void end(boolean success) throws EngineException { }
+  }
+
+  private static final class TransformingClassLoader extends ClassLoader {
+    private final ClassFileTransformer m_transformer;
+
+    private TransformingClassLoader(ClassFileTransformer transformer) {
+      super(TransformingClassLoader.class.getClassLoader());
+      m_transformer = transformer;
+    }
+
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+      throws ClassNotFoundException {
+
+      if (!name.equals(Target.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+
+      Class<?> c = findLoadedClass(name);
+
+      if (c == null) {
+        final String internalName = name.replace('.', '/');
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+
+        try {
+          new StreamCopier(1000, true).copy(
+            getParent().getResourceAsStream(internalName + ".class"),
+            byteStream);
+
+          final byte[] bytes =
+            m_transformer.transform(this, internalName, null, null,
+                                    byteStream.toByteArray());
+
+          c = defineClass(name, bytes, 0, bytes.length);
+        }
+        catch (Exception e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+
+      if (resolve) {
+        resolveClass(c);
+      }
+
+      return c;
+    }
+  }
+}
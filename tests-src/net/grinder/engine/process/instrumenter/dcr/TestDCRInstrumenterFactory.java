@@ -128,6 +128,35 @@ public class TestDCRInstrumenterFactory extends TestCase {
                  instrumenters.get(0).getDescription());
   }
 
+  public void testAddJRubyInstrumentation() throws Exception {
+
+    final DCRInstrumenterFactory factory =
+      DCRInstrumenterFactory.createFactory(null);
+
+    final List<Instrumenter> instrumenters = new ArrayList<Instrumenter>();
+
+    final boolean result = factory.addJRubyInstrumenter(instrumenters);
+
+    // JRuby is optional.
+    boolean haveJRuby;
+
+    try {
+      Class.forName("org.jruby.RubyProc");
+      haveJRuby = true;
+    }
+    catch (ClassNotFoundException e) {
+      haveJRuby = false;
+    }
+
+    assertEquals(haveJRuby, result);
+    assertEquals(haveJRuby ? 1 : 0, instrumenters.size());
+
+    if (haveJRuby) {
+      assertEquals("byte code transforming instrumenter for JRuby",
+                   instrumenters.get(0).getDescription());
+    }
+  }
+
   public void testAddAllInstrumentation() throws Exception {
 
     final DCRInstrumenterFactory factory =
@@ -148,7 +177,8 @@ public class TestDCRInstrumenterFactory extends TestCase {
     try {
       new DCRInstrumenterFactory(m_instrumentation,
                                  TestDCRInstrumenterFactory.class,
-                                 RecorderLocator.getRecorderRegistry());
+                                 RecorderLocator.getRecorderRegistry(),
+                                 null);
       fail("Expected AssertionError");
     }
     catch (AssertionError e) {
@@ -21,6 +21,7 @@
 
 package net.grinder.engine.process.instrumenter.dcr;
 
+import java.lang.instrument.Instrumentation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -35,6 +36,10 @@ import net.grinder.common.UncheckedGrinderException;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.ScriptEngine.Recorder;
 import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.weave.Weaver;
+import net.grinder.util.weave.Weaver.TargetSource;
+import net.grinder.util.weave.j2se6.DCRWeaver;
+import net.grinder.util.weave.j2se6.DCRWeaver.ClassFileTransformerFactory;
 
 
 /**
@@ -203,6 +208,65 @@ public class TestRecorderLocator extends TestCase {
     m_recorderStubFactory2.assertNoMoreCalls();
   }
 
+  public void testIndexedEnterAndExit() throws Exception {
+    final Weaver weaver =
+      new DCRWeaver(
+        RandomStubFactory.create(ClassFileTransformerFactory.class).getStub(),
+        RandomStubFactory.create(Instrumentation.class).getStub());
+
+    final String location =
+      weaver.weave(getClass().getMethod("testIndexedEnterAndExit"),
+                   TargetSource.FIRST_PARAMETER);
+    final int locationID = DCRWeaver.getLocationID(location);
+
+    final String location2 =
+      weaver.weave(getClass().getMethod("testWithNull"),
+                   TargetSource.FIRST_PARAMETER);
+    final int locationID2 = DCRWeaver.getLocationID(location2);
+
+    final Object target = new Object();
+
+    // Nothing registered.
+    RecorderLocator.enter(target, location, locationID);
+    RecorderLocator.exit(target, location, locationID, true);
+    RecorderLocator.enter(target, location, locationID + 1000);
+    RecorderLocator.exit(target, location, locationID + 1000, true);
+
+    m_recorderRegistry.register(target, location, m_recorder);
+
+    RecorderLocator.enter(target, location, locationID);
+    m_recorderStubFactory.assertSuccess("start");
+    RecorderLocator.exit(target, location, locationID, false);
+    m_recorderStubFactory.assertSuccess("end", false);
+
+    RecorderLocator.enter(target, location2, locationID2);
+    RecorderLocator.exit(target, location2, locationID2, true);
+    RecorderLocator.enter(this, location, locationID);
+    RecorderLocator.exit(this, location, locationID, true);
+    RecorderLocator.enter(null, location, locationID);
+    RecorderLocator.exit(null, location, locationID, true);
+    m_recorderStubFactory.assertNoMoreCalls();
+
+    m_recorderRegistry.register(this, location2, m_recorder2);
+
+    RecorderLocator.enter(this, location2, locationID2);
+    m_recorderStubFactory2.assertSuccess("start");
+    RecorderLocator.exit(this, location2, locationID2, true);
+    m_recorderStubFactory2.assertSuccess("end", true);
+
+    RecorderLocator.enter(target, location, locationID);
+    m_recorderStubFactory.assertSuccess("start");
+    RecorderLocator.exit(target, location, locationID, true);
+    m_recorderStubFactory.assertSuccess("end", true);
+
+    RecorderLocator.clearRecorders();
+
+    RecorderLocator.enter(target, location, locationID);
+    RecorderLocator.exit(target, location, locationID, true);
+    m_recorderStubFactory.assertNoMoreCalls();
+    m_recorderStubFactory2.assertNoMoreCalls();
+  }
+
   public void testWithNull() throws Exception {
     final Object target = new Object();
 
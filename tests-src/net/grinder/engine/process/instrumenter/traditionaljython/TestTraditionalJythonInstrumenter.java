@@ -25,7 +25,9 @@ import net.grinder.common.Test;
 import net.grinder.engine.process.instrumenter.AbstractJythonInstrumenterTestCase;
 
 import org.python.core.Py;
+import org.python.core.PyException;
 import org.python.core.PyInstance;
+import org.python.core.PyInteger;
 import org.python.core.PyObject;
 import org.python.util.PythonInterpreter;
 
@@ -259,6 +261,117 @@ public class TestTraditionalJythonInstrumenter
     m_recorderStubFactory.assertNoMoreCalls();
   }
 
+  public void testCallPyFunctionProxy() throws Exception {
+    m_interpreter.exec(
+      "def f0(): return 0\n" +
+      "def f1(x): return x\n" +
+      "def f2(x, y): return x + y\n" +
+      "def f3(x, y, z): return x + y + z\n" +
+      "def f4(w, x, y, z): return w + x + y + z\n");
+
+    final PyObject[] proxies = new PyObject[5];
+
+    for (int i = 0; i < proxies.length; ++i) {
+      proxies[i] = (PyObject)m_instrumenter.createInstrumentedProxy(
+        m_test, m_recorder, m_interpreter.get("f" + i));
+    }
+
+    assertEquals(m_zero, proxies[0].__call__());
+    assertEquals(m_one, proxies[1].__call__(m_one));
+    assertEquals(m_three, proxies[2].__call__(m_one, m_two));
+    assertEquals(m_six, proxies[3].__call__(m_one, m_two, m_three));
+    assertEquals(m_six,
+                 proxies[4].__call__(m_zero, m_one, m_two, m_three));
+    assertEquals(m_three,
+                 proxies[2].__call__(new PyObject[] { m_one, m_two },
+                                     new String[] { "y" }));
+
+    for (int i = 0; i < 6; ++i) {
+      m_recorderStubFactory.assertSuccess("start");
+      m_recorderStubFactory.assertSuccess("end", true);
+    }
+
+    m_recorderStubFactory.assertNoMoreCalls();
+
+    // From Jython.
+    m_interpreter.set("proxy", proxies[3]);
+    m_interpreter.exec("result = proxy(1, 2, z=3)");
+    assertEquals(m_six, m_interpreter.get("result"));
+    m_recorderStubFactory.assertSuccess("start");
+    m_recorderStubFactory.assertSuccess("end", true);
+    m_recorderStubFactory.assertNoMoreCalls();
+
+    try {
+      proxies[1].__call__();
+      fail("Expected PyException");
+    }
+    catch (PyException e) {
+    }
+
+    m_recorderStubFactory.assertSuccess("start");
+    m_recorderStubFactory.assertSuccess("end", false);
+    m_recorderStubFactory.assertNoMoreCalls();
+  }
+
+  public void testCallPyMethodProxy() throws Exception {
+    m_interpreter.exec(
+      "class Foo:\n" +
+      " def two(self): return 2\n" +
+      " def identity(self, x): return x\n" +
+      " def sum(self, x, y): return x + y\n" +
+      " def sum3(self, x, y, z): return x + y + z\n" +
+      "x=Foo()");
+    final PyObject pyInstance = m_interpreter.get("x");
+
+    final PyObject two = createProxy("x.two");
+    final PyObject identity = createProxy("x.identity");
+    final PyObject sum = createProxy("x.sum");
+    final PyObject sum3 = createProxy("x.sum3");
+
+    assertEquals(m_two, two.__call__());
+    assertEquals(m_one, identity.__call__(m_one));
+    assertEquals(m_three, sum.__call__(m_one, m_two));
+    assertEquals(m_six, sum3.__call__(m_one, m_two, m_three));
+    assertEquals(m_three,
+                 sum.__call__(new PyObject[] { m_one, m_two },
+                              new String[] { "x", "y" }));
+
+    // Unbound.
+    final PyObject unboundSum = createProxy("Foo.sum");
+    assertEquals(m_three, unboundSum.__call__(pyInstance, m_one, m_two));
+
+    // Java method bound to an instance.
+    m_interpreter.exec("from java.util import Random\nr=Random(10)");
+    final PyObject nextInt = createProxy("r.nextInt");
+    assertTrue(nextInt.__call__(new PyInteger(5)).__tojava__(Integer.class)
+               instanceof Integer);
+
+    for (int i = 0; i < 7; ++i) {
+      m_recorderStubFactory.assertSuccess("start");
+      m_recorderStubFactory.assertSuccess("end", true);
+    }
+
+    m_recorderStubFactory.assertNoMoreCalls();
+
+    try {
+      unboundSum.__call__(m_one);
+      fail("Expected PyException");
+    }
+    catch (PyException e) {
+    }
+
+    m_recorderStubFactory.assertSuccess("start");
+    m_recorderStubFactory.assertSuccess("end", false);
+    m_recorderStubFactory.assertNoMoreCalls();
+  }
+
+  private PyObject createProxy(String expression) throws Exception {
+    m_interpreter.exec("y=" + expression);
+
+    return (PyObject)m_instrumenter.createInstrumentedProxy(
+      m_test, m_recorder, m_interpreter.get("y"));
+  }
+
   public void testCreateProxyWithNonWrappableParameters() throws Exception {
 
     // The types that can be wrapped depend on the Instrumenter.
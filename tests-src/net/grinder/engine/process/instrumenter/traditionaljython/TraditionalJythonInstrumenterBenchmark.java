@@ -0,0 +1,160 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.instrumenter.traditionaljython;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.engine.process.ScriptEngine.Recorder;
+
+import org.python.core.PyInteger;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+
+/**
+ * Measures the rate of calls through Python functions and methods wrapped by
+ * the {@link TraditionalJythonInstrumenter}, with zero to three arguments.
+ *
+ * <p>Each result is compared with calling the unwrapped function, and with
+ * the reflective <code>invoke("__call__", ...)</code> path that wrapped
+ * functions used to take.</p>
+ *
+ * <p>Not a unit test. Run <code>main()</code> with <code>jython.jar</code> on
+ * the classpath; the optional argument is the number of calls in each
+ * measurement.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TraditionalJythonInstrumenterBenchmark {
+
+  private static final Recorder NULL_RECORDER = new Recorder() {
+      public void start() { }
+      public void end(boolean success) { }
+    };
+
+  private static final PyObject ONE = new PyInteger(1);
+
+  public static void main(String[] args) throws Exception {
+    final int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+    PySystemState.initialize();
+
+    final PythonInterpreter interpreter =
+      new PythonInterpreter(null, new PySystemState());
+
+    interpreter.exec(
+      "def f0(): return 0\n" +
+      "def f1(a): return a\n" +
+      "def f2(a, b): return a\n" +
+      "def f3(a, b, c): return a\n" +
+      "class Foo:\n" +
+      " def m0(self): return 0\n" +
+      " def m1(self, a): return a\n" +
+      " def m2(self, a, b): return a\n" +
+      " def m3(self, a, b, c): return a\n" +
+      "x = Foo()\n" +
+      "m0 = x.m0\n" +
+      "m1 = x.m1\n" +
+      "m2 = x.m2\n" +
+      "m3 = x.m3\n");
+
+    final TraditionalJythonInstrumenter instrumenter =
+      new TraditionalJythonInstrumenter();
+    final Test test = new StubTest(1, "benchmark");
+
+    for (int run = 0; run < 3; ++run) {
+      System.out.println("Run " + run + ", " + calls + " calls");
+
+      for (int arity = 0; arity <= 3; ++arity) {
+        for (String prefix : new String[] { "f", "m" }) {
+          final String name = prefix + arity;
+          final PyObject target = interpreter.get(name);
+          final PyObject proxy = (PyObject)
+            instrumenter.createInstrumentedProxy(test, NULL_RECORDER, target);
+
+          report(name + " unwrapped", calls, new DirectCall(target, arity));
+          report(name + " wrapped", calls, new DirectCall(proxy, arity));
+          report(name + " wrapped, reflective", calls,
+                 new ReflectiveCall(proxy, arity));
+        }
+      }
+    }
+  }
+
+  private static void report(String name, int calls, Call call) {
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < calls; ++i) {
+      call.call();
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    System.out.println("  " + name + ": " +
+                       (calls * 1000000000L / nanos) + " calls/s");
+  }
+
+  private interface Call {
+    PyObject call();
+  }
+
+  private static final class DirectCall implements Call {
+    private final PyObject m_target;
+    private final int m_arity;
+
+    public DirectCall(PyObject target, int arity) {
+      m_target = target;
+      m_arity = arity;
+    }
+
+    public PyObject call() {
+      switch (m_arity) {
+        case 0: return m_target.__call__();
+        case 1: return m_target.__call__(ONE);
+        case 2: return m_target.__call__(ONE, ONE);
+        default: return m_target.__call__(ONE, ONE, ONE);
+      }
+    }
+  }
+
+  private static final class ReflectiveCall implements Call {
+    private final PyObject m_target;
+    private final int m_arity;
+
+    public ReflectiveCall(PyObject target, int arity) {
+      m_target = target;
+      m_arity = arity;
+    }
+
+    public PyObject call() {
+      switch (m_arity) {
+        case 0: return m_target.invoke("__call__");
+        case 1: return m_target.invoke("__call__", ONE);
+        case 2: return m_target.invoke("__call__", ONE, ONE);
+        default:
+          return m_target.invoke("__call__", new PyObject[] { ONE, ONE, ONE });
+      }
+    }
+  }
+}
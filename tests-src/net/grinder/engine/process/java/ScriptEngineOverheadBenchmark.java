@@ -0,0 +1,136 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.java;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.ScriptEngine;
+import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
+import net.grinder.engine.process.multilingual.MultilingualScriptEngine;
+import net.grinder.util.Directory;
+
+
+/**
+ * Compares the cost of a <code>TestRunner</code> call for the Java, Jython,
+ * and JRuby script engines. Each call makes ten calls to a trivial function,
+ * so the result is dominated by the scripting layer. JRuby is skipped if it
+ * is not on the class path.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.engine.process.java.ScriptEngineOverheadBenchmark
+ *   directory [calls]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class ScriptEngineOverheadBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final File directory = new File(args[0]).getAbsoluteFile();
+    final int calls = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+    directory.mkdirs();
+
+    final File java = new File(directory, "Runner.java");
+    PrintWriter out = new PrintWriter(new FileWriter(java));
+    out.println("public class Runner");
+    out.println("  implements java.util.concurrent.Callable<Object> {");
+    out.println("  private int m_total;");
+    out.println("  private int f(int x) { return x * 2 + 1; }");
+    out.println("  public Object call() {");
+    out.println("    for (int i = 0; i < 10; ++i) { m_total += f(i); }");
+    out.println("    return null;");
+    out.println("  }");
+    out.println("}");
+    out.close();
+
+    final File jython = new File(directory, "runner.py");
+    out = new PrintWriter(new FileWriter(jython));
+    out.println("def f(x): return x * 2 + 1");
+    out.println("class TestRunner:");
+    out.println("  def __init__(self): self.total = 0");
+    out.println("  def __call__(self):");
+    out.println("    for i in range(10): self.total += f(i)");
+    out.close();
+
+    final File jruby = new File(directory, "runner.rb");
+    out = new PrintWriter(new FileWriter(jruby));
+    out.println("def f(x); x * 2 + 1; end");
+    out.println("class TestRunner");
+    out.println("  def initialize; @total = 0; end");
+    out.println("  def run; 10.times { |i| @total += f(i) }; end");
+    out.println("end");
+    out.close();
+
+    for (int i = 0; i < 3; ++i) {
+      benchmark(directory, java, calls);
+      benchmark(directory, jython, calls);
+
+      try {
+        Class.forName("org.jruby.Ruby");
+        benchmark(directory, jruby, calls);
+      }
+      catch (ClassNotFoundException e) {
+        System.out.println("  JRuby is not on the class path");
+      }
+    }
+  }
+
+  private static void benchmark(File directory, File file, int calls)
+    throws Exception {
+
+    final ScriptLocation script =
+      new ScriptLocation(new Directory(directory), file);
+
+    final ScriptEngine engine =
+      new MultilingualScriptEngine(script, new GrinderProperties());
+    engine.initialise(script);
+
+    final WorkerRunnable runnable = engine.createWorkerRunnable();
+
+    // Warm up.
+    for (int i = 0; i < calls / 10; ++i) {
+      runnable.run();
+    }
+
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < calls; ++i) {
+      runnable.run();
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    runnable.shutdown();
+    engine.shutdown();
+
+    System.out.println("  " + engine.getDescription() + ": " +
+                       nanos / calls + " ns per call");
+  }
+}
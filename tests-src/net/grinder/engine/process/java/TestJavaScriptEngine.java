@@ -0,0 +1,272 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.java;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.ScriptEngine.ScriptExecutionException;
+import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.util.Directory;
+
+
+/**
+ * Unit tests for {@link JavaScriptEngine}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestJavaScriptEngine extends AbstractFileTestCase {
+
+  // Updated by the scripts.
+  public static int s_initialised;
+  public static int s_calls;
+  public static int s_closed;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    s_initialised = 0;
+    s_calls = 0;
+    s_closed = 0;
+  }
+
+  private File writeSource(String packageName,
+                           String className,
+                           String runBody) throws Exception {
+    final File directory = new File(getDirectory(), "src");
+    directory.mkdirs();
+
+    final File file = new File(directory, className + ".java");
+    final PrintWriter out = new PrintWriter(new FileWriter(file));
+
+    if (packageName != null) {
+      out.println("package " + packageName + ";");
+    }
+
+    final String test = TestJavaScriptEngine.class.getName();
+
+    out.println("public class " + className +
+                "  implements java.util.concurrent.Callable<Object>," +
+                "  java.io.Closeable {");
+    out.println("  static { ++" + test + ".s_initialised; }");
+    out.println("  public Object call() throws Exception {");
+    out.println("    ++" + test + ".s_calls;");
+    out.println("    " + runBody);
+    out.println("    return null;");
+    out.println("  }");
+    out.println("  public void close() { ++" + test + ".s_closed; }");
+    out.println("}");
+    out.close();
+
+    return file;
+  }
+
+  private void checkEngine(ScriptLocation script) throws Exception {
+    final JavaScriptEngine engine = new JavaScriptEngine();
+    engine.initialise(script);
+    assertEquals(1, s_initialised);
+
+    final WorkerRunnable runnable1 = engine.createWorkerRunnable();
+    final WorkerRunnable runnable2 = engine.createWorkerRunnable();
+    runnable1.run();
+    runnable2.run();
+    runnable1.run();
+    assertEquals(3, s_calls);
+
+    runnable1.shutdown();
+    assertEquals(1, s_closed);
+
+    assertTrue(engine.getDescription().startsWith("Java "));
+    engine.shutdown();
+  }
+
+  public void testSource() throws Exception {
+    final File source = writeSource("a.b", "MyRunner", "");
+
+    checkEngine(new ScriptLocation(new Directory(source.getParentFile()),
+                                   source));
+
+    // The compiled classes are removed.
+    final File[] files = getDirectory().listFiles();
+    assertEquals(1, files.length);
+  }
+
+  public void testClassAndJar() throws Exception {
+    final File source = writeSource("a.b", "MyRunner", "");
+    final File classes = new File(getDirectory(), "classes");
+    classes.mkdirs();
+
+    new JavaSourceCompiler().compile(source, source.getParentFile(), classes);
+
+    final File classFile = new File(classes, "a/b/MyRunner.class");
+    assertTrue(classFile.exists());
+
+    checkEngine(new ScriptLocation(new Directory(getDirectory()), classFile));
+
+    // The jar is loaded by a new class loader, so the class is initialised
+    // again.
+    s_initialised = 0;
+    s_calls = 0;
+    s_closed = 0;
+
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS,
+                                     "a.b.MyRunner");
+
+    final File jar = new File(getDirectory(), "runner.jar");
+    final JarOutputStream out =
+      new JarOutputStream(new FileOutputStream(jar), manifest);
+    out.putNextEntry(new JarEntry("a/b/MyRunner.class"));
+
+    final InputStream in = new FileInputStream(classFile);
+    final byte[] buffer = new byte[4096];
+    int n;
+
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+
+    in.close();
+    out.close();
+
+    checkEngine(new ScriptLocation(new Directory(getDirectory()), jar));
+  }
+
+  private static Set<String> getCompiledDirectories() {
+    final Set<String> result = new HashSet<String>();
+    final String[] names =
+      new File(System.getProperty("java.io.tmpdir")).list();
+
+    if (names != null) {
+      for (String name : names) {
+        if (name.startsWith("grinder-java")) {
+          result.add(name);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  public void testBadScripts() throws Exception {
+    final Set<String> compiledDirectories = getCompiledDirectories();
+
+    final JavaScriptEngine engine = new JavaScriptEngine();
+
+    final File directory = new File(getDirectory(), "src");
+    directory.mkdirs();
+
+    final File broken = new File(directory, "Broken.java");
+    final PrintWriter out = new PrintWriter(new FileWriter(broken));
+    out.println("public class Broken { int x = ; }");
+    out.close();
+
+    try {
+      engine.initialise(new ScriptLocation(new Directory(directory), broken));
+      fail("Expected EngineException");
+    }
+    catch (EngineException e) {
+      assertTrue(e.getMessage(), e.getMessage().indexOf("Broken.java") != -1);
+    }
+
+    final File notCallable = new File(directory, "NotCallable.java");
+    final PrintWriter out2 = new PrintWriter(new FileWriter(notCallable));
+    out2.println("public class NotCallable { }");
+    out2.close();
+
+    try {
+      new JavaScriptEngine().initialise(
+        new ScriptLocation(new Directory(directory), notCallable));
+      fail("Expected ScriptExecutionException");
+    }
+    catch (ScriptExecutionException e) {
+    }
+
+    final File jar = new File(directory, "empty.jar");
+    new JarOutputStream(new FileOutputStream(jar), new Manifest()).close();
+
+    try {
+      new JavaScriptEngine().initialise(
+        new ScriptLocation(new Directory(directory), jar));
+      fail("Expected EngineException");
+    }
+    catch (EngineException e) {
+    }
+
+    // Failed compilations are cleaned up.
+    assertEquals(compiledDirectories, getCompiledDirectories());
+  }
+
+  public void testRunnerExceptions() throws Exception {
+    final File source =
+      writeSource(null, "Thrower",
+                  "if (true) { throw new java.io.IOException(\"x\"); }");
+
+    final JavaScriptEngine engine = new JavaScriptEngine();
+    engine.initialise(new ScriptLocation(new Directory(getDirectory()),
+                                         source));
+
+    final WorkerRunnable runnable = engine.createWorkerRunnable();
+
+    try {
+      runnable.run();
+      fail("Expected ScriptExecutionException");
+    }
+    catch (ScriptExecutionException e) {
+      assertEquals("x", e.getCause().getMessage());
+    }
+
+    final Callable<Object> callable = new Callable<Object>() {
+        public Object call() {
+          ++s_calls;
+          return null;
+        }
+      };
+
+    engine.createWorkerRunnable(callable).run();
+    assertEquals(2, s_calls);
+
+    try {
+      engine.createWorkerRunnable(new Object());
+      fail("Expected ScriptExecutionException");
+    }
+    catch (ScriptExecutionException e) {
+    }
+
+    engine.shutdown();
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright (C) 2010 Mike Stone
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.process.jruby;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
+import net.grinder.util.Directory;
+
+
+/**
+ * Measures how the throughput of a CPU bound JRuby script scales with the
+ * number of worker threads, for each of the JRuby runtime strategies.
+ *
+ * <p>Not a unit test. Requires JRuby. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.engine.process.jruby.JRubyRuntimeBenchmark [seconds]
+ * </pre>
+ *
+ * @author Mike Stone
+ */
+public class JRubyRuntimeBenchmark {
+    private static final String SCRIPT =
+        "$runs = 0\n" +
+        "class TestRunner\n" +
+        "  def run\n" +
+        "    h = {}\n" +
+        "    100.times { |i| h[\"k#{i}\"] = i.to_s * 3 }\n" +
+        "    h.values.map { |v| v.upcase }.sort\n" +
+        "    $runs += 1\n" +
+        "  end\n" +
+        "end\n";
+
+    private static final String[] STRATEGIES = { "shared", "4", "thread" };
+
+    public static void main(String[] args) throws Exception {
+        final long millis = (args.length > 0 ? Integer.parseInt(args[0]) : 5) * 1000L;
+
+        final File script = File.createTempFile("benchmark", ".rb");
+        script.deleteOnExit();
+
+        final FileWriter writer = new FileWriter(script);
+        writer.write(SCRIPT);
+        writer.close();
+
+        final ScriptLocation location = new ScriptLocation(new Directory(script.getParentFile()), script);
+
+        for (String strategy : STRATEGIES) {
+            System.out.println(JRubyScriptEngine.RUNTIMES_PROPERTY + "=" + strategy);
+
+            for (int threads = 1; threads <= 64; threads *= 2) {
+                final GrinderProperties properties = new GrinderProperties();
+                properties.setProperty(JRubyScriptEngine.RUNTIMES_PROPERTY, strategy);
+                properties.setInt("grinder.threads", threads);
+
+                final JRubyScriptEngine engine = new JRubyScriptEngine(properties);
+                engine.initialise(location);
+
+                final long runs = measure(engine, threads, millis);
+
+                System.out.println("  " + threads + " threads: " + (runs * 1000 / millis) + " runs/s");
+
+                engine.shutdown();
+            }
+        }
+    }
+
+    private static long measure(final JRubyScriptEngine engine, int threads, long millis) throws Exception {
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong runs = new AtomicLong();
+        final Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        final WorkerRunnable runnable = engine.createWorkerRunnable();
+
+                        // Warm up.
+                        for (int j = 0; j < 100; ++j) {
+                            runnable.run();
+                        }
+
+                        ready.countDown();
+                        start.await();
+
+                        long count = 0;
+
+                        while (!stop.get()) {
+                            runnable.run();
+                            ++count;
+                        }
+
+                        runs.addAndGet(count);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            workers[i].start();
+        }
+
+        ready.await();
+        start.countDown();
+
+        Thread.sleep(millis);
+        stop.set(true);
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        return runs.get();
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.jython;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.CompiledScriptCache;
+import net.grinder.util.Directory;
+
+
+/**
+ * Measures the time from creating a {@link JythonScriptEngine} to the end of
+ * the first call to a <code>TestRunner</code>, for a large generated script.
+ *
+ * <p>Each measurement should be made in a new JVM. Run once with
+ * <code>nocache</code>, and twice with <code>cache</code>; the first cached
+ * run populates the cache.</p>
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.engine.process.jython.JythonStartupBenchmark
+ *   directory nocache|cache [functions]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class JythonStartupBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final File directory = new File(args[0]).getAbsoluteFile();
+    final boolean useCache = args[1].equals("cache");
+    final int functions = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+    directory.mkdirs();
+
+    final File scriptFile = new File(directory, "script.py");
+    final PrintWriter out = new PrintWriter(new FileWriter(scriptFile));
+
+    for (int i = 0; i < functions; ++i) {
+      out.println("def f" + i + "(a, b):");
+      out.println("  c = [x * a for x in range(b) if x % 3]");
+      out.println("  d = {'a': a, 'b': b, 'c': c}");
+      out.println("  return '%(a)s %(b)s' % d");
+    }
+
+    out.println("class TestRunner:");
+    out.println("  def __call__(self):");
+    out.println("    f0(1, 2)");
+    out.close();
+
+    final ScriptLocation script =
+      new ScriptLocation(new Directory(directory), scriptFile);
+
+    final CompiledScriptCache cache =
+      useCache ? new CompiledScriptCache(new File(directory, "cache")) : null;
+
+    final long start = System.nanoTime();
+
+    final JythonScriptEngine engine = new JythonScriptEngine(cache);
+    final long created = System.nanoTime();
+
+    engine.initialise(script);
+    final long initialised = System.nanoTime();
+
+    engine.createWorkerRunnable().run();
+    final long firstRun = System.nanoTime();
+
+    System.out.println((useCache ? "cache" : "no cache") + ": " +
+                       "create " + (created - start) / 1000000 + " ms, " +
+                       "initialise " + (initialised - created) / 1000000 +
+                       " ms, " +
+                       "first run " + (firstRun - initialised) / 1000000 +
+                       " ms, " +
+                       "total " + (firstRun - start) / 1000000 + " ms");
+  }
+}
@@ -28,6 +28,7 @@ import java.io.Writer;
 
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.CompiledScriptCache;
 import net.grinder.engine.process.ScriptEngine;
 import net.grinder.engine.process.ScriptEngine.WorkerRunnable;
 import net.grinder.testutility.AbstractFileTestCase;
@@ -131,6 +132,76 @@ public class TestJythonScriptEngine extends AbstractFileTestCase {
     scriptEngine2.shutdown();
   }
 
+  public void testCompiledScriptCache() throws Exception {
+    final File cacheDirectory = new File(getDirectory(), "cache");
+    final CompiledScriptCache cache = new CompiledScriptCache(cacheDirectory);
+
+    final ScriptLocation script =
+      new ScriptLocation(new Directory(getDirectory()),
+                         new File(getDirectory(), "script"));
+
+    final PrintWriter w1 = new PrintWriter(new FileWriter(script.getFile()));
+    w1.println("from net.grinder.engine.process.jython import TestJythonScriptEngine");
+    w1.println("x = 'hello'");
+    w1.println("class TestRunner:");
+    w1.println(" def __call__(self):");
+    w1.println("  TestJythonScriptEngine.callback(x)");
+    w1.close();
+
+    final JythonScriptEngine scriptEngine1 = new JythonScriptEngine(cache);
+    scriptEngine1.initialise(script);
+    scriptEngine1.createWorkerRunnable().run();
+    assertEquals("hello", s_lastCallbackObject);
+
+    final File[] entries = cacheDirectory.listFiles();
+    assertEquals(1, entries.length);
+    final long size = entries[0].length();
+    assertTrue(size > 0);
+
+    // Second engine loads from the cache.
+    s_lastCallbackObject = null;
+    final JythonScriptEngine scriptEngine2 = new JythonScriptEngine(cache);
+    scriptEngine2.initialise(script);
+    scriptEngine2.createWorkerRunnable().run();
+    assertEquals("hello", s_lastCallbackObject);
+    assertEquals(1, cacheDirectory.listFiles().length);
+
+    // A corrupt entry is replaced.
+    final FileWriter corrupt = new FileWriter(entries[0]);
+    corrupt.write("rubbish");
+    corrupt.close();
+
+    s_lastCallbackObject = null;
+    final JythonScriptEngine scriptEngine3 = new JythonScriptEngine(cache);
+    scriptEngine3.initialise(script);
+    scriptEngine3.createWorkerRunnable().run();
+    assertEquals("hello", s_lastCallbackObject);
+    assertEquals(size, entries[0].length());
+
+    // A changed script gets a new entry.
+    final PrintWriter w2 = new PrintWriter(new FileWriter(script.getFile()));
+    w2.println("class TestRunner:pass");
+    w2.close();
+
+    new JythonScriptEngine(cache).initialise(script);
+    assertEquals(2, cacheDirectory.listFiles().length);
+
+    // Syntax errors are reported as before.
+    final PrintWriter w3 = new PrintWriter(new FileWriter(script.getFile()));
+    w3.println("class TestRunner pass");
+    w3.close();
+
+    try {
+      new JythonScriptEngine(cache).initialise(script);
+      fail("Expected JythonScriptExecutionException");
+    }
+    catch (JythonScriptExecutionException e) {
+      AssertUtilities.assertContains(e.getShortMessage(), "SyntaxError");
+    }
+
+    assertEquals(2, cacheDirectory.listFiles().length);
+  }
+
   public void testShutdown() throws Exception {
     final JythonScriptEngine scriptEngine = new JythonScriptEngine();
 
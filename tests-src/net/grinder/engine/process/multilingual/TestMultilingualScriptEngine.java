@@ -0,0 +1,140 @@
+// Copyright (C) 2010 Mike Stone
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.process.multilingual;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.engine.process.ScriptEngine;
+import net.grinder.engine.process.ScriptEngineService;
+import net.grinder.engine.process.java.JavaScriptEngineService;
+import net.grinder.engine.process.jruby.JRubyScriptEngineService;
+import net.grinder.engine.process.jython.JythonScriptEngineService;
+import net.grinder.testutility.AbstractFileTestCase;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.Directory;
+
+
+/**
+ * Unit tests for {@link MultilingualScriptEngine} and
+ * {@link ScriptEngineRegistry}.
+ *
+ * @author Mike Stone
+ */
+public class TestMultilingualScriptEngine extends AbstractFileTestCase {
+    private static int s_created;
+
+    @Override
+    protected void setUp() throws Exception {
+        s_created = 0;
+    }
+
+    public void testBuiltInServices() throws Exception {
+        final ScriptEngineRegistry registry = new ScriptEngineRegistry(getClass().getClassLoader());
+
+        assertTrue(registry.get("py") instanceof JythonScriptEngineService);
+        assertSame(registry.get("py"), registry.get("jy"));
+        assertTrue(registry.get("rb") instanceof JRubyScriptEngineService);
+        assertSame(registry.get("rb"), registry.get("jrb"));
+        assertTrue(registry.get("java") instanceof JavaScriptEngineService);
+        assertSame(registry.get("java"), registry.get("class"));
+        assertSame(registry.get("java"), registry.get("jar"));
+        assertNull(registry.get("foo"));
+    }
+
+    public void testPluggedInServices() throws Exception {
+        final File services = new File(getDirectory(), ScriptEngineRegistry.SERVICES_RESOURCE);
+        services.getParentFile().mkdirs();
+
+        final Writer writer = new FileWriter(services);
+        writer.write("# A comment.\n\n  " + MyScriptEngineService.class.getName() + " # Another comment.\n");
+        writer.close();
+
+        final ClassLoader loader = new URLClassLoader(new URL[] { getDirectory().toURI().toURL() }, getClass().getClassLoader());
+        final ScriptEngineRegistry registry = new ScriptEngineRegistry(loader);
+
+        // Plug-ins replace the built in services.
+        assertTrue(registry.get("py") instanceof MyScriptEngineService);
+        assertTrue(registry.get("foo") instanceof MyScriptEngineService);
+        assertTrue(registry.get("rb") instanceof JRubyScriptEngineService);
+        assertEquals(0, s_created);
+
+        final Writer writer2 = new FileWriter(services, true);
+        writer2.write("not.a.Class\n");
+        writer2.close();
+
+        try {
+            new ScriptEngineRegistry(loader);
+            fail("Expected EngineException");
+        } catch (EngineException e) {
+        }
+    }
+
+    public void testOnlyCreatesEngineForScript() throws Exception {
+        final ScriptEngineRegistry registry = new ScriptEngineRegistry(getClass().getClassLoader());
+        registry.register(new MyScriptEngineService());
+
+        final ScriptLocation script = new ScriptLocation(new Directory(getDirectory()), new File("script.foo"));
+        final MultilingualScriptEngine engine = new MultilingualScriptEngine(registry, script, new GrinderProperties());
+        assertEquals(1, s_created);
+
+        engine.initialise(script);
+        assertTrue(engine.getDescription().startsWith("Multilingual 0.0.1: "));
+        engine.createWorkerRunnable();
+        engine.shutdown();
+        assertEquals(1, s_created);
+
+        try {
+            new MultilingualScriptEngine(registry, new ScriptLocation(new Directory(getDirectory()), new File("script")), new GrinderProperties());
+            fail("Expected EngineException");
+        } catch (EngineException e) {
+        }
+
+        try {
+            new MultilingualScriptEngine(registry, new ScriptLocation(new Directory(getDirectory()), new File("script.bar")), new GrinderProperties());
+            fail("Expected EngineException");
+        } catch (EngineException e) {
+        }
+
+        assertEquals(1, s_created);
+    }
+
+    public static final class MyScriptEngineService implements ScriptEngineService {
+        @Override
+        public String[] getExtensions() {
+            return new String[] { "foo", "py" };
+        }
+
+        @Override
+        public ScriptEngine createScriptEngine(GrinderProperties properties) {
+            ++s_created;
+            return RandomStubFactory.create(ScriptEngine.class).getStub();
+        }
+    }
+}
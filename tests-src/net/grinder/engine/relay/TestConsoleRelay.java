@@ -0,0 +1,342 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.relay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+
+import junit.framework.TestCase;
+
+import net.grinder.common.LoggerStubFactory;
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.common.processidentity.WorkerIdentity;
+import net.grinder.common.processidentity.WorkerProcessReport;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.ClientReceiver;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Connector;
+import net.grinder.communication.FanOutServerSender;
+import net.grinder.communication.Message;
+import net.grinder.communication.Receiver;
+import net.grinder.communication.Sender;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.communication.SimpleMessage;
+import net.grinder.engine.agent.StubAgentIdentity;
+import net.grinder.messages.console.AgentAddress;
+import net.grinder.messages.console.AgentProcessReportMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+
+
+/**
+ * Unit tests for {@link ConsoleRelay}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestConsoleRelay extends TestCase {
+
+  private static final String LOCALHOST = "127.0.0.1";
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final Test m_test1 = new StubTest(1, "test 1");
+
+  private final LoggerStubFactory m_loggerStubFactory =
+    new LoggerStubFactory();
+
+  private final Timer m_timer = new Timer(true);
+
+  private final List<Object> m_toShutdown = new ArrayList<Object>();
+
+  private Acceptor m_consoleAcceptor;
+  private ServerReceiver m_consoleReceiver;
+  private FanOutServerSender m_consoleSender;
+
+  protected void setUp() throws Exception {
+    m_consoleAcceptor = new Acceptor(LOCALHOST, 0, 1);
+    m_consoleReceiver = new ServerReceiver();
+    m_consoleReceiver.receiveFrom(m_consoleAcceptor,
+                                  new ConnectionType[] {
+                                    ConnectionType.AGENT,
+                                    ConnectionType.WORKER,
+                                  },
+                                  3,
+                                  10);
+    m_consoleSender =
+      new FanOutServerSender(m_consoleAcceptor, ConnectionType.AGENT, 3);
+  }
+
+  protected void tearDown() throws Exception {
+    for (Object o : m_toShutdown) {
+      if (o instanceof ConsoleRelay) {
+        ((ConsoleRelay) o).shutdown();
+      }
+      else if (o instanceof Sender) {
+        ((Sender) o).shutdown();
+      }
+      else {
+        ((Receiver) o).shutdown();
+      }
+    }
+
+    m_timer.cancel();
+    m_consoleSender.shutdown();
+    m_consoleReceiver.shutdown();
+    m_consoleAcceptor.shutdown();
+  }
+
+  private ConsoleRelay createRelay(int upstreamPort, long interval)
+    throws Exception {
+
+    final ConsoleRelay relay =
+      new ConsoleRelay(LOCALHOST, upstreamPort, LOCALHOST, 0, m_timer,
+                       interval, m_loggerStubFactory.getLogger());
+
+    m_toShutdown.add(relay);
+
+    return relay;
+  }
+
+  private ClientReceiver connectAgent(ConsoleRelay relay,
+                                      AgentIdentity identity)
+    throws Exception {
+
+    final ClientReceiver receiver =
+      ClientReceiver.connect(
+        new Connector(LOCALHOST, relay.getPort(), ConnectionType.AGENT),
+        new AgentAddress(identity));
+
+    m_toShutdown.add(receiver);
+
+    final Sender sender = ClientSender.connect(receiver);
+
+    sender.send(
+      new AgentProcessReportMessage(identity,
+                                    AgentProcessReportMessage.STATE_STARTED,
+                                    null));
+
+    return receiver;
+  }
+
+  private Sender connectWorker(ConsoleRelay relay) throws Exception {
+    final Sender sender =
+      ClientSender.connect(
+        new Connector(LOCALHOST, relay.getPort(), ConnectionType.WORKER));
+
+    m_toShutdown.add(sender);
+
+    return sender;
+  }
+
+  private ReportStatisticsMessage createReport(long errors) {
+    final TestStatisticsMap statisticsMap = new TestStatisticsMap();
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.setValue(m_errorsIndex, errors);
+    statisticsMap.put(m_test1, statistics);
+    return new ReportStatisticsMessage(statisticsMap);
+  }
+
+  private long errors(TestStatisticsMap statisticsMap) {
+    final long[] result = { -1 };
+
+    statisticsMap.new ForEach() {
+      protected void next(Test test, StatisticsSet statistics) {
+        result[0] = statistics.getValue(m_errorsIndex);
+      }
+    }
+    .iterate();
+
+    return result[0];
+  }
+
+  private <T extends Message> T receive(Receiver receiver, Class<T> type)
+    throws Exception {
+
+    while (true) {
+      final Message message = receiver.waitForMessage();
+      assertNotNull(message);
+
+      if (type.isInstance(message)) {
+        return type.cast(message);
+      }
+    }
+  }
+
+  public void testRelayChain() throws Exception {
+    final ConsoleRelay relay1 =
+      createRelay(m_consoleAcceptor.getPort(), 1000000);
+    final ConsoleRelay relay2 = createRelay(relay1.getPort(), 1000000);
+
+    final StubAgentIdentity agent1 = new StubAgentIdentity("agent 1");
+    final StubAgentIdentity agent2 = new StubAgentIdentity("agent 2");
+
+    // Agent 1 connects through both relays, agent 2 through the first.
+    final ClientReceiver agentReceiver1 = connectAgent(relay2, agent1);
+    final ClientReceiver agentReceiver2 = connectAgent(relay1, agent2);
+
+    final List<AgentIdentity> agents = new ArrayList<AgentIdentity>();
+    agents.add(
+      receive(m_consoleReceiver, AgentProcessReportMessage.class)
+      .getAgentIdentity());
+    agents.add(
+      receive(m_consoleReceiver, AgentProcessReportMessage.class)
+      .getAgentIdentity());
+    assertTrue(agents.contains(agent1));
+    assertTrue(agents.contains(agent2));
+
+    assertEquals(2, relay1.getNumberOfAgents());
+    assertEquals(1, relay2.getNumberOfAgents());
+
+    // Addressed messages reach the right agent.
+    final SimpleMessage message1 = new SimpleMessage();
+    m_consoleSender.send(new AgentAddress(agent1), message1);
+    assertEquals(message1, agentReceiver1.waitForMessage());
+
+    final SimpleMessage message2 = new SimpleMessage();
+    m_consoleSender.send(new AgentAddress(agent2), message2);
+    assertEquals(message2, agentReceiver2.waitForMessage());
+
+    // Broadcast messages reach every agent.
+    final SimpleMessage message3 = new SimpleMessage();
+    m_consoleSender.send(message3);
+    assertEquals(message3, agentReceiver1.waitForMessage());
+    assertEquals(message3, agentReceiver2.waitForMessage());
+
+    // Statistics and worker reports are merged.
+    final WorkerIdentity worker1 = agent1.createWorkerIdentity();
+
+    final Sender workerSender1 = connectWorker(relay2);
+    final Sender workerSender2 = connectWorker(relay2);
+    final Sender workerSender3 = connectWorker(relay1);
+
+    workerSender1.send(createReport(1));
+    workerSender2.send(createReport(2));
+    workerSender3.send(createReport(4));
+
+    workerSender1.send(
+      new WorkerProcessReportMessage(worker1,
+                                     WorkerProcessReport.STATE_RUNNING,
+                                     (short) 1,
+                                     (short) 2));
+    workerSender1.send(
+      new WorkerProcessReportMessage(worker1,
+                                     WorkerProcessReport.STATE_RUNNING,
+                                     (short) 2,
+                                     (short) 2));
+
+    // Other worker messages are forwarded immediately. Once they arrive,
+    // the reports ahead of them have been merged.
+    final SimpleMessage message4 = new SimpleMessage();
+    workerSender1.send(message4);
+    workerSender2.send(message4);
+    workerSender3.send(message4);
+
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(message4,
+                   receive(m_consoleReceiver, SimpleMessage.class));
+    }
+
+    relay2.flush();
+
+    // Sent through relay 2, so follows its report into relay 1.
+    final SimpleMessage message5 = new SimpleMessage();
+    workerSender1.send(message5);
+    assertEquals(message5, receive(m_consoleReceiver, SimpleMessage.class));
+
+    relay1.flush();
+
+    final ReportStatisticsMessage report =
+      receive(m_consoleReceiver, ReportStatisticsMessage.class);
+    assertEquals(7, errors(report.getStatisticsDelta()));
+
+    final WorkerProcessReportMessage workerReport =
+      receive(m_consoleReceiver, WorkerProcessReportMessage.class);
+    assertEquals(worker1, workerReport.getWorkerIdentity());
+    assertEquals(2, workerReport.getNumberOfRunningThreads());
+
+    // A finished agent is no longer relayed.
+    final Sender agentSender2 = ClientSender.connect(agentReceiver2);
+    agentSender2.send(
+      new AgentProcessReportMessage(agent2,
+                                    AgentProcessReportMessage.STATE_FINISHED,
+                                    null));
+
+    final AgentProcessReportMessage finished =
+      receive(m_consoleReceiver, AgentProcessReportMessage.class);
+    assertEquals(agent2, finished.getAgentIdentity());
+    assertEquals(AgentProcessReportMessage.STATE_FINISHED,
+                 finished.getState());
+    assertEquals(1, relay1.getNumberOfAgents());
+  }
+
+  public void testAgentDisconnects() throws Exception {
+    final ConsoleRelay relay =
+      createRelay(m_consoleAcceptor.getPort(), 1000000);
+
+    final StubAgentIdentity agent = new StubAgentIdentity("agent");
+    final ClientReceiver agentReceiver = connectAgent(relay, agent);
+
+    assertEquals(agent,
+                 receive(m_consoleReceiver, AgentProcessReportMessage.class)
+                 .getAgentIdentity());
+    assertEquals(1, relay.getNumberOfAgents());
+
+    // The relay's worker connection, and the agent's upstream connection.
+    assertEquals(2, m_consoleAcceptor.getNumberOfConnections());
+
+    // The agent goes away without reporting that it has finished.
+    agentReceiver.shutdown();
+
+    for (int i = 0;
+         relay.getNumberOfAgents() > 0 ||
+         m_consoleAcceptor.getNumberOfConnections() > 1;
+         ++i) {
+      assertTrue("upstream agent connection closed", i < 100);
+      Thread.sleep(50);
+    }
+  }
+
+  public void testPeriodicFlush() throws Exception {
+    final ConsoleRelay relay = createRelay(m_consoleAcceptor.getPort(), 10);
+
+    connectWorker(relay).send(createReport(3));
+
+    final ReportStatisticsMessage report =
+      receive(m_consoleReceiver, ReportStatisticsMessage.class);
+    assertEquals(3, errors(report.getStatisticsDelta()));
+  }
+}
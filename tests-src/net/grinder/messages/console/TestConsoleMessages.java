@@ -26,20 +26,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import junit.framework.TestCase;
+import net.grinder.common.StubTest;
 import net.grinder.common.Test;
 import net.grinder.common.processidentity.WorkerIdentity;
+import net.grinder.communication.MessageInputStream;
 import net.grinder.engine.agent.StubAgentIdentity;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
 import net.grinder.statistics.ExpressionView;
 import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsSetFactory;
 import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
 import net.grinder.testutility.Serializer;
 
 
@@ -101,6 +109,119 @@ public class TestConsoleMessages extends TestCase {
     }
   }
 
+  public void testRegisterStatisticMessage() throws Exception {
+
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final String name = "TestConsoleMessages.registered";
+    indexMap.registerLongIndex(name);
+
+    final RegisterStatisticMessage original =
+      new RegisterStatisticMessage(RegisterStatisticMessage.LONG,
+                                   name,
+                                   indexMap);
+
+    final RegisterStatisticMessage received = Serializer.serialize(original);
+
+    assertEquals(RegisterStatisticMessage.LONG, received.getType());
+    assertEquals(name, received.getStatisticName());
+    assertTrue(Arrays.equals(indexMap.getLongSlots(name),
+                             received.getLongSlots()));
+    assertEquals(0, received.getDoubleSlots().length);
+
+    // Registered with a different type by the sender.
+    try {
+      Serializer.serialize(
+        new RegisterStatisticMessage(RegisterStatisticMessage.DOUBLE,
+                                     name,
+                                     indexMap));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    try {
+      Serializer.serialize(new RegisterStatisticMessage(99, "x", indexMap));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    assertNull(indexMap.getLongIndex("x"));
+  }
+
+  public void testStatisticsFromConnection() throws Exception {
+
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+    final StatisticsSetFactory statisticsSetFactory =
+      StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+
+    final String name = "TestConsoleMessages.connection";
+    final LongIndex index = indexMap.registerLongIndex(name);
+    final LongIndex errors = indexMap.getLongIndex("errors");
+
+    final StatisticsSet statistics = statisticsSetFactory.create();
+    statistics.setValue(index, 10);
+    statistics.setValue(errors, 1);
+
+    final TestStatisticsMap statisticsMap =
+      new TestStatisticsMap(statisticsSetFactory);
+    statisticsMap.put(new StubTest(1, ""), statistics);
+
+    final ReportStatisticsMessage report =
+      new ReportStatisticsMessage(statisticsMap);
+
+    final ConcurrentMap<Object, Object> connectionState =
+      new ConcurrentHashMap<Object, Object>();
+
+    // The connection hasn't registered the statistic.
+    final StatisticsSet before =
+      readFromConnection(report, connectionState)
+      .getStatisticsDelta().nonCompositeStatisticsTotals();
+
+    assertEquals(1, before.getValue(errors));
+    assertEquals(0, before.getValue(index));
+
+    readFromConnection(
+      new RegisterStatisticMessage(RegisterStatisticMessage.LONG,
+                                   name,
+                                   indexMap),
+      connectionState);
+
+    final StatisticsSet after =
+      readFromConnection(report, connectionState)
+      .getStatisticsDelta().nonCompositeStatisticsTotals();
+
+    assertEquals(1, after.getValue(errors));
+    assertEquals(10, after.getValue(index));
+
+    final StatisticsSet otherConnection =
+      readFromConnection(report, new ConcurrentHashMap<Object, Object>())
+      .getStatisticsDelta().nonCompositeStatisticsTotals();
+
+    assertEquals(0, otherConnection.getValue(index));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T readFromConnection(
+    T message, ConcurrentMap<Object, Object> connectionState)
+    throws Exception {
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    objectOutputStream.writeObject(message);
+    objectOutputStream.close();
+
+    return (T) new MessageInputStream(
+      new ByteArrayInputStream(byteOutputStream.toByteArray()),
+      connectionState).readObject();
+  }
+
   public void testRegisterTestsMessage() throws Exception {
 
     final Collection<Test> c = new HashSet<Test>();
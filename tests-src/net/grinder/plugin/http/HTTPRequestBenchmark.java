@@ -0,0 +1,347 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.grinder.common.GrinderException;
+import net.grinder.common.Logger;
+import net.grinder.common.SSLContextFactory;
+import net.grinder.plugininterface.GrinderPlugin;
+import net.grinder.plugininterface.PluginProcessContext;
+import net.grinder.plugininterface.PluginRegistry;
+import net.grinder.plugininterface.PluginThreadContext;
+import net.grinder.script.Statistics;
+import net.grinder.script.Grinder.ScriptContext;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.StandardTimeAuthority;
+
+import HTTPClient.NVPair;
+import HTTPClient.URI;
+
+
+/**
+ * Measures the client CPU time per {@link HTTPRequest} call for a typical
+ * recorded script request shape: a relative URI resolved against a default
+ * URL, default headers, and per-call headers.
+ *
+ * <p>The cost of preparing each request is also measured in isolation, with
+ * and without a {@link RequestTemplate}. The end to end figure includes the
+ * loopback network and the test stubs, and is noisy.</p>
+ *
+ * <p>The end to end figures are reported for each of the response logging
+ * modes that can be set through {@link HTTPPluginControl}. Responses are
+ * logged to a temporary file.</p>
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.plugin.http.HTTPRequestBenchmark [requests]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class HTTPRequestBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+
+    benchmarkPreparation(requests * 20);
+
+    final RandomStubFactory<Statistics> statisticsStubFactory =
+      RandomStubFactory.create(Statistics.class);
+    statisticsStubFactory.setResult("isTestInProgress", Boolean.FALSE);
+
+    final File logFile = File.createTempFile("benchmark", ".log");
+    logFile.deleteOnExit();
+    final FileLogger logger = new FileLogger(logFile);
+
+    final RandomStubFactory<ScriptContext> scriptContextStubFactory =
+      RandomStubFactory.create(ScriptContext.class);
+    scriptContextStubFactory.setResult("getStatistics",
+                                       statisticsStubFactory.getStub());
+    scriptContextStubFactory.setResult("getLogger", logger);
+
+    final RandomStubFactory<PluginThreadContext> threadContextStubFactory =
+      RandomStubFactory.create(PluginThreadContext.class);
+
+    final HTTPPluginThreadState threadState =
+      new HTTPPluginThreadState(
+        threadContextStubFactory.getStub(),
+        RandomStubFactory.create(SSLContextFactory.class).getStub(),
+        null,
+        new StandardTimeAuthority());
+
+    final RandomStubFactory<PluginProcessContext>
+      pluginProcessContextStubFactory =
+        RandomStubFactory.create(PluginProcessContext.class);
+    final PluginProcessContext pluginProcessContext =
+      pluginProcessContextStubFactory.getStub();
+
+    pluginProcessContextStubFactory.setResult("getPluginThreadListener",
+                                              threadState);
+    pluginProcessContextStubFactory.setResult(
+      "getScriptContext", scriptContextStubFactory.getStub());
+    pluginProcessContextStubFactory.setResult(
+      "getStatisticsServices", StatisticsServicesImplementation.getInstance());
+
+    new PluginRegistry() {
+      {
+        setInstance(this);
+      }
+
+      public void register(GrinderPlugin plugin) throws GrinderException {
+        plugin.initialize(pluginProcessContext);
+      }
+    };
+
+    HTTPPlugin.getPlugin().initialize(pluginProcessContext);
+
+    final HTTPRequestHandler handler = new HTTPRequestHandler();
+    handler.start();
+
+    try {
+      final HTTPRequest request = new HTTPRequest();
+      request.setUrl(handler.getURL());
+      request.setHeaders(new NVPair[] {
+        new NVPair("Accept-Language", "en-gb,en;q=0.5"),
+        new NVPair("Accept-Encoding", "gzip,deflate"),
+        new NVPair("Accept-Charset", "ISO-8859-1,utf-8;q=0.7,*;q=0.7"),
+        new NVPair("User-Agent", "Mozilla/5.0 (X11; U; Linux i686)"),
+      });
+
+      final NVPair[] headers = {
+        new NVPair("Accept", "text/html,application/xhtml+xml"),
+        new NVPair("Referer", handler.getURL() + "/index.html"),
+      };
+
+      final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+      final String[] modes = {
+        "log every response",
+        "log batches of 100",
+        "log 1 in 100",
+        "logging off",
+      };
+
+      final int[][] settings = { { 1, 1 }, { 1, 100 }, { 100, 1 }, { 0, 1 } };
+
+      for (int run = 0; run < 3 * modes.length; ++run) {
+        final int mode = run % modes.length;
+
+        HTTPPluginControl.setResponseLogSampleInterval(settings[mode][0]);
+        HTTPPluginControl.setResponseLogBatchSize(settings[mode][1]);
+
+        final long startCPU = threadMXBean.getCurrentThreadCpuTime();
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < requests; ++i) {
+          request.GET("/images/logo" + (i % 20) + ".gif",
+                      new NVPair[] { new NVPair("q", "x") },
+                      headers);
+
+          if (i % 1000 == 0) {
+            // Don't let the stubs accumulate call history.
+            statisticsStubFactory.resetCallHistory();
+            scriptContextStubFactory.resetCallHistory();
+            threadContextStubFactory.resetCallHistory();
+            pluginProcessContextStubFactory.resetCallHistory();
+          }
+        }
+
+        threadState.endRun();
+
+        final long cpu = threadMXBean.getCurrentThreadCpuTime() - startCPU;
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.println("Run " + run + ", " + modes[mode] + ": " +
+                           (cpu / requests / 1000) + " us CPU/request, " +
+                           (requests * 1000000000L / elapsed) +
+                           " requests/s");
+      }
+    }
+    finally {
+      handler.shutdown();
+      logger.close();
+    }
+  }
+
+  private static final NVPair[] DEFAULT_HEADERS = {
+    new NVPair("Accept-Language", "en-gb,en;q=0.5"),
+    new NVPair("Accept-Encoding", "gzip,deflate"),
+    new NVPair("Accept-Charset", "ISO-8859-1,utf-8;q=0.7,*;q=0.7"),
+    new NVPair("User-Agent", "Mozilla/5.0 (X11; U; Linux i686)"),
+  };
+
+  private static final NVPair[] HEADERS = {
+    new NVPair("Accept", "text/html,application/xhtml+xml"),
+    new NVPair("Referer", "http://localhost:8080/index.html"),
+  };
+
+  /**
+   * Compares the work done before the request is written: resolving the URI,
+   * merging the headers, and encoding the header lines.
+   */
+  private static void benchmarkPreparation(int iterations) throws Exception {
+    final URI defaultURL = new URI("http://localhost:8080/");
+    final String[] uris = new String[20];
+
+    for (int i = 0; i < uris.length; ++i) {
+      uris[i] = "/images/logo" + i + ".gif";
+    }
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buffer);
+
+    final byte[][] encoded =
+      new byte[DEFAULT_HEADERS.length + HEADERS.length][];
+
+    for (int run = 0; run < 5; ++run) {
+      long start = System.nanoTime();
+
+      for (int i = 0; i < iterations; ++i) {
+        final URI url = new URI(defaultURL, uris[i % uris.length]);
+        final String path = url.getPathAndQuery();
+
+        final NVPair[] merged =
+          new NVPair[DEFAULT_HEADERS.length + HEADERS.length];
+        final Set<String> seen = new HashSet<String>();
+
+        for (int j = 0; j < HEADERS.length; ++j) {
+          merged[j] = HEADERS[j];
+          seen.add(HEADERS[j].getName());
+        }
+
+        for (int j = 0; j < DEFAULT_HEADERS.length; ++j) {
+          if (!seen.contains(DEFAULT_HEADERS[j].getName())) {
+            merged[HEADERS.length + j] = DEFAULT_HEADERS[j];
+          }
+        }
+
+        buffer.reset();
+        out.writeBytes(path);
+
+        for (int j = 0; j < merged.length; ++j) {
+          out.writeBytes(merged[j].getName().trim() + ": " +
+                         merged[j].getValue().trim() + "\r\n");
+        }
+      }
+
+      final long before = (System.nanoTime() - start) / iterations;
+
+      final RequestTemplate template =
+        new RequestTemplate(defaultURL, DEFAULT_HEADERS);
+
+      start = System.nanoTime();
+
+      for (int i = 0; i < iterations; ++i) {
+        final RequestTemplate.Target target =
+          template.resolve(uris[i % uris.length]);
+
+        final NVPair[] merged = template.mergeHeaders(HEADERS);
+
+        buffer.reset();
+        out.writeBytes(target.getPath());
+
+        for (int j = 0; j < merged.length; ++j) {
+          // Equivalent to HTTPClient's cached NVPair encoding.
+          if (encoded[j] == null) {
+            final String line = merged[j].getName().trim() + ": " +
+                                merged[j].getValue().trim() + "\r\n";
+            encoded[j] = new byte[line.length()];
+
+            for (int k = 0; k < line.length(); ++k) {
+              encoded[j][k] = (byte) line.charAt(k);
+            }
+          }
+
+          buffer.write(encoded[j]);
+        }
+      }
+
+      final long after = (System.nanoTime() - start) / iterations;
+
+      System.out.println("Preparation run " + run + ": " + before +
+                         " ns/request without template, " + after +
+                         " ns/request with template");
+    }
+  }
+
+  /**
+   * Similar to the worker process logger: formats each message with a time
+   * stamp and thread, and writes and flushes it under a lock.
+   */
+  private static final class FileLogger implements Logger {
+    private final PrintWriter m_writer;
+
+    public FileLogger(File file) throws IOException {
+      m_writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    }
+
+    public void output(String message, int where) {
+      final String formatted =
+        new Date() + " (thread 0): " + message + "\n";
+
+      synchronized (m_writer) {
+        m_writer.write(formatted);
+        m_writer.flush();
+      }
+    }
+
+    public void output(String message) {
+      output(message, Logger.LOG);
+    }
+
+    public void error(String message, int where) {
+      output(message, where);
+    }
+
+    public void error(String message) {
+      output(message);
+    }
+
+    public PrintWriter getOutputLogWriter() {
+      return m_writer;
+    }
+
+    public PrintWriter getErrorLogWriter() {
+      return m_writer;
+    }
+
+    public void close() {
+      m_writer.close();
+    }
+  }
+}
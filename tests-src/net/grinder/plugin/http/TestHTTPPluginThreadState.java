@@ -21,15 +21,22 @@
 
 package net.grinder.plugin.http;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
 import HTTPClient.HTTPConnection;
 import HTTPClient.HTTPResponse;
 import HTTPClient.URI;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.plugininterface.PluginThreadContext;
+import net.grinder.plugininterface.PluginThreadListener;
 import net.grinder.testutility.DelegatingStubFactory;
 import net.grinder.testutility.RandomStubFactory;
 import net.grinder.util.InsecureSSLContextFactory;
 import net.grinder.util.Sleeper;
+import net.grinder.util.StandardTimeAuthority;
 
 import junit.framework.TestCase;
 
@@ -135,4 +142,129 @@ public class TestHTTPPluginThreadState extends TestCase {
       handler.shutdown();
     }
   }
+
+  public void testTaskState() throws Exception {
+    final HTTPPluginThreadState workerState =
+      new HTTPPluginThreadState(m_threadContext,
+                                m_sslContextFactory,
+                                m_sleeper,
+                                null);
+
+    final PluginThreadContext taskContext =
+      RandomStubFactory.create(PluginThreadContext.class).getStub();
+
+    final PluginThreadListener taskListener =
+      workerState.createTaskListener(taskContext);
+    final HTTPPluginThreadState taskState =
+      (HTTPPluginThreadState) taskListener;
+
+    assertSame(taskContext, taskState.getThreadContext());
+    assertSame(workerState, workerState.getHTTPClientContext());
+    assertSame(workerState, taskState.getHTTPClientContext());
+    assertNotSame(workerState.getResponseLog(), taskState.getResponseLog());
+
+    final URI uri = new URI("http://blah.com");
+
+    final HTTPConnectionWrapper workerWrapper =
+      workerState.getConnectionWrapper(uri);
+    final HTTPConnectionWrapper taskWrapper =
+      taskState.getConnectionWrapper(uri);
+
+    assertNotSame(workerWrapper, taskWrapper);
+    assertSame(taskWrapper, taskState.getConnectionWrapper(uri));
+    assertSame(workerState, taskWrapper.getConnection().getContext());
+
+    // Connections are discarded when the task ends.
+    taskState.endThread();
+    assertNotSame(taskWrapper, taskState.getConnectionWrapper(uri));
+
+    assertSame(workerWrapper, workerState.getConnectionWrapper(uri));
+  }
+
+  public void testConcurrentTasks() throws Exception {
+    final HTTPRequestHandler handler = new HTTPRequestHandler();
+    handler.start();
+
+    try {
+      final HTTPPluginThreadState workerState =
+        new HTTPPluginThreadState(m_threadContext,
+                                  m_sslContextFactory,
+                                  m_sleeper,
+                                  new StandardTimeAuthority());
+
+      final URI uri = new URI(handler.getURL());
+      final int numberOfTasks = 4;
+      final CyclicBarrier barrier = new CyclicBarrier(numberOfTasks);
+
+      final HTTPConnectionWrapper[] wrappers =
+        new HTTPConnectionWrapper[numberOfTasks];
+      final List<Throwable> failures =
+        Collections.synchronizedList(new ArrayList<Throwable>());
+      final Thread[] threads = new Thread[numberOfTasks];
+
+      for (int i = 0; i < numberOfTasks; ++i) {
+        final int task = i;
+
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              final HTTPPluginThreadState taskState =
+                (HTTPPluginThreadState) workerState.createTaskListener(
+                  RandomStubFactory.create(PluginThreadContext.class)
+                  .getStub());
+
+              barrier.await();
+
+              for (int j = 0; j < 5; ++j) {
+                final HTTPConnectionWrapper wrapper =
+                  taskState.getConnectionWrapper(uri);
+
+                if (j == 0) {
+                  wrappers[task] = wrapper;
+                }
+                else {
+                  assertSame(wrappers[task], wrapper);
+                }
+
+                final HTTPResponse response =
+                  wrapper.getConnection().Get("task" + task);
+                assertEquals(200, response.getStatusCode());
+
+                taskState.setLastResponse(response);
+                Thread.yield();
+                assertSame(response, taskState.getLastResponse());
+              }
+
+              assertSame(workerState,
+                         wrappers[task].getConnection().getContext());
+
+              taskState.endThread();
+            }
+            catch (Throwable t) {
+              failures.add(t);
+            }
+          }
+        };
+
+        threads[i].start();
+      }
+
+      for (int i = 0; i < numberOfTasks; ++i) {
+        threads[i].join(10000);
+      }
+
+      assertEquals(failures.toString(), 0, failures.size());
+
+      for (int i = 0; i < numberOfTasks; ++i) {
+        for (int j = i + 1; j < numberOfTasks; ++j) {
+          assertNotSame(wrappers[i], wrappers[j]);
+        }
+      }
+
+      assertNull(workerState.getLastResponse());
+    }
+    finally {
+      handler.shutdown();
+    }
+  }
 }
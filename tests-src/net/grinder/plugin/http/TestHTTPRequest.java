@@ -824,6 +824,78 @@ public class TestHTTPRequest extends TestCase {
     }
   }
 
+  public void testResponseLogging() throws Exception {
+    m_scriptContextStubFactory.setResult("getLogger",
+                                         m_loggerStubFactory.getLogger());
+
+    final HTTPPluginThreadState threadState =
+      (HTTPPluginThreadState) m_pluginProcessContext.getPluginThreadListener();
+
+    final HTTPRequest request = new HTTPRequest();
+
+    try {
+      HTTPPluginControl.setResponseLogSampleInterval(0);
+
+      request.GET(m_handler.getURL());
+      request.GET(m_handler.getURL());
+      m_loggerStubFactory.assertNoMoreCalls();
+
+      // Every third response, starting with the next.
+      HTTPPluginControl.setResponseLogSampleInterval(3);
+
+      for (int i = 0; i < 4; ++i) {
+        request.GET(m_handler.getURL());
+      }
+
+      m_loggerStubFactory.assertSuccess("output", String.class);
+      m_loggerStubFactory.assertSuccess("output", String.class);
+      m_loggerStubFactory.assertNoMoreCalls();
+
+      HTTPPluginControl.setResponseLogSampleInterval(1);
+      HTTPPluginControl.setResponseLogBatchSize(3);
+
+      for (int i = 0; i < 4; ++i) {
+        request.GET(m_handler.getURL());
+      }
+
+      final String message = (String)
+        m_loggerStubFactory.assertSuccess("output", String.class)
+        .getParameters()[0];
+      assertTrue(message, message.startsWith("3 responses:\n  "));
+      assertEquals(4, message.split("\n").length);
+      assertTrue(message.indexOf(" -> 200 ") > 0);
+      m_loggerStubFactory.assertNoMoreCalls();
+
+      threadState.endRun();
+      final String message2 = (String)
+        m_loggerStubFactory.assertSuccess("output", String.class)
+        .getParameters()[0];
+      assertTrue(message2, message2.startsWith("1 response:\n  "));
+      m_loggerStubFactory.assertNoMoreCalls();
+
+      threadState.endRun();
+      m_loggerStubFactory.assertNoMoreCalls();
+
+      try {
+        HTTPPluginControl.setResponseLogSampleInterval(-1);
+        fail("Expected IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e) {
+      }
+
+      try {
+        HTTPPluginControl.setResponseLogBatchSize(0);
+        fail("Expected IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e) {
+      }
+    }
+    finally {
+      HTTPPluginControl.setResponseLogSampleInterval(1);
+      HTTPPluginControl.setResponseLogBatchSize(1);
+    }
+  }
+
   public void testBadRequestResponseProcessing() throws Exception {
     final HTTPRequestHandler handler = new HTTPRequestHandler() {
       protected void writeHeaders(StringBuffer response) {
@@ -1135,6 +1207,7 @@ public class TestHTTPRequest extends TestCase {
       new MasterInstrumenter(m_loggerStubFactory.getLogger(), true);
 
     assertEquals("byte code transforming instrumenter for Jython 2.1/2.2; " +
+                 jrubyInstrumenterDescription() +
                  "byte code transforming instrumenter for Java",
                  masterInstrumenter.getDescription());
 
@@ -1289,4 +1362,15 @@ public class TestHTTPRequest extends TestCase {
       return m_times[++m_last];
     }
   }
+
+  private static String jrubyInstrumenterDescription() {
+    // JRuby is optional.
+    try {
+      Class.forName("org.jruby.RubyProc");
+      return "byte code transforming instrumenter for JRuby; ";
+    }
+    catch (ClassNotFoundException e) {
+      return "";
+    }
+  }
 }
@@ -0,0 +1,171 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import HTTPClient.NVPair;
+import HTTPClient.ParseException;
+import HTTPClient.URI;
+
+
+/**
+ * Unit tests for {@link RequestTemplate}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestRequestTemplate extends TestCase {
+
+  private static final NVPair[] NO_HEADERS = new NVPair[0];
+
+  public void testResolveWithoutDefault() throws Exception {
+    final RequestTemplate template = new RequestTemplate(null, NO_HEADERS);
+
+    assertNull(template.getDefaultURL());
+    assertSame(NO_HEADERS, template.getDefaultHeaders());
+
+    try {
+      template.resolve(null);
+      fail("Expected URLException");
+    }
+    catch (URLException e) {
+    }
+
+    try {
+      template.resolve("/foo");
+      fail("Expected URLException");
+    }
+    catch (URLException e) {
+    }
+
+    try {
+      template.resolve("http://[foo");
+      fail("Expected ParseException");
+    }
+    catch (ParseException e) {
+    }
+
+    final RequestTemplate.Target target =
+      template.resolve("http://grinder.sf.net/a/b?c=d#e");
+
+    assertEquals("http://grinder.sf.net/a/b?c=d#e",
+                 target.getURL().toString());
+    assertEquals("/a/b?c=d#e", target.getPath());
+    assertSame(target, template.resolve("http://grinder.sf.net/a/b?c=d#e"));
+  }
+
+  public void testResolveWithDefault() throws Exception {
+    final URI defaultURL = new URI("http://grinder.sf.net:8080/a/b");
+    final RequestTemplate template =
+      new RequestTemplate(defaultURL, NO_HEADERS);
+
+    assertSame(defaultURL, template.getDefaultURL());
+
+    final RequestTemplate.Target defaultTarget = template.resolve(null);
+    assertSame(defaultURL, defaultTarget.getURL());
+    assertEquals("/a/b", defaultTarget.getPath());
+    assertSame(defaultTarget, template.resolve(null));
+
+    assertEquals("http://grinder.sf.net:8080/a/c?x",
+                 template.resolve("c?x").getURL().toString());
+
+    assertEquals("http://grinder.sf.net:8080/c",
+                 template.resolve("/c").getURL().toString());
+
+    final RequestTemplate.Target doubleSlash = template.resolve("//c/d");
+    assertEquals("grinder.sf.net", doubleSlash.getURL().getHost());
+    assertEquals(8080, doubleSlash.getURL().getPort());
+    assertEquals("//c/d", doubleSlash.getPath());
+
+    assertEquals("http://other/",
+                 template.resolve("http://other/").getURL().toString());
+
+    assertSame(template.resolve("c?x"), template.resolve("c?x"));
+  }
+
+  public void testResolveCacheIsBounded() throws Exception {
+    final RequestTemplate template =
+      new RequestTemplate(new URI("http://grinder.sf.net/"), NO_HEADERS);
+
+    final RequestTemplate.Target first = template.resolve("0");
+
+    for (int i = 1; i < 2000; ++i) {
+      assertEquals("/" + i, template.resolve(Integer.toString(i)).getPath());
+    }
+
+    assertEquals("/0", template.resolve("0").getPath());
+    assertNotSame(first, template.resolve("0"));
+  }
+
+  public void testMergeHeaders() throws Exception {
+    final NVPair a1 = new NVPair("a", "1");
+    final NVPair a2 = new NVPair("a", "2");
+    final NVPair b1 = new NVPair("b", "1");
+    final NVPair c1 = new NVPair("c", "1");
+
+    final NVPair[] defaults = { a1, b1 };
+
+    final RequestTemplate template = new RequestTemplate(null, defaults);
+
+    assertSame(defaults, template.mergeHeaders(NO_HEADERS));
+
+    final NVPair[] overrides = { a2, c1 };
+    assertTrue(Arrays.equals(new NVPair[] { a2, c1, null, b1 },
+                             template.mergeHeaders(overrides)));
+
+    assertSame(overrides,
+               new RequestTemplate(null, NO_HEADERS).mergeHeaders(overrides));
+  }
+
+  public void testMergeManyHeaders() throws Exception {
+    final NVPair[] defaults = new NVPair[30];
+    final NVPair[] overrides = new NVPair[20];
+
+    for (int i = 0; i < defaults.length; ++i) {
+      defaults[i] = new NVPair("h" + i, "default");
+    }
+
+    for (int i = 0; i < overrides.length; ++i) {
+      overrides[i] = new NVPair("h" + (i * 2), "override");
+    }
+
+    final NVPair[] merged = RequestTemplate.mergeArrays(defaults, overrides);
+    assertEquals(50, merged.length);
+
+    int nonNull = 0;
+
+    for (int i = 0; i < merged.length; ++i) {
+      if (merged[i] != null) {
+        ++nonNull;
+      }
+    }
+
+    // 20 overrides, and the defaults h1, h3, ... h29.
+    assertEquals(20 + 15, nonNull);
+    assertSame(overrides[3], merged[3]);
+    assertSame(defaults[1], merged[21]);
+    assertNull(merged[20]);
+  }
+}
@@ -0,0 +1,146 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.script;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.common.Logger;
+import net.grinder.engine.process.Instrumenter;
+import net.grinder.engine.process.ScriptEngine.Recorder;
+import net.grinder.engine.process.instrumenter.dcr.DCRInstrumenterFactory;
+import net.grinder.util.SimpleLogger;
+
+import org.jruby.Ruby;
+
+
+/**
+ * Measures the per-call overhead of recording Ruby code, comparing the
+ * {@link JRubyUtil#record} callback path with the JRuby DCR instrumenter.
+ *
+ * <p>The recorder does nothing, so the figures are the cost of the
+ * instrumentation and of the calls from Ruby through the Java callback.</p>
+ *
+ * <p>Not a unit test. Requires JRuby. Run with:</p>
+ *
+ * <pre>
+ * java -javaagent:grinder-agent.jar
+ *   net.grinder.script.JRubyInstrumentationBenchmark [calls]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class JRubyInstrumentationBenchmark {
+
+  private static final Recorder NULL_RECORDER = new Recorder() {
+      public void start() { }
+      public void end(boolean success) { }
+    };
+
+  private static Instrumenter s_jrubyInstrumenter;
+  private static Instrumenter s_javaInstrumenter;
+
+  public static void main(String[] args) throws Exception {
+    final int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+    final PrintWriter out = new PrintWriter(System.out, true);
+    final Logger logger = new SimpleLogger("benchmark", out, out);
+
+    final DCRInstrumenterFactory factory =
+      DCRInstrumenterFactory.createFactory(logger);
+
+    if (factory == null) {
+      return;
+    }
+
+    final List<Instrumenter> instrumenters = new ArrayList<Instrumenter>();
+
+    if (!factory.addJRubyInstrumenter(instrumenters)) {
+      logger.output("JRuby instrumenter not available");
+      return;
+    }
+
+    factory.addJavaInstrumenter(instrumenters);
+
+    s_jrubyInstrumenter = instrumenters.get(0);
+    s_javaInstrumenter = instrumenters.get(1);
+
+    final Ruby runtime = Ruby.newInstance();
+
+    runtime.evalScriptlet(
+      "require 'java'\n" +
+      "Benchmark = Java::net.grinder.script.JRubyInstrumentationBenchmark\n" +
+      "class Target\n" +
+      "  def call(x)\n" +
+      "    x\n" +
+      "  end\n" +
+      "end\n" +
+      "def measure(name, n, target)\n" +
+      "  start = Time.now\n" +
+      "  i = 0\n" +
+      "  while i < n\n" +
+      "    target.call(i)\n" +
+      "    i += 1\n" +
+      "  end\n" +
+      "  puts '  %s: %.0f ns/call' % [name, (Time.now - start) * 1e9 / n]\n" +
+      "end\n" +
+      "5.times do |run|\n" +
+      "  puts \"Run #{run}, " + calls + " calls\"\n" +
+      "  measure('unrecorded lambda', " + calls + ", lambda { |x| x })\n" +
+      "  measure('JRubyUtil.record callback', " + calls + ",\n" +
+      "          Benchmark.callback { |x| x })\n" +
+      "  measure('recorded lambda', " + calls + ",\n" +
+      "          Benchmark.record(lambda { |x| x }))\n" +
+      "  measure('recorded object', " + calls + ",\n" +
+      "          Benchmark.record(Target.new))\n" +
+      "end\n");
+
+    runtime.tearDown();
+  }
+
+  /**
+   * Called from Ruby. Does what {@link JRubyUtil#record} does.
+   */
+  public static JRubyUtil.Callback callback(final JRubyUtil.Callback callback)
+    throws Exception {
+
+    final JRubyUtil.Callback recorded = new JRubyUtil.Callback() {
+        public Object call(Object arg) {
+          return callback.call(arg);
+        }
+      };
+
+    s_javaInstrumenter.instrument(null, NULL_RECORDER, recorded);
+
+    return recorded;
+  }
+
+  /**
+   * Called from Ruby. Records a Ruby object directly.
+   */
+  public static Object record(Object target) throws Exception {
+    s_jrubyInstrumenter.instrument(null, NULL_RECORDER, target);
+    return target;
+  }
+}
@@ -154,4 +154,18 @@ public class TestTest extends TestCase {
     assertSame(t1, parameters[0]);
     assertSame(i, parameters[2]);
   }
+
+  public void testSetSampleInterval() throws Exception {
+    final Test t1 = new Test(1, "hot");
+
+    t1.setSampleInterval(1);
+    t1.setSampleInterval(100);
+
+    try {
+      t1.setSampleInterval(0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
 }
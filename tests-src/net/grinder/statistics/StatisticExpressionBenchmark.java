@@ -0,0 +1,131 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.Random;
+
+
+/**
+ * Compares the evaluation of statistic expressions by walking the parsed
+ * tree against evaluation of the code generated by {@link
+ * StatisticExpressionCompiler}.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.statistics.StatisticExpressionBenchmark [sets]
+ * </pre>
+ *
+ * <p>The expressions are those of the standard summary view, together with
+ * the calculation of the standard deviation used by the console.</p>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class StatisticExpressionBenchmark {
+
+  private static final int ITERATIONS = 200;
+
+  private static final String[] EXPRESSIONS = {
+    "(+ (count timedTests) untimedTests)",
+    "errors",
+    "(/ (sum timedTests) (count timedTests))",
+    "(sqrt (variance timedTests))",
+    "(* 1000 (/ (+ (count timedTests) untimedTests) period))",
+  };
+
+  public static void main(String[] args) throws Exception {
+    final int numberOfSets =
+      args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+    final StatisticsIndexMap indexMap = new StatisticsIndexMap();
+    final StatisticExpressionFactoryImplementation factory =
+      new StatisticExpressionFactoryImplementation(indexMap);
+
+    final StatisticExpression[] interpreted =
+      new StatisticExpression[EXPRESSIONS.length];
+    final StatisticExpression[] compiled =
+      new StatisticExpression[EXPRESSIONS.length];
+
+    for (int i = 0; i < EXPRESSIONS.length; ++i) {
+      interpreted[i] = factory.createInterpretedExpression(EXPRESSIONS[i]);
+      compiled[i] = factory.createExpression(EXPRESSIONS[i]);
+    }
+
+    final StatisticsSet[] sets = createStatistics(indexMap, numberOfSets);
+
+    for (int i = 0; i < 5; ++i) {
+      System.out.println("Run " + i + ", " + numberOfSets +
+                         " statistics sets, " + EXPRESSIONS.length +
+                         " expressions");
+      report("Tree", interpreted, sets);
+      report("Compiled", compiled, sets);
+    }
+  }
+
+  private static StatisticsSet[] createStatistics(StatisticsIndexMap indexMap,
+                                                  int numberOfSets) {
+    final Random random = new Random(0);
+
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      indexMap.getLongSampleIndex("timedTests");
+
+    final StatisticsSet[] result = new StatisticsSet[numberOfSets];
+
+    for (int i = 0; i < numberOfSets; ++i) {
+      result[i] = new StatisticsSetImplementation(indexMap);
+
+      for (int s = 0; s < 10; ++s) {
+        result[i].addSample(timedTestsIndex, random.nextInt(1000));
+      }
+
+      result[i].setValue(indexMap.getLongIndex("errors"), random.nextInt(3));
+      result[i].setValue(indexMap.getLongIndex("period"), 1000);
+    }
+
+    return result;
+  }
+
+  private static void report(String name,
+                             StatisticExpression[] expressions,
+                             StatisticsSet[] sets) {
+    final long start = System.nanoTime();
+    double total = 0;
+
+    for (int n = 0; n < ITERATIONS; ++n) {
+      for (StatisticsSet set : sets) {
+        for (StatisticExpression expression : expressions) {
+          total += expression.getDoubleValue(set);
+        }
+      }
+    }
+
+    final long nanos = System.nanoTime() - start;
+    final long evaluations =
+      (long) ITERATIONS * sets.length * expressions.length;
+
+    // Print the total so the work can't be optimised away.
+    System.out.println("  " + name + ": " +
+                       (nanos * 1000 / evaluations) / 1000d +
+                       " ns/evaluation (" + total + ")");
+  }
+}
@@ -0,0 +1,286 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import net.grinder.statistics.StatisticExpressionFactoryImplementation.ParseContext.ParseException;
+
+
+/**
+ * Unit tests for {@link StatisticExpressionCompiler}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestStatisticExpressionCompiler extends TestCase {
+
+  private static final String[] EXPRESSIONS = {
+    "0",
+    "99f",
+    "-3",
+    "userLong0",
+    "userDouble1",
+    "(+)",
+    "(*)",
+    "(+ userLong0 userLong1 3)",
+    "(+ userLong0 userDouble1)",
+    "(- userLong0)",
+    "(- userDouble0)",
+    "(- 1.5 userLong1)",
+    "(- userDouble0 userLong1 userDouble2)",
+    "(* userLong0 2.5 userLong1)",
+    "(* userLong0 userLong1 userLong2)",
+    "(/ userLong0 userLong1)",
+    "(/ (sum timedTests) (count timedTests))",
+    "(sqrt (variance timedTests))",
+    "(sum doubleSample)",
+    "(count doubleSample)",
+    "(variance doubleSample)",
+    "(* 1000 (/ (- errors untimedTests) (sqrt userDouble0)))",
+    "(+ (- userLong3) (* userDouble3 (sqrt (+ userLong4 userLong4))))",
+  };
+
+  private final Random m_random = new Random(99);
+
+  private StatisticsIndexMap m_indexMap;
+  private StatisticExpressionFactoryImplementation m_factory;
+  private StatisticExpressionCompiler m_compiler;
+
+  protected void setUp() throws Exception {
+    m_indexMap = new StatisticsIndexMap();
+    m_indexMap.createDoubleSampleIndex(
+      "doubleSample",
+      m_indexMap.getDoubleIndex("userDouble3"),
+      m_indexMap.getLongIndex("userLong4"),
+      m_indexMap.getDoubleIndex("userDouble4"));
+
+    m_factory = new StatisticExpressionFactoryImplementation(m_indexMap);
+    m_compiler = new StatisticExpressionCompiler();
+  }
+
+  private StatisticsSet createRandomStatistics() {
+    final StatisticsSet statistics =
+      new StatisticsSetImplementation(m_indexMap);
+
+    final String[] longs = {
+      "errors", "untimedTests", "period",
+      "userLong0", "userLong1", "userLong2", "userLong3", "userLong4",
+    };
+
+    for (String name : longs) {
+      statistics.setValue(m_indexMap.getLongIndex(name),
+                          m_random.nextInt(2000) - 1000);
+    }
+
+    final String[] doubles = {
+      "userDouble0", "userDouble1", "userDouble2", "userDouble3",
+      "userDouble4",
+    };
+
+    for (String name : doubles) {
+      statistics.setValue(m_indexMap.getDoubleIndex(name),
+                          (m_random.nextDouble() - 0.4) * 1000);
+    }
+
+    for (int i = m_random.nextInt(4); i > 0; --i) {
+      statistics.addSample(m_indexMap.getLongSampleIndex("timedTests"),
+                           m_random.nextInt(500));
+    }
+
+    return statistics;
+  }
+
+  private static void assertSameValues(String expression,
+                                       StatisticExpression expected,
+                                       StatisticExpression actual,
+                                       StatisticsSet statistics) {
+    assertEquals(expression, expected.isDouble(), actual.isDouble());
+    assertEquals(expression,
+                 expected.getLongValue(statistics),
+                 actual.getLongValue(statistics));
+    assertEquals(expression,
+                 new Double(expected.getDoubleValue(statistics)),
+                 new Double(actual.getDoubleValue(statistics)));
+  }
+
+  public void testMatchesInterpretedExpressions() throws Exception {
+    final StatisticExpression[] interpreted =
+      new StatisticExpression[EXPRESSIONS.length];
+    final StatisticExpression[] compiled =
+      new StatisticExpression[EXPRESSIONS.length];
+
+    for (int i = 0; i < EXPRESSIONS.length; ++i) {
+      interpreted[i] = m_factory.createInterpretedExpression(EXPRESSIONS[i]);
+      compiled[i] = m_compiler.compile(EXPRESSIONS[i], interpreted[i]);
+      assertNotSame(interpreted[i], compiled[i]);
+    }
+
+    final StatisticsSet zero = new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < EXPRESSIONS.length; ++i) {
+      assertSameValues(EXPRESSIONS[i], interpreted[i], compiled[i], zero);
+    }
+
+    for (int n = 0; n < 200; ++n) {
+      final StatisticsSet statistics = createRandomStatistics();
+
+      for (int i = 0; i < EXPRESSIONS.length; ++i) {
+        assertSameValues(EXPRESSIONS[i],
+                         interpreted[i],
+                         compiled[i],
+                         statistics);
+      }
+    }
+  }
+
+  public void testOtherStatisticsSets() throws Exception {
+    final StatisticsSet statistics = createRandomStatistics();
+
+    // A proxy is not a StatisticsSetImplementation.
+    final StatisticsSet proxy = (StatisticsSet) Proxy.newProxyInstance(
+      getClass().getClassLoader(),
+      new Class<?>[] { StatisticsSet.class },
+      new InvocationHandler() {
+        public Object invoke(Object p, Method method, Object[] args)
+          throws Throwable {
+          try {
+            return method.invoke(statistics, args);
+          }
+          catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        }
+      });
+
+    for (String expression : EXPRESSIONS) {
+      final StatisticExpression compiled =
+        m_compiler.compile(expression,
+                           m_factory.createInterpretedExpression(expression));
+
+      assertSameValues(expression, compiled, compiled, proxy);
+      assertSameValues(expression, compiled, compiled, statistics);
+    }
+  }
+
+  public void testFactoryCompiles() throws Exception {
+    final StatisticsSet statistics = createRandomStatistics();
+
+    for (String expression : EXPRESSIONS) {
+      final StatisticExpression interpreted =
+        m_factory.createInterpretedExpression(expression);
+      final StatisticExpression created =
+        m_factory.createExpression(expression);
+
+      assertNotSame(interpreted.getClass(), created.getClass());
+      assertSameValues(expression, interpreted, created, statistics);
+    }
+  }
+
+  public void testInvalidExpressions() throws Exception {
+    final String[] invalid = {
+      "", "(", "()", "(+ 1", "1 2", "(foo 1)", "(sum userLong0)",
+      "(count foo)", "(variance errors)", "unknown", "(/ 1)",
+    };
+
+    for (String expression : invalid) {
+      try {
+        m_factory.createExpression(expression);
+        fail("Expected ParseException for '" + expression + "'");
+      }
+      catch (ParseException e) {
+      }
+    }
+  }
+
+  private static StatisticExpressionCompiler.Evaluator
+    getEvaluator(StatisticExpression expression) {
+    return ((StatisticExpressionCompiler.CompiledExpression) expression)
+           .getEvaluator();
+  }
+
+  public void testEvaluatorsAreCached() throws Exception {
+    final StatisticExpression e1 =
+      m_factory.createExpression("(+ userLong0 (sqrt userDouble1))");
+    final StatisticExpression e2 =
+      m_factory.createExpression(" (+  userLong0\t(sqrt userDouble1 ))");
+    final StatisticExpression e3 =
+      m_factory.createExpression("(+ userLong1 (sqrt userDouble1))");
+
+    assertNotSame(e1, e2);
+    assertSame(getEvaluator(e1), getEvaluator(e2));
+    assertNotSame(getEvaluator(e1), getEvaluator(e3));
+
+    final StatisticsSet statistics = createRandomStatistics();
+    assertSameValues("e2", e1, e2, statistics);
+  }
+
+  public void testCacheIsBounded() throws Exception {
+    final StatisticExpression first =
+      m_factory.createExpression("(+ userLong0 -1)");
+
+    for (int i = 0;
+         i < StatisticExpressionCompiler.MAXIMUM_CACHED_EVALUATORS;
+         ++i) {
+      m_factory.createExpression("(+ userLong0 " + i + ")");
+    }
+
+    final StatisticExpression again =
+      m_factory.createExpression("(+ userLong0 -1)");
+
+    assertNotSame(getEvaluator(first), getEvaluator(again));
+
+    final StatisticsSet statistics = createRandomStatistics();
+    assertSameValues("again", first, again, statistics);
+  }
+
+  public void testUncompilableExpressions() throws Exception {
+    final StatisticExpression other = new StatisticExpression() {
+        public double getDoubleValue(StatisticsSet statisticsSet) {
+          return 1.5;
+        }
+
+        public long getLongValue(StatisticsSet statisticsSet) {
+          return 1;
+        }
+
+        public boolean isDouble() {
+          return true;
+        }
+      };
+
+    final StatisticExpression sum =
+      m_factory.createSum(new StatisticExpression[] {
+        m_factory.createConstant(2),
+        other,
+      });
+
+    assertSame(sum, m_compiler.compile("sum", sum));
+    assertEquals(3.5, sum.getDoubleValue(createRandomStatistics()), 0);
+  }
+}
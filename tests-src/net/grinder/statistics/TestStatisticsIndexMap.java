@@ -26,6 +26,7 @@ import junit.swingui.TestRunner;
 
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsIndexMap.RemoteSlotMap;
 
 /**
  * Unit test case for <code>StatisticsIndexMap</code>.
@@ -94,4 +95,151 @@ public class TestStatisticsIndexMap extends TestCase {
           data[i]).getValue());
     }
   }
-}
\ No newline at end of file
+
+  public void testNames() throws Exception {
+    assertTrue(m_indexMap.getLongIndexNames().contains("userLong0"));
+    assertTrue(m_indexMap.getLongIndexNames().contains("period"));
+    assertFalse(m_indexMap.getLongIndexNames().contains("userDouble0"));
+
+    for (String name : m_indexMap.getLongIndexNames()) {
+      assertNotNull(m_indexMap.getLongIndex(name));
+    }
+
+    assertTrue(m_indexMap.getDoubleIndexNames().contains("peakTPS"));
+
+    for (String name : m_indexMap.getDoubleIndexNames()) {
+      assertNotNull(m_indexMap.getDoubleIndex(name));
+    }
+
+    assertEquals("[timedTests]",
+                 m_indexMap.getLongSampleIndexNames().toString());
+
+    assertEquals(0, m_indexMap.getDoubleSampleIndexNames().size());
+    m_indexMap.createDoubleSampleIndex(
+      "foo",
+      m_indexMap.getDoubleIndex("userDouble0"),
+      m_indexMap.getLongIndex("userLong0"),
+      m_indexMap.getDoubleIndex("userDouble1"));
+    assertEquals("[foo]", m_indexMap.getDoubleSampleIndexNames().toString());
+    m_indexMap.removeDoubleSampleIndex("foo");
+  }
+
+  public void testRegistration() throws Exception {
+    final StatisticsIndexMap indexMap = new StatisticsIndexMap();
+
+    final int numberOfLongs = indexMap.getNumberOfLongs();
+    final int numberOfDoubles = indexMap.getNumberOfDoubles();
+
+    // The HTTP plug-in registers its statistics when it is initialised.
+    assertNull(indexMap.getLongIndex(
+      StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY));
+    assertFalse(indexMap.getLongSampleIndex("timedTests").isRegistered());
+    assertSame(indexMap.getLongIndex("errors"),
+               indexMap.registerLongIndex("errors"));
+
+    final StatisticsIndexMap.LongIndex a = indexMap.registerLongIndex("a");
+    assertEquals(numberOfLongs, a.getValue());
+    assertSame(a, indexMap.registerLongIndex("a"));
+    assertSame(a, indexMap.getLongIndex("a"));
+
+    final StatisticsIndexMap.DoubleIndex b = indexMap.registerDoubleIndex("b");
+    assertEquals(numberOfDoubles, b.getValue());
+
+    final StatisticsIndexMap.LongSampleIndex c =
+      indexMap.registerLongSampleIndex("c");
+    final StatisticsIndexMap.DoubleSampleIndex d =
+      indexMap.registerDoubleSampleIndex("d");
+    assertSame(c, indexMap.getLongSampleIndex("c"));
+    assertSame(d, indexMap.registerDoubleSampleIndex("d"));
+
+    assertEquals(numberOfLongs + 4, indexMap.getNumberOfLongs());
+    assertEquals(numberOfDoubles + 4, indexMap.getNumberOfDoubles());
+
+    assertTrue(c.isRegistered());
+    assertTrue(d.isRegistered());
+
+    assertEquals(1, indexMap.getLongSlots("a").length);
+    assertEquals(0, indexMap.getDoubleSlots("a").length);
+    assertEquals(0, indexMap.getLongSlots("b").length);
+    assertEquals(1, indexMap.getDoubleSlots("b").length);
+    assertEquals(2, indexMap.getLongSlots("c").length);
+    assertEquals(1, indexMap.getDoubleSlots("c").length);
+    assertEquals(1, indexMap.getLongSlots("d").length);
+    assertEquals(2, indexMap.getDoubleSlots("d").length);
+    assertEquals(0, indexMap.getLongSlots("e").length);
+    assertEquals(0, indexMap.getDoubleSlots("e").length);
+
+    assertTrue(indexMap.getLongIndexNames().contains("a"));
+    assertTrue(indexMap.getDoubleSampleIndexNames().contains("d"));
+
+    final String[] badNames = { "a", "c", "errors", "", "x y", "(x", "x)", };
+
+    for (int i = 0; i < badNames.length; ++i) {
+      try {
+        indexMap.registerDoubleIndex(badNames[i]);
+        fail("Expected StatisticsException");
+      }
+      catch (StatisticsException e) {
+      }
+    }
+
+    assertEquals(numberOfDoubles + 4, indexMap.getNumberOfDoubles());
+
+    // The shared index map is not affected.
+    assertNull(m_indexMap.getLongIndex("a"));
+  }
+
+  public void testRemoteSlotMap() throws Exception {
+    final StatisticsIndexMap remote = new StatisticsIndexMap();
+    remote.registerDoubleSampleIndex("d");
+    remote.registerLongIndex("a");
+
+    final StatisticsIndexMap local = new StatisticsIndexMap();
+    local.registerLongIndex("a");
+    local.registerDoubleSampleIndex("d");
+
+    final RemoteSlotMap slotMap = local.createRemoteSlotMap();
+
+    final int errors = local.getLongIndex("errors").getValue();
+    final int remoteA = remote.getLongIndex("a").getValue();
+
+    assertEquals(errors, slotMap.getLongSlot(errors));
+    assertEquals(-1, slotMap.getLongSlot(remoteA));
+
+    slotMap.add("a", remote.getLongSlots("a"), remote.getDoubleSlots("a"));
+    slotMap.add("d", remote.getLongSlots("d"), remote.getDoubleSlots("d"));
+
+    assertEquals(local.getLongIndex("a").getValue(),
+                 slotMap.getLongSlot(remoteA));
+    assertEquals(local.getLongSlots("d")[0],
+                 slotMap.getLongSlot(remote.getLongSlots("d")[0]));
+
+    for (int i = 0; i < 2; ++i) {
+      assertEquals(local.getDoubleSlots("d")[i],
+                   slotMap.getDoubleSlot(remote.getDoubleSlots("d")[i]));
+    }
+
+    assertEquals(-1, slotMap.getLongSlot(local.getNumberOfLongs() + 10));
+
+    try {
+      slotMap.add("unknown", new int[] { remoteA }, new int[0]);
+      fail("Expected StatisticsException");
+    }
+    catch (StatisticsException e) {
+    }
+
+    try {
+      slotMap.add("a", new int[0], remote.getDoubleSlots("d"));
+      fail("Expected StatisticsException");
+    }
+    catch (StatisticsException e) {
+    }
+
+    try {
+      slotMap.add("a", new int[] { errors }, new int[0]);
+      fail("Expected StatisticsException");
+    }
+    catch (StatisticsException e) {
+    }
+  }
+}
@@ -101,10 +101,10 @@ public class TestStatisticsSetFactory extends TestCase {
       new ByteArrayInputStream(byteOutputStream.toByteArray()));
 
     final StatisticsSet received0 = factory
-        .readStatisticsExternal(objectInputStream);
+        .readStatisticsExternal(objectInputStream, null);
 
     final StatisticsSet received1 = factory
-        .readStatisticsExternal(objectInputStream);
+        .readStatisticsExternal(objectInputStream, null);
 
     assertEquals(original0, received0);
     assertEquals(original1, received1);
@@ -26,6 +26,7 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Random;
@@ -412,17 +413,144 @@ public class TestStatisticsSetImplementation extends TestCase {
     final StatisticsSetImplementation received0 =
       new StatisticsSetImplementation(m_indexMap,
                                       objectInputStream,
-                                      serialiser);
+                                      serialiser,
+                                      null);
 
     final StatisticsSetImplementation received1 =
       new StatisticsSetImplementation(m_indexMap,
                                       objectInputStream,
-                                      serialiser);
+                                      serialiser,
+                                      null);
 
     assertEquals(original0, received0);
     assertEquals(original1, received1);
   }
 
+  public void testRegisteredStatistics() throws Exception {
+    final StatisticsIndexMap indexMap = new StatisticsIndexMap();
+
+    final StatisticsSetImplementation before =
+      new StatisticsSetImplementation(indexMap);
+
+    final StatisticsIndexMap.LongIndex retries =
+      indexMap.registerLongIndex("retries");
+    final StatisticsIndexMap.DoubleSampleIndex latency =
+      indexMap.registerDoubleSampleIndex("latency");
+
+    final StatisticsSetImplementation after =
+      new StatisticsSetImplementation(indexMap);
+
+    assertEquals(before, after);
+    assertEquals(0, before.getValue(retries));
+    assertEquals(0, before.getCount(latency));
+
+    after.addValue(retries, 3);
+    after.addSample(latency, 2.0);
+    after.addSample(latency, 4.0);
+    assertFalse(before.equals(after));
+
+    before.addValue(retries, 3);
+    assertEquals(3, before.getValue(retries));
+
+    before.add(after);
+    assertEquals(6, before.getValue(retries));
+    assertEquals(2, before.getCount(latency));
+    assertEquals(6.0, before.getSum(latency), 0.001);
+    assertEquals(1.0, before.getVariance(latency), 0.001);
+
+    final StatisticsSet snapshot = before.snapshot();
+    assertEquals(before, snapshot);
+
+    // A set written before a registration can be read after it, but not the
+    // other way round.
+    final StatisticsIndexMap otherIndexMap = new StatisticsIndexMap();
+    otherIndexMap.registerLongIndex("retries");
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+    final Serialiser serialiser = new Serialiser();
+
+    final StatisticsSetImplementation small =
+      new StatisticsSetImplementation(otherIndexMap);
+    small.addValue(otherIndexMap.getLongIndex("retries"), 7);
+    small.writeExternal(objectOutputStream, serialiser);
+    before.writeExternal(objectOutputStream, serialiser);
+    objectOutputStream.close();
+
+    final ObjectInputStream objectInputStream = new ObjectInputStream(
+      new ByteArrayInputStream(byteOutputStream.toByteArray()));
+
+    final StatisticsSetImplementation received =
+      new StatisticsSetImplementation(indexMap,
+                                      objectInputStream,
+                                      serialiser,
+                                      null);
+    assertEquals(7, received.getValue(retries));
+    assertEquals(0, received.getCount(latency));
+
+    try {
+      new StatisticsSetImplementation(otherIndexMap,
+                                      objectInputStream,
+                                      serialiser,
+                                      null);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  public void testReadWithRemoteSlotMap() throws Exception {
+    final StatisticsIndexMap remote = new StatisticsIndexMap();
+    remote.registerLongSampleIndex("queueDepth");
+    remote.registerLongIndex("retries");
+    remote.registerLongIndex("unknown");
+
+    final StatisticsIndexMap local = new StatisticsIndexMap();
+    local.registerLongIndex("retries");
+    local.registerLongSampleIndex("queueDepth");
+
+    final StatisticsIndexMap.RemoteSlotMap slotMap =
+      local.createRemoteSlotMap();
+
+    for (String name : new String[] { "retries", "queueDepth" }) {
+      slotMap.add(name, remote.getLongSlots(name), remote.getDoubleSlots(name));
+    }
+
+    final StatisticsSetImplementation original =
+      new StatisticsSetImplementation(remote);
+    original.addValue(remote.getLongIndex("errors"), 1);
+    original.addValue(remote.getLongIndex("retries"), 2);
+    original.addValue(remote.getLongIndex("unknown"), 3);
+    original.addSample(remote.getLongSampleIndex("queueDepth"), 4);
+    original.addSample(remote.getLongSampleIndex("queueDepth"), 6);
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+    final Serialiser serialiser = new Serialiser();
+
+    original.writeExternal(objectOutputStream, serialiser);
+    objectOutputStream.close();
+
+    final StatisticsSetImplementation received =
+      new StatisticsSetImplementation(
+        local,
+        new ObjectInputStream(
+          new ByteArrayInputStream(byteOutputStream.toByteArray())),
+        serialiser,
+        slotMap);
+
+    final StatisticsIndexMap.LongSampleIndex queueDepth =
+      local.getLongSampleIndex("queueDepth");
+
+    assertEquals(1, received.getValue(local.getLongIndex("errors")));
+    assertEquals(2, received.getValue(local.getLongIndex("retries")));
+    assertEquals(2, received.getCount(queueDepth));
+    assertEquals(10, received.getSum(queueDepth));
+    assertEquals(1.0, received.getVariance(queueDepth), 0.001);
+  }
+
   public void testEqualsMiscellanea() throws Exception {
     final StatisticsSet rawStatistics0 =
       new StatisticsSetImplementation(m_indexMap);
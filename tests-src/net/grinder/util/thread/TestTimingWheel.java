@@ -0,0 +1,239 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util.thread;
+
+import junit.framework.TestCase;
+
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.TimeAuthority;
+import net.grinder.util.thread.TimingWheel.Timeout;
+
+
+/**
+ * Unit tests for {@link TimingWheel}.
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TestTimingWheel extends TestCase {
+
+  private final MyTimeAuthority m_time = new MyTimeAuthority();
+
+  public void testConstruction() throws Exception {
+    try {
+      new TimingWheel(m_time, "x", 0, 10);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    try {
+      new TimingWheel(m_time, "x", 10, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    assertEquals(0, new TimingWheel(m_time, "x", 10, 3).size());
+  }
+
+  public void testExpiry() throws Exception {
+    final TimingWheel wheel = new TimingWheel(m_time, "x", 10, 8);
+
+    final CountingTask task1 = new CountingTask();
+    final CountingTask task2 = new CountingTask();
+    final CountingTask task3 = new CountingTask();
+
+    final Timeout timeout1 = wheel.schedule(task1, 25);
+    final Timeout timeout2 = wheel.schedule(task2, 1000);
+    final Timeout timeout3 = wheel.schedule(task3, -1);
+
+    wheel.expireTimeouts();
+    assertEquals(3, wheel.size());
+    assertEquals(0, task1.m_count);
+    assertEquals(0, task3.m_count);
+
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(1, task3.m_count);
+    assertTrue(timeout3.isExpired());
+    assertFalse(timeout3.cancel());
+
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(0, task1.m_count);
+
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(1, task1.m_count);
+    assertTrue(timeout1.isExpired());
+    assertFalse(timeout1.reset(10));
+    assertEquals(1, wheel.size());
+
+    // Well beyond one revolution.
+    m_time.advance(960);
+    wheel.expireTimeouts();
+    assertEquals(0, task2.m_count);
+    assertFalse(timeout2.isExpired());
+
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(1, task2.m_count);
+    assertEquals(0, wheel.size());
+
+    // A clock jump expires everything that is due, once.
+    final CountingTask task4 = new CountingTask();
+    wheel.schedule(task4, 50);
+    wheel.schedule(task4, 500);
+    m_time.advance(100000);
+    wheel.expireTimeouts();
+    wheel.expireTimeouts();
+    assertEquals(2, task4.m_count);
+  }
+
+  public void testCancel() throws Exception {
+    final TimingWheel wheel = new TimingWheel(m_time, "x", 10, 8);
+    final CountingTask task = new CountingTask();
+
+    final Timeout timeout1 = wheel.schedule(task, 15);
+    final Timeout timeout2 = wheel.schedule(task, 15);
+    assertTrue(timeout1.cancel());
+    assertFalse(timeout1.cancel());
+    wheel.expireTimeouts();
+    assertEquals(1, wheel.size());
+
+    assertTrue(timeout2.cancel());
+    assertEquals(1, wheel.size());
+    wheel.expireTimeouts();
+    assertEquals(0, wheel.size());
+
+    m_time.advance(100);
+    wheel.expireTimeouts();
+    assertEquals(0, task.m_count);
+    assertFalse(timeout1.isExpired());
+    assertFalse(timeout2.reset(10));
+  }
+
+  public void testResetAndSuspend() throws Exception {
+    final TimingWheel wheel = new TimingWheel(m_time, "x", 10, 8);
+    final CountingTask task = new CountingTask();
+
+    final Timeout timeout = wheel.schedule(task, 20);
+    wheel.expireTimeouts();
+
+    // Extend.
+    m_time.advance(15);
+    assertTrue(timeout.reset(20));
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(0, task.m_count);
+
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(0, task.m_count);
+
+    m_time.advance(5);
+    wheel.expireTimeouts();
+    assertEquals(1, task.m_count);
+
+    final Timeout timeout2 = wheel.schedule(task, 20);
+    assertTrue(timeout2.suspend());
+    m_time.advance(10000);
+    wheel.expireTimeouts();
+    assertEquals(1, task.m_count);
+    assertEquals(1, wheel.size());
+
+    // Shorten.
+    assertTrue(timeout2.reset(5));
+    m_time.advance(10);
+    wheel.expireTimeouts();
+    assertEquals(2, task.m_count);
+    assertTrue(timeout2.isExpired());
+  }
+
+  public void testTasksCanUseWheel() throws Exception {
+    final TimingWheel wheel = new TimingWheel(m_time, "x", 10, 8);
+    final CountingTask task = new CountingTask();
+
+    wheel.schedule(new Runnable() {
+        public void run() {
+          task.run();
+          wheel.schedule(task, 10);
+        }
+      },
+      10);
+
+    m_time.advance(20);
+    wheel.expireTimeouts();
+    assertEquals(1, task.m_count);
+
+    m_time.advance(20);
+    wheel.expireTimeouts();
+    assertEquals(2, task.m_count);
+  }
+
+  public void testWithThread() throws Exception {
+    final TimingWheel wheel =
+      new TimingWheel(new StandardTimeAuthority(), "test", 5, 16);
+
+    final CountingTask task = new CountingTask();
+
+    wheel.start();
+    wheel.start();
+
+    wheel.schedule(task, 10);
+    wheel.schedule(task, 10).cancel();
+
+    for (int i = 0; i < 100 && task.getCount() == 0; ++i) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, task.getCount());
+
+    wheel.shutdown();
+    wheel.shutdown();
+  }
+
+  private static final class MyTimeAuthority implements TimeAuthority {
+    private long m_time = 1000;
+
+    public long getTimeInMilliseconds() {
+      return m_time;
+    }
+
+    public void advance(long millis) {
+      m_time += millis;
+    }
+  }
+
+  private static final class CountingTask implements Runnable {
+    private int m_count;
+
+    public synchronized void run() {
+      ++m_count;
+    }
+
+    public synchronized int getCount() {
+      return m_count;
+    }
+  }
+}
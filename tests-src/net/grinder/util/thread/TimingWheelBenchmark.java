@@ -0,0 +1,168 @@
+// Copyright (C) 2010 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util.thread;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.util.StandardTimeAuthority;
+import net.grinder.util.thread.TimingWheel.Timeout;
+
+
+/**
+ * Measures schedule/cancel and reset throughput of {@link TimingWheel} with
+ * many outstanding timeouts, compared to a
+ * {@link ScheduledThreadPoolExecutor}.
+ *
+ * <p>Not a unit test. Run with:</p>
+ *
+ * <pre>
+ * java net.grinder.util.thread.TimingWheelBenchmark [outstanding] [threads]
+ * </pre>
+ *
+ * @author Philip Aston
+ * @version $Revision$
+ */
+public class TimingWheelBenchmark {
+
+  private static final int OPERATIONS = 2000000;
+  private static final long DELAY = 60000;
+
+  private static final Runnable NOTHING = new Runnable() {
+      public void run() { }
+    };
+
+  public static void main(String[] args) throws Exception {
+    final int outstanding =
+      args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+    for (int i = 0; i < 3; ++i) {
+      System.out.println("Run " + i + ", " + outstanding +
+                         " outstanding timeouts, " + threads + " threads");
+      benchmarkWheel(outstanding, threads);
+      benchmarkExecutor(outstanding, threads);
+    }
+  }
+
+  private static void benchmarkWheel(final int outstanding, int threads)
+    throws Exception {
+
+    final TimingWheel wheel =
+      new TimingWheel(new StandardTimeAuthority(), "benchmark", 1000, 64);
+    wheel.start();
+
+    final Timeout[] timeouts = new Timeout[outstanding];
+
+    for (int i = 0; i < outstanding; ++i) {
+      timeouts[i] = wheel.schedule(NOTHING, DELAY);
+    }
+
+    report("TimingWheel schedule/cancel", threads, new Operation() {
+        public void run(int i) {
+          final int n = i % outstanding;
+          timeouts[n].cancel();
+          timeouts[n] = wheel.schedule(NOTHING, DELAY);
+        }
+      });
+
+    report("TimingWheel reset", threads, new Operation() {
+        public void run(int i) {
+          timeouts[i % outstanding].reset(DELAY);
+        }
+      });
+
+    report("TimingWheel suspend/reset", threads, new Operation() {
+        public void run(int i) {
+          final Timeout timeout = timeouts[i % outstanding];
+          timeout.suspend();
+          timeout.reset(DELAY);
+        }
+      });
+
+    wheel.shutdown();
+  }
+
+  private static void benchmarkExecutor(final int outstanding, int threads)
+    throws Exception {
+
+    final ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor(1);
+
+    final ScheduledFuture<?>[] futures = new ScheduledFuture<?>[outstanding];
+
+    for (int i = 0; i < outstanding; ++i) {
+      futures[i] = executor.schedule(NOTHING, DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    report("ScheduledThreadPoolExecutor schedule/cancel", threads,
+      new Operation() {
+        public void run(int i) {
+          final int n = i % outstanding;
+          futures[n].cancel(false);
+          futures[n] = executor.schedule(NOTHING, DELAY, TimeUnit.MILLISECONDS);
+        }
+      });
+
+    executor.shutdownNow();
+  }
+
+  private static void report(String name,
+                             int threads,
+                             final Operation operation)
+    throws Exception {
+
+    final long start = System.nanoTime();
+    final int perThread = OPERATIONS / threads;
+
+    final Thread[] workers = new Thread[threads];
+
+    for (int t = 0; t < threads; ++t) {
+      final int offset = t * perThread;
+
+      workers[t] = new Thread() {
+          public void run() {
+            for (int i = 0; i < perThread; ++i) {
+              operation.run(offset + i);
+            }
+          }
+        };
+
+      workers[t].start();
+    }
+
+    for (int t = 0; t < threads; ++t) {
+      workers[t].join();
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    System.out.println("  " + name + ": " +
+                       (perThread * threads * 1000000000L / nanos) +
+                       " ops/s");
+  }
+
+  private interface Operation {
+    void run(int i);
+  }
+}
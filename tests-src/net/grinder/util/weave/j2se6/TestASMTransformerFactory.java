@@ -25,15 +25,18 @@ import static net.grinder.testutility.AssertUtilities.assertArraysEqual;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +46,7 @@ import net.grinder.testutility.AssertUtilities;
 import net.grinder.testutility.CallData;
 import net.grinder.testutility.CallRecorder;
 import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.StreamCopier;
 import net.grinder.util.weave.WeavingException;
 import net.grinder.util.weave.Weaver.TargetSource;
 import net.grinder.util.weave.agent.ExposeInstrumentation;
@@ -108,6 +112,128 @@ public class TestASMTransformerFactory extends TestCase {
     }
   }
 
+  public void testIndexedAdvice() throws Exception {
+    final ClassFileTransformer transformer =
+      new ASMTransformerFactory(MyIndexedAdvice.class)
+      .create(m_pointCutRegistry);
+
+    m_pointCutRegistryStubFactory.addMethod(
+      A.class, A.class.getDeclaredMethod("m1"), "loc1",
+      TargetSource.FIRST_PARAMETER, 7);
+    m_pointCutRegistryStubFactory.addMethod(A.class, "m2", "loc2");
+
+    // We don't need an agent to transform the byte code of a fresh class.
+    final Class<?> transformedA =
+      new TransformingClassLoader(transformer).loadClass(A.class.getName());
+
+    final Object a = transformedA.newInstance();
+    assertEquals(1, transformedA.getMethod("m1").invoke(a));
+
+    s_callRecorder.assertSuccess("enter", a, "loc1", 7);
+    s_callRecorder.assertSuccess("exit", a, "loc1", 7, true);
+    s_callRecorder.assertNoMoreCalls();
+
+    // Locations without a number use the original advice.
+    final Method m2 = transformedA.getDeclaredMethod("m2");
+    m2.setAccessible(true);
+
+    try {
+      m2.invoke(a);
+      fail("Expected InvocationTargetException");
+    }
+    catch (InvocationTargetException e) {
+    }
+
+    s_callRecorder.assertSuccess("enter", a, "loc2");
+    s_callRecorder.assertSuccess("exit", a, "loc2", false);
+    s_callRecorder.assertNoMoreCalls();
+  }
+
+  public void testWovenCodeIsCached() throws Exception {
+    final ClassFileTransformer transformer =
+      new ASMTransformerFactory(MyAdvice.class).create(m_pointCutRegistry);
+
+    final String internalName = A.class.getName().replace('.', '/');
+
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    new StreamCopier(1000, true).copy(
+      getClass().getClassLoader().getResourceAsStream(internalName + ".class"),
+      byteStream);
+    final byte[] original = byteStream.toByteArray();
+
+    assertNull(transformer.transform(null, internalName, null, null, original));
+
+    m_pointCutRegistryStubFactory.addMethod(A.class, "m1", "loc1");
+
+    final byte[] woven1 =
+      transformer.transform(null, internalName, null, null, original);
+    assertNotNull(woven1);
+    assertSame(woven1,
+               transformer.transform(null, internalName, null, null,
+                                     original.clone()));
+
+    // Different byte code.
+    final byte[] modified = original.clone();
+    modified[modified.length - 1] ^= 1;
+    final byte[] woven2 =
+      transformer.transform(null, internalName, null, null, modified);
+    assertNotSame(woven1, woven2);
+
+    // Different point cuts.
+    m_pointCutRegistryStubFactory.addMethod(A.class, "m2", "loc2");
+    final byte[] woven3 =
+      transformer.transform(null, internalName, null, null, original);
+    assertNotSame(woven1, woven3);
+    assertFalse(Arrays.equals(woven1, woven3));
+  }
+
+  private static final class TransformingClassLoader extends ClassLoader {
+    private final ClassFileTransformer m_transformer;
+
+    private TransformingClassLoader(ClassFileTransformer transformer) {
+      super(TransformingClassLoader.class.getClassLoader());
+      m_transformer = transformer;
+    }
+
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+      throws ClassNotFoundException {
+
+      if (!name.equals(A.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+
+      Class<?> c = findLoadedClass(name);
+
+      if (c == null) {
+        final String internalName = name.replace('.', '/');
+
+        final InputStream resource =
+          getParent().getResourceAsStream(internalName + ".class");
+
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+
+        try {
+          new StreamCopier(1000, true).copy(resource, byteStream);
+
+          final byte[] bytes =
+            m_transformer.transform(this, internalName, null, null,
+                                    byteStream.toByteArray());
+
+          c = defineClass(name, bytes, 0, bytes.length);
+        }
+        catch (Exception e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+
+      if (resolve) {
+        resolveClass(c);
+      }
+
+      return c;
+    }
+  }
+
   private static final Instrumentation getInstrumentation() {
     final Instrumentation instrumentation =
       ExposeInstrumentation.getInstrumentation();
@@ -619,6 +745,70 @@ public class TestASMTransformerFactory extends TestCase {
     }
   }
 
+  public static final class MyIndexedAdvice {
+    private static final Method ENTER_METHOD;
+    private static final Method EXIT_METHOD;
+    private static final Method INDEXED_ENTER_METHOD;
+    private static final Method INDEXED_EXIT_METHOD;
+
+    static {
+      try {
+        ENTER_METHOD = MyIndexedAdvice.class.getMethod(
+          "enter", Object.class, String.class);
+        EXIT_METHOD = MyIndexedAdvice.class.getMethod(
+          "exit", Object.class, String.class, Boolean.TYPE);
+        INDEXED_ENTER_METHOD = MyIndexedAdvice.class.getMethod(
+          "enter", Object.class, String.class, Integer.TYPE);
+        INDEXED_EXIT_METHOD = MyIndexedAdvice.class.getMethod(
+          "exit", Object.class, String.class, Integer.TYPE, Boolean.TYPE);
+      }
+      catch (Exception e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    public static void enter(Object reference, String location) {
+      s_callRecorder.record(new CallData(ENTER_METHOD,
+                                         null,
+                                         reference,
+                                         location));
+    }
+
+    public static void exit(Object reference,
+                            String location,
+                            boolean success) {
+
+      s_callRecorder.record(new CallData(EXIT_METHOD,
+                                         null,
+                                         reference,
+                                         location,
+                                         success));
+    }
+
+    public static void enter(Object reference,
+                             String location,
+                             int locationID) {
+      s_callRecorder.record(new CallData(INDEXED_ENTER_METHOD,
+                                         null,
+                                         reference,
+                                         location,
+                                         locationID));
+    }
+
+    public static void exit(Object reference,
+                            String location,
+                            int locationID,
+                            boolean success) {
+
+      s_callRecorder.record(new CallData(INDEXED_EXIT_METHOD,
+                                         null,
+                                         reference,
+                                         location,
+                                         locationID,
+                                         success));
+    }
+  }
+
   public static final class BadAdvice1 {
   }
 
@@ -674,7 +864,7 @@ public class TestASMTransformerFactory extends TestCase {
     public void addConstructor(Class<?> theClass,
                                Constructor<?> constructor,
                                String location) {
-      addMember(theClass, constructor, location, m_constructors, null);
+      addMember(theClass, constructor, location, m_constructors, null, -1);
     }
 
     /**
@@ -700,7 +890,15 @@ public class TestASMTransformerFactory extends TestCase {
                           Method method,
                           String location,
                           TargetSource source) {
-      addMember(theClass, method, location, m_methods, source);
+      addMethod(theClass, method, location, source, -1);
+    }
+
+    public void addMethod(Class<?> theClass,
+                          Method method,
+                          String location,
+                          TargetSource source,
+                          int locationID) {
+      addMember(theClass, method, location, m_methods, source, locationID);
     }
 
     public <T extends Member> void addMember(
@@ -708,7 +906,8 @@ public class TestASMTransformerFactory extends TestCase {
       T member,
       String location,
       Map<String, Map<T, List<WeavingDetails>>> members,
-      TargetSource source) {
+      TargetSource source,
+      int locationID) {
 
       final String internalClassName = theClass.getName().replace('.', '/');
 
@@ -736,7 +935,8 @@ public class TestASMTransformerFactory extends TestCase {
         }
       }
 
-      getList(forClass, member).add(new WeavingDetails(location, source));
+      getList(forClass, member).add(
+        new WeavingDetails(location, locationID, source));
     }
   }
 
@@ -23,14 +23,18 @@ package net.grinder.util.weave.j2se6;
 
 import static net.grinder.testutility.AssertUtilities.assertArraysEqual;
 
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
+import net.grinder.common.LoggerStubFactory;
 import net.grinder.testutility.CallData;
 import net.grinder.testutility.RandomStubFactory;
 import net.grinder.util.weave.Weaver;
@@ -111,6 +115,8 @@ public class TestDCRWeaver extends TestCase {
     assertEquals(1, locations1.size());
     final String location1 = locations1.get(0).getLocation();
     assertNotNull(location1);
+    assertEquals(DCRWeaver.getLocationID(location1),
+                 locations1.get(0).getLocationID());
 
     final Method method2 = getClass().getDeclaredMethod("myOtherMethod");
 
@@ -133,6 +139,24 @@ public class TestDCRWeaver extends TestCase {
     assertNotNull(pointCuts2.get(method2));
   }
 
+  public void testLocationIDs() throws Exception {
+    final Weaver weaver = new DCRWeaver(m_classFileTransformerFactory,
+                                        m_instrumentation);
+
+    final int id1 = DCRWeaver.getLocationID(
+      weaver.weave(getClass().getDeclaredMethod("myMethod"),
+                   TargetSource.CLASS));
+    final int id2 = DCRWeaver.getLocationID(
+      weaver.weave(getClass().getDeclaredMethod("myOtherMethod"),
+                   TargetSource.CLASS));
+
+    assertTrue(id1 >= 0);
+    assertTrue(id2 > id1);
+
+    assertEquals(-1, DCRWeaver.getLocationID("foo"));
+    assertEquals(-1, DCRWeaver.getLocationID(""));
+  }
+
   public void testConstructorRegistration() throws Exception {
     final Weaver weaver = new DCRWeaver(m_classFileTransformerFactory,
                                         m_instrumentation);
@@ -174,6 +198,8 @@ public class TestDCRWeaver extends TestCase {
 
     final String location1 = locations1.get(0).getLocation();
     assertNotNull(location1);
+    assertEquals(DCRWeaver.getLocationID(location1),
+                 locations1.get(0).getLocationID());
   }
 
   public void testWeavingWithInstrumentation() throws Exception {
@@ -202,9 +228,9 @@ public class TestDCRWeaver extends TestCase {
 
     final CallData retransformClassesCall =
       m_instrumentationStubFactory.assertSuccess("retransformClasses",
-                                                 new Class[0].getClass());
-    assertArraysEqual((Class[])retransformClassesCall.getParameters()[0],
-                      new Class[] { getClass(),});
+                                                 Class[].class);
+    assertArraysEqual((Class<?>[])retransformClassesCall.getParameters()[0],
+                      new Class<?>[] { getClass(),});
 
     m_instrumentationStubFactory.assertNoMoreCalls();
 
@@ -215,6 +241,59 @@ public class TestDCRWeaver extends TestCase {
     m_instrumentationStubFactory.assertNoMoreCalls();
   }
 
+  public void testDeferredWeaving() throws Exception {
+    final LoggerStubFactory loggerStubFactory = new LoggerStubFactory();
+
+    final DCRWeaver weaver = new DCRWeaver(m_classFileTransformerFactory,
+                                           m_instrumentation,
+                                           loggerStubFactory.getLogger());
+
+    m_instrumentationStubFactory.assertSuccess("addTransformer",
+                                               ClassFileTransformer.class,
+                                               Boolean.class);
+
+    weaver.deferChanges();
+
+    weaver.weave(getClass().getDeclaredMethod("myMethod"),
+                 TargetSource.FIRST_PARAMETER);
+    weaver.applyChanges();
+
+    weaver.weave(String.class.getDeclaredMethod("length"),
+                 TargetSource.FIRST_PARAMETER);
+    weaver.applyChanges();
+
+    m_instrumentationStubFactory.assertNoMoreCalls();
+    loggerStubFactory.assertNoMoreCalls();
+
+    weaver.applyDeferredChanges();
+
+    final CallData retransformClassesCall =
+      m_instrumentationStubFactory.assertSuccess("retransformClasses",
+                                                 Class[].class);
+    assertEquals(
+      new HashSet<Class<?>>(Arrays.<Class<?>>asList(getClass(), String.class)),
+      new HashSet<Object>(
+        Arrays.asList((Object[])retransformClassesCall.getParameters()[0])));
+    m_instrumentationStubFactory.assertNoMoreCalls();
+
+    loggerStubFactory.assertOutputMessageContains("retransformed 2 classes");
+    loggerStubFactory.assertNoMoreCalls();
+
+    // Changes are applied immediately again.
+    weaver.weave(getClass().getDeclaredMethod("myOtherMethod"),
+                 TargetSource.FIRST_PARAMETER);
+    weaver.applyChanges();
+
+    m_instrumentationStubFactory.assertSuccess("retransformClasses",
+                                               Class[].class);
+
+    // Only the deferred batch is logged, not every Test.record().
+    loggerStubFactory.assertNoMoreCalls();
+
+    weaver.applyDeferredChanges();
+    m_instrumentationStubFactory.assertNoMoreCalls();
+  }
+
   public void testWeavingWithBadInstrumentation() throws Exception {
     final Weaver weaver = new DCRWeaver(m_classFileTransformerFactory,
                                         m_instrumentation);